@@ -142,7 +142,7 @@ public class ObjectResource extends CoapResource implements NotifySender {
       if (exchange.getRequestOptions().hasObserve()) {
         ObserveResponse response = nodeEnabler.observe(identity, new ObserveRequest(URI));
         if (response.getCode() == org.eclipse.leshan.ResponseCode.CONTENT) {
-          LwM2mPath path = new LwM2mPath(URI);
+          LwM2mPath path = LwM2mPath.fromSegments(exchange.getRequestOptions().getUriPath());
           LwM2mNode content = response.getContent();
           LwM2mModel model = new LwM2mModel(nodeEnabler.getObjectModel());
           exchange.respond(ResponseCode.CONTENT, encoder.encode(content, format, path, model),
@@ -157,7 +157,7 @@ public class ObjectResource extends CoapResource implements NotifySender {
       else {
         ReadResponse response = nodeEnabler.read(identity, new ReadRequest(URI));
         if (response.getCode() == org.eclipse.leshan.ResponseCode.CONTENT) {
-          LwM2mPath path = new LwM2mPath(URI);
+          LwM2mPath path = LwM2mPath.fromSegments(exchange.getRequestOptions().getUriPath());
           LwM2mNode content = response.getContent();
           LwM2mModel model = new LwM2mModel(nodeEnabler.getObjectModel());
           exchange.respond(ResponseCode.CONTENT, encoder.encode(content, format, path, model),
@@ -196,7 +196,7 @@ public class ObjectResource extends CoapResource implements NotifySender {
     }
     // Manage Write and Bootstrap Write Request (replace)
     else {
-      LwM2mPath path = new LwM2mPath(URI);
+      LwM2mPath path = LwM2mPath.fromSegments(coapExchange.getRequestOptions().getUriPath());
 
       if (!coapExchange.getRequestOptions().hasContentFormat()) {
         coapExchange.respond(ResponseCode.BAD_REQUEST, "Content Format is mandatory");
@@ -248,7 +248,7 @@ public class ObjectResource extends CoapResource implements NotifySender {
     ServerIdentity identity = extractServerIdentity(exchange, bootstrapHandler);
     String URI = exchange.getRequestOptions().getUriPathString();
 
-    LwM2mPath path = new LwM2mPath(URI);
+    LwM2mPath path = LwM2mPath.fromSegments(exchange.getRequestOptions().getUriPath());
 
     // Manage Execute Request
     if (path.isResource()) {
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.node;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.leshan.core.model.ResourceModel.Type;
+
+/**
+ * An immutable map of LWM2M identifiers backed by a sorted <code>int</code> array.
+ * <p>
+ * Compared to an unmodifiable {@link java.util.HashMap}, there is no hash table, no entry and no
+ * boxed key per element. Integer, float and boolean values can also be stored in primitive arrays:
+ * they are boxed only when they are read. Entries are iterated in the order of their keys.
+ */
+abstract class IntKeyMap<V> extends AbstractMap<Integer, V> {
+
+  private static final int[] NO_KEYS = new int[0];
+
+  private final int[] keys;
+
+  private IntKeyMap(int[] keys) {
+    this.keys = keys;
+  }
+
+  /**
+   * Copies the given map.
+   */
+  static <V> IntKeyMap<V> copyOf(Map<Integer, ? extends V> map) {
+    if (map instanceof ObjectValues) {
+      @SuppressWarnings("unchecked")
+      IntKeyMap<V> copy = (IntKeyMap<V>) map;
+      return copy;
+    }
+    int[] keys = new int[map.size()];
+    Object[] values = new Object[map.size()];
+    if (!fill(map, keys, values)) {
+      // not sorted: let a TreeMap sort the entries
+      fill(new TreeMap<>(map), keys, values);
+    }
+    return new ObjectValues<>(keys, values);
+  }
+
+  /**
+   * Copies the given map, integer, float and boolean values are stored in primitive arrays.
+   */
+  static IntKeyMap<?> copyOf(Map<Integer, ?> map, Type type) {
+    if (map instanceof IntKeyMap) {
+      return (IntKeyMap<?>) map;
+    }
+    Class<?> primitiveClass;
+    switch (type) {
+      case INTEGER:
+        primitiveClass = Long.class;
+        break;
+      case FLOAT:
+        primitiveClass = Double.class;
+        break;
+      case BOOLEAN:
+        primitiveClass = Boolean.class;
+        break;
+      default:
+        return copyOf(map);
+    }
+    for (Object value : map.values()) {
+      if (!primitiveClass.isInstance(value)) {
+        return copyOf(map);
+      }
+    }
+
+    IntKeyMap<?> objects = copyOf(map);
+    int[] keys = objects.keys;
+    switch (type) {
+      case INTEGER:
+        long[] longs = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          longs[i] = (Long) objects.valueAt(i);
+        }
+        return new LongValues(keys, longs);
+      case FLOAT:
+        double[] doubles = new double[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          doubles[i] = (Double) objects.valueAt(i);
+        }
+        return new DoubleValues(keys, doubles);
+      default:
+        boolean[] booleans = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          booleans[i] = (Boolean) objects.valueAt(i);
+        }
+        return new BooleanValues(keys, booleans);
+    }
+  }
+
+  /**
+   * Indexes the given nodes by id, the last node wins if several nodes have the same id.
+   */
+  static <V extends LwM2mNode> IntKeyMap<V> byId(Collection<? extends V> nodes) {
+    if (nodes.isEmpty()) {
+      return new ObjectValues<>(NO_KEYS, new Object[0]);
+    }
+    int[] keys = new int[nodes.size()];
+    Object[] values = new Object[nodes.size()];
+    int i = 0;
+    boolean sorted = true;
+    for (V node : nodes) {
+      keys[i] = node.getId();
+      values[i] = node;
+      if (i > 0 && keys[i] <= keys[i - 1]) {
+        sorted = false;
+      }
+      i++;
+    }
+    if (sorted) {
+      return new ObjectValues<>(keys, values);
+    }
+
+    TreeMap<Integer, V> sortedNodes = new TreeMap<>();
+    for (V node : nodes) {
+      sortedNodes.put(node.getId(), node);
+    }
+    return copyOf(sortedNodes);
+  }
+
+  // copies the entries in the given arrays and returns false if the keys are not sorted
+  private static boolean fill(Map<Integer, ?> map, int[] keys, Object[] values) {
+    int i = 0;
+    boolean sorted = true;
+    for (Entry<Integer, ?> entry : map.entrySet()) {
+      keys[i] = entry.getKey();
+      values[i] = entry.getValue();
+      if (i > 0 && keys[i] <= keys[i - 1]) {
+        sorted = false;
+      }
+      i++;
+    }
+    return sorted;
+  }
+
+  abstract V valueAt(int index);
+
+  /**
+   * @return the value of the given key or <code>null</code>, without boxing the key.
+   */
+  public V get(int key) {
+    int index = Arrays.binarySearch(keys, key);
+    return index < 0 ? null : valueAt(index);
+  }
+
+  @Override
+  public V get(Object key) {
+    return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && Arrays.binarySearch(keys, (Integer) key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  public Set<Entry<Integer, V>> entrySet() {
+    return new AbstractSet<Entry<Integer, V>>() {
+      @Override
+      public Iterator<Entry<Integer, V>> iterator() {
+        return new Iterator<Entry<Integer, V>>() {
+          private int index;
+
+          @Override
+          public boolean hasNext() {
+            return index < keys.length;
+          }
+
+          @Override
+          public Entry<Integer, V> next() {
+            if (index >= keys.length) {
+              throw new NoSuchElementException();
+            }
+            Entry<Integer, V> entry = new SimpleImmutableEntry<>(keys[index], valueAt(index));
+            index++;
+            return entry;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return keys.length;
+      }
+    };
+  }
+
+  private static class ObjectValues<V> extends IntKeyMap<V> {
+    private final Object[] values;
+
+    ObjectValues(int[] keys, Object[] values) {
+      super(keys);
+      this.values = values;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+      return (V) values[index];
+    }
+  }
+
+  private static class LongValues extends IntKeyMap<Long> {
+    private final long[] values;
+
+    LongValues(int[] keys, long[] values) {
+      super(keys);
+      this.values = values;
+    }
+
+    @Override
+    Long valueAt(int index) {
+      return values[index];
+    }
+  }
+
+  private static class DoubleValues extends IntKeyMap<Double> {
+    private final double[] values;
+
+    DoubleValues(int[] keys, double[] values) {
+      super(keys);
+      this.values = values;
+    }
+
+    @Override
+    Double valueAt(int index) {
+      return values[index];
+    }
+  }
+
+  private static class BooleanValues extends IntKeyMap<Boolean> {
+    private final boolean[] values;
+
+    BooleanValues(int[] keys, boolean[] values) {
+      super(keys);
+      this.values = values;
+    }
+
+    @Override
+    Boolean valueAt(int index) {
+      return values[index];
+    }
+  }
+}
@@ -17,9 +17,7 @@ package org.eclipse.leshan.core.node;
 
 import java.util.AbstractMap;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,13 +37,13 @@ public class LwM2mMultipleResource implements LwM2mResource {
 
   private final int id;
 
-  private final Map<Integer, ?> values;
+  private final IntKeyMap<?> values;
 
   private final Type type;
 
   protected LwM2mMultipleResource(int id, Map<Integer, ?> values, Type type) {
     this.id = id;
-    this.values = Collections.unmodifiableMap(new HashMap<>(values));
+    this.values = type == null ? IntKeyMap.copyOf(values) : IntKeyMap.copyOf(values, type);
     this.type = type;
   }
 
@@ -17,8 +17,6 @@ package org.eclipse.leshan.core.node;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.leshan.util.Validate;
@@ -33,17 +31,13 @@ public class LwM2mObject implements LwM2mNode {
 
   private int id;
 
-  private final Map<Integer, LwM2mObjectInstance> instances;
+  private final IntKeyMap<LwM2mObjectInstance> instances;
 
   public LwM2mObject(int id, Collection<LwM2mObjectInstance> instances) {
     Validate.notNull(instances);
 
     this.id = id;
-    HashMap<Integer, LwM2mObjectInstance> instancesMap = new HashMap<>(instances.size());
-    for (LwM2mObjectInstance instance : instances) {
-      instancesMap.put(instance.getId(), instance);
-    }
-    this.instances = Collections.unmodifiableMap(instancesMap);
+    this.instances = IntKeyMap.byId(instances);
   }
 
   public LwM2mObject(int id, LwM2mObjectInstance... instances) {
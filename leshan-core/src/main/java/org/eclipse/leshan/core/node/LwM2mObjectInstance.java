@@ -17,8 +17,6 @@ package org.eclipse.leshan.core.node;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.leshan.util.Validate;
@@ -35,17 +33,13 @@ public class LwM2mObjectInstance implements LwM2mNode {
 
   private final int id;
 
-  private final Map<Integer, LwM2mResource> resources;
+  private final IntKeyMap<LwM2mResource> resources;
 
   public LwM2mObjectInstance(int id, Collection<LwM2mResource> resources) {
     Validate.notNull(resources);
 
     this.id = id;
-    Map<Integer, LwM2mResource> resourcesMap = new HashMap<>(resources.size());
-    for (LwM2mResource resource : resources) {
-      resourcesMap.put(resource.getId(), resource);
-    }
-    this.resources = Collections.unmodifiableMap(resourcesMap);
+    this.resources = IntKeyMap.byId(resources);
   }
 
   public LwM2mObjectInstance(int id, LwM2mResource... resources) {
@@ -15,25 +15,45 @@
  *******************************************************************************/
 package org.eclipse.leshan.core.node;
 
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.eclipse.leshan.util.Validate;
 
 /**
  * A path pointing to a LwM2M node (root, object, object instance, resource or resource instance).
+ * <p>
+ * Identifiers are stored as primitive values and paths are parsed without intermediate strings.
+ * Paths are immutable, {@link #intern(String)} can be used to share the instances of frequently
+ * parsed paths.
  */
-public class LwM2mPath {
+public class LwM2mPath implements Comparable<LwM2mPath> {
+
+  // maximum number of paths kept by intern(String), the cache is cleared when it is full
+  private static final int MAX_INTERNED_PATHS = 1024;
+  private static final ConcurrentMap<String, LwM2mPath> INTERNED_PATHS = new ConcurrentHashMap<>();
 
-  private final Integer objectId;
-  private final Integer objectInstanceId;
-  private final Integer resourceId;
-  private final Integer resourceInstanceId;
+  // number of identifiers in the path, from 0 (root) to 4 (resource instance)
+  private final int length;
+  private final int objectId;
+  private final int objectInstanceId;
+  private final int resourceId;
+  private final int resourceInstanceId;
 
   public final static LwM2mPath ROOTPATH = new LwM2mPath();
 
   private LwM2mPath() {
-    this.objectId = null;
-    this.objectInstanceId = null;
-    this.resourceId = null;
-    this.resourceInstanceId = null;
+    this(0, 0, 0, 0, 0);
+  }
+
+  private LwM2mPath(int length, int objectId, int objectInstanceId, int resourceId,
+      int resourceInstanceId) {
+    this.length = length;
+    this.objectId = objectId;
+    this.objectInstanceId = objectInstanceId;
+    this.resourceId = resourceId;
+    this.resourceInstanceId = resourceInstanceId;
   }
 
   /**
@@ -42,10 +62,7 @@ public class LwM2mPath {
    * @param objectId the object identifier
    */
   public LwM2mPath(int objectId) {
-    this.objectId = objectId;
-    this.objectInstanceId = null;
-    this.resourceId = null;
-    this.resourceInstanceId = null;
+    this(1, objectId, 0, 0, 0);
   }
 
   /**
@@ -55,10 +72,7 @@ public class LwM2mPath {
    * @param objectInstanceId the instance identifier
    */
   public LwM2mPath(int objectId, int objectInstanceId) {
-    this.objectId = objectId;
-    this.objectInstanceId = objectInstanceId;
-    this.resourceId = null;
-    this.resourceInstanceId = null;
+    this(2, objectId, objectInstanceId, 0, 0);
   }
 
   /**
@@ -69,10 +83,7 @@ public class LwM2mPath {
    * @param resourceId the resource identifier
    */
   public LwM2mPath(int objectId, int objectInstanceId, int resourceId) {
-    this.objectId = objectId;
-    this.objectInstanceId = objectInstanceId;
-    this.resourceId = resourceId;
-    this.resourceInstanceId = null;
+    this(3, objectId, objectInstanceId, resourceId, 0);
   }
 
   /**
@@ -84,10 +95,7 @@ public class LwM2mPath {
    * @param resourceInstanceId the resource instance identifier
    */
   public LwM2mPath(int objectId, int objectInstanceId, int resourceId, int resourceInstanceId) {
-    this.objectId = objectId;
-    this.objectInstanceId = objectInstanceId;
-    this.resourceId = resourceId;
-    this.resourceInstanceId = resourceInstanceId;
+    this(4, objectId, objectInstanceId, resourceId, resourceInstanceId);
   }
 
   /**
@@ -96,25 +104,107 @@ public class LwM2mPath {
    * @param path the path (e.g. "/3/0/1" or "/3")
    */
   public LwM2mPath(String path) {
+    this(ROOTPATH, path);
+  }
+
+  // parses the given path relatively to the given parent
+  private LwM2mPath(LwM2mPath parent, String path) {
     Validate.notNull(path);
-    if (path.startsWith("/")) {
-      path = path.substring(1);
+    int[] ids = new int[4];
+    int length = parent.length;
+    if (length > 0) {
+      ids[0] = parent.objectId;
+      ids[1] = parent.objectInstanceId;
+      ids[2] = parent.resourceId;
+      ids[3] = parent.resourceInstanceId;
+    }
+
+    int start = path.startsWith("/") ? 1 : 0;
+    int end = path.length();
+    if (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    int position = start;
+    while (position < end) {
+      if (length == 4) {
+        throw new IllegalArgumentException("Invalid length for path: " + path);
+      }
+      int separator = path.indexOf('/', position);
+      if (separator < 0 || separator > end) {
+        separator = end;
+      }
+      ids[length++] = parseId(path, position, separator);
+      position = separator + 1;
+    }
+
+    this.length = length;
+    this.objectId = ids[0];
+    this.objectInstanceId = ids[1];
+    this.resourceId = ids[2];
+    this.resourceInstanceId = ids[3];
+  }
+
+  // parses the decimal identifier between the given positions
+  private static int parseId(String path, int start, int end) {
+    int position = start;
+    boolean negative = position < end && path.charAt(position) == '-';
+    if (negative) {
+      position++;
+    }
+    long value = 0;
+    int digits = 0;
+    while (position < end) {
+      char c = path.charAt(position++);
+      if (c < '0' || c > '9' || ++digits > 10) {
+        throw new IllegalArgumentException("Invalid elements in path: " + path);
+      }
+      value = value * 10 + (c - '0');
     }
-    if (path.endsWith("/")) {
-      path = path.substring(0, path.length() - 1);
+    value = negative ? -value : value;
+    if (digits == 0 || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+      throw new IllegalArgumentException("Invalid elements in path: " + path);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Creates a path from its segments, as given by the CoAP Uri-Path options.
+   *
+   * @param segments the identifiers of the path (e.g. ["3", "0", "1"])
+   */
+  public static LwM2mPath fromSegments(List<String> segments) {
+    Validate.notNull(segments);
+    if (segments.size() > 4) {
+      throw new IllegalArgumentException("Invalid length for path: " + segments);
     }
-    String[] p = path.split("/");
-    if (0 > p.length || p.length > 4) {
-      throw new IllegalArgumentException("Invalid length for path: " + path);
+    int[] ids = new int[4];
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      if (segment.isEmpty()) {
+        throw new IllegalArgumentException("Invalid elements in path: " + segments);
+      }
+      ids[i] = parseId(segment, 0, segment.length());
     }
-    try {
-      this.objectId = (p.length >= 1 && !p[0].isEmpty()) ? Integer.valueOf(p[0]) : null;
-      this.objectInstanceId = (p.length >= 2) ? Integer.valueOf(p[1]) : null;
-      this.resourceId = (p.length >= 3) ? Integer.valueOf(p[2]) : null;
-      this.resourceInstanceId = (p.length == 4) ? Integer.valueOf(p[3]) : null;
-    } catch (NumberFormatException e) {
-      throw new IllegalArgumentException("Invalid elements in path: " + path, e);
+    return new LwM2mPath(segments.size(), ids[0], ids[1], ids[2], ids[3]);
+  }
+
+  /**
+   * Returns a shared instance of the path represented by the given string. Paths parsed on hot
+   * code paths (notifications, observations, requests) should use this method to avoid parsing the
+   * same paths again and again.
+   *
+   * @param path the path (e.g. "/3/0/1" or "/3")
+   */
+  public static LwM2mPath intern(String path) {
+    LwM2mPath lwm2mPath = INTERNED_PATHS.get(path);
+    if (lwm2mPath == null) {
+      lwm2mPath = new LwM2mPath(path);
+      if (INTERNED_PATHS.size() >= MAX_INTERNED_PATHS) {
+        INTERNED_PATHS.clear();
+      }
+      INTERNED_PATHS.put(path, lwm2mPath);
     }
+    return lwm2mPath;
   }
 
   /**
@@ -122,12 +212,7 @@ public class LwM2mPath {
    * @return a new path which is the concatenation of this path and the given one in parameter.
    */
   public LwM2mPath append(String path) {
-    LwM2mPath pathToAdd = new LwM2mPath(path);
-    if (isRoot()) {
-      return pathToAdd;
-    } else {
-      return new LwM2mPath(this.toString() + pathToAdd.toString());
-    }
+    return new LwM2mPath(this, path);
   }
 
   /**
@@ -135,7 +220,18 @@ public class LwM2mPath {
    * @return a new path which is the concatenation of this path and the given one in parameter.
    */
   public LwM2mPath append(int end) {
-    return append(String.valueOf(end));
+    switch (length) {
+      case 0:
+        return new LwM2mPath(end);
+      case 1:
+        return new LwM2mPath(objectId, end);
+      case 2:
+        return new LwM2mPath(objectId, objectInstanceId, end);
+      case 3:
+        return new LwM2mPath(objectId, objectInstanceId, resourceId, end);
+      default:
+        throw new IllegalArgumentException("Invalid length for path: " + this + "/" + end);
+    }
   }
 
   /**
@@ -144,7 +240,7 @@ public class LwM2mPath {
    * @return the object ID. Can be <code>null</code> when this is an root path.
    */
   public Integer getObjectId() {
-    return objectId;
+    return length >= 1 ? Integer.valueOf(objectId) : null;
   }
 
   /**
@@ -153,7 +249,7 @@ public class LwM2mPath {
    * @return the object instance ID. Can be <code>null</code> when this is an root/object path.
    */
   public Integer getObjectInstanceId() {
-    return objectInstanceId;
+    return length >= 2 ? Integer.valueOf(objectInstanceId) : null;
   }
 
   /**
@@ -163,7 +259,7 @@ public class LwM2mPath {
    * path.
    */
   public Integer getResourceId() {
-    return resourceId;
+    return length >= 3 ? Integer.valueOf(resourceId) : null;
   }
 
   /**
@@ -173,47 +269,79 @@ public class LwM2mPath {
    * instance/resource path.
    */
   public Integer getResourceInstanceId() {
-    return resourceInstanceId;
+    return length == 4 ? Integer.valueOf(resourceInstanceId) : null;
   }
 
   /**
    * @return <code>true</code> if this is the root path ("/").
    */
   public boolean isRoot() {
-    return objectId == null && objectInstanceId == null && resourceId == null
-        && resourceInstanceId == null;
+    return length == 0;
   }
 
   /**
    * @return <code>true</code> if this is an Object path.
    */
   public boolean isObject() {
-    return objectId != null && objectInstanceId == null && resourceId == null
-        && resourceInstanceId == null;
+    return length == 1;
   }
 
   /**
    * @return <code>true</code> if this is an ObjectInstance path.
    */
   public boolean isObjectInstance() {
-    return objectId != null && objectInstanceId != null && resourceId == null
-        && resourceInstanceId == null;
+    return length == 2;
   }
 
   /**
    * @return <code>true</code> if this is a Resource path.
    */
   public boolean isResource() {
-    return objectId != null && objectInstanceId != null && resourceId != null
-        && resourceInstanceId == null;
+    return length == 3;
   }
 
   /**
    * @return <code>true</code> if this is a Resource instance path.
    */
   public boolean isResourceInstance() {
-    return objectId != null && objectInstanceId != null && resourceId != null
-        && resourceInstanceId != null;
+    return length == 4;
+  }
+
+  /**
+   * @return <code>true</code> if this path is the given path or one of its descendants (e.g. /3/0/1
+   * starts with /3).
+   */
+  public boolean startsWith(LwM2mPath prefix) {
+    if (length < prefix.length) {
+      return false;
+    }
+    return (prefix.length < 1 || objectId == prefix.objectId)
+        && (prefix.length < 2 || objectInstanceId == prefix.objectInstanceId)
+        && (prefix.length < 3 || resourceId == prefix.resourceId)
+        && (prefix.length < 4 || resourceInstanceId == prefix.resourceInstanceId);
+  }
+
+  /**
+   * Paths are ordered by identifiers, a path comes just before its descendants (e.g. / &lt; /3 &lt;
+   * /3/0 &lt; /3/0/1 &lt; /3/1 &lt; /4).
+   */
+  @Override
+  public int compareTo(LwM2mPath other) {
+    int common = Math.min(length, other.length);
+    int result = 0;
+    if (common >= 1) {
+      result = Integer.compare(objectId, other.objectId);
+    }
+    if (result == 0 && common >= 2) {
+      result = Integer.compare(objectInstanceId, other.objectInstanceId);
+    }
+    if (result == 0 && common >= 3) {
+      result = Integer.compare(resourceId, other.resourceId);
+    }
+    if (result == 0 && common >= 4) {
+      result = Integer.compare(resourceInstanceId, other.resourceInstanceId);
+    }
+    return result != 0 ? result : Integer.compare(length, other.length);
   }
 
   /**
@@ -222,16 +350,16 @@ public class LwM2mPath {
    */
   @Override
   public String toString() {
-    StringBuilder b = new StringBuilder();
+    StringBuilder b = new StringBuilder(24);
     b.append("/");
-    if (getObjectId() != null) {
-      b.append(getObjectId());
-      if (getObjectInstanceId() != null) {
-        b.append("/").append(getObjectInstanceId());
-        if (getResourceId() != null) {
-          b.append("/").append(getResourceId());
-          if (getResourceInstanceId() != null) {
-            b.append("/").append(getResourceInstanceId());
+    if (length >= 1) {
+      b.append(objectId);
+      if (length >= 2) {
+        b.append("/").append(objectInstanceId);
+        if (length >= 3) {
+          b.append("/").append(resourceId);
+          if (length == 4) {
+            b.append("/").append(resourceInstanceId);
           }
         }
       }
@@ -243,10 +371,11 @@ public class LwM2mPath {
   public int hashCode() {
     final int prime = 31;
     int result = 1;
+    result = prime * result + length;
     result = prime * result + objectId;
-    result = prime * result + ((objectInstanceId == null) ? 0 : objectInstanceId.hashCode());
-    result = prime * result + ((resourceId == null) ? 0 : resourceId.hashCode());
-    result = prime * result + ((resourceInstanceId == null) ? 0 : resourceInstanceId.hashCode());
+    result = prime * result + objectInstanceId;
+    result = prime * result + resourceId;
+    result = prime * result + resourceInstanceId;
     return result;
   }
 
@@ -262,35 +391,9 @@ public class LwM2mPath {
       return false;
     }
     LwM2mPath other = (LwM2mPath) obj;
-    if (objectId == null) {
-      if (other.objectId != null) {
-        return false;
-      }
-    } else if (!objectId.equals(other.objectId)) {
-      return false;
-    }
-    if (objectInstanceId == null) {
-      if (other.objectInstanceId != null) {
-        return false;
-      }
-    } else if (!objectInstanceId.equals(other.objectInstanceId)) {
-      return false;
-    }
-    if (resourceId == null) {
-      if (other.resourceId != null) {
-        return false;
-      }
-    } else if (!resourceId.equals(other.resourceId)) {
-      return false;
-    }
-    if (resourceInstanceId == null) {
-      if (other.resourceInstanceId != null) {
-        return false;
-      }
-    } else if (!resourceInstanceId.equals(other.resourceInstanceId)) {
-      return false;
-    }
-    return true;
+    return length == other.length && objectId == other.objectId
+        && objectInstanceId == other.objectInstanceId && resourceId == other.resourceId
+        && resourceInstanceId == other.resourceInstanceId;
   }
 
 }
\ No newline at end of file
@@ -17,7 +17,6 @@ package org.eclipse.leshan.core.node.codec.json;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -40,13 +39,18 @@ import org.eclipse.leshan.core.node.LwM2mSingleResource;
 import org.eclipse.leshan.core.node.TimestampedLwM2mNode;
 import org.eclipse.leshan.core.node.codec.CodecException;
 import org.eclipse.leshan.json.JsonArrayEntry;
-import org.eclipse.leshan.json.JsonRootObject;
-import org.eclipse.leshan.json.LwM2mJson;
 import org.eclipse.leshan.json.LwM2mJsonException;
+import org.eclipse.leshan.json.LwM2mJsonReader;
 import org.eclipse.leshan.util.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * JSON decoder for {@link LwM2mNode}.
+ * <p>
+ * The content is read with a {@link LwM2mJsonReader} and each entry is decoded into its resource
+ * as soon as it is read, without building intermediate {@code JsonArrayEntry}.
+ */
 public class LwM2mNodeJsonDecoder {
 
   private static final Logger LOG = LoggerFactory.getLogger(LwM2mNodeJsonDecoder.class);
@@ -55,67 +59,58 @@ public class LwM2mNodeJsonDecoder {
   public static <T extends LwM2mNode> T decode(byte[] content, LwM2mPath path, LwM2mModel model,
       Class<T> nodeClass)
       throws CodecException {
-    try {
-      String jsonStrValue = content != null ? new String(content) : "";
-      JsonRootObject json = LwM2mJson.fromJsonLwM2m(jsonStrValue);
-      List<TimestampedLwM2mNode> timestampedNodes = parseJSON(json, path, model, nodeClass);
-      if (timestampedNodes.size() == 0) {
-        return null;
-      } else {
-        // return the most recent value
-        return (T) timestampedNodes.get(0).getNode();
-      }
-    } catch (LwM2mJsonException e) {
-      throw new CodecException(e, "Unable to deserialize json [path:%s]", path);
+    List<TimestampedLwM2mNode> timestampedNodes = decodeTimestamped(
+        content != null ? content : new byte[0], path, model, nodeClass);
+    if (timestampedNodes.size() == 0) {
+      return null;
+    } else {
+      // return the most recent value
+      return (T) timestampedNodes.get(0).getNode();
     }
   }
 
   public static List<TimestampedLwM2mNode> decodeTimestamped(byte[] content, LwM2mPath path,
       LwM2mModel model,
       Class<? extends LwM2mNode> nodeClass) throws CodecException {
+    LOG.trace("Parsing JSON content for path {}", path);
+
+    EntryHandler handler = new EntryHandler(path, model);
     try {
-      String jsonStrValue = new String(content);
-      JsonRootObject json = LwM2mJson.fromJsonLwM2m(jsonStrValue);
-      return parseJSON(json, path, model, nodeClass);
+      LwM2mJsonReader.read(content, handler);
     } catch (LwM2mJsonException e) {
       throw new CodecException(e, "Unable to deserialize json [path:%s]", path);
     }
+    return buildNodes(handler, path, model, nodeClass);
   }
 
-  private static List<TimestampedLwM2mNode> parseJSON(JsonRootObject jsonObject, LwM2mPath path,
+  private static List<TimestampedLwM2mNode> buildNodes(EntryHandler handler, LwM2mPath path,
       LwM2mModel model,
       Class<? extends LwM2mNode> nodeClass) throws CodecException {
+    LwM2mPath baseName = handler.baseName;
 
-    LOG.trace("Parsing JSON content for path {}: {}", path, jsonObject);
-
-    // Group JSON entry by time-stamp
-    Map<Long, Collection<JsonArrayEntry>> jsonEntryByTimestamp = groupJsonEntryByTimestamp(
-        jsonObject);
-
-    // Extract baseName
-    LwM2mPath baseName = extractAndValidateBaseName(jsonObject, path);
-    if (baseName == null) {
-      baseName = path; // if no base name, use request path as base name
+    // Ensure there is at least one entry for null timestamp
+    if (handler.entriesByTimestamp.isEmpty()) {
+      handler.entriesByTimestamp.put((Long) null, new HashMap<Integer, InstanceEntries>());
     }
 
     // fill time-stamped nodes collection
     List<TimestampedLwM2mNode> timestampedNodes = new ArrayList<>();
-    for (Entry<Long, Collection<JsonArrayEntry>> entryByTimestamp : jsonEntryByTimestamp
+    for (Entry<Long, Map<Integer, InstanceEntries>> entryByTimestamp : handler.entriesByTimestamp
         .entrySet()) {
 
-      // Group JSON entry by instance
-      Map<Integer, Collection<JsonArrayEntry>> jsonEntryByInstanceId = groupJsonEntryByInstanceId(
-          entryByTimestamp.getValue(), baseName);
+      // Create an entry for an empty instance if possible
+      Map<Integer, InstanceEntries> entriesByInstanceId = entryByTimestamp.getValue();
+      if (entriesByInstanceId.isEmpty() && baseName.getObjectInstanceId() != null) {
+        entriesByInstanceId.put(baseName.getObjectInstanceId(), new InstanceEntries());
+      }
 
       // Create lwm2m node
       LwM2mNode node;
       if (nodeClass == LwM2mObject.class) {
         Collection<LwM2mObjectInstance> instances = new ArrayList<>();
-        for (Entry<Integer, Collection<JsonArrayEntry>> entryByInstanceId : jsonEntryByInstanceId
-            .entrySet()) {
+        for (Entry<Integer, InstanceEntries> entryByInstanceId : entriesByInstanceId.entrySet()) {
           Map<Integer, LwM2mResource> resourcesMap = extractLwM2mResources(
-              entryByInstanceId.getValue(),
-              baseName, model);
+              entryByInstanceId.getValue(), baseName, model);
 
           instances.add(new LwM2mObjectInstance(entryByInstanceId.getKey(), resourcesMap.values()));
         }
@@ -123,29 +118,29 @@ public class LwM2mNodeJsonDecoder {
         node = new LwM2mObject(baseName.getObjectId(), instances);
       } else if (nodeClass == LwM2mObjectInstance.class) {
         // validate we have resources for only 1 instance
-        if (jsonEntryByInstanceId.size() != 1) {
+        if (entriesByInstanceId.size() != 1) {
           throw new CodecException("One instance expected in the payload [path:%s]", path);
         }
 
         // Extract resources
-        Entry<Integer, Collection<JsonArrayEntry>> instanceEntry = jsonEntryByInstanceId.entrySet()
-            .iterator()
+        Entry<Integer, InstanceEntries> instanceEntry = entriesByInstanceId.entrySet().iterator()
             .next();
         Map<Integer, LwM2mResource> resourcesMap = extractLwM2mResources(instanceEntry.getValue(),
-            baseName,
-            model);
+            baseName, model);
 
         // Create instance
         node = new LwM2mObjectInstance(instanceEntry.getKey(), resourcesMap.values());
       } else if (nodeClass == LwM2mResource.class) {
         // validate we have resources for only 1 instance
-        if (jsonEntryByInstanceId.size() > 1) {
+        if (entriesByInstanceId.size() > 1) {
           throw new CodecException("Only one instance expected in the payload [path:%s]", path);
         }
 
         // Extract resources
-        Map<Integer, LwM2mResource> resourcesMap = extractLwM2mResources(
-            jsonEntryByInstanceId.values().iterator().next(), baseName, model);
+        InstanceEntries instanceEntries = entriesByInstanceId.isEmpty() ? new InstanceEntries()
+            : entriesByInstanceId.values().iterator().next();
+        Map<Integer, LwM2mResource> resourcesMap = extractLwM2mResources(instanceEntries,
+            baseName, model);
 
         // validate there is only 1 resource
         if (resourcesMap.size() != 1) {
@@ -158,14 +153,13 @@ public class LwM2mNodeJsonDecoder {
       }
 
       // compute time-stamp
-      Long timestamp = computeTimestamp(jsonObject.getBaseTime(), entryByTimestamp.getKey());
+      Long timestamp = computeTimestamp(handler.baseTime, entryByTimestamp.getKey());
 
       // add time-stamped node
       timestampedNodes.add(new TimestampedLwM2mNode(timestamp, node));
     }
 
     return timestampedNodes;
-
   }
 
   private static Long computeTimestamp(Long baseTime, Long time) {
@@ -187,57 +181,68 @@ public class LwM2mNodeJsonDecoder {
   }
 
   /**
-   * Group all JsonArrayEntry by time-stamp
-   *
-   * @return a map (relativeTimestamp => collection of JsonArrayEntry)
+   * The resources of an object instance at a given time.
    */
-  private static SortedMap<Long, Collection<JsonArrayEntry>> groupJsonEntryByTimestamp(
-      JsonRootObject jsonObject) {
-    SortedMap<Long, Collection<JsonArrayEntry>> result = new TreeMap<>(new Comparator<Long>() {
-      @Override
-      public int compare(Long o1, Long o2) {
-        // comparator which
-        // - supports null (time null means 0 if there is a base time)
-        // - reverses natural order (most recent value in first)
-        return Long.compare(o2 == null ? 0 : o2, o1 == null ? 0 : o1);
-      }
-    });
-
-    for (JsonArrayEntry e : jsonObject.getResourceList()) {
-      // Get time for this entry
-      Long time = e.getTime();
-
-      // Get jsonArray for this time-stamp
-      Collection<JsonArrayEntry> jsonArray = result.get(time);
-      if (jsonArray == null) {
-        jsonArray = new ArrayList<>();
-        result.put(time, jsonArray);
-      }
+  private static class InstanceEntries {
+    private final Map<Integer, LwM2mResource> singleResources = new HashMap<>();
+    private final Map<Integer, MultipleResourceEntries> multipleResources = new HashMap<>();
+  }
 
-      // Add it to the list
-      jsonArray.add(e);
-    }
+  private static class MultipleResourceEntries {
+    private final Type type;
+    private final Map<Integer, Object> values = new HashMap<>();
 
-    // Ensure there is at least one entry for null timestamp
-    if (result.isEmpty()) {
-      result.put((Long) null, new ArrayList<JsonArrayEntry>());
+    private MultipleResourceEntries(Type type) {
+      this.type = type;
     }
-
-    return result;
   }
 
   /**
-   * Group all JsonArrayEntry by instanceId
-   *
-   * @return a map (instanceId => collection of JsonArrayEntry)
+   * Groups the entries by time-stamp and instance and decodes their values as they are read.
    */
-  private static Map<Integer, Collection<JsonArrayEntry>> groupJsonEntryByInstanceId(
-      Collection<JsonArrayEntry> jsonEntries, LwM2mPath baseName) throws CodecException {
-    Map<Integer, Collection<JsonArrayEntry>> result = new HashMap<>();
+  private static class EntryHandler implements LwM2mJsonReader.Handler {
+
+    private final LwM2mPath requestPath;
+    private final LwM2mModel model;
+
+    // if no base name, use request path as base name
+    private LwM2mPath baseName;
+    private Long baseTime;
+
+    // relativeTimestamp => instanceId => resources
+    private final SortedMap<Long, Map<Integer, InstanceEntries>> entriesByTimestamp = new TreeMap<>(
+        new Comparator<Long>() {
+          @Override
+          public int compare(Long o1, Long o2) {
+            // comparator which
+            // - supports null (time null means 0 if there is a base time)
+            // - reverses natural order (most recent value in first)
+            return Long.compare(o2 == null ? 0 : o2, o1 == null ? 0 : o1);
+          }
+        });
+
+    private EntryHandler(LwM2mPath requestPath, LwM2mModel model) {
+      this.requestPath = requestPath;
+      this.model = model;
+      this.baseName = requestPath;
+    }
+
+    @Override
+    public void onBaseName(String bn) {
+      if (!bn.isEmpty()) {
+        baseName = validateBaseName(new LwM2mPath(bn), requestPath);
+      }
+    }
+
+    @Override
+    public void onBaseTime(long bt) {
+      baseTime = bt;
+    }
 
-    for (JsonArrayEntry e : jsonEntries) {
+    @Override
+    public void onEntry(String name, Long time, Type type, Object value) {
       // Build resource path
-      LwM2mPath nodePath = baseName.append(e.getName());
+      LwM2mPath nodePath = baseName.append(name);
 
       // Validate path
       if (!nodePath.isResourceInstance() && !nodePath.isResource()) {
@@ -246,136 +251,96 @@ public class LwM2mNodeJsonDecoder {
             nodePath);
       }
 
-      // Get jsonArray for this instance
-      Collection<JsonArrayEntry> jsonArray = result.get(nodePath.getObjectInstanceId());
-      if (jsonArray == null) {
-        jsonArray = new ArrayList<>();
-        result.put(nodePath.getObjectInstanceId(), jsonArray);
+      // Get resources for this time-stamp and instance
+      Map<Integer, InstanceEntries> entriesByInstanceId = entriesByTimestamp.get(time);
+      if (entriesByInstanceId == null) {
+        entriesByInstanceId = new HashMap<>();
+        entriesByTimestamp.put(time, entriesByInstanceId);
       }
-
-      // Add it to the list
-      jsonArray.add(e);
-    }
-
-    // Create an entry for an empty instance if possible
-    if (result.isEmpty() && baseName.getObjectInstanceId() != null) {
-      result.put(baseName.getObjectInstanceId(), new ArrayList<JsonArrayEntry>());
-    }
-    return result;
-  }
-
-  private static LwM2mPath extractAndValidateBaseName(JsonRootObject jsonObject,
-      LwM2mPath requestPath)
-      throws CodecException {
-    // Check baseName is valid
-    if (jsonObject.getBaseName() != null && !jsonObject.getBaseName().isEmpty()) {
-      LwM2mPath bnPath = new LwM2mPath(jsonObject.getBaseName());
-
-      // check returned base name path is under requested path
-      if (requestPath.getObjectId() != null && bnPath.getObjectId() != null) {
-        if (!bnPath.getObjectId().equals(requestPath.getObjectId())) {
-          throw new CodecException("Basename path [%s] does not match requested path [%s].", bnPath,
-              requestPath);
-        }
-        if (requestPath.getObjectInstanceId() != null && bnPath.getObjectInstanceId() != null) {
-          if (!bnPath.getObjectInstanceId().equals(requestPath.getObjectInstanceId())) {
-            throw new CodecException("Basename path [%s] does not match requested path [%s].",
-                bnPath,
-                requestPath);
-          }
-          if (requestPath.getResourceId() != null && bnPath.getResourceId() != null) {
-            if (!bnPath.getResourceId().equals(requestPath.getResourceId())) {
-              throw new CodecException("Basename path [%s] does not match requested path [%s].",
-                  bnPath,
-                  requestPath);
-            }
-          }
-        }
+      InstanceEntries instance = entriesByInstanceId.get(nodePath.getObjectInstanceId());
+      if (instance == null) {
+        instance = new InstanceEntries();
+        entriesByInstanceId.put(nodePath.getObjectInstanceId(), instance);
       }
-      return bnPath;
-    }
-    return null;
-
-  }
-
-  private static Map<Integer, LwM2mResource> extractLwM2mResources(
-      Collection<JsonArrayEntry> jsonArrayEntries,
-      LwM2mPath baseName, LwM2mModel model) throws CodecException {
-    if (jsonArrayEntries == null) {
-      return Collections.emptyMap();
-    }
-
-    // Extract LWM2M resources from JSON resource list
-    Map<Integer, LwM2mResource> lwM2mResourceMap = new HashMap<>();
-    Map<LwM2mPath, Map<Integer, JsonArrayEntry>> multiResourceMap = new HashMap<>();
-    for (JsonArrayEntry resourceElt : jsonArrayEntries) {
-
-      // Build resource path
-      LwM2mPath nodePath = baseName.append(resourceElt.getName());
 
       // handle LWM2M resources
       if (nodePath.isResourceInstance()) {
         // Multi-instance resource
-        // Store multi-instance resource values in a map
-        // we will deal with it later
+        // its type is given by the first instance
         LwM2mPath resourcePath = new LwM2mPath(nodePath.getObjectId(),
-            nodePath.getObjectInstanceId(),
-            nodePath.getResourceId());
-        Map<Integer, JsonArrayEntry> multiResource = multiResourceMap.get(resourcePath);
+            nodePath.getObjectInstanceId(), nodePath.getResourceId());
+        MultipleResourceEntries multiResource = instance.multipleResources
+            .get(nodePath.getResourceId());
         if (multiResource == null) {
-          multiResource = new HashMap<>();
-          multiResourceMap.put(resourcePath, multiResource);
+          multiResource = new MultipleResourceEntries(
+              getResourceType(resourcePath, model, type));
+          instance.multipleResources.put(nodePath.getResourceId(), multiResource);
         }
-        JsonArrayEntry previousResInstance = multiResource
-            .put(nodePath.getResourceInstanceId(), resourceElt);
+        Object resourceInstance = parseJsonValue(value, multiResource.type, resourcePath);
+        Object previousResInstance = multiResource.values
+            .put(nodePath.getResourceInstanceId(), resourceInstance);
         if (previousResInstance != null) {
           throw new CodecException(
               "2 RESOURCE_INSTANCE nodes (%s,%s) with the same identifier %d for path %s",
-              previousResInstance, resourceElt, nodePath.getResourceInstanceId(), nodePath);
+              previousResInstance, resourceInstance, nodePath.getResourceInstanceId(), nodePath);
         }
-      } else if (nodePath.isResource()) {
+      } else {
         // Single resource
-        Type expectedType = getResourceType(nodePath, model, resourceElt);
+        Type expectedType = getResourceType(nodePath, model, type);
         LwM2mResource res = LwM2mSingleResource.newResource(nodePath.getResourceId(),
-            parseJsonValue(resourceElt.getResourceValue(), expectedType, nodePath), expectedType);
-        LwM2mResource previousRes = lwM2mResourceMap.put(nodePath.getResourceId(), res);
+            parseJsonValue(value, expectedType, nodePath), expectedType);
+        LwM2mResource previousRes = instance.singleResources.put(nodePath.getResourceId(), res);
         if (previousRes != null) {
           throw new CodecException(
               "2 RESOURCE nodes (%s,%s) with the same identifier %d for path %s",
               previousRes, res, res.getId(), nodePath);
         }
-      } else {
-        throw new CodecException(
-            "Invalid path [%s] for resource, it should be a resource or a resource instance path",
-            nodePath);
       }
     }
+  }
 
-    // Handle multi-instance resource.
-    for (Map.Entry<LwM2mPath, Map<Integer, JsonArrayEntry>> entry : multiResourceMap.entrySet()) {
-      LwM2mPath resourcePath = entry.getKey();
-      Map<Integer, JsonArrayEntry> jsonEntries = entry.getValue();
-
-      if (jsonEntries != null && !jsonEntries.isEmpty()) {
-        Type expectedType = getResourceType(resourcePath, model,
-            jsonEntries.values().iterator().next());
-        Map<Integer, Object> values = new HashMap<>();
-        for (Entry<Integer, JsonArrayEntry> e : jsonEntries.entrySet()) {
-          Integer resourceInstanceId = e.getKey();
-          values.put(resourceInstanceId,
-              parseJsonValue(e.getValue().getResourceValue(), expectedType, resourcePath));
+  private static LwM2mPath validateBaseName(LwM2mPath bnPath, LwM2mPath requestPath)
+      throws CodecException {
+    // check returned base name path is under requested path
+    if (requestPath.getObjectId() != null && bnPath.getObjectId() != null) {
+      if (!bnPath.getObjectId().equals(requestPath.getObjectId())) {
+        throw new CodecException("Basename path [%s] does not match requested path [%s].", bnPath,
+            requestPath);
+      }
+      if (requestPath.getObjectInstanceId() != null && bnPath.getObjectInstanceId() != null) {
+        if (!bnPath.getObjectInstanceId().equals(requestPath.getObjectInstanceId())) {
+          throw new CodecException("Basename path [%s] does not match requested path [%s].",
+              bnPath,
+              requestPath);
         }
-        LwM2mResource resource = LwM2mMultipleResource
-            .newResource(resourcePath.getResourceId(), values,
-                expectedType);
-        LwM2mResource previousRes = lwM2mResourceMap.put(resourcePath.getResourceId(), resource);
-        if (previousRes != null) {
-          throw new CodecException(
-              "2 RESOURCE nodes (%s,%s) with the same identifier %d for path %s",
-              previousRes, resource, resource.getId(), resourcePath);
+        if (requestPath.getResourceId() != null && bnPath.getResourceId() != null) {
+          if (!bnPath.getResourceId().equals(requestPath.getResourceId())) {
+            throw new CodecException("Basename path [%s] does not match requested path [%s].",
+                bnPath,
+                requestPath);
+          }
         }
       }
     }
+    return bnPath;
+  }
+
+  private static Map<Integer, LwM2mResource> extractLwM2mResources(InstanceEntries entries,
+      LwM2mPath baseName, LwM2mModel model) throws CodecException {
+    Map<Integer, LwM2mResource> lwM2mResourceMap = entries.singleResources;
+
+    // Handle multi-instance resource.
+    for (Entry<Integer, MultipleResourceEntries> entry : entries.multipleResources.entrySet()) {
+      MultipleResourceEntries multiResource = entry.getValue();
+      LwM2mResource resource = LwM2mMultipleResource
+          .newResource(entry.getKey(), multiResource.values, multiResource.type);
+      LwM2mResource previousRes = lwM2mResourceMap.put(entry.getKey(), resource);
+      if (previousRes != null) {
+        throw new CodecException(
+            "2 RESOURCE nodes (%s,%s) with the same identifier %d for path %s",
+            previousRes, resource, resource.getId(), baseName);
+      }
+    }
 
     // If we found nothing, we try to create an empty multi-instance resource
     if (lwM2mResourceMap.isEmpty() && baseName.isResource()) {
@@ -383,7 +348,7 @@ public class LwM2mNodeJsonDecoder {
           .getResourceModel(baseName.getObjectId(), baseName.getResourceId());
       // We create it only if this respect the model
       if (resourceModel == null || resourceModel.multiple) {
-        Type resourceType = getResourceType(baseName, model, null);
+        Type resourceType = getResourceType(baseName, model, (Type) null);
         lwM2mResourceMap.put(baseName.getResourceId(), LwM2mMultipleResource
             .newResource(baseName.getResourceId(), new HashMap<Integer, Object>(), resourceType));
       }
@@ -426,6 +391,10 @@ public class LwM2mNodeJsonDecoder {
 
   public static Type getResourceType(LwM2mPath rscPath, LwM2mModel model,
       JsonArrayEntry resourceElt) {
+    return getResourceType(rscPath, model, resourceElt != null ? resourceElt.getType() : null);
+  }
+
+  private static Type getResourceType(LwM2mPath rscPath, LwM2mModel model, Type jsonType) {
     // Use model type in priority
     ResourceModel rscDesc = model.getResourceModel(rscPath.getObjectId(), rscPath.getResourceId());
     if (rscDesc != null && rscDesc.type != null) {
@@ -433,11 +402,8 @@ public class LwM2mNodeJsonDecoder {
     }
 
     // Then json type
-    if (resourceElt != null) {
-      Type type = resourceElt.getType();
-      if (type != null) {
-        return type;
-      }
+    if (jsonType != null) {
+      return jsonType;
     }
 
     // Else use String as default
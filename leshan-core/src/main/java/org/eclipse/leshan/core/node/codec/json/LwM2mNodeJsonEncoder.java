@@ -15,7 +15,6 @@
  *******************************************************************************/
 package org.eclipse.leshan.core.node.codec.json;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map.Entry;
@@ -32,14 +31,18 @@ import org.eclipse.leshan.core.node.LwM2mResource;
 import org.eclipse.leshan.core.node.TimestampedLwM2mNode;
 import org.eclipse.leshan.core.node.codec.CodecException;
 import org.eclipse.leshan.core.node.codec.LwM2mValueConverter;
-import org.eclipse.leshan.json.JsonArrayEntry;
-import org.eclipse.leshan.json.JsonRootObject;
-import org.eclipse.leshan.json.LwM2mJson;
+import org.eclipse.leshan.json.LwM2mJsonWriter;
 import org.eclipse.leshan.util.Base64;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * JSON encoder for {@link LwM2mNode}.
+ * <p>
+ * Entries are written directly with a {@link LwM2mJsonWriter}, without building intermediate
+ * {@code JsonArrayEntry}.
+ */
 public class LwM2mNodeJsonEncoder {
 
   private static final Logger LOG = LoggerFactory.getLogger(LwM2mNodeJsonEncoder.class);
@@ -56,11 +59,9 @@ public class LwM2mNodeJsonEncoder {
     internalEncoder.model = model;
     internalEncoder.requestPath = path;
     internalEncoder.converter = converter;
+    internalEncoder.out = new LwM2mJsonWriter(path.toString());
     node.accept(internalEncoder);
-    JsonRootObject jsonObject = new JsonRootObject();
-    jsonObject.setResourceList(internalEncoder.resourceList);
-    jsonObject.setBaseName(path.toString());
-    return LwM2mJson.toJsonLwM2m(jsonObject).getBytes();
+    return internalEncoder.out.end(null).toByteArray();
   }
 
   public static byte[] encodeTimestampedData(List<TimestampedLwM2mNode> timestampedNodes,
@@ -71,21 +72,16 @@ public class LwM2mNodeJsonEncoder {
     Validate.notNull(model);
 
     InternalEncoder internalEncoder = new InternalEncoder();
-    ArrayList<JsonArrayEntry> entries = new ArrayList<>();
+    internalEncoder.objectId = path.getObjectId();
+    internalEncoder.model = model;
+    internalEncoder.requestPath = path;
+    internalEncoder.converter = converter;
+    internalEncoder.out = new LwM2mJsonWriter(path.toString());
     for (TimestampedLwM2mNode timestampedLwM2mNode : timestampedNodes) {
-      internalEncoder.objectId = path.getObjectId();
-      internalEncoder.model = model;
-      internalEncoder.requestPath = path;
-      internalEncoder.converter = converter;
-      internalEncoder.resourceList = null;
       internalEncoder.timestamp = timestampedLwM2mNode.getTimestamp();
       timestampedLwM2mNode.getNode().accept(internalEncoder);
-      entries.addAll(internalEncoder.resourceList);
     }
-    JsonRootObject jsonObject = new JsonRootObject();
-    jsonObject.setResourceList(entries);
-    jsonObject.setBaseName(path.toString());
-    return LwM2mJson.toJsonLwM2m(jsonObject).getBytes();
+    return internalEncoder.out.end(null).toByteArray();
   }
 
   private static class InternalEncoder implements LwM2mNodeVisitor {
@@ -98,7 +94,7 @@ public class LwM2mNodeJsonEncoder {
     private LwM2mValueConverter converter;
 
     // visitor output
-    private ArrayList<JsonArrayEntry> resourceList = null;
+    private LwM2mJsonWriter out;
 
     @Override
     public void visit(LwM2mObject object) {
@@ -109,12 +105,9 @@ public class LwM2mNodeJsonEncoder {
       }
 
       // Create resources
-      resourceList = new ArrayList<>();
       for (LwM2mObjectInstance instance : object.getInstances().values()) {
         for (LwM2mResource resource : instance.getResources().values()) {
-          String prefixPath =
-              Integer.toString(instance.getId()) + "/" + Integer.toString(resource.getId());
-          resourceList.addAll(lwM2mResourceToJsonArrayEntry(prefixPath, timestamp, resource));
+          writeResource(true, instance.getId(), true, resource);
         }
       }
     }
@@ -122,20 +115,19 @@ public class LwM2mNodeJsonEncoder {
     @Override
     public void visit(LwM2mObjectInstance instance) {
       LOG.trace("Encoding object instance {} into JSON", instance);
-      resourceList = new ArrayList<>();
       for (LwM2mResource resource : instance.getResources().values()) {
         // Validate request path & compute resource path
-        String prefixPath;
+        boolean withInstanceId;
         if (requestPath.isObject()) {
-          prefixPath = instance.getId() + "/" + resource.getId();
+          withInstanceId = true;
         } else if (requestPath.isObjectInstance()) {
-          prefixPath = Integer.toString(resource.getId());
+          withInstanceId = false;
         } else {
           throw new CodecException("Invalid request path %s for JSON instance encoding",
               requestPath);
         }
         // Create resources
-        resourceList.addAll(lwM2mResourceToJsonArrayEntry(prefixPath, timestamp, resource));
+        writeResource(withInstanceId, instance.getId(), true, resource);
       }
     }
 
@@ -146,84 +138,78 @@ public class LwM2mNodeJsonEncoder {
         throw new CodecException("Invalid request path %s for JSON resource encoding", requestPath);
       }
 
-      resourceList = lwM2mResourceToJsonArrayEntry("", timestamp, resource);
+      writeResource(false, requestPath.getObjectInstanceId(), false, resource);
     }
 
-    private ArrayList<JsonArrayEntry> lwM2mResourceToJsonArrayEntry(String resourcePath,
-        Long timestamp,
+    /**
+     * Writes the entries of a resource, their names start with the instance id and/or the resource
+     * id if requested.
+     */
+    private void writeResource(boolean withInstanceId, int instanceId, boolean withResourceId,
         LwM2mResource resource) {
       // get type for this resource
       ResourceModel rSpec = model.getResourceModel(objectId, resource.getId());
       Type expectedType = rSpec != null ? rSpec.type : resource.getType();
-      ArrayList<JsonArrayEntry> resourcesList = new ArrayList<>();
 
       // create JSON resource element
       if (resource.isMultiInstances()) {
         for (Entry<Integer, ?> entry : resource.getValues().entrySet()) {
-          // compute resource instance path
-          String resourceInstancePath;
-          if (resourcePath == null || resourcePath.isEmpty()) {
-            resourceInstancePath = Integer.toString(entry.getKey());
-          } else {
-            resourceInstancePath = resourcePath + "/" + entry.getKey();
-          }
-
-          // Create resource element
-          JsonArrayEntry jsonResourceElt = new JsonArrayEntry();
-          jsonResourceElt.setName(resourceInstancePath);
-          jsonResourceElt.setTime(timestamp);
-
           // Convert value using expected type
-          LwM2mPath lwM2mResourceInstancePath = new LwM2mPath(resourceInstancePath);
+          LwM2mPath resourceInstancePath = new LwM2mPath(objectId, instanceId, resource.getId(),
+              entry.getKey());
           Object convertedValue = converter
               .convertValue(entry.getValue(), resource.getType(), expectedType,
-                  lwM2mResourceInstancePath);
-          this.setResourceValue(convertedValue, expectedType, jsonResourceElt,
-              lwM2mResourceInstancePath);
+                  resourceInstancePath);
 
-          // Add it to the List
-          resourcesList.add(jsonResourceElt);
+          beginEntry(withInstanceId, instanceId, withResourceId, resource.getId());
+          out.appendName(entry.getKey());
+          this.writeResourceValue(convertedValue, expectedType, resourceInstancePath);
+          out.endEntry(timestamp);
         }
       } else {
-        // Create resource element
-        JsonArrayEntry jsonResourceElt = new JsonArrayEntry();
-        jsonResourceElt.setName(resourcePath);
-        jsonResourceElt.setTime(timestamp);
-
         // Convert value using expected type
-        LwM2mPath lwM2mResourcePath = new LwM2mPath(resourcePath);
-        this.setResourceValue(
-            converter.convertValue(resource.getValue(), resource.getType(), expectedType,
-                lwM2mResourcePath), expectedType, jsonResourceElt, lwM2mResourcePath);
+        LwM2mPath resourcePath = new LwM2mPath(objectId, instanceId, resource.getId());
+        Object convertedValue = converter
+            .convertValue(resource.getValue(), resource.getType(), expectedType, resourcePath);
 
-        // Add it to the List
-        resourcesList.add(jsonResourceElt);
+        beginEntry(withInstanceId, instanceId, withResourceId, resource.getId());
+        this.writeResourceValue(convertedValue, expectedType, resourcePath);
+        out.endEntry(timestamp);
+      }
+    }
+
+    private void beginEntry(boolean withInstanceId, int instanceId, boolean withResourceId,
+        int resourceId) {
+      out.beginEntry();
+      if (withInstanceId) {
+        out.appendName(instanceId);
+      }
+      if (withResourceId) {
+        out.appendName(resourceId);
       }
-      return resourcesList;
     }
 
-    private void setResourceValue(Object value, Type type, JsonArrayEntry jsonResource,
-        LwM2mPath resourcePath) {
+    private void writeResourceValue(Object value, Type type, LwM2mPath resourcePath) {
       LOG.trace("Encoding value {} in JSON", value);
       // Following table 20 in the Specs
       switch (type) {
         case STRING:
-          jsonResource.setStringValue((String) value);
+          out.stringValue((String) value);
           break;
         case INTEGER:
         case FLOAT:
-          jsonResource.setFloatValue((Number) value);
+          out.floatValue(((Number) value).doubleValue());
           break;
         case BOOLEAN:
-          jsonResource.setBooleanValue((Boolean) value);
+          out.booleanValue((Boolean) value);
           break;
         case TIME:
           // Specs device object example page 44, rec 13 is Time
           // represented as float?
-          jsonResource.setFloatValue((((Date) value).getTime() / 1000L));
+          out.floatValue(((Date) value).getTime() / 1000L);
           break;
         case OPAQUE:
-          jsonResource.setStringValue(Base64.encodeBase64String((byte[]) value));
+          out.stringValue(Base64.encodeBase64String((byte[]) value));
           break;
         default:
           throw new CodecException("Invalid value type %s for %s", type, resourcePath);
@@ -31,14 +31,19 @@ import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.LwM2mResource;
 import org.eclipse.leshan.core.node.LwM2mSingleResource;
 import org.eclipse.leshan.core.node.codec.CodecException;
-import org.eclipse.leshan.tlv.Tlv;
 import org.eclipse.leshan.tlv.Tlv.TlvType;
-import org.eclipse.leshan.tlv.TlvDecoder;
 import org.eclipse.leshan.tlv.TlvException;
+import org.eclipse.leshan.tlv.TlvReader;
 import org.eclipse.leshan.util.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * TLV decoder for {@link LwM2mNode}.
+ * <p>
+ * The content is read in place with a {@link TlvReader}, values are decoded directly into the
+ * resulting nodes without building intermediate {@code Tlv}.
+ */
 public class LwM2mNodeTlvDecoder {
 
   private static final Logger LOG = LoggerFactory.getLogger(LwM2mNodeTlvDecoder.class);
@@ -47,27 +52,29 @@ public class LwM2mNodeTlvDecoder {
       Class<T> nodeClass)
       throws CodecException {
     try {
-      Tlv[] tlvs = TlvDecoder.decode(ByteBuffer.wrap(content != null ? content : new byte[0]));
-      return parseTlv(tlvs, path, model, nodeClass);
+      TlvReader reader = new TlvReader(
+          ByteBuffer.wrap(content != null ? content : new byte[0]));
+      return parseTlv(reader, path, model, nodeClass);
     } catch (TlvException e) {
       throw new CodecException(String.format("Unable to decode tlv for path [%s]", path), e);
     }
   }
 
   @SuppressWarnings("unchecked")
-  private static <T extends LwM2mNode> T parseTlv(Tlv[] tlvs, LwM2mPath path, LwM2mModel model,
-      Class<T> nodeClass)
-      throws CodecException {
-    LOG.trace("Parsing TLV content for path {}: {}", path, tlvs);
+  private static <T extends LwM2mNode> T parseTlv(TlvReader tlvs, LwM2mPath path,
+      LwM2mModel model, Class<T> nodeClass)
+      throws CodecException, TlvException {
+    LOG.trace("Parsing TLV content for path {}", path);
 
     // Object
     if (nodeClass == LwM2mObject.class) {
-      Map<Integer, LwM2mObjectInstance> instances = new HashMap<>(tlvs.length);
+      Map<Integer, LwM2mObjectInstance> instances = new HashMap<>();
 
       // is it an array of TLV resources?
-      if (tlvs.length > 0 && //
-          (tlvs[0].getType() == TlvType.MULTIPLE_RESOURCE
-              || tlvs[0].getType() == TlvType.RESOURCE_VALUE)) {
+      if (tlvs.next() && //
+          (tlvs.getType() == TlvType.MULTIPLE_RESOURCE
+              || tlvs.getType() == TlvType.RESOURCE_VALUE)) {
+        tlvs.rewind();
 
         ObjectModel oModel = model.getObjectModel(path.getObjectId());
         if (oModel == null) {
@@ -84,15 +91,16 @@ public class LwM2mNodeTlvDecoder {
         }
 
       } else {
-        for (Tlv tlv : tlvs) {
-          if (tlv.getType() != TlvType.OBJECT_INSTANCE) {
+        tlvs.rewind();
+        while (tlvs.next()) {
+          if (tlvs.getType() != TlvType.OBJECT_INSTANCE) {
             throw new CodecException("Expected TLV of type OBJECT_INSTANCE but was %s  [path:%s]",
-                tlv.getType().name(), path);
+                tlvs.getType().name(), path);
           }
 
-          LwM2mObjectInstance objectInstance = parseObjectInstanceTlv(tlv.getChildren(),
+          LwM2mObjectInstance objectInstance = parseObjectInstanceTlv(tlvs.children(),
               path.getObjectId(),
-              tlv.getIdentifier(), model);
+              tlvs.getIdentifier(), model);
           LwM2mObjectInstance previousObjectInstance = instances
               .put(objectInstance.getId(), objectInstance);
           if (previousObjectInstance != null) {
@@ -108,19 +116,20 @@ public class LwM2mNodeTlvDecoder {
     // Object instance
     else if (nodeClass == LwM2mObjectInstance.class) {
 
-      if (tlvs.length == 1 && tlvs[0].getType() == TlvType.OBJECT_INSTANCE) {
-        if (path.isObjectInstance() && tlvs[0].getIdentifier() != path.getObjectInstanceId()) {
+      if (isSingleObjectInstance(tlvs)) {
+        if (path.isObjectInstance() && tlvs.getIdentifier() != path.getObjectInstanceId()) {
           throw new CodecException(
               "Id conflict between path [%s] and instance TLV [object instance id=%d]",
-              path, tlvs[0].getIdentifier());
+              path, tlvs.getIdentifier());
         }
         // object instance TLV
-        return (T) parseObjectInstanceTlv(tlvs[0].getChildren(), path.getObjectId(),
-            tlvs[0].getIdentifier(),
+        return (T) parseObjectInstanceTlv(tlvs.children(), path.getObjectId(),
+            tlvs.getIdentifier(),
             model);
       } else {
         // array of TLV resources
         // try to retrieve the instanceId from the path or the model
+        tlvs.rewind();
         Integer instanceId = path.getObjectInstanceId();
         if (instanceId == null) {
           // single instance object?
@@ -138,35 +147,39 @@ public class LwM2mNodeTlvDecoder {
     // Resource
     else if (nodeClass == LwM2mResource.class) {
       // The object instance level should not be here, but if it is provided and consistent we tolerate it
-      if (tlvs.length == 1 && tlvs[0].getType() == TlvType.OBJECT_INSTANCE) {
-        if (tlvs[0].getIdentifier() != path.getObjectInstanceId()) {
+      if (isSingleObjectInstance(tlvs)) {
+        if (tlvs.getIdentifier() != path.getObjectInstanceId()) {
           throw new CodecException(
               "Id conflict between path [%s] and instance TLV [object instance id=%d]",
-              path, tlvs[0].getIdentifier());
+              path, tlvs.getIdentifier());
         }
-        tlvs = tlvs[0].getChildren();
+        tlvs = tlvs.children();
+      } else {
+        tlvs.rewind();
       }
 
       ResourceModel resourceModel = model
           .getResourceModel(path.getObjectId(), path.getResourceId());
-      if (tlvs.length == 0 && resourceModel != null && !resourceModel.multiple) {
+      boolean empty = !tlvs.next();
+      if (empty && resourceModel != null && !resourceModel.multiple) {
         // If there is no TlV value and we know that this resource is a single resource we raise an exception
         // else we consider this is a multi-instance resource
         throw new CodecException("TLV payload is mandatory for single resource %s", path);
-      } else if (tlvs.length == 1 && tlvs[0].getType() != TlvType.RESOURCE_INSTANCE) {
-        Tlv tlv = tlvs[0];
-        if (tlv.getType() != TlvType.RESOURCE_VALUE && tlv.getType() != TlvType.MULTIPLE_RESOURCE) {
+      } else if (!empty && !tlvs.hasNext() && tlvs.getType() != TlvType.RESOURCE_INSTANCE) {
+        if (tlvs.getType() != TlvType.RESOURCE_VALUE
+            && tlvs.getType() != TlvType.MULTIPLE_RESOURCE) {
           throw new CodecException(
               "Expected TLV of type RESOURCE_VALUE or MUlTIPLE_RESOURCE but was %s [path:%s]",
-              tlv.getType().name(), path);
+              tlvs.getType().name(), path);
         }
-        if (path.isResource() && path.getResourceId() != tlv.getIdentifier()) {
+        if (path.isResource() && path.getResourceId() != tlvs.getIdentifier()) {
           throw new CodecException(
               "Id conflict between path [%s] and resource TLV [resource id=%s]", path,
-              tlv.getIdentifier());
+              tlvs.getIdentifier());
         }
-        return (T) parseResourceTlv(tlv, path, model);
+        return (T) parseResourceTlv(tlvs, path, model);
       } else {
+        tlvs.rewind();
         Type expectedRscType = getResourceType(path, model);
         return (T) LwM2mMultipleResource.newResource(path.getResourceId(),
             parseTlvValues(tlvs, expectedRscType, path), expectedRscType);
@@ -177,14 +190,19 @@ public class LwM2mNodeTlvDecoder {
 
   }
 
-  private static LwM2mObjectInstance parseObjectInstanceTlv(Tlv[] rscTlvs, int objectId,
+  // moves to the first TLV and returns true if it is the only one and is an object instance
+  private static boolean isSingleObjectInstance(TlvReader tlvs) throws TlvException {
+    return tlvs.next() && tlvs.getType() == TlvType.OBJECT_INSTANCE && !tlvs.hasNext();
+  }
+
+  private static LwM2mObjectInstance parseObjectInstanceTlv(TlvReader rscTlvs, int objectId,
       int instanceId,
-      LwM2mModel model) throws CodecException {
+      LwM2mModel model) throws CodecException, TlvException {
     // read resources
-    Map<Integer, LwM2mResource> resources = new HashMap<>(rscTlvs.length);
-    for (Tlv rscTlv : rscTlvs) {
-      LwM2mPath resourcePath = new LwM2mPath(objectId, instanceId, rscTlv.getIdentifier());
-      LwM2mResource resource = parseResourceTlv(rscTlv, resourcePath, model);
+    Map<Integer, LwM2mResource> resources = new HashMap<>();
+    while (rscTlvs.next()) {
+      LwM2mPath resourcePath = new LwM2mPath(objectId, instanceId, rscTlvs.getIdentifier());
+      LwM2mResource resource = parseResourceTlv(rscTlvs, resourcePath, model);
       LwM2mResource previousResource = resources.put(resource.getId(), resource);
       if (previousResource != null) {
         throw new CodecException("2 RESOURCE nodes (%s,%s) with the same identifier %d for path %s",
@@ -194,68 +212,70 @@ public class LwM2mNodeTlvDecoder {
     return new LwM2mObjectInstance(instanceId, resources.values());
   }
 
-  private static LwM2mResource parseResourceTlv(Tlv tlv, LwM2mPath resourcePath, LwM2mModel model)
-      throws CodecException {
+  private static LwM2mResource parseResourceTlv(TlvReader tlv, LwM2mPath resourcePath,
+      LwM2mModel model)
+      throws CodecException, TlvException {
     Type expectedType = getResourceType(resourcePath, model);
     Integer resourceId = tlv.getIdentifier();
     switch (tlv.getType()) {
       case MULTIPLE_RESOURCE:
         return LwM2mMultipleResource.newResource(resourceId,
-            parseTlvValues(tlv.getChildren(), expectedType, resourcePath), expectedType);
+            parseTlvValues(tlv.children(), expectedType, resourcePath), expectedType);
       case RESOURCE_VALUE:
         return LwM2mSingleResource.newResource(resourceId,
-            parseTlvValue(tlv.getValue(), expectedType, resourcePath), expectedType);
+            parseTlvValue(tlv, expectedType, resourcePath), expectedType);
       default:
         throw new CodecException("Invalid TLV type %s for resource %s", tlv.getType(),
             resourcePath);
     }
   }
 
-  private static Map<Integer, Object> parseTlvValues(Tlv[] tlvs, Type expectedType, LwM2mPath path)
-      throws CodecException {
+  private static Map<Integer, Object> parseTlvValues(TlvReader tlvs, Type expectedType,
+      LwM2mPath path)
+      throws CodecException, TlvException {
     Map<Integer, Object> values = new HashMap<>();
-    for (Tlv tlvChild : tlvs) {
-      if (tlvChild.getType() != TlvType.RESOURCE_INSTANCE) {
+    while (tlvs.next()) {
+      if (tlvs.getType() != TlvType.RESOURCE_INSTANCE) {
         throw new CodecException("Expected TLV of type RESOURCE_INSTANCE but was %s for path %s",
-            tlvChild.getType().name(), path);
+            tlvs.getType().name(), path);
       }
 
-      Object resourceInstance = parseTlvValue(tlvChild.getValue(), expectedType, path);
-      Object previousResourceInstance = values.put(tlvChild.getIdentifier(), resourceInstance);
+      Object resourceInstance = parseTlvValue(tlvs, expectedType, path);
+      Object previousResourceInstance = values.put(tlvs.getIdentifier(), resourceInstance);
       if (previousResourceInstance != null) {
         throw new CodecException(
             "2 RESOURCE_INSTANCE nodes (%s,%s) with the same identifier %d for path %s",
-            previousResourceInstance, resourceInstance, tlvChild.getIdentifier(), path);
+            previousResourceInstance, resourceInstance, tlvs.getIdentifier(), path);
       }
     }
     return values;
   }
 
-  private static Object parseTlvValue(byte[] value, Type expectedType, LwM2mPath path)
+  private static Object parseTlvValue(TlvReader tlv, Type expectedType, LwM2mPath path)
       throws CodecException {
     try {
-      LOG.trace("TLV value for path {} and expected type {}: {}", path, expectedType, value);
+      LOG.trace("TLV value for path {} and expected type {}", path, expectedType);
       switch (expectedType) {
         case STRING:
-          return TlvDecoder.decodeString(value);
+          return tlv.getString();
         case INTEGER:
-          return TlvDecoder.decodeInteger(value).longValue();
+          return tlv.getInteger();
         case FLOAT:
-          return TlvDecoder.decodeFloat(value).doubleValue();
+          return tlv.getFloat();
         case BOOLEAN:
-          return TlvDecoder.decodeBoolean(value);
+          return tlv.getBoolean();
         case TIME:
-          return TlvDecoder.decodeDate(value);
+          return tlv.getDate();
         case OPAQUE:
-          return value;
+          return tlv.getOpaque();
         case OBJLNK:
-          return TlvDecoder.decodeObjlnk(value);
+          return tlv.getObjlnk();
         default:
           throw new CodecException("Unsupported type %s for path %s", expectedType, path);
       }
     } catch (TlvException e) {
       throw new CodecException(e, "Invalid content [%s] for type %s for path %s",
-          Hex.encodeHexString(value),
+          Hex.encodeHexString(tlv.getOpaque()),
           expectedType, path);
     }
   }
@@ -15,8 +15,6 @@
  *******************************************************************************/
 package org.eclipse.leshan.core.node.codec.tlv;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map.Entry;
@@ -33,15 +31,15 @@ import org.eclipse.leshan.core.node.LwM2mResource;
 import org.eclipse.leshan.core.node.ObjectLink;
 import org.eclipse.leshan.core.node.codec.CodecException;
 import org.eclipse.leshan.core.node.codec.LwM2mValueConverter;
-import org.eclipse.leshan.tlv.Tlv;
-import org.eclipse.leshan.tlv.Tlv.TlvType;
-import org.eclipse.leshan.tlv.TlvEncoder;
+import org.eclipse.leshan.tlv.TlvWriter;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * TLV encoder for {@link LwM2mNode}.
+ * <p>
+ * Nodes are written directly with a {@link TlvWriter}, without building intermediate {@code Tlv}.
  */
 public class LwM2mNodeTlvEncoder {
 
@@ -70,28 +68,18 @@ public class LwM2mNodeTlvEncoder {
     private LwM2mValueConverter converter;
 
     // visitor output
-    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private TlvWriter out = new TlvWriter();
 
     @Override
     public void visit(LwM2mObject object) {
       LOG.trace("Encoding object {} into TLV", object);
 
-      Tlv[] tlvs;
-
       // encoded as an array of instances
-      tlvs = new Tlv[object.getInstances().size()];
-      int i = 0;
       for (Entry<Integer, LwM2mObjectInstance> instance : object.getInstances().entrySet()) {
-        Tlv[] resources = encodeResources(instance.getValue().getResources().values(),
+        out.beginObjectInstance(instance.getKey());
+        encodeResources(instance.getValue().getResources().values(),
             new LwM2mPath(object.getId(), instance.getKey()));
-        tlvs[i] = new Tlv(TlvType.OBJECT_INSTANCE, resources, null, instance.getKey());
-        i++;
-      }
-
-      try {
-        out.write(TlvEncoder.encode(tlvs).array());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+        out.end();
       }
     }
 
@@ -99,24 +87,18 @@ public class LwM2mNodeTlvEncoder {
     public void visit(LwM2mObjectInstance instance) {
       LOG.trace("Encoding object instance {} into TLV", instance);
 
-      Tlv[] tlvs;
       if (path.isObjectInstance() || instance.getId() == LwM2mObjectInstance.UNDEFINED) {
         // the instanceId is part of the request path or is undefined
         // so the instance TLV layer is not needed.
         // encoded as an array of resource TLVs
-        tlvs = encodeResources(instance.getResources().values(),
+        encodeResources(instance.getResources().values(),
             new LwM2mPath(path.getObjectId(), instance.getId()));
       } else {
         // encoded as an instance TLV
-        Tlv[] resources = encodeResources(instance.getResources().values(),
+        out.beginObjectInstance(instance.getId());
+        encodeResources(instance.getResources().values(),
             new LwM2mPath(path.getObjectId(), instance.getId()));
-        tlvs = new Tlv[]{new Tlv(TlvType.OBJECT_INSTANCE, resources, null, instance.getId())};
-      }
-
-      try {
-        out.write(TlvEncoder.encode(tlvs).array());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+        out.end();
       }
     }
 
@@ -124,72 +106,62 @@ public class LwM2mNodeTlvEncoder {
     public void visit(LwM2mResource resource) {
       LOG.trace("Encoding resource {} into TLV", resource);
 
-      Tlv rTlv = encodeResource(resource, path);
-
-      try {
-        out.write(TlvEncoder.encode(new Tlv[]{rTlv}).array());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      encodeResource(resource, path);
     }
 
-    private Tlv[] encodeResources(Collection<LwM2mResource> resources, LwM2mPath instancePath) {
-      Tlv[] rTlvs = new Tlv[resources.size()];
-      int i = 0;
+    private void encodeResources(Collection<LwM2mResource> resources, LwM2mPath instancePath) {
       for (LwM2mResource resource : resources) {
-        rTlvs[i] = encodeResource(resource, instancePath.append(resource.getId()));
-        i++;
+        encodeResource(resource, instancePath.append(resource.getId()));
       }
-      return rTlvs;
     }
 
-    private Tlv encodeResource(LwM2mResource resource, LwM2mPath resourcePath) {
+    private void encodeResource(LwM2mResource resource, LwM2mPath resourcePath) {
       ResourceModel rSpec = model.getResourceModel(path.getObjectId(), resource.getId());
       Type expectedType = rSpec != null ? rSpec.type : resource.getType();
 
-      Tlv rTlv;
       if (resource.isMultiInstances()) {
-        Tlv[] instances = new Tlv[resource.getValues().size()];
-        int i = 0;
+        out.beginMultipleResource(resource.getId());
         for (Entry<Integer, ?> entry : resource.getValues().entrySet()) {
           LwM2mPath resourceInstancePath = resourcePath.append(entry.getKey());
           Object convertedValue = converter
               .convertValue(entry.getValue(), resource.getType(), expectedType,
                   resourceInstancePath);
-          instances[i] = new Tlv(TlvType.RESOURCE_INSTANCE, null,
-              this.encodeTlvValue(convertedValue, expectedType, resourceInstancePath),
-              entry.getKey());
-          i++;
+          this.encodeTlvValue(entry.getKey(), convertedValue, expectedType, resourceInstancePath);
         }
-        rTlv = new Tlv(TlvType.MULTIPLE_RESOURCE, instances, null, resource.getId());
+        out.end();
       } else {
         Object convertedValue = converter
             .convertValue(resource.getValue(), resource.getType(), expectedType,
                 resourcePath);
-        rTlv = new Tlv(TlvType.RESOURCE_VALUE, null,
-            this.encodeTlvValue(convertedValue, expectedType, resourcePath), resource.getId());
+        this.encodeTlvValue(resource.getId(), convertedValue, expectedType, resourcePath);
       }
-      return rTlv;
     }
 
-    private byte[] encodeTlvValue(Object value, Type type, LwM2mPath path) {
+    private void encodeTlvValue(int id, Object value, Type type, LwM2mPath path) {
       LOG.trace("Encoding value {} in TLV", value);
       try {
         switch (type) {
           case STRING:
-            return TlvEncoder.encodeString((String) value);
+            out.writeString(id, (String) value);
+            break;
           case INTEGER:
-            return TlvEncoder.encodeInteger((Number) value);
+            out.writeInteger(id, ((Number) value).longValue());
+            break;
           case FLOAT:
-            return TlvEncoder.encodeFloat((Number) value);
+            out.writeFloat(id, (Number) value);
+            break;
           case BOOLEAN:
-            return TlvEncoder.encodeBoolean((Boolean) value);
+            out.writeBoolean(id, (Boolean) value);
+            break;
           case TIME:
-            return TlvEncoder.encodeDate((Date) value);
+            out.writeDate(id, (Date) value);
+            break;
           case OPAQUE:
-            return (byte[]) value;
+            out.writeOpaque(id, (byte[]) value);
+            break;
           case OBJLNK:
-            return TlvEncoder.encodeObjlnk((ObjectLink) value);
+            out.writeObjlnk(id, (ObjectLink) value);
+            break;
           default:
             throw new CodecException("Invalid value %s for type %s of %s", value, type, path);
         }
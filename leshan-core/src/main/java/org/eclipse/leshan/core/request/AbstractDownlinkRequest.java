@@ -86,7 +86,7 @@ public abstract class AbstractDownlinkRequest<T extends LwM2mResponse> implement
 
   protected static LwM2mPath newPath(String path) {
     try {
-      return new LwM2mPath(path);
+      return LwM2mPath.intern(path);
     } catch (IllegalArgumentException e) {
       throw new InvalidRequestException();
     }
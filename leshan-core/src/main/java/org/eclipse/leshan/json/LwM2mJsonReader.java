@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.json;
+
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.leshan.core.model.ResourceModel.Type;
+
+/**
+ * A streaming reader of the LWM2M JSON format, reading UTF-8 bytes directly without building a
+ * {@link JsonRootObject}.
+ * <p>
+ * Each entry of the resource list is given to a {@link Handler} as soon as it is read. The base
+ * name is always given before the entries: if the resource list comes first in the root object, it
+ * is skipped and read again once the rest of the root object is known.
+ */
+public class LwM2mJsonReader {
+
+  /**
+   * Receives the content of a LWM2M JSON root object.
+   */
+  public interface Handler {
+
+    void onBaseName(String baseName);
+
+    void onBaseTime(long baseTime);
+
+    /**
+     * @param name the name of the entry, can be <code>null</code>
+     * @param time the time of the entry, can be <code>null</code>
+     * @param type the type of the value: {@link Type#BOOLEAN}, {@link Type#FLOAT},
+     * {@link Type#OBJLNK}, {@link Type#STRING} or <code>null</code> if there is no value
+     * @param value a {@link Boolean}, a {@link Long} or a {@link Double}, a {@link String} or
+     * <code>null</code>
+     */
+    void onEntry(String name, Long time, Type type, Object value);
+  }
+
+  private final byte[] content;
+  private int position;
+
+  private LwM2mJsonReader(byte[] content) {
+    this.content = content;
+  }
+
+  /**
+   * Reads a LWM2M JSON root object.
+   */
+  public static void read(byte[] content, Handler handler) throws LwM2mJsonException {
+    try {
+      new LwM2mJsonReader(content).readRoot(handler);
+    } catch (IndexOutOfBoundsException e) {
+      throw new LwM2mJsonException("Unexpected end of JSON content", e);
+    }
+  }
+
+  private void readRoot(Handler handler) throws LwM2mJsonException {
+    int entriesPosition = -1;
+    boolean baseNameRead = false;
+
+    expect('{');
+    if (!nextIs('}')) {
+      do {
+        String key = readString();
+        expect(':');
+        switch (key) {
+          case "bn":
+            if (peek() == '"') {
+              handler.onBaseName(readString());
+              baseNameRead = true;
+            } else {
+              skipValue();
+            }
+            break;
+          case "bt":
+            if (isNumberStart(peek())) {
+              handler.onBaseTime(readLong());
+            } else {
+              skipValue();
+            }
+            break;
+          case "e":
+            if (peek() != '[') {
+              throw error("resource list must be an array");
+            }
+            if (baseNameRead) {
+              readEntries(handler);
+            } else {
+              // the base name may be after the resource list
+              entriesPosition = position;
+              skipValue();
+            }
+            break;
+          default:
+            skipValue();
+        }
+      } while (nextIs(','));
+      expect('}');
+    }
+    skipWhitespaces();
+    if (position != content.length) {
+      throw error("unexpected content after root object");
+    }
+
+    if (entriesPosition >= 0) {
+      position = entriesPosition;
+      readEntries(handler);
+    }
+  }
+
+  private void readEntries(Handler handler) throws LwM2mJsonException {
+    expect('[');
+    if (nextIs(']')) {
+      return;
+    }
+    do {
+      readEntry(handler);
+    } while (nextIs(','));
+    expect(']');
+  }
+
+  private void readEntry(Handler handler) throws LwM2mJsonException {
+    String name = null;
+    Long time = null;
+    Boolean booleanValue = null;
+    Number floatValue = null;
+    String objectLinkValue = null;
+    String stringValue = null;
+
+    expect('{');
+    if (!nextIs('}')) {
+      do {
+        String key = readString();
+        expect(':');
+        byte next = peek();
+        switch (key) {
+          case "n":
+            if (next != '"') {
+              throw error("entry name must be a string");
+            }
+            name = readString();
+            break;
+          case "t":
+            if (isNumberStart(next)) {
+              time = readLong();
+            } else {
+              skipValue();
+            }
+            break;
+          case "v":
+            if (isNumberStart(next)) {
+              floatValue = readNumber();
+            } else {
+              skipValue();
+            }
+            break;
+          case "bv":
+            if (next == 't' || next == 'f') {
+              booleanValue = readBoolean();
+            } else {
+              skipValue();
+            }
+            break;
+          case "ov":
+            if (next == '"') {
+              objectLinkValue = readString();
+            } else {
+              skipValue();
+            }
+            break;
+          case "sv":
+            if (next == '"') {
+              stringValue = readString();
+            } else {
+              skipValue();
+            }
+            break;
+          default:
+            skipValue();
+        }
+      } while (nextIs(','));
+      expect('}');
+    }
+
+    // same priority as JsonArrayEntry
+    if (booleanValue != null) {
+      handler.onEntry(name, time, Type.BOOLEAN, booleanValue);
+    } else if (floatValue != null) {
+      handler.onEntry(name, time, Type.FLOAT, floatValue);
+    } else if (objectLinkValue != null) {
+      handler.onEntry(name, time, Type.OBJLNK, objectLinkValue);
+    } else if (stringValue != null) {
+      handler.onEntry(name, time, Type.STRING, stringValue);
+    } else {
+      handler.onEntry(name, time, null, null);
+    }
+  }
+
+  private String readString() throws LwM2mJsonException {
+    expect('"');
+    int start = position;
+    // fast path: no escaped character
+    while (true) {
+      byte b = content[position];
+      if (b == '"') {
+        position++;
+        return new String(content, start, position - 1 - start, StandardCharsets.UTF_8);
+      } else if (b == '\\') {
+        break;
+      } else if (b >= 0 && b < 0x20) {
+        throw error("control character in string");
+      }
+      position++;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    builder.append(new String(content, start, position - start, StandardCharsets.UTF_8));
+    while (true) {
+      byte b = content[position];
+      if (b == '"') {
+        position++;
+        return builder.toString();
+      } else if (b == '\\') {
+        position++;
+        byte escaped = content[position++];
+        switch (escaped) {
+          case '"':
+          case '\\':
+          case '/':
+            builder.append((char) escaped);
+            break;
+          case 'b':
+            builder.append('\b');
+            break;
+          case 'f':
+            builder.append('\f');
+            break;
+          case 'n':
+            builder.append('\n');
+            break;
+          case 'r':
+            builder.append('\r');
+            break;
+          case 't':
+            builder.append('\t');
+            break;
+          case 'u':
+            int c = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(content[position++], 16);
+              if (digit < 0) {
+                throw error("invalid unicode escape sequence");
+              }
+              c = (c << 4) | digit;
+            }
+            builder.append((char) c);
+            break;
+          default:
+            throw error("invalid escape sequence");
+        }
+      } else if (b >= 0 && b < 0x20) {
+        throw error("control character in string");
+      } else {
+        // copy the bytes up to the next special character
+        int segmentStart = position;
+        while (content[position] != '"' && content[position] != '\\'
+            && (content[position] < 0 || content[position] >= 0x20)) {
+          position++;
+        }
+        builder.append(
+            new String(content, segmentStart, position - segmentStart, StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  /**
+   * @return a {@link Long} if the number is an integer which fits in a long, a {@link Double}
+   * otherwise.
+   */
+  private Number readNumber() throws LwM2mJsonException {
+    skipWhitespaces();
+    int start = position;
+    boolean negative = content[position] == '-';
+    if (negative) {
+      position++;
+    }
+    long value = 0;
+    int digits = 0;
+    while (position < content.length && content[position] >= '0' && content[position] <= '9') {
+      value = value * 10 + (content[position++] - '0');
+      digits++;
+    }
+    if (digits == 0) {
+      throw error("invalid number");
+    }
+    if (position < content.length && isFloatCharacter(content[position])) {
+      while (position < content.length && (isFloatCharacter(content[position])
+          || (content[position] >= '0' && content[position] <= '9'))) {
+        position++;
+      }
+    } else if (digits <= 18) {
+      return negative ? -value : value;
+    }
+
+    String number = new String(content, start, position - start, StandardCharsets.US_ASCII);
+    try {
+      return Double.parseDouble(number);
+    } catch (NumberFormatException e) {
+      throw new LwM2mJsonException(
+          String.format("Invalid JSON number %s at position %d", number, start), e);
+    }
+  }
+
+  private long readLong() throws LwM2mJsonException {
+    int start = position;
+    Number number = readNumber();
+    if (!(number instanceof Long)) {
+      throw new LwM2mJsonException(
+          String.format("Invalid JSON content at position %d: integer expected", start));
+    }
+    return number.longValue();
+  }
+
+  private boolean readBoolean() throws LwM2mJsonException {
+    if (peek() == 't') {
+      expectLiteral("true");
+      return true;
+    } else {
+      expectLiteral("false");
+      return false;
+    }
+  }
+
+  private void skipValue() throws LwM2mJsonException {
+    byte next = peek();
+    switch (next) {
+      case '"':
+        readString();
+        break;
+      case '{':
+        expect('{');
+        if (!nextIs('}')) {
+          do {
+            readString();
+            expect(':');
+            skipValue();
+          } while (nextIs(','));
+          expect('}');
+        }
+        break;
+      case '[':
+        expect('[');
+        if (!nextIs(']')) {
+          do {
+            skipValue();
+          } while (nextIs(','));
+          expect(']');
+        }
+        break;
+      case 't':
+        expectLiteral("true");
+        break;
+      case 'f':
+        expectLiteral("false");
+        break;
+      case 'n':
+        expectLiteral("null");
+        break;
+      default:
+        if (!isNumberStart(next)) {
+          throw error("unexpected character");
+        }
+        readNumber();
+    }
+  }
+
+  private void expectLiteral(String literal) throws LwM2mJsonException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (content[position++] != literal.charAt(i)) {
+        throw error(literal + " expected");
+      }
+    }
+  }
+
+  private void expect(char c) throws LwM2mJsonException {
+    if (peek() != c) {
+      throw error("'" + c + "' expected");
+    }
+    position++;
+  }
+
+  // consumes the given character if it is the next one
+  private boolean nextIs(char c) {
+    if (peek() == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private byte peek() {
+    skipWhitespaces();
+    return content[position];
+  }
+
+  private void skipWhitespaces() {
+    while (position < content.length) {
+      byte b = content[position];
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  private static boolean isNumberStart(byte b) {
+    return b == '-' || (b >= '0' && b <= '9');
+  }
+
+  private static boolean isFloatCharacter(byte b) {
+    return b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+  }
+
+  private LwM2mJsonException error(String message) {
+    return new LwM2mJsonException(
+        String.format("Invalid JSON content at position %d: %s", position, message));
+  }
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.json;
+
+import java.util.Arrays;
+
+/**
+ * A streaming writer of the LWM2M JSON format, writing UTF-8 bytes directly without building a
+ * {@link JsonRootObject}.
+ * <p>
+ * Each entry of the resource list is written with {@link #beginEntry()}, zero or more
+ * {@link #appendName(int)}, one value and {@link #endEntry(Long)}. The output is the same as the
+ * one of {@link LwM2mJson#toJsonLwM2m(JsonRootObject)}.
+ */
+public class LwM2mJsonWriter {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private byte[] buffer;
+  private int position;
+
+  private boolean firstEntry = true;
+  private boolean firstNameSegment;
+
+  /**
+   * Starts a root object.
+   *
+   * @param baseName the base name, can be <code>null</code>
+   */
+  public LwM2mJsonWriter(String baseName) {
+    this(baseName, 256);
+  }
+
+  public LwM2mJsonWriter(String baseName, int initialCapacity) {
+    buffer = new byte[initialCapacity];
+    if (baseName != null) {
+      writeAscii("{\"bn\":");
+      writeString(baseName);
+      writeAscii(",\"e\":[");
+    } else {
+      writeAscii("{\"e\":[");
+    }
+  }
+
+  /**
+   * Begins an entry, its name must be appended next.
+   */
+  public LwM2mJsonWriter beginEntry() {
+    if (firstEntry) {
+      firstEntry = false;
+      writeAscii("{\"n\":\"");
+    } else {
+      writeAscii(",{\"n\":\"");
+    }
+    firstNameSegment = true;
+    return this;
+  }
+
+  /**
+   * Appends a segment to the name of the current entry.
+   */
+  public LwM2mJsonWriter appendName(int id) {
+    if (!firstNameSegment) {
+      writeByte('/');
+    }
+    firstNameSegment = false;
+    writeAscii(Integer.toString(id));
+    return this;
+  }
+
+  public LwM2mJsonWriter floatValue(double value) {
+    writeAscii("\",\"v\":");
+    writeNumber(value);
+    return this;
+  }
+
+  public LwM2mJsonWriter booleanValue(boolean value) {
+    writeAscii(value ? "\",\"bv\":true" : "\",\"bv\":false");
+    return this;
+  }
+
+  public LwM2mJsonWriter stringValue(String value) {
+    writeAscii("\",\"sv\":");
+    writeString(value);
+    return this;
+  }
+
+  public LwM2mJsonWriter objectLinkValue(String value) {
+    writeAscii("\",\"ov\":");
+    writeString(value);
+    return this;
+  }
+
+  /**
+   * Ends the current entry.
+   *
+   * @param time the time of the entry, can be <code>null</code>
+   */
+  public LwM2mJsonWriter endEntry(Long time) {
+    if (time != null) {
+      writeAscii(",\"t\":");
+      writeAscii(Long.toString(time));
+    }
+    writeByte('}');
+    return this;
+  }
+
+  /**
+   * Ends the root object.
+   *
+   * @param baseTime the base time, can be <code>null</code>
+   */
+  public LwM2mJsonWriter end(Long baseTime) {
+    writeByte(']');
+    if (baseTime != null) {
+      writeAscii(",\"bt\":");
+      writeAscii(Long.toString(baseTime));
+    }
+    writeByte('}');
+    return this;
+  }
+
+  /**
+   * @return a copy of the written content.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, position);
+  }
+
+  private void writeNumber(double value) {
+    if (Double.isInfinite(value) || Double.isNaN(value)) {
+      throw new IllegalArgumentException("Infinite and NaN values not permitted in JSON");
+    }
+    String string = Double.toString(value);
+    if (string.endsWith(".0")) {
+      writeAscii(string, string.length() - 2);
+    } else {
+      writeAscii(string);
+    }
+  }
+
+  private void writeString(String value) {
+    ensureCapacity(value.length() + 2);
+    buffer[position++] = '"';
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c == '"' || c == '\\') {
+          writeByte('\\');
+          writeByte(c);
+        } else if (c == '\n') {
+          writeAscii("\\n");
+        } else if (c == '\r') {
+          writeAscii("\\r");
+        } else if (c == '\t') {
+          writeAscii("\\t");
+        } else if (c < 0x20) {
+          writeUnicodeEscape(c);
+        } else {
+          writeByte(c);
+        }
+      } else if (c == '\u2028' || c == '\u2029') {
+        writeUnicodeEscape(c);
+      } else if (c < 0x800) {
+        writeByte(0xC0 | (c >> 6));
+        writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        writeByte(0xF0 | (codePoint >> 18));
+        writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+        writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+        writeByte(0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // malformed surrogate pair, replaced as String.getBytes() does
+        writeByte('?');
+      } else {
+        writeByte(0xE0 | (c >> 12));
+        writeByte(0x80 | ((c >> 6) & 0x3F));
+        writeByte(0x80 | (c & 0x3F));
+      }
+    }
+    writeByte('"');
+  }
+
+  private void writeUnicodeEscape(char c) {
+    writeAscii("\\u");
+    writeByte(HEX_DIGITS[(c >> 12) & 0xF]);
+    writeByte(HEX_DIGITS[(c >> 8) & 0xF]);
+    writeByte(HEX_DIGITS[(c >> 4) & 0xF]);
+    writeByte(HEX_DIGITS[c & 0xF]);
+  }
+
+  private void writeAscii(String value) {
+    writeAscii(value, value.length());
+  }
+
+  private void writeAscii(String value, int length) {
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      buffer[position++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    buffer[position++] = (byte) b;
+  }
+
+  private void ensureCapacity(int length) {
+    if (position + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+    }
+  }
+}
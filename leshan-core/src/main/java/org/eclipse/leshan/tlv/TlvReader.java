@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.tlv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.eclipse.leshan.core.node.ObjectLink;
+import org.eclipse.leshan.tlv.Tlv.TlvType;
+
+/**
+ * A cursor over TLV content.
+ * <p>
+ * The TLVs of one level are read in place with {@link #next()}: nothing is copied and the content of
+ * an object instance or of a multiple resource is skipped unless it is read with
+ * {@link #children()}. Values are decoded directly from the buffer.
+ * <p>
+ * The position and limit of the given buffer are not modified.
+ */
+public class TlvReader {
+
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int end;
+
+  // position of the next TLV header
+  private int next;
+
+  // current TLV
+  private TlvType type;
+  private int identifier;
+  private int valueOffset;
+  private int length;
+
+  /**
+   * Reads the TLVs between the position and the limit of the given buffer.
+   */
+  public TlvReader(ByteBuffer input) {
+    this(input, input.position(), input.limit());
+  }
+
+  private TlvReader(ByteBuffer buffer, int start, int end) {
+    this.buffer = buffer;
+    this.start = start;
+    this.end = end;
+    this.next = start;
+  }
+
+  /**
+   * @return <code>true</code> if there is another TLV after the current one at this level.
+   */
+  public boolean hasNext() {
+    return next < end;
+  }
+
+  /**
+   * Moves to the next TLV of this level.
+   *
+   * @return <code>false</code> if there is no more TLV.
+   */
+  public boolean next() throws TlvException {
+    if (next >= end) {
+      type = null;
+      return false;
+    }
+    int position = next;
+
+    // decode type
+    int typeByte = buffer.get(position++) & 0xFF;
+    switch (typeByte & 0b1100_0000) {
+      case 0b0000_0000:
+        type = TlvType.OBJECT_INSTANCE;
+        break;
+      case 0b0100_0000:
+        type = TlvType.RESOURCE_INSTANCE;
+        break;
+      case 0b1000_0000:
+        type = TlvType.MULTIPLE_RESOURCE;
+        break;
+      default:
+        type = TlvType.RESOURCE_VALUE;
+        break;
+    }
+
+    // decode identifier
+    int identifierSize = (typeByte & 0b0010_0000) == 0 ? 1 : 2;
+    if (position + identifierSize > end) {
+      throw new TlvException("Invalid 'identifier' length");
+    }
+    identifier = (int) readUnsigned(position, identifierSize);
+    position += identifierSize;
+
+    // decode length
+    int lengthSize = (typeByte & 0b0001_1000) >> 3;
+    if (lengthSize == 0) {
+      length = typeByte & 0b0000_0111;
+    } else {
+      if (position + lengthSize > end) {
+        throw new TlvException("Invalid 'length' length");
+      }
+      length = (int) readUnsigned(position, lengthSize);
+      position += lengthSize;
+    }
+
+    // skip the value
+    if (length > end - position) {
+      throw new TlvException("Invalid 'value' length");
+    }
+    valueOffset = position;
+    next = position + length;
+    return true;
+  }
+
+  /**
+   * Goes back before the first TLV of this level.
+   */
+  public void rewind() {
+    next = start;
+    type = null;
+  }
+
+  public TlvType getType() {
+    checkCurrent();
+    return type;
+  }
+
+  public int getIdentifier() {
+    checkCurrent();
+    return identifier;
+  }
+
+  /**
+   * @return the length of the value or of the children of the current TLV.
+   */
+  public int getLength() {
+    checkCurrent();
+    return length;
+  }
+
+  /**
+   * @return a reader over the children of the current object instance or multiple resource, the
+   * content is shared.
+   */
+  public TlvReader children() {
+    checkCurrent();
+    if (type != TlvType.OBJECT_INSTANCE && type != TlvType.MULTIPLE_RESOURCE) {
+      throw new IllegalStateException("a " + type.name() + " can't have children");
+    }
+    return new TlvReader(buffer, valueOffset, valueOffset + length);
+  }
+
+  /**
+   * @return a read-only view of the value of the current TLV.
+   */
+  public ByteBuffer getValue() {
+    checkValue();
+    ByteBuffer value = buffer.asReadOnlyBuffer();
+    value.limit(valueOffset + length);
+    value.position(valueOffset);
+    return value.slice();
+  }
+
+  /**
+   * @return a copy of the value of the current TLV.
+   */
+  public byte[] getOpaque() {
+    checkValue();
+    byte[] value = new byte[length];
+    if (buffer.hasArray()) {
+      System.arraycopy(buffer.array(), buffer.arrayOffset() + valueOffset, value, 0, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        value[i] = buffer.get(valueOffset + i);
+      }
+    }
+    return value;
+  }
+
+  public String getString() {
+    checkValue();
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + valueOffset, length,
+          StandardCharsets.UTF_8);
+    }
+    return new String(getOpaque(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decodes a signed integer encoded on 1, 2, 4 or 8 bytes (or any length up to 8 bytes).
+   */
+  public long getInteger() throws TlvException {
+    checkValue();
+    if (length == 0 || length > 8) {
+      throw new TlvException("Invalid length for an integer value: " + length);
+    }
+    return readSigned(valueOffset, length);
+  }
+
+  public double getFloat() throws TlvException {
+    checkValue();
+    if (length == 4) {
+      return Float.intBitsToFloat((int) readUnsigned(valueOffset, 4));
+    } else if (length == 8) {
+      return Double.longBitsToDouble(readUnsigned(valueOffset, 8));
+    } else {
+      throw new TlvException("Invalid length for a float value: " + length);
+    }
+  }
+
+  public boolean getBoolean() throws TlvException {
+    checkValue();
+    if (length != 1) {
+      throw new TlvException("Invalid length for a boolean value: " + length);
+    }
+    return TlvDecoder.decodeBoolean(buffer.get(valueOffset));
+  }
+
+  public Date getDate() throws TlvException {
+    checkValue();
+    if (length == 0 || length > 8) {
+      throw new TlvException("Invalid length for a time value: " + length);
+    }
+    return new Date(readSigned(valueOffset, length) * 1000L);
+  }
+
+  public ObjectLink getObjlnk() throws TlvException {
+    checkValue();
+    if (length != 4) {
+      throw new TlvException("Invalid length for a objlnk value: " + length);
+    }
+    return new ObjectLink((int) readUnsigned(valueOffset, 2),
+        (int) readUnsigned(valueOffset + 2, 2));
+  }
+
+  private long readUnsigned(int offset, int size) {
+    long value = 0;
+    for (int i = 0; i < size; i++) {
+      value = (value << 8) | (buffer.get(offset + i) & 0xFF);
+    }
+    return value;
+  }
+
+  private long readSigned(int offset, int size) {
+    // the first byte carries the sign
+    long value = buffer.get(offset);
+    for (int i = 1; i < size; i++) {
+      value = (value << 8) | (buffer.get(offset + i) & 0xFF);
+    }
+    return value;
+  }
+
+  private void checkCurrent() {
+    if (type == null) {
+      throw new IllegalStateException("No current TLV, next() must be called first");
+    }
+  }
+
+  private void checkValue() {
+    checkCurrent();
+    if (type != TlvType.RESOURCE_VALUE && type != TlvType.RESOURCE_INSTANCE) {
+      throw new IllegalStateException("a " + type.name() + " can't have a value");
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.tlv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.eclipse.leshan.core.node.ObjectLink;
+import org.eclipse.leshan.tlv.Tlv.TlvType;
+
+/**
+ * A streaming TLV writer.
+ * <p>
+ * Values are written directly in an internal buffer without intermediate {@link Tlv} or byte
+ * array. The length of an object instance or of a multiple resource is only known when it is
+ * ended: the maximum header size is reserved when it begins and the header is written (and the
+ * content moved if the header is smaller) when it ends, so each TLV is written once.
+ * <p>
+ * Resources written inside a multiple resource are encoded as resource instances. A writer can be
+ * reused after a {@link #reset()}.
+ */
+public class TlvWriter {
+
+  private static final int MAX_LENGTH_8BIT = 256;
+  private static final int MAX_LENGTH_16BIT = 65_536;
+  private static final int MAX_LENGTH_24BIT = 16_777_216;
+  private static final int MAX_HEADER_SIZE = 1 + 2 + 3;
+  // object instance and multiple resource can be nested in this maximum depth
+  private static final int MAX_DEPTH = 2;
+
+  private byte[] buffer;
+  private int position;
+
+  // started containers
+  private final TlvType[] types = new TlvType[MAX_DEPTH];
+  private final int[] identifiers = new int[MAX_DEPTH];
+  private final int[] headerPositions = new int[MAX_DEPTH];
+  private int depth;
+
+  public TlvWriter() {
+    this(256);
+  }
+
+  public TlvWriter(int initialCapacity) {
+    this.buffer = new byte[initialCapacity];
+  }
+
+  /**
+   * Begins an object instance, its resources must be written before calling {@link #end()}.
+   */
+  public TlvWriter beginObjectInstance(int id) {
+    return begin(TlvType.OBJECT_INSTANCE, id);
+  }
+
+  /**
+   * Begins a multiple resource, its instances must be written before calling {@link #end()}.
+   */
+  public TlvWriter beginMultipleResource(int id) {
+    return begin(TlvType.MULTIPLE_RESOURCE, id);
+  }
+
+  private TlvWriter begin(TlvType type, int id) {
+    if (depth == MAX_DEPTH) {
+      throw new IllegalStateException("TLV can not be nested deeper");
+    }
+    types[depth] = type;
+    identifiers[depth] = id;
+    headerPositions[depth] = position;
+    depth++;
+    ensureCapacity(MAX_HEADER_SIZE);
+    position += MAX_HEADER_SIZE;
+    return this;
+  }
+
+  /**
+   * Ends the last begun object instance or multiple resource.
+   */
+  public TlvWriter end() {
+    if (depth == 0) {
+      throw new IllegalStateException("No TLV to end");
+    }
+    depth--;
+    int headerPosition = headerPositions[depth];
+    int contentPosition = headerPosition + MAX_HEADER_SIZE;
+    int length = position - contentPosition;
+    int headerSize = headerSize(identifiers[depth], length);
+
+    // move the content just after the real header
+    if (headerSize < MAX_HEADER_SIZE) {
+      System.arraycopy(buffer, contentPosition, buffer, headerPosition + headerSize, length);
+      position -= MAX_HEADER_SIZE - headerSize;
+    }
+    writeHeader(headerPosition, types[depth], identifiers[depth], length);
+    return this;
+  }
+
+  public TlvWriter writeInteger(int id, long value) {
+    if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      writeValueHeader(id, 1);
+      buffer[position++] = (byte) value;
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      writeValueHeader(id, 2);
+      putLong(value, 2);
+    } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      writeValueHeader(id, 4);
+      putLong(value, 4);
+    } else {
+      writeValueHeader(id, 8);
+      putLong(value, 8);
+    }
+    return this;
+  }
+
+  /**
+   * Writes a float on 4 bytes if the given number is a {@link Float}, on 8 bytes otherwise.
+   */
+  public TlvWriter writeFloat(int id, Number value) {
+    if (value instanceof Float) {
+      writeValueHeader(id, 4);
+      putLong(Float.floatToIntBits(value.floatValue()), 4);
+    } else {
+      writeValueHeader(id, 8);
+      putLong(Double.doubleToLongBits(value.doubleValue()), 8);
+    }
+    return this;
+  }
+
+  public TlvWriter writeBoolean(int id, boolean value) {
+    writeValueHeader(id, 1);
+    buffer[position++] = (byte) (value ? 1 : 0);
+    return this;
+  }
+
+  public TlvWriter writeString(int id, String value) {
+    return writeOpaque(id, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public TlvWriter writeDate(int id, Date value) {
+    writeValueHeader(id, 4);
+    putLong(value.getTime() / 1000L, 4);
+    return this;
+  }
+
+  public TlvWriter writeObjlnk(int id, ObjectLink value) {
+    writeValueHeader(id, 4);
+    putLong(value.getObjectId(), 2);
+    putLong(value.getObjectInstanceId(), 2);
+    return this;
+  }
+
+  public TlvWriter writeOpaque(int id, byte[] value) {
+    writeValueHeader(id, value.length);
+    System.arraycopy(value, 0, buffer, position, value.length);
+    position += value.length;
+    return this;
+  }
+
+  /**
+   * Writes a TLV and all its children.
+   */
+  public TlvWriter write(Tlv tlv) {
+    switch (tlv.getType()) {
+      case RESOURCE_VALUE:
+      case RESOURCE_INSTANCE:
+        writeHeader(tlv.getType(), tlv.getIdentifier(), tlv.getValue().length);
+        System.arraycopy(tlv.getValue(), 0, buffer, position, tlv.getValue().length);
+        position += tlv.getValue().length;
+        break;
+      case OBJECT_INSTANCE:
+      case MULTIPLE_RESOURCE:
+        begin(tlv.getType(), tlv.getIdentifier());
+        for (Tlv child : tlv.getChildren()) {
+          write(child);
+        }
+        end();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown TLV type : '" + tlv.getType() + "'");
+    }
+    return this;
+  }
+
+  /**
+   * @return the number of written bytes.
+   */
+  public int size() {
+    return position;
+  }
+
+  /**
+   * @return a copy of the written TLVs.
+   */
+  public byte[] toByteArray() {
+    checkEnded();
+    return Arrays.copyOf(buffer, position);
+  }
+
+  /**
+   * Copies the written TLVs in the given buffer.
+   */
+  public void writeTo(ByteBuffer b) {
+    checkEnded();
+    b.put(buffer, 0, position);
+  }
+
+  /**
+   * Clears the written content, the internal buffer is kept.
+   */
+  public void reset() {
+    position = 0;
+    depth = 0;
+  }
+
+  private void checkEnded() {
+    if (depth != 0) {
+      throw new IllegalStateException("Some TLV are not ended");
+    }
+  }
+
+  private void writeValueHeader(int id, int length) {
+    TlvType type = depth > 0 && types[depth - 1] == TlvType.MULTIPLE_RESOURCE
+        ? TlvType.RESOURCE_INSTANCE : TlvType.RESOURCE_VALUE;
+    writeHeader(type, id, length);
+  }
+
+  private void writeHeader(TlvType type, int id, int length) {
+    ensureCapacity(MAX_HEADER_SIZE + length);
+    position += writeHeader(position, type, id, length);
+  }
+
+  private static int headerSize(int id, int length) {
+    int size = 1 + (id < MAX_LENGTH_8BIT ? 1 : 2);
+    if (length < 8) {
+      return size;
+    } else if (length < MAX_LENGTH_8BIT) {
+      return size + 1;
+    } else if (length < MAX_LENGTH_16BIT) {
+      return size + 2;
+    } else if (length < MAX_LENGTH_24BIT) {
+      return size + 3;
+    } else {
+      throw new IllegalArgumentException("length should fit in max 24bits");
+    }
+  }
+
+  // returns the header size
+  private int writeHeader(int at, TlvType type, int id, int length) {
+    int typeByte;
+    switch (type) {
+      case OBJECT_INSTANCE:
+        typeByte = 0b00_000000;
+        break;
+      case RESOURCE_INSTANCE:
+        typeByte = 0b01_000000;
+        break;
+      case MULTIPLE_RESOURCE:
+        typeByte = 0b10_000000;
+        break;
+      case RESOURCE_VALUE:
+        typeByte = 0b11_000000;
+        break;
+      default:
+        throw new IllegalArgumentException("unknown TLV type : '" + type + "'");
+    }
+
+    int start = at;
+    // identifier length
+    typeByte |= (id < MAX_LENGTH_8BIT) ? 0b00_0000 : 0b10_0000;
+
+    // type of length
+    int lengthSize;
+    if (length < 8) {
+      typeByte |= length;
+      lengthSize = 0;
+    } else if (length < MAX_LENGTH_8BIT) {
+      typeByte |= 0b0000_1000;
+      lengthSize = 1;
+    } else if (length < MAX_LENGTH_16BIT) {
+      typeByte |= 0b0001_0000;
+      lengthSize = 2;
+    } else if (length < MAX_LENGTH_24BIT) {
+      typeByte |= 0b0001_1000;
+      lengthSize = 3;
+    } else {
+      throw new IllegalArgumentException("length should fit in max 24bits");
+    }
+
+    buffer[at++] = (byte) typeByte;
+    if (id < MAX_LENGTH_8BIT) {
+      buffer[at++] = (byte) id;
+    } else {
+      buffer[at++] = (byte) (id >> 8);
+      buffer[at++] = (byte) id;
+    }
+    for (int i = lengthSize - 1; i >= 0; i--) {
+      buffer[at++] = (byte) (length >> (8 * i));
+    }
+    return at - start;
+  }
+
+  // writes the given number of least significant bytes, big endian
+  private void putLong(long value, int size) {
+    for (int i = size - 1; i >= 0; i--) {
+      buffer[position++] = (byte) (value >> (8 * i));
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (position + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+    }
+  }
+}
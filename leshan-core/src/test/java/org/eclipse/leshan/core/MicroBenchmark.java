@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core;
+
+import java.util.Arrays;
+
+/**
+ * A minimal micro-benchmark runner for the <code>*Benchmark</code> test classes, which are only
+ * run with the <code>benchmark</code> Maven profile.
+ * <p>
+ * An operation is run during a few warm-up rounds, then during measured rounds. The median time
+ * per operation of the measured rounds is printed and returned.
+ */
+public class MicroBenchmark {
+
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+
+  // consumes the operation results so that the JIT cannot remove them
+  private static volatile int sink;
+
+  public interface Operation {
+    /**
+     * @return any value derived from the operation result
+     */
+    int run() throws Exception;
+  }
+
+  /**
+   * @param name the name printed with the result
+   * @param iterations the number of operations per round
+   * @param operation the measured operation
+   * @return the median time of an operation in nanoseconds
+   */
+  public static double run(String name, int iterations, Operation operation) throws Exception {
+    int result = 0;
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (int i = 0; i < iterations; i++) {
+        result += operation.run();
+      }
+    }
+
+    double[] times = new double[MEASURED_ROUNDS];
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        result += operation.run();
+      }
+      times[round] = (double) (System.nanoTime() - start) / iterations;
+    }
+    sink = result;
+
+    Arrays.sort(times);
+    double median = times[MEASURED_ROUNDS / 2];
+    System.out.println(String.format("%-40s %12.1f ns/op", name, median));
+    return median;
+  }
+}
@@ -17,6 +17,8 @@ package org.eclipse.leshan.core.node;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -156,4 +158,38 @@ public class LwM2MResourceTest {
     values.put(3, null);
     LwM2mMultipleResource.newResource(0, values, Type.BOOLEAN);
   }
+
+  @Test
+  public void multiple_integers_keep_values_and_map_semantics() {
+    Map<Integer, Long> values = new HashMap<>();
+    values.put(300, 3L);
+    values.put(-1, Long.MAX_VALUE);
+    values.put(7, 0L);
+    LwM2mMultipleResource resource = LwM2mMultipleResource.newIntegerResource(10, values);
+
+    assertEquals(values, resource.getValues());
+    assertEquals(values.hashCode(), resource.getValues().hashCode());
+    assertEquals(Long.MAX_VALUE, resource.getValue(-1));
+    assertNull(resource.getValue(8));
+    assertEquals(Arrays.asList(-1, 7, 300), new ArrayList<>(resource.getValues().keySet()));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void multiple_resource_values_are_unmodifiable() {
+    Map<Integer, Double> values = new HashMap<>();
+    values.put(0, 1.5d);
+    LwM2mMultipleResource resource = LwM2mMultipleResource.newFloatResource(10, values);
+    resource.getValues().clear();
+  }
+
+  @Test
+  public void last_resource_wins_in_object_instance() {
+    LwM2mObjectInstance instance = new LwM2mObjectInstance(0,
+        LwM2mSingleResource.newStringResource(2, "a"), LwM2mSingleResource.newStringResource(1, "b"),
+        LwM2mSingleResource.newStringResource(2, "c"));
+
+    assertEquals(2, instance.getResources().size());
+    assertEquals("c", instance.getResource(2).getValue());
+    assertEquals("b", instance.getResource(1).getValue());
+  }
 }
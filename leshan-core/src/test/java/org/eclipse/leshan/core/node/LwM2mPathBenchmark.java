@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.node;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.leshan.core.MicroBenchmark;
+import org.eclipse.leshan.core.MicroBenchmark.Operation;
+import org.junit.Test;
+
+/**
+ * Measures the {@link LwM2mPath} operations done for each request and notification.
+ */
+public class LwM2mPathBenchmark {
+
+  private static final int ITERATIONS = 1_000_000;
+
+  @Test
+  public void parse() throws Exception {
+    MicroBenchmark.run("LwM2mPath(\"/3303/0/5700\")", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return new LwM2mPath("/3303/0/5700").hashCode();
+      }
+    });
+  }
+
+  @Test
+  public void to_string() throws Exception {
+    final LwM2mPath path = new LwM2mPath(3303, 0, 5700);
+    MicroBenchmark.run("LwM2mPath.toString()", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return path.toString().length();
+      }
+    });
+  }
+
+  @Test
+  public void append() throws Exception {
+    final LwM2mPath path = new LwM2mPath(3303, 0);
+    MicroBenchmark.run("LwM2mPath.append(int)", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return path.append(5700).hashCode();
+      }
+    });
+  }
+
+  @Test
+  public void hash_map_lookup() throws Exception {
+    final Map<LwM2mPath, Integer> paths = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      paths.put(new LwM2mPath(3303, i, 5700), i);
+    }
+    final LwM2mPath path = new LwM2mPath(3303, 50, 5700);
+    MicroBenchmark.run("HashMap<LwM2mPath, ?>.get()", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return paths.get(new LwM2mPath(path.getObjectId(), path.getObjectInstanceId(),
+            path.getResourceId()));
+      }
+    });
+  }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.node;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LwM2mPathTest {
+
+  @Test
+  public void parse_paths() {
+    assertEquals(new LwM2mPath(3), new LwM2mPath("/3"));
+    assertEquals(new LwM2mPath(3, 0), new LwM2mPath("3/0"));
+    assertEquals(new LwM2mPath(3, 0, 1), new LwM2mPath("/3/0/1/"));
+    assertEquals(new LwM2mPath(3, 0, 7, 1), new LwM2mPath("/3/0/7/1"));
+    assertEquals(new LwM2mPath(3, -1), new LwM2mPath("/3/-1"));
+
+    LwM2mPath path = new LwM2mPath("/3/0/1");
+    assertTrue(path.isResource());
+    assertEquals(Integer.valueOf(3), path.getObjectId());
+    assertEquals(Integer.valueOf(0), path.getObjectInstanceId());
+    assertEquals(Integer.valueOf(1), path.getResourceId());
+    assertNull(path.getResourceInstanceId());
+    assertEquals("/3/0/1", path.toString());
+  }
+
+  @Test
+  public void parse_root_path() {
+    assertEquals(LwM2mPath.ROOTPATH, new LwM2mPath("/"));
+    assertEquals(LwM2mPath.ROOTPATH, new LwM2mPath(""));
+    assertTrue(LwM2mPath.ROOTPATH.isRoot());
+    assertNull(LwM2mPath.ROOTPATH.getObjectId());
+    assertEquals("/", LwM2mPath.ROOTPATH.toString());
+    assertEquals(LwM2mPath.ROOTPATH.hashCode(), new LwM2mPath("/").hashCode());
+  }
+
+  @Test
+  public void paths_with_same_ids_and_different_lengths_are_not_equal() {
+    assertNotEquals(new LwM2mPath(3), new LwM2mPath(3, 0));
+    assertNotEquals(LwM2mPath.ROOTPATH, new LwM2mPath(0));
+    assertNotEquals(new LwM2mPath(3, 0, 0), new LwM2mPath(3, 0, 0, 0));
+  }
+
+  @Test
+  public void append_to_paths() {
+    assertEquals(new LwM2mPath(3), LwM2mPath.ROOTPATH.append(3));
+    assertEquals(new LwM2mPath(3, 0, 1), new LwM2mPath(3).append("0/1"));
+    assertEquals(new LwM2mPath(3, 0, 7, 1), new LwM2mPath(3, 0, 7).append(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void append_to_resource_instance_path() {
+    new LwM2mPath(3, 0, 7, 1).append(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parse_too_long_path() {
+    new LwM2mPath("/3/0/7/1/0");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parse_path_with_invalid_element() {
+    new LwM2mPath("/3/a/1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parse_path_with_empty_element() {
+    new LwM2mPath("/3//1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void parse_path_with_too_big_element() {
+    new LwM2mPath("/3/0/4294967296");
+  }
+
+  @Test
+  public void create_path_from_segments() {
+    assertEquals(LwM2mPath.ROOTPATH, LwM2mPath.fromSegments(Collections.<String> emptyList()));
+    assertEquals(new LwM2mPath(3, 0, 1), LwM2mPath.fromSegments(Arrays.asList("3", "0", "1")));
+  }
+
+  @Test
+  public void intern_paths() {
+    LwM2mPath path = LwM2mPath.intern("/3/0/1");
+    assertEquals(new LwM2mPath(3, 0, 1), path);
+    assertSame(path, LwM2mPath.intern("/3/0/1"));
+  }
+
+  @Test
+  public void path_starts_with_its_ancestors() {
+    LwM2mPath path = new LwM2mPath(3303, 0, 5700);
+    assertTrue(path.startsWith(LwM2mPath.ROOTPATH));
+    assertTrue(path.startsWith(new LwM2mPath(3303)));
+    assertTrue(path.startsWith(new LwM2mPath(3303, 0, 5700)));
+    assertFalse(path.startsWith(new LwM2mPath(3303, 1)));
+    assertFalse(new LwM2mPath(3303).startsWith(path));
+  }
+
+  @Test
+  public void paths_are_ordered_depth_first() {
+    List<LwM2mPath> paths = Arrays.asList(new LwM2mPath(4), new LwM2mPath(3, 1),
+        new LwM2mPath(3, 0, 1), LwM2mPath.ROOTPATH, new LwM2mPath(3, 0), new LwM2mPath(3));
+    Collections.sort(paths);
+    assertEquals(Arrays.asList(LwM2mPath.ROOTPATH, new LwM2mPath(3), new LwM2mPath(3, 0),
+        new LwM2mPath(3, 0, 1), new LwM2mPath(3, 1), new LwM2mPath(4)), paths);
+  }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.node.codec;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.leshan.core.MicroBenchmark;
+import org.eclipse.leshan.core.MicroBenchmark.Operation;
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.model.ObjectLoader;
+import org.eclipse.leshan.core.node.LwM2mMultipleResource;
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mSingleResource;
+import org.eclipse.leshan.core.node.TimestampedLwM2mNode;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Measures the encoding and decoding of a device object instance and of a list of timestamped
+ * values, in JSON and TLV.
+ */
+public class LwM2mNodeCodecBenchmark {
+
+  private static final int ITERATIONS = 20_000;
+  private static final LwM2mPath DEVICE_PATH = new LwM2mPath(3, 0);
+  private static final LwM2mPath BATTERY_PATH = new LwM2mPath(3, 0, 9);
+
+  private static LwM2mModel model;
+  private static LwM2mNodeEncoder encoder;
+  private static LwM2mNodeDecoder decoder;
+  private static LwM2mObjectInstance device;
+  private static List<TimestampedLwM2mNode> timestampedValues;
+
+  @BeforeClass
+  public static void createData() {
+    model = new LwM2mModel(ObjectLoader.loadDefault());
+    encoder = new DefaultLwM2mNodeEncoder();
+    decoder = new DefaultLwM2mNodeDecoder();
+
+    Map<Integer, Long> powerSources = new HashMap<>();
+    Map<Integer, Long> voltages = new HashMap<>();
+    for (int i = 0; i < 4; i++) {
+      powerSources.put(i, (long) i);
+      voltages.put(i, 3800L + i);
+    }
+    device = new LwM2mObjectInstance(0,
+        LwM2mSingleResource.newStringResource(0, "Open Mobile Alliance"),
+        LwM2mSingleResource.newStringResource(1, "Lightweight M2M Client"),
+        LwM2mSingleResource.newStringResource(2, "345000123"),
+        LwM2mSingleResource.newStringResource(3, "1.0"),
+        LwM2mMultipleResource.newIntegerResource(6, powerSources),
+        LwM2mMultipleResource.newIntegerResource(7, voltages),
+        LwM2mSingleResource.newIntegerResource(9, 100),
+        LwM2mSingleResource.newIntegerResource(10, 15),
+        LwM2mSingleResource.newDateResource(13, new Date(1367491215000L)),
+        LwM2mSingleResource.newStringResource(14, "+02:00"),
+        LwM2mSingleResource.newStringResource(16, "U"));
+
+    timestampedValues = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      timestampedValues.add(new TimestampedLwM2mNode(1500000000L + i,
+          LwM2mSingleResource.newIntegerResource(9, i)));
+    }
+  }
+
+  @Test
+  public void json_encode_instance() throws Exception {
+    encode("JSON encode /3/0", ContentFormat.JSON);
+  }
+
+  @Test
+  public void json_decode_instance() throws Exception {
+    decode("JSON decode /3/0", ContentFormat.JSON);
+  }
+
+  @Test
+  public void tlv_encode_instance() throws Exception {
+    encode("TLV encode /3/0", ContentFormat.TLV);
+  }
+
+  @Test
+  public void tlv_decode_instance() throws Exception {
+    decode("TLV decode /3/0", ContentFormat.TLV);
+  }
+
+  @Test
+  public void json_encode_timestamped_values() throws Exception {
+    MicroBenchmark.run("JSON encode 100 timestamped values", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return encoder.encodeTimestampedData(timestampedValues, ContentFormat.JSON, BATTERY_PATH,
+            model).length;
+      }
+    });
+  }
+
+  @Test
+  public void json_decode_timestamped_values() throws Exception {
+    final byte[] content = encoder.encodeTimestampedData(timestampedValues, ContentFormat.JSON,
+        BATTERY_PATH, model);
+    MicroBenchmark.run("JSON decode 100 timestamped values", ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return decoder.decodeTimestampedData(content, ContentFormat.JSON, BATTERY_PATH, model)
+            .size();
+      }
+    });
+  }
+
+  private void encode(String name, final ContentFormat format) throws Exception {
+    MicroBenchmark.run(name, ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return encoder.encode(device, format, DEVICE_PATH, model).length;
+      }
+    });
+  }
+
+  private void decode(String name, final ContentFormat format) throws Exception {
+    final byte[] content = encoder.encode(device, format, DEVICE_PATH, model);
+    MicroBenchmark.run(name, ITERATIONS, new Operation() {
+      @Override
+      public int run() {
+        return decoder.decode(content, format, DEVICE_PATH, model).getId();
+      }
+    });
+  }
+}
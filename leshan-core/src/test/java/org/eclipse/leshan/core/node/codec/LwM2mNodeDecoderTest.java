@@ -759,4 +759,29 @@ public class LwM2mNodeDecoderTest {
 
     decoder.decode(b.toString().getBytes(), ContentFormat.JSON, new LwM2mPath(3, 0, 11), model);
   }
+
+  @Test
+  public void json_base_name_after_resources() throws CodecException {
+    StringBuilder b = new StringBuilder();
+    b.append("{\"e\":[");
+    b.append("{\"n\":\"0\",\"sv\":\"Open \\u004dobile\\t\\\"Alliance\\\"\"},");
+    b.append("{\"n\":\"14\",\"sv\":\"caf\u00e9\"},");
+    b.append("{\"n\":\"9\",\"v\":100, \"unknown\":[{\"a\":null},true]}],");
+    b.append("\"bn\":\"/3/0\"}");
+
+    LwM2mObjectInstance oInstance = (LwM2mObjectInstance) decoder
+        .decode(b.toString().getBytes(StandardCharsets.UTF_8), ContentFormat.JSON,
+            new LwM2mPath(3, 0), model);
+
+    assertEquals(0, oInstance.getId());
+    assertEquals("Open Mobile\t\"Alliance\"", oInstance.getResource(0).getValue());
+    assertEquals("caf\u00e9", oInstance.getResource(14).getValue());
+    assertEquals(100L, oInstance.getResource(9).getValue());
+  }
+
+  @Test(expected = CodecException.class)
+  public void json_invalid_content() {
+    decoder.decode("{\"e\":[{\"n\":\"1\",\"v\":2}".getBytes(), ContentFormat.JSON,
+        new LwM2mPath(3, 0), model);
+  }
 }
@@ -289,4 +289,28 @@ public class LwM2mNodeEncoderTest {
     String expected = b.toString();
     Assert.assertEquals(expected, new String(encoded));
   }
+
+  @Test
+  public void json_encode_and_decode_many_timestamped_instances() throws CodecException {
+    List<TimestampedLwM2mNode> data = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      data.add(new TimestampedLwM2mNode(1000L + i, new LwM2mObjectInstance(0,
+          LwM2mSingleResource.newFloatResource(1, i / 4d),
+          LwM2mSingleResource.newStringResource(0, "caf\u00e9 \"" + i + "\"\n"))));
+    }
+
+    byte[] encoded = encoder
+        .encodeTimestampedData(data, ContentFormat.JSON, new LwM2mPath(1024, 0), model);
+    Assert.assertTrue(new String(encoded, StandardCharsets.UTF_8).startsWith(
+        "{\"bn\":\"/1024/0\",\"e\":[{\"n\":\"0\",\"sv\":\"caf\u00e9 \\\"0\\\"\\n\",\"t\":1000},"));
+
+    List<TimestampedLwM2mNode> decoded = new DefaultLwM2mNodeDecoder()
+        .decodeTimestampedData(encoded, ContentFormat.JSON, new LwM2mPath(1024, 0), model);
+
+    // decoded nodes are sorted from the most recent to the oldest
+    Assert.assertEquals(300, decoded.size());
+    for (int i = 0; i < 300; i++) {
+      Assert.assertEquals(data.get(299 - i), decoded.get(i));
+    }
+  }
 }
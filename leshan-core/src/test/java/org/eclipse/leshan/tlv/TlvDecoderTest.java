@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.eclipse.leshan.core.node.ObjectLink;
+import org.eclipse.leshan.tlv.Tlv.TlvType;
 import org.eclipse.leshan.util.Hex;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -77,4 +78,66 @@ public class TlvDecoderTest {
     assertEquals(0xffff, objlnk.getObjectId());
     assertEquals(0xffff, objlnk.getObjectInstanceId());
   }
+
+  @Test
+  public void read_device_object_in_place() throws TlvException {
+    String dataStr = "C800144F70656E204D6F62696C6520416C6C69616E6365C801164C69676874776569676874204D324D20436C69656E74C80209333435303030313233C303312E30860641000141010588070842000ED842011388870841007D42010384C10964C10A0F830B410000C40D5182428FC60E2B30323A3030C10F55";
+    byte[] bytes = Hex.decodeHex(dataStr.toCharArray());
+    TlvReader reader = new TlvReader(ByteBuffer.wrap(bytes));
+
+    assertTrue(reader.next());
+    assertEquals(TlvType.RESOURCE_VALUE, reader.getType());
+    assertEquals(0, reader.getIdentifier());
+    assertEquals("Open Mobile Alliance", reader.getString());
+
+    // skip resources until the multiple resource 7
+    while (reader.next() && reader.getIdentifier() != 7) {
+    }
+    assertEquals(TlvType.MULTIPLE_RESOURCE, reader.getType());
+    TlvReader instances = reader.children();
+    assertTrue(instances.next());
+    assertEquals(TlvType.RESOURCE_INSTANCE, instances.getType());
+    assertEquals(0x0ED8, instances.getInteger());
+    assertTrue(instances.next());
+    assertEquals(0x1388, instances.getInteger());
+    assertFalse(instances.next());
+
+    // resource 13 is a date
+    while (reader.next() && reader.getIdentifier() != 13) {
+    }
+    assertEquals(0x5182428FL * 1000, reader.getDate().getTime());
+    assertEquals(4, reader.getValue().remaining());
+  }
+
+  @Test
+  public void read_signed_values() throws TlvException {
+    TlvWriter writer = new TlvWriter();
+    writer.writeInteger(0, -1).writeInteger(1, -300).writeInteger(2, Long.MIN_VALUE)
+        .writeFloat(3, -1.5f).writeFloat(4, 2.25d);
+    TlvReader reader = new TlvReader(ByteBuffer.wrap(writer.toByteArray()));
+
+    reader.next();
+    assertEquals(-1, reader.getInteger());
+    reader.next();
+    assertEquals(-300, reader.getInteger());
+    reader.next();
+    assertEquals(Long.MIN_VALUE, reader.getInteger());
+    reader.next();
+    assertEquals(-1.5d, reader.getFloat(), 0);
+    reader.next();
+    assertEquals(2.25d, reader.getFloat(), 0);
+    assertFalse(reader.hasNext());
+
+    // the reader can be replayed
+    reader.rewind();
+    assertTrue(reader.next());
+    assertEquals(0, reader.getIdentifier());
+  }
+
+  @Test(expected = TlvException.class)
+  public void read_truncated_value() throws TlvException {
+    // resource value of length 5 with only 2 bytes
+    TlvReader reader = new TlvReader(ByteBuffer.wrap(Hex.decodeHex("C5010102".toCharArray())));
+    reader.next();
+  }
 }
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
 
 import org.eclipse.leshan.tlv.Tlv.TlvType;
@@ -87,4 +88,60 @@ public class TlvEncoderTest {
 
     assertArrayEquals(expectedTlv, decodedTlv);
   }
+
+  @Test
+  public void encode_nested_instances_with_large_values() throws TlvException {
+    byte[] small = new byte[7];
+    byte[] medium = new byte[300];
+    byte[] large = new byte[70_000];
+    Arrays.fill(large, (byte) 0x5A);
+    Tlv[] expectedTlv = new Tlv[]{
+        new Tlv(TlvType.OBJECT_INSTANCE, new Tlv[]{
+            new Tlv(TlvType.RESOURCE_VALUE, null, small, 0),
+            new Tlv(TlvType.MULTIPLE_RESOURCE, new Tlv[]{
+                new Tlv(TlvType.RESOURCE_INSTANCE, null, medium, 0),
+                new Tlv(TlvType.RESOURCE_INSTANCE, null, large, 1)}, null, 1),
+            new Tlv(TlvType.RESOURCE_VALUE, null, TlvEncoder.encodeString("a string"), 300)},
+            null, 2),
+        new Tlv(TlvType.OBJECT_INSTANCE, new Tlv[0], null, 3)};
+
+    ByteBuffer encoded = TlvEncoder.encode(expectedTlv);
+    Tlv[] decodedTlv = TlvDecoder.decode(encoded);
+
+    assertArrayEquals(expectedTlv, decodedTlv);
+  }
+
+  @Test
+  public void write_values_with_writer() throws TlvException {
+    TlvWriter writer = new TlvWriter(4);
+    writer.beginObjectInstance(0)
+        .writeInteger(0, 100)
+        .beginMultipleResource(1)
+        .writeBoolean(0, true)
+        .writeString(1, "hello")
+        .end()
+        .end();
+
+    Tlv[] expectedTlv = new Tlv[]{
+        new Tlv(TlvType.OBJECT_INSTANCE, new Tlv[]{
+            new Tlv(TlvType.RESOURCE_VALUE, null, TlvEncoder.encodeInteger(100), 0),
+            new Tlv(TlvType.MULTIPLE_RESOURCE, new Tlv[]{
+                new Tlv(TlvType.RESOURCE_INSTANCE, null, TlvEncoder.encodeBoolean(true), 0),
+                new Tlv(TlvType.RESOURCE_INSTANCE, null, TlvEncoder.encodeString("hello"), 1)},
+                null, 1)},
+            null, 0)};
+    assertArrayEquals(TlvEncoder.encode(expectedTlv).array(), writer.toByteArray());
+
+    // the writer can be reused
+    writer.reset();
+    writer.writeInteger(500, 100);
+    assertArrayEquals(new Tlv[]{
+            new Tlv(TlvType.RESOURCE_VALUE, null, TlvEncoder.encodeInteger(100), 500)},
+        TlvDecoder.decode(ByteBuffer.wrap(writer.toByteArray())));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cannot_get_content_of_not_ended_writer() {
+    new TlvWriter().beginObjectInstance(0).toByteArray();
+  }
 }
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.registration.AdmissionController;
+import org.eclipse.leshan.server.registration.AdmissionOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+  private static final int RETRY_DELAY = 30;
+
+  private IntegrationTestHelper helper;
+  private AdmissionController admissionController;
+  private ThreadPoolExecutor executor;
+  private CoapEndpoint endpoint;
+
+  @Before
+  public void start() throws Exception {
+    admissionController = new AdmissionController(
+        new AdmissionOptions().setMaxConcurrentRequests(1).setRetryDelay(RETRY_DELAY, 0));
+    // a single thread and no queue, so the executor rejects the requests while the thread is busy
+    executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new SynchronousQueue<Runnable>());
+    helper = new IntegrationTestHelper() {
+      @Override
+      protected LeshanServerBuilder createServerBuilder() {
+        return super.createServerBuilder().setRegistrationExecutor(executor)
+            .setAdmissionController(admissionController);
+      }
+    };
+    helper.initialize();
+    helper.createServer();
+    helper.server.start();
+
+    CoapEndpoint.CoapEndpointBuilder builder = new CoapEndpoint.CoapEndpointBuilder();
+    builder.setInetSocketAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    builder.setNetworkConfig(NetworkConfig.createStandardWithoutFile());
+    endpoint = builder.build();
+    endpoint.start();
+  }
+
+  @After
+  public void stop() {
+    endpoint.destroy();
+    helper.server.destroy();
+    executor.shutdownNow();
+    helper.dispose();
+  }
+
+  @Test
+  public void register_when_concurrency_limit_is_reached() throws Exception {
+    // take the only slot as if a request was being handled
+    assertEquals(0, admissionController.admit(InetAddress.getLoopbackAddress()));
+
+    Response response = sendRegisterRequest();
+    assertEquals(ResponseCode.SERVICE_UNAVAILABLE, response.getCode());
+    assertEquals(RETRY_DELAY, response.getOptions().getMaxAge().longValue());
+
+    admissionController.release();
+    response = sendRegisterRequest();
+    assertEquals(ResponseCode.CREATED, response.getCode());
+    assertEquals(0, admissionController.getInFlightCount());
+  }
+
+  @Test
+  public void register_when_executor_rejects_the_request() throws Exception {
+    // keep the only executor thread busy
+    final CountDownLatch blocked = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    Response response = sendRegisterRequest();
+    assertEquals(ResponseCode.SERVICE_UNAVAILABLE, response.getCode());
+    assertEquals(RETRY_DELAY, response.getOptions().getMaxAge().longValue());
+    // the request was admitted, its slot must be released
+    assertEquals(0, admissionController.getInFlightCount());
+
+    blocked.countDown();
+    long timeout = System.currentTimeMillis() + 2000;
+    while (executor.getActiveCount() > 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    response = sendRegisterRequest();
+    assertEquals(ResponseCode.CREATED, response.getCode());
+    assertEquals(0, admissionController.getInFlightCount());
+  }
+
+  private Response sendRegisterRequest() throws InterruptedException {
+    Request request = Request.newPost();
+    request.setDestinationContext(new AddressEndpointContext(helper.server.getUnsecuredAddress()));
+    request.getOptions().addUriPath("rd");
+    request.getOptions().addUriQuery("ep=" + helper.getCurrentEndpoint());
+    request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+    request.setPayload("</1/0>,</3/0>");
+    endpoint.sendRequest(request);
+
+    Response response = request.waitForResponse(5000);
+    assertNotNull("no response received", response);
+    return response;
+  }
+}
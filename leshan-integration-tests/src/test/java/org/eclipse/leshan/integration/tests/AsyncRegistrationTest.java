@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+
+public class AsyncRegistrationTest extends RegistrationTest {
+
+  public AsyncRegistrationTest() {
+    helper = new IntegrationTestHelper() {
+      @Override
+      protected LeshanServerBuilder createServerBuilder() {
+        return super.createServerBuilder().setRegistrationExecutor(new ThreadPoolExecutor(2, 2, 0,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(10)));
+      }
+    };
+  }
+}
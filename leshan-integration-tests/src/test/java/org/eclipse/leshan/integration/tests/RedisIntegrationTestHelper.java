@@ -17,6 +17,7 @@ package org.eclipse.leshan.integration.tests;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
 
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
@@ -30,6 +31,16 @@ import redis.clients.util.Pool;
 
 public class RedisIntegrationTestHelper extends IntegrationTestHelper {
 
+  private final int nearCacheSize;
+
+  public RedisIntegrationTestHelper() {
+    this(0);
+  }
+
+  public RedisIntegrationTestHelper(int nearCacheSize) {
+    this.nearCacheSize = nearCacheSize;
+  }
+
   @Override
   public void createServer() {
     LeshanServerBuilder builder = new LeshanServerBuilder();
@@ -47,7 +58,10 @@ public class RedisIntegrationTestHelper extends IntegrationTestHelper {
       redisURI = "";
     }
     Pool<Jedis> jedis = new JedisPool(redisURI);
-    builder.setRegistrationStore(new RedisRegistrationStore(jedis));
+    builder.setRegistrationStore(new RedisRegistrationStore(jedis,
+        Executors.newSingleThreadScheduledExecutor(), RedisRegistrationStore.DEFAULT_CLEAN_PERIOD,
+        RedisRegistrationStore.DEFAULT_GRACE_PERIOD, RedisRegistrationStore.DEFAULT_CLEAN_LIMIT,
+        nearCacheSize));
 
     // Build server !
     server = builder.build();
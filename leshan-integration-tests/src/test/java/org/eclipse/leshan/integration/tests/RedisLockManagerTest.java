@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.leshan.server.cluster.RedisLockManager;
+import org.eclipse.leshan.server.cluster.RedisLockManager.Lease;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+public class RedisLockManagerTest {
+
+  private static final byte[] KEY = "LOCK:TEST".getBytes(UTF_8);
+
+  private Pool<Jedis> pool;
+  private List<RedisLockManager> managers = new ArrayList<>();
+
+  @Before
+  public void start() {
+    String redisURI = System.getenv("REDIS_URI");
+    pool = new JedisPool(redisURI == null ? "" : redisURI);
+    try (Jedis j = pool.getResource()) {
+      j.del(KEY);
+    }
+  }
+
+  @After
+  public void stop() {
+    for (RedisLockManager manager : managers) {
+      manager.stop();
+    }
+    pool.destroy();
+  }
+
+  private RedisLockManager givenLockManager(long leaseTime, long acquireTimeout) {
+    RedisLockManager manager = new RedisLockManager(pool, null, leaseTime, acquireTimeout);
+    manager.start();
+    managers.add(manager);
+    return manager;
+  }
+
+  @Test
+  public void lock_is_exclusive_under_contention() throws Exception {
+    // 2 managers simulate 2 cluster nodes
+    final RedisLockManager[] nodes = {givenLockManager(2_000, 30_000),
+        givenLockManager(2_000, 30_000)};
+    final int nbThreads = 16;
+    final int nbLocks = 50;
+    final AtomicInteger owners = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    final AtomicLong lastFencingToken = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(nbThreads);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < nbThreads; i++) {
+      final RedisLockManager manager = nodes[i % 2];
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int n = 0; n < nbLocks; n++) {
+              Lease lease = manager.acquire(KEY);
+              try {
+                if (owners.incrementAndGet() != 1) {
+                  errors.incrementAndGet();
+                }
+                if (lease.getFencingToken() <= lastFencingToken.getAndSet(
+                    lease.getFencingToken())) {
+                  errors.incrementAndGet();
+                }
+                owners.decrementAndGet();
+              } finally {
+                manager.release(lease);
+              }
+            }
+          } catch (RuntimeException e) {
+            errors.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertEquals(0, errors.get());
+    // without polling, the lock is handed over without waiting the lease expiration
+    long durationInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("took " + durationInMs + "ms", durationInMs < 30_000);
+  }
+
+  @Test
+  public void waiter_on_other_node_is_woken_up_on_release() throws Exception {
+    RedisLockManager node1 = givenLockManager(10_000, 5_000);
+    RedisLockManager node2 = givenLockManager(10_000, 5_000);
+    Lease lease = node1.acquire(KEY);
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final AtomicReference<Lease> lease2 = new AtomicReference<>();
+    node2.acquire(KEY, new RedisLockManager.Callback() {
+      @Override
+      public void onAcquired(Lease l) {
+        lease2.set(l);
+        acquired.countDown();
+      }
+
+      @Override
+      public void onError(Exception e) {
+      }
+    });
+    assertEquals(1, acquired.getCount());
+
+    node1.release(lease);
+    // the lease is 10s long, so the lock was acquired because the release was published
+    assertTrue(acquired.await(2, TimeUnit.SECONDS));
+    assertTrue(lease2.get().getFencingToken() > lease.getFencingToken());
+    node2.release(lease2.get());
+  }
+
+  @Test
+  public void acquire_fails_after_timeout() throws Exception {
+    RedisLockManager node1 = givenLockManager(10_000, 5_000);
+    RedisLockManager node2 = givenLockManager(10_000, 200);
+    Lease lease = node1.acquire(KEY);
+
+    final CountDownLatch failed = new CountDownLatch(1);
+    final AtomicReference<Exception> error = new AtomicReference<>();
+    node2.acquire(KEY, new RedisLockManager.Callback() {
+      @Override
+      public void onAcquired(Lease l) {
+      }
+
+      @Override
+      public void onError(Exception e) {
+        error.set(e);
+        failed.countDown();
+      }
+    });
+
+    assertTrue(failed.await(2, TimeUnit.SECONDS));
+    assertNotNull(error.get());
+    node1.release(lease);
+  }
+
+  @Test
+  public void lock_can_be_acquired_after_restart() throws Exception {
+    final RedisLockManager node = givenLockManager(10_000, 5_000);
+    node.release(node.acquire(KEY));
+
+    node.stop();
+    node.start();
+
+    // the internal executor is needed to time out and retry, it must be running again
+    Lease lease = node.acquire(KEY);
+    final CountDownLatch acquired = new CountDownLatch(1);
+    node.acquire(KEY, new RedisLockManager.Callback() {
+      @Override
+      public void onAcquired(Lease l) {
+        acquired.countDown();
+        node.release(l);
+      }
+
+      @Override
+      public void onError(Exception e) {
+      }
+    });
+    node.release(lease);
+    assertTrue(acquired.await(2, TimeUnit.SECONDS));
+  }
+}
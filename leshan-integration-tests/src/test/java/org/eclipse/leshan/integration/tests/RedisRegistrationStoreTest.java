@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.leshan.Link;
+import org.eclipse.leshan.core.californium.EndpointContextUtil;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.core.request.ObserveRequest;
+import org.eclipse.leshan.server.californium.ObserveUtil;
+import org.eclipse.leshan.server.cluster.RedisRegistrationStore;
+import org.eclipse.leshan.server.registration.Registration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.Pool;
+
+public class RedisRegistrationStoreTest {
+
+  private static final int POOL_SIZE = 2;
+
+  private Pool<Jedis> pool;
+  private RedisRegistrationStore store;
+  private Registration registration;
+
+  @Before
+  public void start() {
+    JedisPoolConfig config = new JedisPoolConfig();
+    config.setMaxTotal(POOL_SIZE);
+    // fail instead of hanging forever if the pool is exhausted
+    config.setMaxWaitMillis(10_000);
+    pool = createPool(config);
+    store = new RedisRegistrationStore(pool);
+    store.start();
+
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 5683);
+    registration = new Registration.Builder("regId", "registration-store-test",
+        Identity.unsecure(address), address).lifeTimeInSec(60L)
+            .objectLinks(new Link[] { new Link("/3/0") }).build();
+    store.addRegistration(registration);
+  }
+
+  @After
+  public void stop() {
+    store.removeRegistration(registration.getId());
+    store.stop();
+    pool.destroy();
+  }
+
+  @Test
+  public void concurrent_add_observation_does_not_exhaust_the_pool() throws Exception {
+    final int nbThreads = 4 * POOL_SIZE;
+    final AtomicInteger errors = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(nbThreads);
+
+    for (int i = 0; i < nbThreads; i++) {
+      final Observation observation = new Observation(new byte[] { (byte) i },
+          registration.getId(), new LwM2mPath(3, 0, i), Collections.<String, String> emptyMap());
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            assertNotNull(store.addObservation(registration.getId(), observation));
+          } catch (RuntimeException | AssertionError e) {
+            errors.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    assertTrue("addObservation calls are blocked", done.await(30, TimeUnit.SECONDS));
+    assertEquals(0, errors.get());
+  }
+
+  @Test
+  public void near_cache_miss_is_counted_once() {
+    // the near cache keeps a connection for its invalidation channel
+    Pool<Jedis> cachePool = createPool(new JedisPoolConfig());
+    RedisRegistrationStore cachedStore = new RedisRegistrationStore(cachePool,
+        Executors.newScheduledThreadPool(1), 60, 0, 500, 100);
+    cachedStore.start();
+    try {
+      cachedStore.get(new Token(new byte[] { 42 }));
+      assertEquals(1, cachedStore.getNearCache().getMissCount());
+    } finally {
+      cachedStore.stop();
+      cachePool.destroy();
+    }
+  }
+
+  @Test
+  public void replaced_observation_is_removed_from_its_path_index() {
+    Token token = new Token(new byte[] { 1, 2, 3 });
+    assertNull(store.put(token, coapObservation(token, new LwM2mPath(3, 0, 1))));
+    assertNotNull(store.put(token, coapObservation(token, new LwM2mPath(3, 0, 2))));
+
+    assertEquals(0, store.getObservations(registration.getId(), new LwM2mPath(3, 0, 1)).size());
+    assertEquals(1, store.getObservations(registration.getId(), new LwM2mPath(3, 0, 2)).size());
+    store.remove(token);
+  }
+
+  private org.eclipse.californium.core.observe.Observation coapObservation(Token token,
+      LwM2mPath path) {
+    Request coapRequest = Request.newGet();
+    coapRequest.setToken(token);
+    coapRequest.getOptions().setUriPath(path.toString());
+    coapRequest.setObserve();
+    coapRequest.setDestinationContext(
+        EndpointContextUtil.extractContext(registration.getIdentity()));
+    coapRequest.setUserContext(ObserveUtil.createCoapObserveRequestContext(
+        registration.getEndpoint(), registration.getId(), new ObserveRequest(path.toString())));
+    return new org.eclipse.californium.core.observe.Observation(coapRequest, null);
+  }
+
+  private Pool<Jedis> createPool(JedisPoolConfig config) {
+    String redisURI = System.getenv("REDIS_URI");
+    return redisURI == null || redisURI.isEmpty() ? new JedisPool(config, "localhost")
+        : new JedisPool(config, URI.create(redisURI));
+  }
+}
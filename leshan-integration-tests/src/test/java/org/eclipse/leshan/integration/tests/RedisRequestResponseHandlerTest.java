@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.leshan.server.cluster.RedisRequestResponseHandler;
+import org.eclipse.leshan.server.cluster.RedisTokenHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+public class RedisRequestResponseHandlerTest {
+
+  private IntegrationTestHelper helper = new RedisIntegrationTestHelper();
+  private Pool<Jedis> pool;
+  private RedisTokenHandler tokenHandler;
+
+  @Before
+  public void start() {
+    helper.initialize();
+    helper.createServer();
+    helper.server.start();
+    String redisURI = System.getenv("REDIS_URI");
+    pool = new JedisPool(redisURI == null ? "" : redisURI);
+    tokenHandler = new RedisTokenHandler(pool, "node1");
+  }
+
+  @After
+  public void stop() {
+    tokenHandler.destroy();
+    helper.server.destroy();
+    helper.dispose();
+    pool.destroy();
+  }
+
+  @Test
+  public void destroy_stops_the_handler_threads() throws Exception {
+    int threads = countChannelThreads();
+    RedisRequestResponseHandler handler = new RedisRequestResponseHandler(pool, helper.server,
+        helper.server.getRegistrationService(), tokenHandler,
+        helper.server.getObservationService());
+    // the request channel reader and the response channel writer
+    assertEquals(threads + 2, countChannelThreads());
+
+    handler.destroy();
+    assertEquals(threads, countChannelThreads());
+  }
+
+  private int countChannelThreads() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && (thread.getName().equals("Redis LESHAN_REQ channel reader")
+          || thread.getName().equals("Redis LESHAN_RESP channel writer"))) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
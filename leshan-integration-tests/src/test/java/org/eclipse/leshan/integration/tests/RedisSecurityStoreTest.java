@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.leshan.server.cluster.RedisSecurityStore;
+import org.eclipse.leshan.server.security.BulkResult;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+public class RedisSecurityStoreTest {
+
+  private Pool<Jedis> pool;
+  private RedisSecurityStore store;
+
+  @Before
+  public void start() {
+    String redisURI = System.getenv("REDIS_URI");
+    pool = new JedisPool(redisURI == null ? "" : redisURI);
+    store = new RedisSecurityStore(pool);
+  }
+
+  @After
+  public void stop() {
+    store.removeAll(Arrays.asList("bulk1", "bulk2", "bulk3"));
+    pool.destroy();
+  }
+
+  @Test
+  public void security_infos_are_added_and_removed_in_bulk() throws Exception {
+    store.add(pskInfo("bulk1", "bulk-id1"));
+
+    List<SecurityInfo> infos = new ArrayList<>();
+    infos.add(pskInfo("bulk1", "bulk-id1-bis"));
+    infos.add(pskInfo("bulk2", "bulk-id2"));
+    infos.add(pskInfo("bulk3", "bulk-id2"));
+    List<BulkResult> results = store.addAll(infos);
+
+    assertEquals(3, results.size());
+    assertEquals(pskInfo("bulk1", "bulk-id1"), results.get(0).getPrevious());
+    assertTrue(results.get(1).isSuccess());
+    assertNull(results.get(1).getPrevious());
+    assertFalse(results.get(2).isSuccess());
+    assertNull(store.getByIdentity("bulk-id1"));
+    assertEquals("bulk1", store.getByIdentity("bulk-id1-bis").getEndpoint());
+    assertEquals("bulk2", store.getByIdentity("bulk-id2").getEndpoint());
+    assertNull(store.getByEndpoint("bulk3"));
+
+    results = store.removeAll(Arrays.asList("bulk2", "bulk3"));
+    assertEquals(pskInfo("bulk2", "bulk-id2"), results.get(0).getPrevious());
+    assertNull(results.get(1).getPrevious());
+    assertNull(store.getByIdentity("bulk-id2"));
+    assertNotNull(store.getByEndpoint("bulk1"));
+  }
+
+  private SecurityInfo pskInfo(String endpoint, String identity) {
+    return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, new byte[] { 1, 2, 3 });
+  }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.server.cluster.RedisTokenHandler;
+import org.eclipse.leshan.server.registration.Registration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+public class RedisTokenHandlerTest {
+
+  private Pool<Jedis> pool;
+
+  @Before
+  public void start() {
+    String redisURI = System.getenv("REDIS_URI");
+    pool = new JedisPool(redisURI == null ? "" : redisURI);
+  }
+
+  @After
+  public void stop() {
+    pool.destroy();
+  }
+
+  @Test
+  public void ownership_moves_to_last_registering_instance() throws Exception {
+    RedisTokenHandler node1 = new RedisTokenHandler(pool, "node1");
+    RedisTokenHandler node2 = new RedisTokenHandler(pool, "node2");
+    Registration registration = new Registration.Builder("regId", "token-handler-test",
+        Identity.unsecure(InetSocketAddress.createUnresolved("localhost", 5683)),
+        InetSocketAddress.createUnresolved("localhost", 5683)).lifeTimeInSec(60L).build();
+
+    node1.registered(registration, null, Collections.<Observation>emptyList());
+    assertTrue(node1.isResponsible("token-handler-test"));
+    assertFalse(node2.isResponsible("token-handler-test"));
+
+    node2.registered(registration, null, Collections.<Observation>emptyList());
+    assertTrue(node2.isResponsible("token-handler-test"));
+    // node1 is notified asynchronously
+    long timeout = System.currentTimeMillis() + 2000;
+    while (node1.isResponsible("token-handler-test") && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertFalse(node1.isResponsible("token-handler-test"));
+
+    node2.unregistered(registration, Collections.<Observation>emptyList(), false, null);
+    assertFalse(node2.isResponsible("token-handler-test"));
+    node1.destroy();
+    node2.destroy();
+  }
+
+  @Test
+  public void destroy_stops_the_subscriber_thread() throws Exception {
+    int threads = countOwnerChannelReaders();
+    RedisTokenHandler handler = new RedisTokenHandler(pool, "node1");
+    assertEquals(threads + 1, countOwnerChannelReaders());
+
+    handler.destroy();
+    assertEquals(threads, countOwnerChannelReaders());
+  }
+
+  private int countOwnerChannelReaders() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive() && thread.getName().equals("Redis LESHAN_EP_OWNER channel reader")) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -15,7 +15,11 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.californium;
 
+import java.util.Collection;
+
 import org.eclipse.californium.core.observe.ObservationStore;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.server.registration.RegistrationStore;
 
 /**
@@ -23,4 +27,22 @@ import org.eclipse.leshan.server.registration.RegistrationStore;
  */
 public interface CaliforniumRegistrationStore extends RegistrationStore, ObservationStore {
 
+  /**
+   * Get the observations of a registration which target the given path.
+   *
+   * @param registrationId the registration id
+   * @param path the observed path
+   * @return the observations, never <code>null</code>
+   */
+  Collection<Observation> getObservations(String registrationId, LwM2mPath path);
+
+  /**
+   * Get the observations of a registration which target the given path or one of its descendants,
+   * e.g. all the observations under /3303.
+   *
+   * @param registrationId the registration id
+   * @param prefix the path under which observations are looked for
+   * @return the observations, never <code>null</code>
+   */
+  Collection<Observation> getObservationsUnder(String registrationId, LwM2mPath prefix);
 }
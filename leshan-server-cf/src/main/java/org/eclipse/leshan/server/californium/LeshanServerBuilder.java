@@ -24,6 +24,8 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.config.NetworkConfig;
@@ -43,12 +45,16 @@ import org.eclipse.leshan.core.request.exception.ClientSleepingException;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.californium.impl.InMemoryRegistrationStore;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
+import org.eclipse.leshan.server.californium.impl.LeshanServerOptions;
 import org.eclipse.leshan.server.californium.impl.LwM2mPskStore;
+import org.eclipse.leshan.server.californium.impl.NotificationDispatcher;
 import org.eclipse.leshan.server.impl.InMemorySecurityStore;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.model.StandardModelProvider;
 import org.eclipse.leshan.server.queue.ClientAwakeTimeProvider;
+import org.eclipse.leshan.server.queue.RequestQueue;
 import org.eclipse.leshan.server.queue.StaticClientAwakeTimeProvider;
+import org.eclipse.leshan.server.registration.AdmissionController;
 import org.eclipse.leshan.server.registration.RandomStringRegistrationIdProvider;
 import org.eclipse.leshan.server.registration.Registration;
 import org.eclipse.leshan.server.registration.RegistrationIdProvider;
@@ -96,6 +102,11 @@ public class LeshanServerBuilder {
   private boolean noUnsecuredEndpoint;
   private boolean noQueueMode = false;
 
+  private NotificationDispatcher notificationDispatcher;
+  private RequestQueue requestQueue;
+  private ExecutorService registrationExecutor;
+  private AdmissionController admissionController;
+
   /**
    * <p>
    * Set the address/port for unsecured CoAP Server.
@@ -342,6 +353,48 @@ public class LeshanServerBuilder {
     return this;
   }
 
+  /**
+   * Sets a {@link NotificationDispatcher} to decode notifications and notify the observation
+   * listeners outside of the CoAP threads. By default, notifications are handled synchronously by
+   * the CoAP threads.
+   */
+  public LeshanServerBuilder setNotificationDispatcher(NotificationDispatcher dispatcher) {
+    this.notificationDispatcher = dispatcher;
+    return this;
+  }
+
+  /**
+   * Sets a {@link RequestQueue} to queue the asynchronous requests sent to sleeping clients until
+   * they wake up. By default, no request is queued and {@link ClientSleepingException} is raised.
+   * This has no effect if queue mode support is disabled.
+   */
+  public LeshanServerBuilder setRequestQueue(RequestQueue requestQueue) {
+    this.requestQueue = requestQueue;
+    return this;
+  }
+
+  /**
+   * Sets an {@link ExecutorService} to handle register, update and deregister requests outside of
+   * the CoAP threads, so that slow {@link Authorizer} or store accesses do not block them. It
+   * should be bounded (e.g. a {@link ThreadPoolExecutor} with a bounded queue), requests it rejects
+   * are answered with a 5.03 Service Unavailable response. The executor is shut down when the
+   * server is destroyed. By default, requests are handled synchronously by the CoAP threads.
+   */
+  public LeshanServerBuilder setRegistrationExecutor(ExecutorService registrationExecutor) {
+    this.registrationExecutor = registrationExecutor;
+    return this;
+  }
+
+  /**
+   * Sets an {@link AdmissionController} to limit the rate and the concurrency of register, update
+   * and deregister requests. Rejected requests are answered with a 5.03 Service Unavailable response
+   * with a Max-Age option telling when to retry. By default, all requests are handled.
+   */
+  public LeshanServerBuilder setAdmissionController(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+    return this;
+  }
+
   /**
    * Sets a new {@link RegistrationIdProvider} object different from the default one (Random
    * string).
@@ -528,6 +581,9 @@ public class LeshanServerBuilder {
     return new LeshanServer(unsecuredEndpoint, securedEndpoint, registrationStore, securityStore,
         authorizer,
         modelProvider, encoder, decoder, coapConfig, noQueueMode, awakeTimeProvider,
-        registrationIdProvider);
+        registrationIdProvider, new LeshanServerOptions()
+            .setNotificationDispatcher(notificationDispatcher).setRequestQueue(requestQueue)
+            .setRegistrationExecutor(registrationExecutor)
+            .setAdmissionController(admissionController));
   }
 }
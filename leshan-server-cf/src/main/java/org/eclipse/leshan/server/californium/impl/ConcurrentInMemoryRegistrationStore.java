@@ -0,0 +1,569 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.californium.core.observe.ObservationUtil;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
+import org.eclipse.leshan.server.californium.ObserveUtil;
+import org.eclipse.leshan.server.registration.Deregistration;
+import org.eclipse.leshan.server.registration.ExpirationListener;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationExpirationQueue;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.eclipse.leshan.server.registration.UpdatedRegistration;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in memory store for registration and observation designed for a large number of clients.
+ * <p>
+ * Unlike {@link InMemoryRegistrationStore} which guards all its indexes with a single lock, this
+ * store keeps its indexes in {@link ConcurrentHashMap}s and serializes modifications per endpoint
+ * using a fixed set of striped locks. Lookups never block and modifications of different endpoints
+ * can run in parallel.
+ * <p>
+ * All indexes of a given endpoint (endpoint, registration id, socket address and observations) are
+ * always modified under the lock of this endpoint, so the consistency guarantees are the same as
+ * the {@link InMemoryRegistrationStore} ones.
+ */
+public class ConcurrentInMemoryRegistrationStore implements CaliforniumRegistrationStore,
+    Startable, Stoppable {
+
+  /**
+   * Default number of locks used to serialize modifications of registrations.
+   */
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 256;
+
+  private final Logger LOG = LoggerFactory.getLogger(ConcurrentInMemoryRegistrationStore.class);
+
+  // Data structure
+  private final ConcurrentMap<String /* end-point */, Registration> regsByEp = new ConcurrentHashMap<>();
+  private final ConcurrentMap<InetSocketAddress, Registration> regsByAddr = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String /* reg-id */, Registration> regsByRegId = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Token, org.eclipse.californium.core.observe.Observation> obsByToken = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String /* reg-id */, Set<Token>> tokensByRegId = new ConcurrentHashMap<>();
+  private final ObservationPathIndex obsByPath = new ObservationPathIndex();
+  private final RegistrationExpirationQueue expirationQueue = new RegistrationExpirationQueue();
+
+  // Locks used to serialize modifications, an endpoint is always associated to the same lock.
+  private final Lock[] locks;
+
+  // Listener use to notify when a registration expires
+  private ExpirationListener expirationListener;
+
+  private final ScheduledExecutorService schedExecutor;
+  private final long cleanPeriod; // in seconds
+
+  public ConcurrentInMemoryRegistrationStore() {
+    this(2); // default clean period : 2s
+  }
+
+  public ConcurrentInMemoryRegistrationStore(long cleanPeriodInSec) {
+    this(Executors.newScheduledThreadPool(1,
+        new NamedThreadFactory(
+            String.format("ConcurrentInMemoryRegistrationStore Cleaner (%ds)", cleanPeriodInSec))),
+        cleanPeriodInSec);
+  }
+
+  public ConcurrentInMemoryRegistrationStore(ScheduledExecutorService schedExecutor,
+      long cleanPeriodInSec) {
+    this(schedExecutor, cleanPeriodInSec, DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * @param schedExecutor the executor used to clean expired registrations.
+   * @param cleanPeriodInSec the time in seconds between 2 cleaning tasks.
+   * @param concurrencyLevel the number of locks used to serialize modifications. It will be rounded
+   * up to the next power of two.
+   */
+  public ConcurrentInMemoryRegistrationStore(ScheduledExecutorService schedExecutor,
+      long cleanPeriodInSec, int concurrencyLevel) {
+    Validate.isTrue(concurrencyLevel > 0, "concurrency level must be positive");
+    this.schedExecutor = schedExecutor;
+    this.cleanPeriod = cleanPeriodInSec;
+
+    int size = 1;
+    while (size < concurrencyLevel) {
+      size <<= 1;
+    }
+    this.locks = new Lock[size];
+    for (int i = 0; i < size; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /* *************** Leshan Registration API **************** */
+
+  @Override
+  public Deregistration addRegistration(Registration registration) {
+    Lock lock = lockFor(registration.getEndpoint());
+    try {
+      lock.lock();
+
+      Registration registrationRemoved = regsByEp.put(registration.getEndpoint(), registration);
+      regsByRegId.put(registration.getId(), registration);
+      // If a registration is already associated to this address we don't care as we only want to keep the most
+      // recent binding.
+      regsByAddr.put(registration.getSocketAddress(), registration);
+      expirationQueue.schedule(registration);
+      if (registrationRemoved != null) {
+        Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(
+            registrationRemoved.getId());
+        // Registration equality is based on endpoint, so we must not remove the entries we just added
+        if (!registration.getSocketAddress().equals(registrationRemoved.getSocketAddress())) {
+          regsByAddr.remove(registrationRemoved.getSocketAddress(), registrationRemoved);
+        }
+        if (!registration.getId().equals(registrationRemoved.getId())) {
+          regsByRegId.remove(registrationRemoved.getId(), registrationRemoved);
+          expirationQueue.remove(registrationRemoved.getId());
+        }
+        return new Deregistration(registrationRemoved, observationsRemoved);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return null;
+  }
+
+  @Override
+  public UpdatedRegistration updateRegistration(RegistrationUpdate update) {
+    Registration registration = regsByRegId.get(update.getRegistrationId());
+    if (registration == null) {
+      return null;
+    }
+
+    Lock lock = lockFor(registration.getEndpoint());
+    try {
+      lock.lock();
+
+      // the registration may have been modified before we get the lock
+      registration = regsByRegId.get(update.getRegistrationId());
+      if (registration == null) {
+        return null;
+      } else {
+        Registration updatedRegistration = update.update(registration);
+        regsByEp.put(updatedRegistration.getEndpoint(), updatedRegistration);
+        // If registration is already associated to this address we don't care as we only want to keep the most
+        // recent binding.
+        regsByAddr.put(updatedRegistration.getSocketAddress(), updatedRegistration);
+        if (!registration.getSocketAddress().equals(updatedRegistration.getSocketAddress())) {
+          regsByAddr.remove(registration.getSocketAddress(), registration);
+        }
+
+        regsByRegId.put(updatedRegistration.getId(), updatedRegistration);
+        expirationQueue.schedule(updatedRegistration);
+
+        return new UpdatedRegistration(registration, updatedRegistration);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Registration getRegistration(String registrationId) {
+    return regsByRegId.get(registrationId);
+  }
+
+  @Override
+  public Registration getRegistrationByEndpoint(String endpoint) {
+    return regsByEp.get(endpoint);
+  }
+
+  @Override
+  public Registration getRegistrationByAdress(InetSocketAddress address) {
+    return regsByAddr.get(address);
+  }
+
+  @Override
+  public Iterator<Registration> getAllRegistrations() {
+    // weakly consistent iterator, no need to copy the registrations
+    return Collections.unmodifiableCollection(regsByEp.values()).iterator();
+  }
+
+  @Override
+  public Deregistration removeRegistration(String registrationId) {
+    return removeRegistration(registrationId, false);
+  }
+
+  private Deregistration removeRegistration(String registrationId, boolean removeOnlyIfNotAlive) {
+    Registration registration = regsByRegId.get(registrationId);
+    if (registration == null) {
+      return null;
+    }
+
+    Lock lock = lockFor(registration.getEndpoint());
+    try {
+      lock.lock();
+
+      // the registration may have been modified before we get the lock
+      registration = regsByRegId.get(registrationId);
+      if (registration != null && (!removeOnlyIfNotAlive || !registration.isAlive())) {
+        Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(
+            registration.getId());
+        expirationQueue.remove(registration.getId());
+        regsByEp.remove(registration.getEndpoint(), registration);
+        regsByAddr.remove(registration.getSocketAddress(), registration);
+        regsByRegId.remove(registration.getId(), registration);
+        return new Deregistration(registration, observationsRemoved);
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /* *************** Leshan Observation API **************** */
+
+  /*
+   * The observation is not persisted here, it is done by the Californium layer (in the implementation of the
+   * org.eclipse.californium.core.observe.ObservationStore#add method)
+   */
+  @Override
+  public Collection<Observation> addObservation(String registrationId, Observation observation) {
+
+    List<Observation> removed = new ArrayList<>();
+
+    Registration registration = regsByRegId.get(registrationId);
+    if (registration == null) {
+      return removed;
+    }
+
+    Lock lock = lockFor(registration.getEndpoint());
+    try {
+      lock.lock();
+      // cancel existing observations for the same path and registration id.
+      for (Token token : obsByPath.get(registrationId, observation.getPath())) {
+        if (!Arrays.equals(observation.getId(), token.getBytes())) {
+          Observation obs = build(unsafeGetObservation(token));
+          unsafeRemoveObservation(token);
+          if (obs != null) {
+            removed.add(obs);
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    return removed;
+  }
+
+  @Override
+  public Observation removeObservation(String registrationId, byte[] observationId) {
+    Token token = new Token(observationId);
+    org.eclipse.californium.core.observe.Observation cfObs = obsByToken.get(token);
+    if (cfObs == null) {
+      return null;
+    }
+
+    Lock lock = lockFor(ObserveUtil.extractEndpoint(cfObs));
+    try {
+      lock.lock();
+      Observation observation = build(unsafeGetObservation(token));
+      if (observation != null && registrationId.equals(observation.getRegistrationId())) {
+        unsafeRemoveObservation(token);
+        return observation;
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Observation getObservation(String registrationId, byte[] observationId) {
+    Observation observation = build(unsafeGetObservation(new Token(observationId)));
+    if (observation != null && registrationId.equals(observation.getRegistrationId())) {
+      return observation;
+    }
+    return null;
+  }
+
+  @Override
+  public Collection<Observation> getObservations(String registrationId) {
+    return unsafeGetObservations(registrationId);
+  }
+
+  @Override
+  public Collection<Observation> getObservations(String registrationId, LwM2mPath path) {
+    return unsafeGetObservations(obsByPath.get(registrationId, path));
+  }
+
+  @Override
+  public Collection<Observation> getObservationsUnder(String registrationId, LwM2mPath prefix) {
+    return unsafeGetObservations(obsByPath.getUnder(registrationId, prefix));
+  }
+
+  @Override
+  public Collection<Observation> removeObservations(String registrationId) {
+    Registration registration = regsByRegId.get(registrationId);
+    if (registration == null) {
+      return Collections.emptyList();
+    }
+
+    Lock lock = lockFor(registration.getEndpoint());
+    try {
+      lock.lock();
+      return unsafeRemoveAllObservations(registrationId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /* *************** Californium ObservationStore API **************** */
+
+  @Override
+  public org.eclipse.californium.core.observe.Observation putIfAbsent(Token token,
+      org.eclipse.californium.core.observe.Observation obs) {
+    return add(token, obs, true);
+  }
+
+  @Override
+  public org.eclipse.californium.core.observe.Observation put(Token token,
+      org.eclipse.californium.core.observe.Observation obs) {
+    return add(token, obs, false);
+  }
+
+  private org.eclipse.californium.core.observe.Observation add(Token token,
+      org.eclipse.californium.core.observe.Observation obs, boolean ifAbsent) {
+    org.eclipse.californium.core.observe.Observation previousObservation = null;
+    if (obs != null) {
+      String endpoint = ObserveUtil.validateCoapObservation(obs);
+      Lock lock = lockFor(endpoint);
+      try {
+        lock.lock();
+
+        String registrationId = ObserveUtil.extractRegistrationId(obs);
+        if (regsByRegId.get(registrationId) == null) {
+          throw new IllegalStateException("no registration for this Id");
+        }
+
+        if (ifAbsent) {
+          previousObservation = obsByToken.putIfAbsent(token, obs);
+          if (previousObservation != null) {
+            return previousObservation;
+          }
+        } else {
+          previousObservation = obsByToken.put(token, obs);
+        }
+        Set<Token> tokens = tokensByRegId.get(registrationId);
+        if (tokens == null) {
+          tokens = Collections.newSetFromMap(new ConcurrentHashMap<Token, Boolean>());
+          tokensByRegId.put(registrationId, tokens);
+        }
+        tokens.add(token);
+        if (previousObservation != null) {
+          obsByPath.remove(ObserveUtil.extractRegistrationId(previousObservation),
+              LwM2mPath.intern(ObserveUtil.extractLwm2mPath(previousObservation)), token);
+        }
+        obsByPath.add(registrationId, LwM2mPath.intern(ObserveUtil.extractLwm2mPath(obs)), token);
+
+        // log any collisions
+        if (previousObservation != null) {
+          LOG.warn(
+              "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
+              previousObservation.getRequest(), obs.getRequest());
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return previousObservation;
+  }
+
+  @Override
+  public org.eclipse.californium.core.observe.Observation get(Token token) {
+    return unsafeGetObservation(token);
+  }
+
+  @Override
+  public void setContext(Token token, EndpointContext ctx) {
+    org.eclipse.californium.core.observe.Observation obs = obsByToken.get(token);
+    while (obs != null && !obsByToken.replace(token, obs,
+        new org.eclipse.californium.core.observe.Observation(obs.getRequest(), ctx))) {
+      obs = obsByToken.get(token);
+    }
+  }
+
+  @Override
+  public void remove(Token token) {
+    org.eclipse.californium.core.observe.Observation obs = obsByToken.get(token);
+    if (obs == null) {
+      return;
+    }
+
+    Lock lock = lockFor(ObserveUtil.extractEndpoint(obs));
+    try {
+      lock.lock();
+      unsafeRemoveObservation(token);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /* *************** Observation utility functions **************** */
+
+  private Lock lockFor(String endpoint) {
+    int h = endpoint.hashCode();
+    h ^= (h >>> 16);
+    return locks[h & (locks.length - 1)];
+  }
+
+  private org.eclipse.californium.core.observe.Observation unsafeGetObservation(Token token) {
+    org.eclipse.californium.core.observe.Observation obs = obsByToken.get(token);
+    return ObservationUtil.shallowClone(obs);
+  }
+
+  private void unsafeRemoveObservation(Token observationId) {
+    org.eclipse.californium.core.observe.Observation removed = obsByToken.remove(observationId);
+
+    if (removed != null) {
+      String registrationId = ObserveUtil.extractRegistrationId(removed);
+      obsByPath.remove(registrationId, LwM2mPath.intern(ObserveUtil.extractLwm2mPath(removed)),
+          observationId);
+      Set<Token> tokens = tokensByRegId.get(registrationId);
+      if (tokens != null) {
+        tokens.remove(observationId);
+        if (tokens.isEmpty()) {
+          tokensByRegId.remove(registrationId);
+        }
+      }
+    }
+  }
+
+  private Collection<Observation> unsafeRemoveAllObservations(String registrationId) {
+    Collection<Observation> removed = new ArrayList<>();
+    obsByPath.removeAll(registrationId);
+    Set<Token> tokens = tokensByRegId.remove(registrationId);
+    if (tokens != null) {
+      for (Token token : tokens) {
+        Observation observationRemoved = build(obsByToken.remove(token));
+        if (observationRemoved != null) {
+          removed.add(observationRemoved);
+        }
+      }
+    }
+    return removed;
+  }
+
+  private Collection<Observation> unsafeGetObservations(String registrationId) {
+    Set<Token> tokens = tokensByRegId.get(registrationId);
+    if (tokens == null) {
+      return new ArrayList<>();
+    }
+    return unsafeGetObservations(tokens);
+  }
+
+  private Collection<Observation> unsafeGetObservations(Collection<Token> tokens) {
+    Collection<Observation> result = new ArrayList<>();
+    for (Token token : tokens) {
+      Observation obs = build(unsafeGetObservation(token));
+      if (obs != null) {
+        result.add(obs);
+      }
+    }
+    return result;
+  }
+
+  private Observation build(org.eclipse.californium.core.observe.Observation cfObs) {
+    if (cfObs == null) {
+      return null;
+    }
+
+    return ObserveUtil.createLwM2mObservation(cfObs.getRequest());
+  }
+
+  /* *************** Expiration handling **************** */
+
+  @Override
+  public void setExpirationListener(ExpirationListener listener) {
+    this.expirationListener = listener;
+  }
+
+  /**
+   * start the registration store, will start regular cleanup of dead registrations.
+   */
+  @Override
+  public void start() {
+    schedExecutor.scheduleAtFixedRate(new Cleaner(), cleanPeriod, cleanPeriod, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stop the underlying cleanup of the registrations.
+   */
+  @Override
+  public void stop() {
+    schedExecutor.shutdownNow();
+    try {
+      schedExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOG.warn("Clean up registration thread was interrupted.", e);
+    }
+  }
+
+  /**
+   * @return the index used to find expired registrations. It gives access to expiration metrics
+   * like the number of registrations processed by the last cleaning task and its expiration lag.
+   */
+  public RegistrationExpirationQueue getExpirationQueue() {
+    return expirationQueue;
+  }
+
+  private class Cleaner implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        // only look at registrations which are due to expire
+        for (String registrationId : expirationQueue.pollExpired(System.currentTimeMillis())) {
+          // force de-registration, unless it was updated in the meantime
+          Deregistration removedRegistration = removeRegistration(registrationId, true);
+          if (removedRegistration != null) {
+            expirationListener.registrationExpired(removedRegistration.getRegistration(),
+                removedRegistration.getObservations());
+          }
+        }
+      } catch (Exception e) {
+        LOG.warn("Unexpected Exception while registration cleaning", e);
+      }
+    }
+  }
+}
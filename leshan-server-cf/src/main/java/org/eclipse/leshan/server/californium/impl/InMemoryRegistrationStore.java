@@ -44,6 +44,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.eclipse.californium.core.coap.Token;
 import org.eclipse.californium.core.observe.ObservationUtil;
 import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
@@ -52,6 +53,7 @@ import org.eclipse.leshan.server.californium.ObserveUtil;
 import org.eclipse.leshan.server.registration.Deregistration;
 import org.eclipse.leshan.server.registration.ExpirationListener;
 import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationExpirationQueue;
 import org.eclipse.leshan.server.registration.RegistrationUpdate;
 import org.eclipse.leshan.server.registration.UpdatedRegistration;
 import org.eclipse.leshan.util.NamedThreadFactory;
@@ -72,6 +74,8 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
   private final Map<String /* reg-id */, Registration> regsByRegId = new HashMap<>();
   private Map<Token, org.eclipse.californium.core.observe.Observation> obsByToken = new HashMap<>();
   private Map<String, Set<Token>> tokensByRegId = new HashMap<>();
+  private final ObservationPathIndex obsByPath = new ObservationPathIndex();
+  private final RegistrationExpirationQueue expirationQueue = new RegistrationExpirationQueue();
 
   private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -109,9 +113,13 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
       // If a registration is already associated to this address we don't care as we only want to keep the most
       // recent binding.
       regsByAddr.put(registration.getSocketAddress(), registration);
+      expirationQueue.schedule(registration);
       if (registrationRemoved != null) {
         Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(
             registrationRemoved.getId());
+        if (!registration.getId().equals(registrationRemoved.getId())) {
+          expirationQueue.remove(registrationRemoved.getId());
+        }
         removeFromMap(regsByAddr, registrationRemoved.getSocketAddress(), registrationRemoved);
         removeFromMap(regsByRegId, registrationRemoved.getId(), registrationRemoved);
         return new Deregistration(registrationRemoved, observationsRemoved);
@@ -139,6 +147,7 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
         removeFromMap(regsByAddr, registration.getSocketAddress(), registration);
 
         regsByRegId.put(updatedRegistration.getId(), updatedRegistration);
+        expirationQueue.schedule(updatedRegistration);
 
         return new UpdatedRegistration(registration, updatedRegistration);
       }
@@ -189,13 +198,18 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
 
   @Override
   public Deregistration removeRegistration(String registrationId) {
+    return removeRegistration(registrationId, false);
+  }
+
+  private Deregistration removeRegistration(String registrationId, boolean removeOnlyIfNotAlive) {
     try {
       lock.writeLock().lock();
 
       Registration registration = getRegistration(registrationId);
-      if (registration != null) {
+      if (registration != null && (!removeOnlyIfNotAlive || !registration.isAlive())) {
         Collection<Observation> observationsRemoved = unsafeRemoveAllObservations(
             registration.getId());
+        expirationQueue.remove(registration.getId());
         regsByEp.remove(registration.getEndpoint());
         removeFromMap(regsByAddr, registration.getSocketAddress(), registration);
         removeFromMap(regsByRegId, registration.getId(), registration);
@@ -221,11 +235,13 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
     try {
       lock.writeLock().lock();
       // cancel existing observations for the same path and registration id.
-      for (Observation obs : unsafeGetObservations(registrationId)) {
-        if (observation.getPath().equals(obs.getPath()) && !Arrays
-            .equals(observation.getId(), obs.getId())) {
-          unsafeRemoveObservation(new Token(obs.getId()));
-          removed.add(obs);
+      for (Token token : obsByPath.get(registrationId, observation.getPath())) {
+        if (!Arrays.equals(observation.getId(), token.getBytes())) {
+          Observation obs = build(unsafeGetObservation(token));
+          unsafeRemoveObservation(token);
+          if (obs != null) {
+            removed.add(obs);
+          }
         }
       }
     } finally {
@@ -275,6 +291,26 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
     }
   }
 
+  @Override
+  public Collection<Observation> getObservations(String registrationId, LwM2mPath path) {
+    try {
+      lock.readLock().lock();
+      return unsafeGetObservations(obsByPath.get(registrationId, path));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<Observation> getObservationsUnder(String registrationId, LwM2mPath prefix) {
+    try {
+      lock.readLock().lock();
+      return unsafeGetObservations(obsByPath.getUnder(registrationId, prefix));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   @Override
   public Collection<Observation> removeObservations(String registrationId) {
     try {
@@ -322,6 +358,11 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
           tokensByRegId.put(registrationId, new HashSet<Token>());
         }
         tokensByRegId.get(registrationId).add(token);
+        if (previousObservation != null) {
+          obsByPath.remove(ObserveUtil.extractRegistrationId(previousObservation),
+              LwM2mPath.intern(ObserveUtil.extractLwm2mPath(previousObservation)), token);
+        }
+        obsByPath.add(registrationId, LwM2mPath.intern(ObserveUtil.extractLwm2mPath(obs)), token);
 
         // log any collisions
         if (previousObservation != null) {
@@ -382,6 +423,8 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
 
     if (removed != null) {
       String registrationId = ObserveUtil.extractRegistrationId(removed);
+      obsByPath.remove(registrationId, LwM2mPath.intern(ObserveUtil.extractLwm2mPath(removed)),
+          observationId);
       Set<Token> tokens = tokensByRegId.get(registrationId);
       tokens.remove(observationId);
       if (tokens.isEmpty()) {
@@ -392,6 +435,7 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
 
   private Collection<Observation> unsafeRemoveAllObservations(String registrationId) {
     Collection<Observation> removed = new ArrayList<>();
+    obsByPath.removeAll(registrationId);
     Set<Token> tokens = tokensByRegId.get(registrationId);
     if (tokens != null) {
       for (Token token : tokens) {
@@ -406,14 +450,19 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
   }
 
   private Collection<Observation> unsafeGetObservations(String registrationId) {
-    Collection<Observation> result = new ArrayList<>();
     Set<Token> tokens = tokensByRegId.get(registrationId);
-    if (tokens != null) {
-      for (Token token : tokens) {
-        Observation obs = build(unsafeGetObservation(token));
-        if (obs != null) {
-          result.add(obs);
-        }
+    if (tokens == null) {
+      return new ArrayList<>();
+    }
+    return unsafeGetObservations(tokens);
+  }
+
+  private Collection<Observation> unsafeGetObservations(Collection<Token> tokens) {
+    Collection<Observation> result = new ArrayList<>();
+    for (Token token : tokens) {
+      Observation obs = build(unsafeGetObservation(token));
+      if (obs != null) {
+        result.add(obs);
       }
     }
     return result;
@@ -464,23 +513,24 @@ public class InMemoryRegistrationStore implements CaliforniumRegistrationStore,
     }
   }
 
+  /**
+   * @return the index used to find expired registrations. It gives access to expiration metrics
+   * like the number of registrations processed by the last cleaning task and its expiration lag.
+   */
+  public RegistrationExpirationQueue getExpirationQueue() {
+    return expirationQueue;
+  }
+
   private class Cleaner implements Runnable {
 
     @Override
     public void run() {
       try {
-        Collection<Registration> allRegs = new ArrayList<>();
-        try {
-          lock.readLock().lock();
-          allRegs.addAll(regsByEp.values());
-        } finally {
-          lock.readLock().unlock();
-        }
-
-        for (Registration reg : allRegs) {
-          if (!reg.isAlive()) {
-            // force de-registration
-            Deregistration removedRegistration = removeRegistration(reg.getId());
+        // only look at registrations which are due to expire
+        for (String registrationId : expirationQueue.pollExpired(System.currentTimeMillis())) {
+          // force de-registration, unless it was updated in the meantime
+          Deregistration removedRegistration = removeRegistration(registrationId, true);
+          if (removedRegistration != null) {
             expirationListener.registrationExpired(removedRegistration.getRegistration(),
                 removedRegistration.getObservations());
           }
@@ -19,8 +19,10 @@ package org.eclipse.leshan.server.californium.impl;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
@@ -60,12 +62,19 @@ import org.eclipse.leshan.server.queue.ClientAwakeTimeProvider;
 import org.eclipse.leshan.server.queue.PresenceService;
 import org.eclipse.leshan.server.queue.PresenceServiceImpl;
 import org.eclipse.leshan.server.queue.PresenceStateListener;
+import org.eclipse.leshan.server.queue.RequestQueue;
 import org.eclipse.leshan.server.registration.Registration;
 import org.eclipse.leshan.server.registration.RegistrationHandler;
 import org.eclipse.leshan.server.registration.RegistrationIdProvider;
 import org.eclipse.leshan.server.registration.RegistrationListener;
 import org.eclipse.leshan.server.registration.RegistrationService;
 import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.eclipse.leshan.server.request.BatchOptions;
+import org.eclipse.leshan.server.request.BatchProgress;
+import org.eclipse.leshan.server.request.BatchRequestSender;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchErrorCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchResponseCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.RequestFactory;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.server.security.Authorizer;
 import org.eclipse.leshan.server.security.SecurityInfo;
@@ -120,6 +129,14 @@ public class LeshanServer implements LwM2mServer {
 
   private final CoapAPI coapApi;
 
+  private final NotificationDispatcher notificationDispatcher;
+
+  private final BatchRequestSender batchRequestSender;
+
+  private final RequestQueue requestQueue;
+
+  private final ExecutorService registrationExecutor;
+
   /**
    * Initialize a server which will bind to the specified address and port.
    *
@@ -143,6 +160,35 @@ public class LeshanServer implements LwM2mServer {
       LwM2mModelProvider modelProvider, LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder,
       NetworkConfig coapConfig, boolean noQueueMode, ClientAwakeTimeProvider awakeTimeProvider,
       RegistrationIdProvider registrationIdProvider) {
+    this(unsecuredEndpoint, securedEndpoint, registrationStore, securityStore, authorizer,
+        modelProvider, encoder, decoder, coapConfig, noQueueMode, awakeTimeProvider,
+        registrationIdProvider, new LeshanServerOptions());
+  }
+
+  /**
+   * Initialize a server which will bind to the specified address and port.
+   *
+   * @param unsecuredEndpoint the unsecure coap endpoint.
+   * @param securedEndpoint the secure coap endpoint.
+   * @param registrationStore the {@link Registration} store.
+   * @param securityStore the {@link SecurityInfo} store.
+   * @param authorizer define which devices is allow to register on this server.
+   * @param modelProvider provides the objects description for each client.
+   * @param decoder decoder used to decode response payload.
+   * @param encoder encode used to encode request payload.
+   * @param coapConfig the CoAP {@link NetworkConfig}.
+   * @param noQueueMode true to disable presenceService.
+   * @param awakeTimeProvider to set the client awake time if queue mode is used.
+   * @param registrationIdProvider to provide registrationId using for location-path option values
+   * on response of Register operation.
+   * @param options the optional components of the server.
+   */
+  public LeshanServer(CoapEndpoint unsecuredEndpoint, CoapEndpoint securedEndpoint,
+      CaliforniumRegistrationStore registrationStore, SecurityStore securityStore,
+      Authorizer authorizer,
+      LwM2mModelProvider modelProvider, LwM2mNodeEncoder encoder, LwM2mNodeDecoder decoder,
+      NetworkConfig coapConfig, boolean noQueueMode, ClientAwakeTimeProvider awakeTimeProvider,
+      RegistrationIdProvider registrationIdProvider, LeshanServerOptions options) {
 
     Validate.notNull(registrationStore, "registration store cannot be null");
     Validate.notNull(authorizer, "authorizer cannot be null");
@@ -150,32 +196,47 @@ public class LeshanServer implements LwM2mServer {
     Validate.notNull(encoder, "encoder cannot be null");
     Validate.notNull(decoder, "decoder cannot be null");
     Validate.notNull(coapConfig, "coapConfig cannot be null");
+    Validate.notNull(options, "options cannot be null");
+    NotificationDispatcher notificationDispatcher = options.getNotificationDispatcher();
+    final RequestQueue requestQueue = options.getRequestQueue();
+    ExecutorService registrationExecutor = options.getRegistrationExecutor();
 
     // Init services and stores
     this.registrationStore = registrationStore;
     registrationService = new RegistrationServiceImpl(registrationStore);
     this.securityStore = securityStore;
     observationService = new ObservationServiceImpl(registrationStore, modelProvider, decoder);
+    observationService.setNotificationDispatcher(notificationDispatcher);
+    this.notificationDispatcher = notificationDispatcher;
     this.modelProvider = modelProvider;
 
-    // Cancel observations on client unregistering
+    // Cancel observations on client unregistering and drop the observations resolved with an old
+    // registration
     registrationService.addListener(new RegistrationListener() {
 
       @Override
       public void updated(RegistrationUpdate update, Registration updatedRegistration,
           Registration previousRegistration) {
+        observationService.evictResolvedObservations(previousRegistration.getId());
       }
 
       @Override
       public void unregistered(Registration registration, Collection<Observation> observations,
           boolean expired,
           Registration newReg) {
+        observationService.evictResolvedObservations(registration.getId());
         requestSender.cancelPendingRequests(registration);
+        if (requestQueue != null && newReg == null) {
+          requestQueue.cancel(registration.getEndpoint());
+        }
       }
 
       @Override
       public void registered(Registration registration, Registration previousReg,
           Collection<Observation> previousObsersations) {
+        if (previousReg != null) {
+          observationService.evictResolvedObservations(previousReg.getId());
+        }
       }
     });
 
@@ -208,7 +269,9 @@ public class LeshanServer implements LwM2mServer {
 
     // define /rd resource
     RegisterResource rdResource = new RegisterResource(
-        new RegistrationHandler(this.registrationService, authorizer, registrationIdProvider));
+        new RegistrationHandler(this.registrationService, authorizer, registrationIdProvider),
+        registrationExecutor, options.getAdmissionController());
+    this.registrationExecutor = registrationExecutor;
     coapServer.add(rdResource);
 
     // create sender
@@ -219,14 +282,18 @@ public class LeshanServer implements LwM2mServer {
           modelProvider, encoder,
           decoder);
       presenceService = null;
+      this.requestQueue = null;
     } else {
       presenceService = new PresenceServiceImpl(awakeTimeProvider);
       registrationService.addListener(new PresenceStateListener(presenceService));
       requestSender = new CaliforniumQueueModeRequestSender(presenceService,
           new CaliforniumLwM2mRequestSender(endpoints, observationService, modelProvider, encoder,
-              decoder));
+              decoder), requestQueue);
+      this.requestQueue = requestQueue;
     }
 
+    batchRequestSender = new BatchRequestSender(requestSender);
+
     coapApi = new CoapAPI();
   }
 
@@ -271,6 +338,19 @@ public class LeshanServer implements LwM2mServer {
   public void destroy() {
     // Destroy server
     coapServer.destroy();
+    if (registrationExecutor != null) {
+      registrationExecutor.shutdownNow();
+    }
+    if (notificationDispatcher != null) {
+      notificationDispatcher.destroy();
+    }
+    batchRequestSender.destroy();
+    if (requestQueue != null) {
+      requestQueue.destroy();
+    }
+    if (presenceService != null) {
+      presenceService.destroy();
+    }
 
     // Destroy stores
     if (registrationStore instanceof Destroyable) {
@@ -288,6 +368,14 @@ public class LeshanServer implements LwM2mServer {
     LOG.info("LWM2M server destroyed.");
   }
 
+  @Override
+  public <T extends LwM2mResponse> BatchProgress sendBatch(Iterator<Registration> destinations,
+      RequestFactory<T> requestFactory, BatchOptions options,
+      BatchResponseCallback<T> responseCallback, BatchErrorCallback errorCallback) {
+    return batchRequestSender.send(destinations, requestFactory, options, responseCallback,
+        errorCallback);
+  }
+
   @Override
   public RegistrationService getRegistrationService() {
     return this.registrationService;
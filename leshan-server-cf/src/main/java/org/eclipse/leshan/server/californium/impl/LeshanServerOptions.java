@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.concurrent.ExecutorService;
+
+import org.eclipse.leshan.core.request.exception.ClientSleepingException;
+import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.queue.RequestQueue;
+import org.eclipse.leshan.server.registration.AdmissionController;
+
+/**
+ * The optional components of a {@link LeshanServer}, set by the {@link LeshanServerBuilder}. All of
+ * them are <code>null</code> by default.
+ */
+public class LeshanServerOptions {
+
+  private NotificationDispatcher notificationDispatcher;
+  private RequestQueue requestQueue;
+  private ExecutorService registrationExecutor;
+  private AdmissionController admissionController;
+
+  /**
+   * Sets the dispatcher handling notifications outside of the CoAP threads, <code>null</code> to
+   * handle them synchronously.
+   */
+  public LeshanServerOptions setNotificationDispatcher(
+      NotificationDispatcher notificationDispatcher) {
+    this.notificationDispatcher = notificationDispatcher;
+    return this;
+  }
+
+  /**
+   * Sets the queue of the requests sent to sleeping clients if queue mode is used,
+   * <code>null</code> to refuse them with a {@link ClientSleepingException}.
+   */
+  public LeshanServerOptions setRequestQueue(RequestQueue requestQueue) {
+    this.requestQueue = requestQueue;
+    return this;
+  }
+
+  /**
+   * Sets the executor handling register, update and deregister requests outside of the CoAP
+   * threads, <code>null</code> to handle them synchronously.
+   */
+  public LeshanServerOptions setRegistrationExecutor(ExecutorService registrationExecutor) {
+    this.registrationExecutor = registrationExecutor;
+    return this;
+  }
+
+  /**
+   * Sets the controller limiting the register, update and deregister requests handled,
+   * <code>null</code> to handle all of them.
+   */
+  public LeshanServerOptions setAdmissionController(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+    return this;
+  }
+
+  public NotificationDispatcher getNotificationDispatcher() {
+    return notificationDispatcher;
+  }
+
+  public RequestQueue getRequestQueue() {
+    return requestQueue;
+  }
+
+  public ExecutorService getRegistrationExecutor() {
+    return registrationExecutor;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+}
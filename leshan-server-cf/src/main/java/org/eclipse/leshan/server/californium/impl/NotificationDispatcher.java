@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the handling of notifications outside of the CoAP protocol threads.
+ * <p>
+ * Tasks are partitioned in lanes, each lane being a bounded queue consumed by its own thread. All
+ * the tasks of a partition (e.g. a registration) go to the same lane so they are run in order,
+ * while different partitions are handled in parallel.
+ * <p>
+ * When a lane is full, the {@link OverflowPolicy} is applied.
+ */
+public class NotificationDispatcher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+  /**
+   * What to do when a task is dispatched to a full lane.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Drop the oldest task of the lane.
+     */
+    DROP_OLDEST,
+    /**
+     * Replace the pending task with the same coalescing key (e.g. the same observation) if any, so
+     * only the latest value is handled. Tasks are coalesced even if the lane is not full. If there is
+     * no such task, the oldest task of the lane is dropped.
+     */
+    COALESCE,
+    /**
+     * Block the calling thread until there is room in the lane.
+     */
+    BLOCK
+  }
+
+  private final Lane[] lanes;
+  private final int laneCapacity;
+  private final OverflowPolicy overflowPolicy;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @param nbLanes the number of lanes, and so of threads
+   * @param laneCapacity the maximum number of tasks waiting in a lane
+   * @param overflowPolicy what to do when a lane is full
+   */
+  public NotificationDispatcher(int nbLanes, int laneCapacity, OverflowPolicy overflowPolicy) {
+    Validate.isTrue(nbLanes > 0, "nbLanes must be positive");
+    Validate.isTrue(laneCapacity > 0, "laneCapacity must be positive");
+    Validate.notNull(overflowPolicy);
+
+    this.laneCapacity = laneCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.lanes = new Lane[nbLanes];
+    for (int i = 0; i < nbLanes; i++) {
+      lanes[i] = new Lane(i);
+    }
+  }
+
+  /**
+   * Queues a task.
+   *
+   * @param partitionKey the tasks with the same partition key are run in order
+   * @param coalescingKey identifies the tasks which can replace each other with the
+   * {@link OverflowPolicy#COALESCE} policy, can be <code>null</code>
+   * @param task the task to run
+   */
+  public void dispatch(String partitionKey, Object coalescingKey, Runnable task) {
+    int hash = partitionKey == null ? 0 : partitionKey.hashCode();
+    lanes[(hash & 0x7FFFFFFF) % lanes.length].offer(coalescingKey, task);
+  }
+
+  /**
+   * @return the number of tasks waiting in all the lanes.
+   */
+  public int getQueueSize() {
+    int size = 0;
+    for (Lane lane : lanes) {
+      size += lane.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of tasks dropped because a lane was full.
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * @return the number of tasks replaced by a more recent one.
+   */
+  public long getCoalescedCount() {
+    return coalesced.get();
+  }
+
+  /**
+   * Stops the threads, the waiting tasks are not run.
+   */
+  public void destroy() {
+    for (Lane lane : lanes) {
+      lane.thread.interrupt();
+    }
+  }
+
+  private static class Entry {
+    final Object key;
+    Runnable task;
+
+    Entry(Object key, Runnable task) {
+      this.key = key;
+      this.task = task;
+    }
+  }
+
+  private class Lane implements Runnable {
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    // pending entries by coalescing key, only used with the COALESCE policy
+    private final Map<Object, Entry> pending = new HashMap<>();
+    private final Thread thread;
+
+    Lane(int index) {
+      thread = new Thread(this, "Leshan notification dispatcher #" + index);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    synchronized void offer(Object key, Runnable task) {
+      boolean coalescing = overflowPolicy == OverflowPolicy.COALESCE && key != null;
+      if (coalescing) {
+        Entry entry = pending.get(key);
+        if (entry != null) {
+          entry.task = task;
+          coalesced.incrementAndGet();
+          return;
+        }
+      }
+
+      while (queue.size() >= laneCapacity) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            return;
+          }
+        } else {
+          removePending(queue.poll());
+          dropped.incrementAndGet();
+        }
+      }
+
+      Entry entry = new Entry(key, task);
+      queue.add(entry);
+      if (coalescing) {
+        pending.put(key, entry);
+      }
+      notifyAll();
+    }
+
+    synchronized int size() {
+      return queue.size();
+    }
+
+    private synchronized Runnable take() throws InterruptedException {
+      while (queue.isEmpty()) {
+        wait();
+      }
+      Entry entry = queue.poll();
+      removePending(entry);
+      // wake up the threads blocked on a full lane
+      notifyAll();
+      return entry.task;
+    }
+
+    private void removePending(Entry entry) {
+      if (entry.key != null && pending.get(entry.key) == entry) {
+        pending.remove(entry.key);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task;
+        try {
+          task = take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LOG.error("Unexpected error while handling a notification", e);
+        }
+      }
+    }
+  }
+}
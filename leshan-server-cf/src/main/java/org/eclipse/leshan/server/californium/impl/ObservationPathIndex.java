@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.leshan.core.node.LwM2mPath;
+
+/**
+ * A secondary index of the observation tokens by registration and {@link LwM2mPath}, used by the
+ * in memory registration stores.
+ * <p>
+ * The paths of a registration are sorted, so all the paths under a given path are contiguous. Reads
+ * never block, modifications of a same registration must be serialized by the caller.
+ */
+class ObservationPathIndex {
+
+  private final ConcurrentMap<String /* reg-id */, NavigableMap<LwM2mPath, Set<Token>>> tokensByPath = new ConcurrentHashMap<>();
+
+  void add(String registrationId, LwM2mPath path, Token token) {
+    NavigableMap<LwM2mPath, Set<Token>> paths = tokensByPath.get(registrationId);
+    if (paths == null) {
+      paths = new ConcurrentSkipListMap<>();
+      tokensByPath.put(registrationId, paths);
+    }
+    Set<Token> tokens = paths.get(path);
+    if (tokens == null) {
+      tokens = Collections.newSetFromMap(new ConcurrentHashMap<Token, Boolean>());
+      paths.put(path, tokens);
+    }
+    tokens.add(token);
+  }
+
+  void remove(String registrationId, LwM2mPath path, Token token) {
+    NavigableMap<LwM2mPath, Set<Token>> paths = tokensByPath.get(registrationId);
+    if (paths == null) {
+      return;
+    }
+    Set<Token> tokens = paths.get(path);
+    if (tokens != null) {
+      tokens.remove(token);
+      if (tokens.isEmpty()) {
+        paths.remove(path);
+      }
+    }
+    if (paths.isEmpty()) {
+      tokensByPath.remove(registrationId);
+    }
+  }
+
+  void removeAll(String registrationId) {
+    tokensByPath.remove(registrationId);
+  }
+
+  /**
+   * @return the tokens of the observations of the registration targeting exactly the given path.
+   */
+  Collection<Token> get(String registrationId, LwM2mPath path) {
+    NavigableMap<LwM2mPath, Set<Token>> paths = tokensByPath.get(registrationId);
+    if (paths == null) {
+      return Collections.emptyList();
+    }
+    Set<Token> tokens = paths.get(path);
+    return tokens == null ? Collections.<Token> emptyList() : new ArrayList<>(tokens);
+  }
+
+  /**
+   * @return the tokens of the observations of the registration targeting the given path or one of
+   * its descendants.
+   */
+  Collection<Token> getUnder(String registrationId, LwM2mPath prefix) {
+    NavigableMap<LwM2mPath, Set<Token>> paths = tokensByPath.get(registrationId);
+    if (paths == null) {
+      return Collections.emptyList();
+    }
+    Collection<Token> result = new ArrayList<>();
+    // descendants come just after their ancestor
+    for (Map.Entry<LwM2mPath, Set<Token>> entry : paths.tailMap(prefix, true).entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) {
+        break;
+      }
+      result.addAll(entry.getValue());
+    }
+    return result;
+  }
+}
@@ -21,8 +21,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.Request;
@@ -55,6 +63,18 @@ import org.slf4j.LoggerFactory;
  * provided {@link CaliforniumRegistrationStore}.
  *
  * When a new observation is added or changed or canceled, the registered listeners are notified.
+ * <p>
+ * The observation, the registration and the model needed to handle the notifications of an
+ * observation are resolved once and cached by token, so a notification only needs a map lookup
+ * before being decoded. The cache of a registration is cleared when it is updated or removed (see
+ * {@link #evictResolvedObservations(String)}) and an observation is removed from the cache when it
+ * is cancelled. As the registration changes are only seen through the local registration
+ * listeners, this cache is only used by default with the in-memory registration stores: with a
+ * store shared by several servers, a registration may be updated or removed by another server.
+ * <p>
+ * Listeners added with {@link #addConflatingListener(ObservationListener, Executor)} only receive
+ * the latest notification of each observed path: a notification which is superseded before the
+ * listener handles it is skipped, and is not decoded if no other listener needs it.
  */
 public class ObservationServiceImpl implements ObservationService, NotificationListener {
 
@@ -65,8 +85,29 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
   private final LwM2mNodeDecoder decoder;
   private Endpoint secureEndpoint;
   private Endpoint nonSecureEndpoint;
+  private NotificationDispatcher notificationDispatcher;
 
   private final List<ObservationListener> listeners = new CopyOnWriteArrayList<>();
+  private final List<ConflatingListener> conflatingListeners = new CopyOnWriteArrayList<>();
+  private final AtomicLong conflatedNotifications = new AtomicLong();
+  private final AtomicLong droppedNotifications = new AtomicLong();
+
+  // registration id => token => resolved observation
+  private final ConcurrentMap<String, ConcurrentMap<Token, ResolvedObservation>> resolvedObservations =
+      new ConcurrentHashMap<>();
+  private final boolean cacheResolvedObservations;
+
+  private static class ResolvedObservation {
+    final Observation observation;
+    final Registration registration;
+    // resolved on the first notification
+    volatile LwM2mModel model;
+
+    ResolvedObservation(Observation observation, Registration registration) {
+      this.observation = observation;
+      this.registration = registration;
+    }
+  }
 
   /**
    * Creates an instance of {@link ObservationServiceImpl}
@@ -78,9 +119,32 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
   public ObservationServiceImpl(CaliforniumRegistrationStore store,
       LwM2mModelProvider modelProvider,
       LwM2mNodeDecoder decoder) {
+    this(store, modelProvider, decoder, isLocal(store));
+  }
+
+  /**
+   * Creates an instance of {@link ObservationServiceImpl}
+   *
+   * @param store instance of californium's {@link ObservationStore}
+   * @param modelProvider instance of {@link LwM2mModelProvider}
+   * @param decoder instance of {@link LwM2mNodeDecoder}
+   * @param cacheResolvedObservations true to cache the resolved observations, only if all the
+   * registration updates and removals of the store are notified to
+   * {@link #evictResolvedObservations(String)}
+   */
+  public ObservationServiceImpl(CaliforniumRegistrationStore store,
+      LwM2mModelProvider modelProvider,
+      LwM2mNodeDecoder decoder, boolean cacheResolvedObservations) {
     this.registrationStore = store;
     this.modelProvider = modelProvider;
     this.decoder = decoder;
+    this.cacheResolvedObservations = cacheResolvedObservations;
+  }
+
+  // subclasses may share their content with other servers
+  private static boolean isLocal(CaliforniumRegistrationStore store) {
+    return store.getClass() == InMemoryRegistrationStore.class
+        || store.getClass() == ConcurrentInMemoryRegistrationStore.class;
   }
 
   public void addObservation(Registration registration, Observation observation) {
@@ -92,6 +156,9 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
     for (ObservationListener listener : listeners) {
       listener.newObservation(observation, registration);
     }
+    for (ConflatingListener conflatingListener : conflatingListeners) {
+      conflatingListener.listener.newObservation(observation, registration);
+    }
   }
 
   public void setNonSecureEndpoint(Endpoint endpoint) {
@@ -102,6 +169,14 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
     secureEndpoint = endpoint;
   }
 
+  /**
+   * Sets the dispatcher used to decode notifications and notify the listeners outside of the CoAP
+   * protocol threads. If <code>null</code> (the default), notifications are handled synchronously.
+   */
+  public void setNotificationDispatcher(NotificationDispatcher dispatcher) {
+    notificationDispatcher = dispatcher;
+  }
+
   @Override
   public int cancelObservations(Registration registration) {
     // check registration id
@@ -110,6 +185,7 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
       return 0;
     }
 
+    resolvedObservations.remove(registrationId);
     Collection<Observation> observations = registrationStore.removeObservations(registrationId);
     if (observations == null) {
       return 0;
@@ -148,6 +224,11 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
 
   private void cancel(Observation observation) {
     Token token = new Token(observation.getId());
+    ConcurrentMap<Token, ResolvedObservation> resolved = resolvedObservations
+        .get(observation.getRegistrationId());
+    if (resolved != null) {
+      resolved.remove(token);
+    }
     if (secureEndpoint != null) {
       secureEndpoint.cancelObservation(token);
     }
@@ -158,6 +239,9 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
     for (ObservationListener listener : listeners) {
       listener.cancelled(observation);
     }
+    for (ConflatingListener conflatingListener : conflatingListeners) {
+      conflatingListener.listener.cancelled(observation);
+    }
   }
 
   @Override
@@ -178,14 +262,16 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
       return Collections.emptySet();
     }
 
-    Set<Observation> result = new HashSet<>();
-    LwM2mPath lwPath = new LwM2mPath(resourcePath);
-    for (Observation obs : getObservations(registrationId)) {
-      if (lwPath.equals(obs.getPath())) {
-        result.add(obs);
-      }
-    }
-    return result;
+    return new HashSet<>(
+        registrationStore.getObservations(registrationId, LwM2mPath.intern(resourcePath)));
+  }
+
+  /**
+   * Removes the cached observations of the given registration. Must be called when a registration
+   * is updated or removed, so the next notifications use the new registration.
+   */
+  void evictResolvedObservations(String registrationId) {
+    resolvedObservations.remove(registrationId);
   }
 
   /**
@@ -200,9 +286,45 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
     listeners.add(listener);
   }
 
+  /**
+   * Adds a listener which only receives the latest notification of each observed path.
+   * <p>
+   * Notifications are delivered by the given executor, one at a time. While a notification waits to
+   * be delivered, a new notification for the same registration and path replaces it. So a slow
+   * listener does not queue every intermediate value and at most one notification per observed path
+   * is kept in memory. New and cancelled observations are notified synchronously.
+   *
+   * @param listener the listener to add
+   * @param executor the executor used to deliver the notifications to this listener
+   */
+  public void addConflatingListener(ObservationListener listener, Executor executor) {
+    conflatingListeners.add(new ConflatingListener(listener, executor));
+  }
+
   @Override
   public void removeListener(ObservationListener listener) {
     listeners.remove(listener);
+    for (ConflatingListener conflatingListener : conflatingListeners) {
+      if (conflatingListener.listener == listener) {
+        conflatingListeners.remove(conflatingListener);
+      }
+    }
+  }
+
+  /**
+   * @return the number of notifications replaced by a more recent one before being delivered to a
+   * conflating listener.
+   */
+  public long getConflatedNotificationCount() {
+    return conflatedNotifications.get();
+  }
+
+  /**
+   * @return the number of notifications not delivered to a conflating listener because its executor
+   * rejected them.
+   */
+  public long getDroppedNotificationCount() {
+    return droppedNotifications.get();
   }
 
   // ********** NotificationListener interface **********//
@@ -211,60 +333,253 @@ public class ObservationServiceImpl implements ObservationService, NotificationL
   public void onNotification(Request coapRequest, Response coapResponse) {
     LOG.trace("notification received for request {}: {}", coapRequest, coapResponse);
 
-    if (listeners.isEmpty()) {
+    if (listeners.isEmpty() && conflatingListeners.isEmpty()) {
       return;
     }
 
     // get registration Id
     String regid = coapRequest.getUserContext().get(ObserveUtil.CTX_REGID);
 
-    // get observation for this request
-    Observation observation = registrationStore
-        .getObservation(regid, coapResponse.getToken().getBytes());
-    if (observation == null) {
-      LOG.error("Unexpected error: Unable to find observation with token {} for registration {}",
-          coapResponse.getToken(), regid);
+    // get observation, registration and model for this request
+    ResolvedObservation resolved = resolve(regid, coapResponse.getToken());
+    if (resolved == null) {
       return;
     }
 
-    // get registration
-    Registration registration = registrationStore.getRegistration(observation.getRegistrationId());
-    if (registration == null) {
-      LOG.error("Unexpected error: There is no registration with id {} for this observation {}",
-          observation.getRegistrationId(), observation);
-      return;
+    NotificationDispatcher dispatcher = notificationDispatcher;
+    if (dispatcher == null) {
+      handleNotification(resolved, coapResponse);
+    } else {
+      final ResolvedObservation resolvedObservation = resolved;
+      final Response response = coapResponse;
+      dispatcher.dispatch(resolved.observation.getRegistrationId(), coapResponse.getToken(),
+          new Runnable() {
+            @Override
+            public void run() {
+              handleNotification(resolvedObservation, response);
+            }
+          });
     }
+  }
 
-    try {
-      // get model for this registration
-      LwM2mModel model = modelProvider.getObjectModel(registration);
+  private void handleNotification(ResolvedObservation resolved, Response coapResponse) {
+    Notification notification = new Notification(resolved, coapResponse);
+    for (ConflatingListener conflatingListener : conflatingListeners) {
+      conflatingListener.offer(notification);
+    }
+    if (!listeners.isEmpty()) {
+      notification.deliver(listeners);
+    }
+  }
 
-      // create response
-      ObserveResponse response = createObserveResponse(observation, model, coapResponse);
+  /**
+   * A received notification, decoded once when it is delivered for the first time.
+   */
+  private class Notification {
+    final ResolvedObservation resolved;
+    final Response coapResponse;
 
-      // notify all listeners
-      for (ObservationListener listener : listeners) {
-        listener.onResponse(observation, registration, response);
+    private boolean decoded;
+    private ObserveResponse response;
+    private RuntimeException error;
+
+    Notification(ResolvedObservation resolved, Response coapResponse) {
+      this.resolved = resolved;
+      this.coapResponse = coapResponse;
+    }
+
+    private synchronized void decode() {
+      if (decoded) {
+        return;
       }
-    } catch (InvalidResponseException e) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(String.format("Invalid notification for observation [%s]", observation), e);
+      decoded = true;
+
+      Observation observation = resolved.observation;
+      try {
+        // get model for this registration
+        LwM2mModel model = resolved.model;
+        if (model == null) {
+          model = modelProvider.getObjectModel(resolved.registration);
+          resolved.model = model;
+        }
+
+        // create response
+        response = createObserveResponse(observation, model, coapResponse);
+      } catch (InvalidResponseException e) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("Invalid notification for observation [%s]", observation), e);
+        }
+        error = e;
+      } catch (RuntimeException e) {
+        if (LOG.isErrorEnabled()) {
+          LOG.error(
+              String.format("Unable to handle notification for observation [%s]", observation), e);
+        }
+        error = e;
+      }
+    }
+
+    void deliver(Collection<ObservationListener> targets) {
+      decode();
+      Observation observation = resolved.observation;
+      Registration registration = resolved.registration;
+
+      RuntimeException failure = error;
+      if (failure == null) {
+        try {
+          // notify all listeners
+          for (ObservationListener listener : targets) {
+            listener.onResponse(observation, registration, response);
+          }
+          return;
+        } catch (RuntimeException e) {
+          if (LOG.isErrorEnabled()) {
+            LOG.error(
+                String.format("Unable to handle notification for observation [%s]", observation),
+                e);
+          }
+          failure = e;
+        }
+      }
+
+      for (ObservationListener listener : targets) {
+        listener.onError(observation, registration, failure);
+      }
+    }
+  }
+
+  private static class ConflationKey {
+    final String registrationId;
+    final LwM2mPath path;
+
+    ConflationKey(Observation observation) {
+      this.registrationId = observation.getRegistrationId();
+      this.path = observation.getPath();
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * registrationId.hashCode() + path.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ConflationKey)) {
+        return false;
+      }
+      ConflationKey other = (ConflationKey) obj;
+      return registrationId.equals(other.registrationId) && path.equals(other.path);
+    }
+  }
+
+  /**
+   * Delivers the latest notification of each (registration, path) to a listener.
+   */
+  private class ConflatingListener implements Runnable {
+    final ObservationListener listener;
+    private final Executor executor;
+    private final List<ObservationListener> targets;
+
+    // latest notification by key and keys of the slots to deliver, in arrival order
+    private final ConcurrentMap<ConflationKey, Notification> slots = new ConcurrentHashMap<>();
+    private final Queue<ConflationKey> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    ConflatingListener(ObservationListener listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+      this.targets = Collections.singletonList(listener);
+    }
+
+    void offer(Notification notification) {
+      ConflationKey key = new ConflationKey(notification.resolved.observation);
+      if (slots.put(key, notification) != null) {
+        // the previous notification was not delivered yet, its key is already ready
+        conflatedNotifications.incrementAndGet();
+        return;
       }
+      ready.add(key);
+      schedule();
+    }
 
-      for (ObservationListener listener : listeners) {
-        listener.onError(observation, registration, e);
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException e) {
+          // drop the pending notifications, the next notification will try again
+          ConflationKey key;
+          while ((key = ready.poll()) != null) {
+            if (slots.remove(key) != null) {
+              droppedNotifications.incrementAndGet();
+            }
+          }
+          scheduled.set(false);
+        }
       }
-    } catch (RuntimeException e) {
-      if (LOG.isErrorEnabled()) {
-        LOG.error(String.format("Unable to handle notification for observation [%s]", observation),
-            e);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        ConflationKey key = ready.poll();
+        if (key == null) {
+          scheduled.set(false);
+          // a notification may have been offered after the last poll
+          if (ready.isEmpty() || !scheduled.compareAndSet(false, true)) {
+            return;
+          }
+          continue;
+        }
+        Notification notification = slots.remove(key);
+        if (notification != null) {
+          notification.deliver(targets);
+        }
       }
+    }
+  }
 
-      for (ObservationListener listener : listeners) {
-        listener.onError(observation, registration, e);
+  private ResolvedObservation resolve(String regid, Token token) {
+    ConcurrentMap<Token, ResolvedObservation> resolvedForRegistration = null;
+    if (regid != null && cacheResolvedObservations) {
+      resolvedForRegistration = resolvedObservations.get(regid);
+      if (resolvedForRegistration == null) {
+        resolvedForRegistration = new ConcurrentHashMap<>();
+        ConcurrentMap<Token, ResolvedObservation> previous = resolvedObservations
+            .putIfAbsent(regid, resolvedForRegistration);
+        if (previous != null) {
+          resolvedForRegistration = previous;
+        }
+      }
+      ResolvedObservation resolved = resolvedForRegistration.get(token);
+      if (resolved != null) {
+        return resolved;
       }
     }
 
+    // get observation for this request
+    Observation observation = registrationStore.getObservation(regid, token.getBytes());
+    if (observation == null) {
+      LOG.error("Unexpected error: Unable to find observation with token {} for registration {}",
+          token, regid);
+      return null;
+    }
+
+    // get registration
+    Registration registration = registrationStore.getRegistration(observation.getRegistrationId());
+    if (registration == null) {
+      LOG.error("Unexpected error: There is no registration with id {} for this observation {}",
+          observation.getRegistrationId(), observation);
+      return null;
+    }
+
+    ResolvedObservation resolved = new ResolvedObservation(observation, registration);
+    if (resolvedForRegistration != null) {
+      // if the registration is evicted meanwhile, this map is not reachable anymore and the
+      // resolved observation is dropped with it
+      resolvedForRegistration.put(token, resolved);
+    }
+    return resolved;
   }
 
   private ObserveResponse createObserveResponse(Observation observation, LwM2mModel model,
@@ -22,6 +22,10 @@ import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
@@ -42,6 +46,7 @@ import org.eclipse.leshan.core.response.DeregisterResponse;
 import org.eclipse.leshan.core.response.RegisterResponse;
 import org.eclipse.leshan.core.response.UpdateResponse;
 import org.eclipse.leshan.server.impl.SendableResponse;
+import org.eclipse.leshan.server.registration.AdmissionController;
 import org.eclipse.leshan.server.registration.RegistrationHandler;
 import org.eclipse.leshan.server.registration.RegistrationService;
 import org.slf4j.Logger;
@@ -53,6 +58,18 @@ import org.slf4j.LoggerFactory;
  * This resource is the entry point of the Resource Directory ("/rd"). Each new client is added to
  * the {@link RegistrationService}.
  * </p>
+ * <p>
+ * Requests can be handled by an {@link Executor} instead of the CoAP protocol thread which
+ * received them, so that authorization and registration store accesses (which may imply network
+ * I/O) do not block this thread. The response is then sent from the executor thread. A request
+ * rejected by the executor (e.g. because its queue is full) is answered with a 5.03 Service
+ * Unavailable response whose Max-Age option tells the client when to retry.
+ * </p>
+ * <p>
+ * An {@link AdmissionController} can limit the rate of requests and the number of requests handled
+ * at the same time. The requests it rejects are answered with a 5.03 Service Unavailable response
+ * whose Max-Age option tells the client when to retry.
+ * </p>
  */
 public class RegisterResource extends CoapResource {
 
@@ -70,17 +87,114 @@ public class RegisterResource extends CoapResource {
 
   public static final String RESOURCE_NAME = "rd";
 
+  // retry delay of a request rejected by the executor when there is no admission controller
+  private static final long DEFAULT_RETRY_DELAY = 5; // in s
+
   private final RegistrationHandler registrationHandler;
+  private final Executor executor;
+  private final AdmissionController admissionController;
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicInteger queued = new AtomicInteger();
 
   public RegisterResource(RegistrationHandler registrationHandler) {
+    this(registrationHandler, null);
+  }
+
+  /**
+   * @param registrationHandler the handler of registration requests
+   * @param executor the executor running the handling of requests, <code>null</code> to handle them
+   * on the CoAP protocol threads
+   */
+  public RegisterResource(RegistrationHandler registrationHandler, Executor executor) {
+    this(registrationHandler, executor, null);
+  }
+
+  /**
+   * @param registrationHandler the handler of registration requests
+   * @param executor the executor running the handling of requests, <code>null</code> to handle them
+   * on the CoAP protocol threads
+   * @param admissionController decides which requests are handled, <code>null</code> to handle all
+   * of them
+   */
+  public RegisterResource(RegistrationHandler registrationHandler, Executor executor,
+      AdmissionController admissionController) {
     super(RESOURCE_NAME);
 
     this.registrationHandler = registrationHandler;
+    this.executor = executor;
+    this.admissionController = admissionController;
     getAttributes().addResourceType("core.rd");
   }
 
   @Override
-  public void handleRequest(Exchange exchange) {
+  public void handleRequest(final Exchange exchange) {
+    if (admissionController != null) {
+      long retryDelay = admissionController
+          .admit(exchange.getRequest().getSourceContext().getPeerAddress().getAddress());
+      if (retryDelay > 0) {
+        LOG.debug("Request({}) on the /rd resource not admitted, retry in {}s",
+            exchange.getRequest(), retryDelay);
+        Response response = new Response(ResponseCode.SERVICE_UNAVAILABLE);
+        response.getOptions().setMaxAge(retryDelay);
+        exchange.sendResponse(response);
+        return;
+      }
+    }
+
+    if (executor == null) {
+      handleAdmittedRequest(exchange);
+      return;
+    }
+    queued.incrementAndGet();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          queued.decrementAndGet();
+          handleAdmittedRequest(exchange);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      queued.decrementAndGet();
+      if (admissionController != null) {
+        admissionController.release();
+      }
+      rejected.incrementAndGet();
+      long retryDelay = admissionController != null ? admissionController.getRetryDelay()
+          : DEFAULT_RETRY_DELAY;
+      LOG.debug("Too many pending requests, rejecting request({}) on the /rd resource, retry in "
+          + "{}s", exchange.getRequest(), retryDelay);
+      Response response = new Response(ResponseCode.SERVICE_UNAVAILABLE);
+      response.getOptions().setMaxAge(retryDelay);
+      exchange.sendResponse(response);
+    }
+  }
+
+  /**
+   * @return the number of requests rejected because the executor could not accept them.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return the number of requests waiting for an executor thread.
+   */
+  public int getQueuedCount() {
+    return queued.get();
+  }
+
+  private void handleAdmittedRequest(Exchange exchange) {
+    try {
+      handleRequestNow(exchange);
+    } finally {
+      if (admissionController != null) {
+        admissionController.release();
+      }
+    }
+  }
+
+  private void handleRequestNow(Exchange exchange) {
     try {
       super.handleRequest(exchange);
     } catch (InvalidRequestException e) {
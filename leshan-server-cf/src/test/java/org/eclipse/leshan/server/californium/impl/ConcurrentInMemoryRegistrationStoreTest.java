@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.leshan.Link;
+import org.eclipse.leshan.LwM2m;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.server.registration.Deregistration;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
+import org.eclipse.leshan.server.registration.UpdatedRegistration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentInMemoryRegistrationStoreTest {
+
+  ConcurrentInMemoryRegistrationStore store;
+  String ep = "urn:endpoint";
+  InetAddress address;
+  int port = 23452;
+  Long lifetime = 10000L;
+  String sms = "0171-32423545";
+  BindingMode binding = BindingMode.UQS;
+  Link[] objectLinks = Link.parse("</3>".getBytes(StandardCharsets.UTF_8));
+  String registrationId = "4711";
+
+  @Before
+  public void setUp() throws Exception {
+    address = InetAddress.getLocalHost();
+    store = new ConcurrentInMemoryRegistrationStore();
+  }
+
+  @Test
+  public void update_registration_keeps_properties_unchanged() {
+    Registration registration = givenASimpleRegistration(registrationId, ep, port, lifetime);
+    store.addRegistration(registration);
+
+    RegistrationUpdate update = new RegistrationUpdate(registrationId,
+        Identity.unsecure(address, port), null, null,
+        null, null, null);
+    UpdatedRegistration updatedRegistration = store.updateRegistration(update);
+    Assert.assertEquals(lifetime, updatedRegistration.getUpdatedRegistration().getLifeTimeInSec());
+    Assert.assertSame(binding, updatedRegistration.getUpdatedRegistration().getBindingMode());
+    Assert.assertEquals(sms, updatedRegistration.getUpdatedRegistration().getSmsNumber());
+
+    Assert.assertEquals(registration, updatedRegistration.getPreviousRegistration());
+
+    Registration reg = store.getRegistrationByEndpoint(ep);
+    Assert.assertEquals(lifetime, reg.getLifeTimeInSec());
+    Assert.assertSame(binding, reg.getBindingMode());
+    Assert.assertEquals(sms, reg.getSmsNumber());
+  }
+
+  @Test
+  public void update_registration_to_extend_time_to_live() {
+    Registration registration = givenASimpleRegistration(registrationId, ep, port, 0L);
+    store.addRegistration(registration);
+    Assert.assertFalse(registration.isAlive());
+
+    RegistrationUpdate update = new RegistrationUpdate(registrationId,
+        Identity.unsecure(address, port), lifetime,
+        null, null, null, null);
+    UpdatedRegistration updatedRegistration = store.updateRegistration(update);
+    Assert.assertTrue(updatedRegistration.getUpdatedRegistration().isAlive());
+
+    Registration reg = store.getRegistrationByEndpoint(ep);
+    Assert.assertTrue(reg.isAlive());
+  }
+
+  @Test
+  public void new_registration_replaces_previous_one_for_same_endpoint() {
+    Registration first = givenASimpleRegistration("first", ep, port, lifetime);
+    Registration second = givenASimpleRegistration("second", ep, port + 1, lifetime);
+    store.addRegistration(first);
+
+    Deregistration deregistration = store.addRegistration(second);
+
+    Assert.assertEquals(first, deregistration.getRegistration());
+    Assert.assertNull(store.getRegistration("first"));
+    Assert.assertNull(store.getRegistrationByAdress(first.getSocketAddress()));
+    Assert.assertEquals(second, store.getRegistration("second"));
+    Assert.assertEquals(second, store.getRegistrationByEndpoint(ep));
+    Assert.assertEquals(second, store.getRegistrationByAdress(second.getSocketAddress()));
+  }
+
+  @Test
+  public void remove_registration_cleans_all_indexes() {
+    Registration registration = givenASimpleRegistration(registrationId, ep, port, lifetime);
+    store.addRegistration(registration);
+
+    Deregistration deregistration = store.removeRegistration(registrationId);
+
+    Assert.assertEquals(registration, deregistration.getRegistration());
+    Assert.assertNull(store.getRegistration(registrationId));
+    Assert.assertNull(store.getRegistrationByEndpoint(ep));
+    Assert.assertNull(store.getRegistrationByAdress(registration.getSocketAddress()));
+    Assert.assertFalse(store.getAllRegistrations().hasNext());
+  }
+
+  @Test
+  public void concurrent_registrations_keep_indexes_consistent() throws Exception {
+    final int nbThreads = 8;
+    final int nbEndpoints = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < nbThreads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < nbEndpoints; i++) {
+              String regId = "reg-" + thread + "-" + i;
+              store.addRegistration(
+                  givenASimpleRegistration(regId, "ep-" + i, 10000 + i, lifetime));
+              store.updateRegistration(new RegistrationUpdate(regId,
+                  Identity.unsecure(address, 10000 + i), lifetime, null, null, null, null));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (int i = 0; i < nbEndpoints; i++) {
+      Registration byEndpoint = store.getRegistrationByEndpoint("ep-" + i);
+      Assert.assertNotNull(byEndpoint);
+      Assert.assertEquals(byEndpoint, store.getRegistration(byEndpoint.getId()));
+      Assert.assertEquals(byEndpoint, store.getRegistrationByAdress(byEndpoint.getSocketAddress()));
+      // only the last registration of each endpoint must remain
+      for (int t = 0; t < nbThreads; t++) {
+        String regId = "reg-" + t + "-" + i;
+        if (!regId.equals(byEndpoint.getId())) {
+          Assert.assertNull(store.getRegistration(regId));
+        }
+      }
+    }
+  }
+
+  private Registration givenASimpleRegistration(String registrationId, String endpoint, int port,
+      Long lifetime) {
+
+    Registration.Builder builder = new Registration.Builder(registrationId, endpoint,
+        Identity.unsecure(address, port),
+        InetSocketAddress.createUnresolved("localhost", LwM2m.DEFAULT_COAP_PORT));
+
+    return builder.lifeTimeInSec(lifetime).smsNumber(sms).bindingMode(binding)
+        .objectLinks(objectLinks)
+        .build();
+  }
+}
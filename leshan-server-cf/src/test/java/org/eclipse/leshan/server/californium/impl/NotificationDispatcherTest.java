@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.server.californium.impl.NotificationDispatcher.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+public class NotificationDispatcherTest {
+
+  private NotificationDispatcher dispatcher;
+  private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+  @After
+  public void destroy() {
+    if (dispatcher != null) {
+      dispatcher.destroy();
+    }
+  }
+
+  @Test
+  public void tasks_of_a_partition_are_run_in_order() throws InterruptedException {
+    dispatcher = new NotificationDispatcher(4, 100, OverflowPolicy.BLOCK);
+
+    for (int i = 0; i < 50; i++) {
+      dispatcher.dispatch("reg", null, record(String.valueOf(i)));
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatch("reg", null, countDown(done));
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      expected.add(String.valueOf(i));
+    }
+    assertEquals(expected, handled);
+  }
+
+  @Test
+  public void pending_tasks_are_coalesced() throws InterruptedException {
+    dispatcher = new NotificationDispatcher(1, 10, OverflowPolicy.COALESCE);
+    CountDownLatch blocked = new CountDownLatch(1);
+    dispatcher.dispatch("reg", null, await(blocked));
+    waitForEmptyQueue();
+
+    dispatcher.dispatch("reg", "/3/0/1", record("a1"));
+    dispatcher.dispatch("reg", "/3/0/2", record("b1"));
+    dispatcher.dispatch("reg", "/3/0/1", record("a2"));
+    CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatch("reg", null, countDown(done));
+    assertEquals(3, dispatcher.getQueueSize());
+    blocked.countDown();
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("a2", "b1"), handled);
+    assertEquals(1, dispatcher.getCoalescedCount());
+    assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  @Test
+  public void oldest_tasks_are_dropped_when_lane_is_full() throws InterruptedException {
+    dispatcher = new NotificationDispatcher(1, 2, OverflowPolicy.DROP_OLDEST);
+    CountDownLatch blocked = new CountDownLatch(1);
+    dispatcher.dispatch("reg", null, await(blocked));
+    waitForEmptyQueue();
+
+    dispatcher.dispatch("reg", null, record("1"));
+    dispatcher.dispatch("reg", null, record("2"));
+    CountDownLatch done = new CountDownLatch(1);
+    dispatcher.dispatch("reg", null, countDown(done));
+    blocked.countDown();
+
+    assertTrue(done.await(2, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("2"), handled);
+    assertEquals(1, dispatcher.getDroppedCount());
+  }
+
+  // waits for the blocking task to be taken
+  private void waitForEmptyQueue() throws InterruptedException {
+    while (dispatcher.getQueueSize() != 0) {
+      Thread.sleep(1);
+    }
+  }
+
+  private Runnable record(final String value) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        handled.add(value);
+      }
+    };
+  }
+
+  private Runnable countDown(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+  }
+
+  private Runnable await(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+}
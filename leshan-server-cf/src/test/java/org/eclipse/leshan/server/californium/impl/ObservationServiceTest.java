@@ -18,21 +18,32 @@ package org.eclipse.leshan.server.californium.impl;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
 import org.eclipse.leshan.LwM2m;
 import org.eclipse.leshan.core.californium.EndpointContextUtil;
 import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mSingleResource;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.core.request.Identity;
 import org.eclipse.leshan.core.request.ObserveRequest;
+import org.eclipse.leshan.core.response.ObserveResponse;
 import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
 import org.eclipse.leshan.server.californium.ObserveUtil;
 import org.eclipse.leshan.server.model.StandardModelProvider;
+import org.eclipse.leshan.server.observation.ObservationListener;
 import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.registration.RegistrationUpdate;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -64,6 +75,46 @@ public class ObservationServiceTest {
     Assert.assertEquals(1, observations.size());
   }
 
+  @Test
+  public void observations_are_indexed_by_path() {
+    assertObservationsAreIndexedByPath();
+  }
+
+  @Test
+  public void observations_are_indexed_by_path_in_concurrent_store() {
+    store = new ConcurrentInMemoryRegistrationStore();
+    observationService = new ObservationServiceImpl(store, new StandardModelProvider(),
+        new DefaultLwM2mNodeDecoder());
+    assertObservationsAreIndexedByPath();
+  }
+
+  private void assertObservationsAreIndexedByPath() {
+    String regId = support.registration.getId();
+    Observation observation = givenAnObservation(regId, new LwM2mPath(3, 0, 12));
+    givenAnObservation(regId, new LwM2mPath(3, 0, 13));
+    givenAnObservation(regId, new LwM2mPath(3, 1, 12));
+    givenAnObservation(regId, new LwM2mPath(33, 0, 12));
+    givenAnObservation("anotherClient", new LwM2mPath(3, 0, 12));
+
+    Assert.assertEquals(Arrays.asList(observation),
+        new ArrayList<>(store.getObservations(regId, new LwM2mPath(3, 0, 12))));
+    Assert.assertEquals(2, store.getObservationsUnder(regId, new LwM2mPath(3, 0)).size());
+    Assert.assertEquals(3, store.getObservationsUnder(regId, new LwM2mPath(3)).size());
+    Assert.assertEquals(4, store.getObservationsUnder(regId, LwM2mPath.ROOTPATH).size());
+
+    // a new observation of the same path replaces the previous one in the index
+    Observation newObservation = givenAnObservation(regId, new LwM2mPath(3, 0, 12));
+    Assert.assertEquals(Arrays.asList(newObservation),
+        new ArrayList<>(store.getObservations(regId, new LwM2mPath(3, 0, 12))));
+
+    observationService.cancelObservations(support.registration, "/3/0/12");
+    Assert.assertTrue(store.getObservations(regId, new LwM2mPath(3, 0, 12)).isEmpty());
+    Assert.assertEquals(2, store.getObservationsUnder(regId, new LwM2mPath(3)).size());
+
+    observationService.cancelObservations(support.registration);
+    Assert.assertTrue(store.getObservationsUnder(regId, LwM2mPath.ROOTPATH).isEmpty());
+  }
+
   @Test
   public void cancel_by_client() {
     // create some observations
@@ -129,6 +180,151 @@ public class ObservationServiceTest {
     Assert.assertEquals(1, observations.size());
   }
 
+  @Test
+  public void notifications_use_the_registration_resolved_after_eviction() {
+    final List<Registration> notifiedRegistrations = new ArrayList<>();
+    observationService.addListener(new ObservationListener() {
+      @Override
+      public void newObservation(Observation observation, Registration registration) {
+      }
+
+      @Override
+      public void cancelled(Observation observation) {
+      }
+
+      @Override
+      public void onResponse(Observation observation, Registration registration,
+          ObserveResponse response) {
+        notifiedRegistrations.add(registration);
+      }
+
+      @Override
+      public void onError(Observation observation, Registration registration, Exception error) {
+      }
+    });
+    String registrationId = support.registration.getId();
+    Observation observation = givenAnObservation(registrationId, new LwM2mPath(3, 0, 1));
+    Request observeRequest = coapRequest;
+
+    // first notifications resolve then reuse the registration
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+    Assert.assertEquals(2, notifiedRegistrations.size());
+    Assert.assertSame(notifiedRegistrations.get(0), notifiedRegistrations.get(1));
+
+    // the updated registration is used once the resolved observations are evicted
+    store.updateRegistration(new RegistrationUpdate(registrationId,
+        support.registration.getIdentity(), 1000L, null, null, null, null));
+    observationService.evictResolvedObservations(registrationId);
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+    Assert.assertEquals(1000L, notifiedRegistrations.get(2).getLifeTimeInSec().longValue());
+
+    // notifications of a cancelled observation are ignored
+    observationService.cancelObservation(observation);
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+    Assert.assertEquals(3, notifiedRegistrations.size());
+  }
+
+  @Test
+  public void notifications_use_registration_updated_in_a_shared_store() {
+    // a subclass stands for a store shared with other servers, which update it directly
+    store = new InMemoryRegistrationStore() {
+    };
+    observationService = new ObservationServiceImpl(store, new StandardModelProvider(),
+        new DefaultLwM2mNodeDecoder());
+    final List<Registration> notifiedRegistrations = new ArrayList<>();
+    observationService.addListener(new ObservationListener() {
+      @Override
+      public void newObservation(Observation observation, Registration registration) {
+      }
+
+      @Override
+      public void cancelled(Observation observation) {
+      }
+
+      @Override
+      public void onResponse(Observation observation, Registration registration,
+          ObserveResponse response) {
+        notifiedRegistrations.add(registration);
+      }
+
+      @Override
+      public void onError(Observation observation, Registration registration, Exception error) {
+      }
+    });
+    String registrationId = support.registration.getId();
+    givenAnObservation(registrationId, new LwM2mPath(3, 0, 1));
+    Request observeRequest = coapRequest;
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+
+    // updated by another server, evictResolvedObservations is not called
+    store.updateRegistration(new RegistrationUpdate(registrationId,
+        support.registration.getIdentity(), 1000L, null, null, null, null));
+    observationService.onNotification(observeRequest, givenANotification(observeRequest));
+    Assert.assertEquals(2, notifiedRegistrations.size());
+    Assert.assertEquals(1000L, notifiedRegistrations.get(1).getLifeTimeInSec().longValue());
+  }
+
+  @Test
+  public void conflating_listener_only_receives_latest_notification() {
+    final List<ObserveResponse> responses = new ArrayList<>();
+    final List<Runnable> tasks = new ArrayList<>();
+    observationService.addConflatingListener(new ObservationListener() {
+      @Override
+      public void newObservation(Observation observation, Registration registration) {
+      }
+
+      @Override
+      public void cancelled(Observation observation) {
+      }
+
+      @Override
+      public void onResponse(Observation observation, Registration registration,
+          ObserveResponse response) {
+        responses.add(response);
+      }
+
+      @Override
+      public void onError(Observation observation, Registration registration, Exception error) {
+      }
+    }, new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    });
+    givenAnObservation(support.registration.getId(), new LwM2mPath(3, 0, 1));
+    Request observeRequest = coapRequest;
+
+    observationService.onNotification(observeRequest, givenANotification(observeRequest, "v1"));
+    observationService.onNotification(observeRequest, givenANotification(observeRequest, "v2"));
+    observationService.onNotification(observeRequest, givenANotification(observeRequest, "v3"));
+    Assert.assertEquals(1, tasks.size());
+    tasks.get(0).run();
+
+    Assert.assertEquals(1, responses.size());
+    Assert.assertEquals("v3", ((LwM2mSingleResource) responses.get(0).getContent()).getValue());
+    Assert.assertEquals(2, observationService.getConflatedNotificationCount());
+
+    // a new notification is delivered by a new task
+    observationService.onNotification(observeRequest, givenANotification(observeRequest, "v4"));
+    Assert.assertEquals(2, tasks.size());
+    tasks.get(1).run();
+    Assert.assertEquals(2, responses.size());
+  }
+
+  private Response givenANotification(Request observeRequest) {
+    return givenANotification(observeRequest, "model");
+  }
+
+  private Response givenANotification(Request observeRequest, String value) {
+    Response response = new Response(ResponseCode.CONTENT);
+    response.setToken(observeRequest.getToken());
+    response.getOptions().setContentFormat(MediaTypeRegistry.TEXT_PLAIN);
+    response.setPayload(value);
+    return response;
+  }
+
   private Observation givenAnObservation(String registrationId, LwM2mPath target) {
     Registration registration = store.getRegistration(registrationId);
     if (registration == null) {
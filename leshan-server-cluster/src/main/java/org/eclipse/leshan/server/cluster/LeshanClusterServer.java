@@ -18,6 +18,9 @@ package org.eclipse.leshan.server.cluster;
 import java.io.File;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -31,6 +34,7 @@ import org.eclipse.leshan.core.model.ObjectModel;
 import org.eclipse.leshan.core.node.codec.DefaultLwM2mNodeDecoder;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
+import org.eclipse.leshan.server.impl.CachingSecurityStore;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.model.StaticModelProvider;
 import org.slf4j.Logger;
@@ -176,20 +180,42 @@ public class LeshanClusterServer {
     builder.setRegistrationStore(registrationStore);
 
     // TODO add support of public and private server key
-    builder.setSecurityStore(new RedisSecurityStore(jedis));
+    // cache security info to avoid Redis requests on each DTLS handshake
+    CachingSecurityStore securityStore = new CachingSecurityStore(new RedisSecurityStore(jedis));
+    builder.setSecurityStore(securityStore);
+
+    // handle registrations outside of the CoAP threads as they imply Redis requests
+    builder.setRegistrationExecutor(new ThreadPoolExecutor(8, 8, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(1000)));
 
     // Create and start LWM2M server
-    LeshanServer lwServer = builder.build();
+    final LeshanServer lwServer = builder.build();
 
     // Create Clustering support
-    RedisTokenHandler tokenHandler = new RedisTokenHandler(jedis, clusterInstanceId);
-    new RedisRequestResponseHandler(jedis, lwServer, lwServer.getRegistrationService(),
-        tokenHandler,
+    final RedisTokenHandler tokenHandler = new RedisTokenHandler(jedis, clusterInstanceId);
+    final RedisRequestResponseHandler requestResponseHandler = new RedisRequestResponseHandler(
+        jedis, lwServer, lwServer.getRegistrationService(), tokenHandler,
         lwServer.getObservationService());
     lwServer.getRegistrationService().addListener(tokenHandler);
     lwServer.getRegistrationService().addListener(new RedisRegistrationEventPublisher(jedis));
 
+    final RedisSecurityCacheInvalidator cacheInvalidator = new RedisSecurityCacheInvalidator(jedis,
+        securityStore);
+    cacheInvalidator.start();
+
     // Start Jetty & Leshan
     lwServer.start();
+
+    // Stop the server and the clustering support on shutdown
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        // stop receiving requests before the server is destroyed
+        requestResponseHandler.destroy();
+        cacheInvalidator.stop();
+        lwServer.destroy();
+        tokenHandler.destroy();
+      }
+    });
   }
 }
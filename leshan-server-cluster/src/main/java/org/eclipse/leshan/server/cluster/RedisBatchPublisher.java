@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.cluster.RedisRequestResponseHandler.OverloadPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.Pool;
+
+/**
+ * Publishes messages on a Redis channel from a single thread. Messages queued while a publication is
+ * running are sent together in one pipeline, so a burst of messages needs few round trips and only
+ * one Redis connection.
+ */
+class RedisBatchPublisher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisBatchPublisher.class);
+
+  private static class Message {
+    final String payload;
+    final long enqueueTime = System.nanoTime();
+
+    Message(String payload) {
+      this.payload = payload;
+    }
+  }
+
+  private final Pool<Jedis> pool;
+  private final String channel;
+  private final BlockingQueue<Message> queue;
+  private final int maxBatchSize;
+  private final OverloadPolicy overloadPolicy;
+
+  private final Thread publisher;
+  private volatile boolean destroyed;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile long lastLatency; // in ms
+  private volatile long maxLatency; // in ms
+
+  RedisBatchPublisher(Pool<Jedis> pool, String channel, int queueCapacity, int maxBatchSize,
+      OverloadPolicy overloadPolicy) {
+    this.pool = pool;
+    this.channel = channel;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.maxBatchSize = maxBatchSize;
+    this.overloadPolicy = overloadPolicy;
+
+    publisher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        List<Message> batch = new ArrayList<>(RedisBatchPublisher.this.maxBatchSize);
+        while (true) {
+          Message message;
+          try {
+            message = queue.poll(100, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            return;
+          }
+          if (message == null) {
+            if (destroyed) {
+              // all the queued messages are published
+              return;
+            }
+            continue;
+          }
+          batch.add(message);
+          queue.drainTo(batch, RedisBatchPublisher.this.maxBatchSize - 1);
+          if (!publish(batch)) {
+            if (destroyed) {
+              return;
+            }
+            // do not loop on an unavailable Redis server
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+          batch.clear();
+        }
+      }
+    }, String.format("Redis %s channel writer", channel));
+    publisher.setDaemon(true);
+    publisher.start();
+  }
+
+  /**
+   * Publishes the queued messages then stops the publisher thread, waiting at most 5s.
+   */
+  void destroy() {
+    destroyed = true;
+    try {
+      publisher.join(5000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (publisher.isAlive()) {
+      publisher.interrupt();
+    }
+  }
+
+  /**
+   * Queues a message, applying the overload policy if the queue is full.
+   *
+   * @throws RejectedExecutionException if the queue is full and the policy is
+   * {@link OverloadPolicy#REJECT}
+   */
+  void publish(String payload) {
+    Message message = new Message(payload);
+    switch (overloadPolicy) {
+      case BLOCK:
+        try {
+          queue.put(message);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          dropped.incrementAndGet();
+        }
+        break;
+      case REJECT:
+        if (!queue.offer(message)) {
+          throw new RejectedExecutionException(
+              String.format("Too many messages waiting to be published on %s", channel));
+        }
+        break;
+      case DROP:
+      default:
+        if (!queue.offer(message)) {
+          dropped.incrementAndGet();
+          LOG.debug("Message dropped, too many messages waiting to be published on {}", channel);
+        }
+    }
+  }
+
+  private boolean publish(List<Message> batch) {
+    try (Jedis j = pool.getResource()) {
+      Pipeline pipeline = j.pipelined();
+      for (Message message : batch) {
+        pipeline.publish(channel, message.payload);
+      }
+      pipeline.sync();
+    } catch (RuntimeException e) {
+      LOG.warn(String.format("Unable to publish %d messages on %s", batch.size(), channel), e);
+      dropped.addAndGet(batch.size());
+      return false;
+    }
+
+    // the first message is the oldest one
+    long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).enqueueTime);
+    lastLatency = latency;
+    if (latency > maxLatency) {
+      maxLatency = latency;
+    }
+    return true;
+  }
+
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  long getDroppedCount() {
+    return dropped.get();
+  }
+
+  long getLastLatency() {
+    return lastLatency;
+  }
+
+  long getMaxLatency() {
+    return maxLatency;
+  }
+}
@@ -26,7 +26,11 @@ import redis.clients.jedis.Jedis;
  * Utility class providing locking methods based on the Redis SETNX primitive (see
  * http://redis.io/topics/distlock#correct-implementation-with-a-single-instance for more
  * information).
+ *
+ * @deprecated this lock polls Redis while it is held by someone else, use {@link RedisLockManager}
+ * instead.
  */
+@Deprecated
 public class RedisLock {
 
   private static final byte[] NX_OPTION = "NX"
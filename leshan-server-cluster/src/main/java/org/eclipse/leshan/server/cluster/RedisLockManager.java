@@ -0,0 +1,530 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * Provides Redis based locks (see http://redis.io/topics/distlock#correct-implementation-with-a-single-instance)
+ * without polling.
+ * <p>
+ * Requests for the same key are queued locally and only the oldest one competes for the Redis
+ * lock, so waiters of a node get the lock in FIFO order. When the lock is owned by another node,
+ * the attempt is retried as soon as the lock release is published on the {@link #RELEASE_CHANNEL}
+ * channel, or when the lock lease expires. No Redis connection is held while waiting.
+ * <p>
+ * Each acquired {@link Lease} has a fencing token which is strictly greater than the token of any
+ * lease acquired before it, it can be used by the protected resource to reject operations from an
+ * older lease holder.
+ */
+public class RedisLockManager implements Startable, Stoppable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisLockManager.class);
+
+  public static final String RELEASE_CHANNEL = "LESHAN_LOCK_RELEASE";
+  private static final byte[] RELEASE_CHANNEL_BYTES = RELEASE_CHANNEL.getBytes(UTF_8);
+  private static final byte[] FENCING_COUNTER = "LOCK:FENCE".getBytes(UTF_8);
+
+  /** Default time in milliseconds after which a lock is released if its owner did not release it */
+  public static final long DEFAULT_LEASE_TIME = 500;
+  /** Default maximum time in milliseconds to wait for a lock */
+  public static final long DEFAULT_ACQUIRE_TIMEOUT = 5_000;
+  // time to wait before a new attempt when Redis is not reachable or when the lock has no expiration
+  private static final long RETRY_DELAY = 100;
+
+  /**
+   * Take the lock if it is free and returns { 1, fencing token }, otherwise returns { 0, remaining
+   * lease time of the current owner in ms (see PTTL) }.
+   * <p>
+   * KEYS: lock key, fencing counter.<br>
+   * ARGV: lock value, lease time in ms.
+   */
+  private static final RedisScript ACQUIRE = new RedisScript(
+      "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then",
+      "  return { 1, redis.call('INCR', KEYS[2]) }",
+      "end",
+      "return { 0, redis.call('PTTL', KEYS[1]) }");
+
+  /**
+   * Delete the lock only if it is still owned by the given value and publish its key to wake up the
+   * waiters.
+   * <p>
+   * KEYS: lock key.<br>
+   * ARGV: lock value, release channel.
+   */
+  private static final RedisScript RELEASE = new RedisScript(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then",
+      "  return 0",
+      "end",
+      "redis.call('DEL', KEYS[1])",
+      "redis.call('PUBLISH', ARGV[2], KEYS[1])",
+      "return 1");
+
+  /**
+   * A lock owned by this node.
+   */
+  public static class Lease {
+    private final byte[] key;
+    private final byte[] value;
+    private final long fencingToken;
+
+    private Lease(byte[] key, byte[] value, long fencingToken) {
+      this.key = key;
+      this.value = value;
+      this.fencingToken = fencingToken;
+    }
+
+    public byte[] getKey() {
+      return key;
+    }
+
+    /**
+     * @return a token which is strictly greater than the one of all the previously acquired
+     * leases.
+     */
+    public long getFencingToken() {
+      return fencingToken;
+    }
+  }
+
+  /**
+   * Called when an asynchronous lock request completes. Callbacks are called from the thread which
+   * asked for the lock if it is immediately available, from an internal thread otherwise: they
+   * must not block.
+   */
+  public interface Callback {
+    void onAcquired(Lease lease);
+
+    void onError(Exception e);
+  }
+
+  private final Pool<Jedis> pool;
+  private final boolean internalExecutor;
+  private volatile ScheduledExecutorService executor;
+  private final long leaseTime;
+  private final long acquireTimeout;
+  private final Random random = new SecureRandom();
+  private final ConcurrentMap<ByteBuffer, LockQueue> queues = new ConcurrentHashMap<>();
+
+  private final BinaryJedisPubSub subscriber = new BinaryJedisPubSub() {
+    @Override
+    public void onSubscribe(byte[] channel, int subscribedChannels) {
+      // releases may have been missed while we were not subscribed
+      for (LockQueue queue : queues.values()) {
+        wakeUp(queue);
+      }
+    }
+
+    @Override
+    public void onMessage(byte[] channel, byte[] message) {
+      LockQueue queue = queues.get(ByteBuffer.wrap(message));
+      if (queue != null) {
+        wakeUp(queue);
+      }
+    }
+  };
+  private volatile Thread subscriberThread;
+
+  public RedisLockManager(Pool<Jedis> p) {
+    this(p, null, DEFAULT_LEASE_TIME, DEFAULT_ACQUIRE_TIMEOUT);
+  }
+
+  /**
+   * @param p the Redis pool
+   * @param executor the executor used to retry lock attempts and to time out waiters. If
+   * <code>null</code>, an internal executor is created and it is shut down by {@link #stop()},
+   * otherwise the caller is responsible for shutting it down.
+   * @param leaseTimeInMs time after which a lock is released if its owner did not release it
+   * @param acquireTimeoutInMs maximum time to wait for a lock
+   */
+  public RedisLockManager(Pool<Jedis> p, ScheduledExecutorService executor, long leaseTimeInMs,
+      long acquireTimeoutInMs) {
+    this.pool = p;
+    this.internalExecutor = executor == null;
+    this.executor = executor == null ? createExecutor() : executor;
+    this.leaseTime = leaseTimeInMs;
+    this.acquireTimeout = acquireTimeoutInMs;
+  }
+
+  private static ScheduledExecutorService createExecutor() {
+    return Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("RedisLockManager"));
+  }
+
+  /**
+   * Start listening to lock releases published by other nodes.
+   */
+  @Override
+  public synchronized void start() {
+    if (internalExecutor && executor.isShutdown()) {
+      // restarted after a stop
+      executor = createExecutor();
+    }
+    if (subscriberThread != null) {
+      return;
+    }
+    subscriberThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (subscriberThread == Thread.currentThread()) {
+          try (Jedis j = pool.getResource()) {
+            j.subscribe(subscriber, RELEASE_CHANNEL_BYTES);
+          } catch (RuntimeException e) {
+            LOG.warn("Redis SUBSCRIBE interrupted.", e);
+          }
+
+          // wait & re-launch
+          try {
+            Thread.sleep(500);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, String.format("Redis %s channel reader", RELEASE_CHANNEL));
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+  }
+
+  /**
+   * Stop listening to lock releases and shutdown the internal executor.
+   */
+  @Override
+  public synchronized void stop() {
+    if (internalExecutor) {
+      executor.shutdownNow();
+    }
+    Thread thread = subscriberThread;
+    subscriberThread = null;
+    if (thread != null) {
+      if (subscriber.isSubscribed()) {
+        subscriber.unsubscribe();
+      }
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Acquires a lock for the given key, waiting at most the acquire timeout.
+   * <p>
+   * The lock attempts borrow their own connections from the pool: the calling thread must not hold
+   * a connection of the same pool while waiting, or the pool may be exhausted by the waiters.
+   *
+   * @param lockKey the key to use as lock
+   * @return the lease to give to {@link #release(Jedis, Lease)}
+   * @throws IllegalStateException if the lock could not be acquired
+   */
+  public Lease acquire(byte[] lockKey) {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Lease[] lease = new Lease[1];
+    final Exception[] error = new Exception[1];
+    Waiter waiter = acquireAsync(lockKey, new Callback() {
+      @Override
+      public void onAcquired(Lease l) {
+        lease[0] = l;
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(Exception e) {
+        error[0] = e;
+        latch.countDown();
+      }
+    });
+
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // a lease acquired after the cancellation is released immediately
+      if (waiter.done.compareAndSet(false, true)) {
+        throw new IllegalStateException("Interrupted while waiting for a lock from redis", e);
+      }
+      try {
+        latch.await();
+      } catch (InterruptedException e1) {
+        // the latch is already count down, the completion is being done
+      }
+    }
+    if (error[0] != null) {
+      throw new IllegalStateException(error[0].getMessage(), error[0]);
+    }
+    return lease[0];
+  }
+
+  /**
+   * Acquires a lock for the given key without blocking the calling thread.
+   *
+   * @param lockKey the key to use as lock
+   * @param callback called when the lock is acquired or could not be acquired in time
+   */
+  public void acquire(byte[] lockKey, Callback callback) {
+    acquireAsync(lockKey, callback);
+  }
+
+  /**
+   * Releases a lock and wakes up the next waiter.
+   *
+   * @param lease the lease returned when the lock was acquired, nothing is done if it is
+   * <code>null</code>
+   */
+  public void release(Lease lease) {
+    if (lease != null) {
+      try (Jedis j = pool.getResource()) {
+        release(j, lease);
+      }
+    }
+  }
+
+  /**
+   * Releases a lock and wakes up the next waiter.
+   *
+   * @param j a Redis connection
+   * @param lease the lease returned when the lock was acquired, nothing is done if it is
+   * <code>null</code>
+   */
+  public void release(Jedis j, Lease lease) {
+    if (lease == null) {
+      return;
+    }
+    try {
+      RELEASE.eval(j, Arrays.asList(lease.key), Arrays.asList(lease.value, RELEASE_CHANNEL_BYTES));
+    } finally {
+      final LockQueue queue = queues.get(ByteBuffer.wrap(lease.key));
+      if (queue != null) {
+        boolean attempt;
+        synchronized (queue) {
+          queue.held = false;
+          attempt = startAttempt(queue);
+        }
+        if (attempt) {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              attempt(queue);
+            }
+          });
+        }
+      }
+    }
+  }
+
+  /* *************** Waiting queue management **************** */
+
+  private static class LockQueue {
+    final ByteBuffer key;
+    final Deque<Waiter> waiters = new ArrayDeque<>();
+    boolean held; // a lease is owned by a local waiter
+    boolean attempting; // an attempt is running or is scheduled
+    ScheduledFuture<?> retry; // scheduled attempt, waiting for the lock release
+    boolean wokenUp; // a release was received while an attempt was running
+    boolean removed;
+
+    LockQueue(ByteBuffer key) {
+      this.key = key;
+    }
+  }
+
+  private static class Waiter {
+    final Callback callback;
+    final AtomicBoolean done = new AtomicBoolean();
+    volatile ScheduledFuture<?> timeout;
+
+    Waiter(Callback callback) {
+      this.callback = callback;
+    }
+  }
+
+  private Waiter acquireAsync(byte[] lockKey, Callback callback) {
+    final Waiter waiter = new Waiter(callback);
+    ByteBuffer key = ByteBuffer.wrap(Arrays.copyOf(lockKey, lockKey.length));
+    while (true) {
+      LockQueue queue = queues.get(key);
+      if (queue == null) {
+        LockQueue newQueue = new LockQueue(key);
+        queue = queues.putIfAbsent(key, newQueue);
+        if (queue == null) {
+          queue = newQueue;
+        }
+      }
+
+      boolean attempt;
+      synchronized (queue) {
+        if (queue.removed) {
+          continue;
+        }
+        queue.waiters.add(waiter);
+        attempt = startAttempt(queue);
+      }
+
+      final LockQueue q = queue;
+      waiter.timeout = executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          timeout(q, waiter);
+        }
+      }, acquireTimeout, TimeUnit.MILLISECONDS);
+
+      // the first attempt is done in the calling thread
+      if (attempt) {
+        attempt(queue);
+      }
+      return waiter;
+    }
+  }
+
+  // must be called with the queue lock, returns true if the caller must run an attempt
+  private boolean startAttempt(LockQueue queue) {
+    if (queue.held || queue.attempting) {
+      return false;
+    }
+    if (queue.waiters.isEmpty()) {
+      queue.removed = true;
+      queues.remove(queue.key, queue);
+      return false;
+    }
+    queue.attempting = true;
+    return true;
+  }
+
+  private void wakeUp(final LockQueue queue) {
+    synchronized (queue) {
+      if (queue.retry == null) {
+        // the running attempt will be retried immediately if it fails
+        queue.wokenUp = queue.attempting;
+        return;
+      }
+      if (!queue.retry.cancel(false)) {
+        return;
+      }
+      queue.retry = null;
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        attempt(queue);
+      }
+    });
+  }
+
+  private void attempt(final LockQueue queue) {
+    Waiter head;
+    synchronized (queue) {
+      queue.retry = null;
+      queue.wokenUp = false;
+      head = queue.waiters.peek();
+      if (head == null) {
+        queue.attempting = false;
+        startAttempt(queue);
+        return;
+      }
+    }
+
+    byte[] value = new byte[10];
+    random.nextBytes(value);
+    byte[] lockKey = queue.key.array();
+    long delay;
+    try (Jedis j = pool.getResource()) {
+      List<?> result = (List<?>) ACQUIRE.eval(j, Arrays.asList(lockKey, FENCING_COUNTER),
+          Arrays.asList(value, Long.toString(leaseTime).getBytes(UTF_8)));
+      if ((Long) result.get(0) == 1L) {
+        acquired(queue, head, new Lease(lockKey, value, (Long) result.get(1)));
+        return;
+      }
+      long ttl = (Long) result.get(1);
+      // -1 means the lock has no expiration and -2 that it was released in the meantime
+      delay = ttl == -2 ? 0 : ttl > 0 ? Math.min(ttl, leaseTime) : RETRY_DELAY;
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to acquire lock from redis", e);
+      delay = RETRY_DELAY;
+    }
+
+    // wait for the lock release or its expiration
+    synchronized (queue) {
+      if (queue.wokenUp) {
+        delay = 0;
+      }
+      queue.retry = executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          attempt(queue);
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void acquired(LockQueue queue, Waiter head, Lease lease) {
+    boolean waiting;
+    synchronized (queue) {
+      waiting = queue.waiters.remove(head);
+      queue.held = waiting;
+      queue.attempting = false;
+    }
+    if (head.timeout != null) {
+      head.timeout.cancel(false);
+    }
+    if (!waiting || !head.done.compareAndSet(false, true)) {
+      // the waiter timed out or was cancelled in the meantime
+      release(lease);
+      return;
+    }
+    try {
+      head.callback.onAcquired(lease);
+    } catch (RuntimeException e) {
+      LOG.warn("Unexpected exception in lock callback", e);
+    }
+  }
+
+  private void timeout(LockQueue queue, Waiter waiter) {
+    synchronized (queue) {
+      if (!queue.waiters.remove(waiter)) {
+        return;
+      }
+    }
+    if (waiter.done.compareAndSet(false, true)) {
+      try {
+        waiter.callback.onError(new IllegalStateException("Could not acquire a lock from redis"));
+      } catch (RuntimeException e) {
+        LOG.warn("Unexpected exception in lock callback", e);
+      }
+    }
+  }
+}
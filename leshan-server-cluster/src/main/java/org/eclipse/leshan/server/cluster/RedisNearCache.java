@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.californium.core.observe.Observation;
+import org.eclipse.californium.core.observe.ObservationUtil;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.util.Hex;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.Pool;
+
+/**
+ * A bounded local cache of the registrations (by registration id) and observations (by token)
+ * stored in Redis, used by {@link RedisRegistrationStore} to avoid a Redis round trip on each
+ * notification.
+ * <p>
+ * Each cluster node publishes the registration ids and tokens it modifies on a Redis channel and
+ * evicts the entries received on this channel. The cache is fully cleared each time the
+ * subscription is (re)established, as invalidation messages may have been missed. Other nodes may
+ * still see a modified entry until they receive the invalidation message.
+ */
+public class RedisNearCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisNearCache.class);
+
+  public static final String INVALIDATION_CHANNEL = "LESHAN_REG_INVALIDATION";
+  private static final char REGISTRATION = 'R';
+  private static final char OBSERVATION = 'O';
+
+  private final Pool<Jedis> pool;
+  private final Map<String, Registration> registrations;
+  private final Map<Token, Observation> observations;
+  // incremented on each invalidation, values read from Redis before an invalidation are not cached
+  private long epoch;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final JedisPubSub subscriber = new JedisPubSub() {
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      // messages may have been lost while we were not subscribed
+      clear();
+      subscribed = true;
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      handleInvalidation(message);
+    }
+  };
+  private volatile Thread subscriberThread;
+  // entries are cached only while invalidation messages are received
+  private volatile boolean subscribed;
+
+  /**
+   * @param p the Redis pool used to publish and subscribe to invalidation messages
+   * @param maxEntries the maximum number of registrations and the maximum number of observations
+   * kept in cache, the least recently used entries are evicted first.
+   */
+  public RedisNearCache(Pool<Jedis> p, final int maxEntries) {
+    Validate.isTrue(maxEntries > 0, "maxEntries must be positive");
+    this.pool = p;
+    this.registrations = new LinkedHashMap<String, Registration>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Registration> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    this.observations = new LinkedHashMap<Token, Observation>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Token, Observation> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Start listening to invalidation messages.
+   */
+  public synchronized void start() {
+    if (subscriberThread != null) {
+      return;
+    }
+    subscriberThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (subscriberThread == Thread.currentThread()) {
+          try (Jedis j = pool.getResource()) {
+            j.subscribe(subscriber, INVALIDATION_CHANNEL);
+          } catch (RuntimeException e) {
+            LOG.warn("Redis SUBSCRIBE interrupted.", e);
+          }
+          // entries can not be invalidated anymore
+          subscribed = false;
+          clear();
+
+          // wait & re-launch
+          try {
+            Thread.sleep(500);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, String.format("Redis %s channel reader", INVALIDATION_CHANNEL));
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+  }
+
+  /**
+   * Stop listening to invalidation messages and clear the cache.
+   */
+  public synchronized void stop() {
+    Thread thread = subscriberThread;
+    subscriberThread = null;
+    if (thread != null) {
+      if (subscriber.isSubscribed()) {
+        subscriber.unsubscribe();
+      }
+      thread.interrupt();
+    }
+    subscribed = false;
+    clear();
+  }
+
+  /**
+   * @return a value to give to {@link #putRegistration(Registration, long)} or
+   * {@link #putObservation(Token, Observation, long)}, it must be read before fetching the value
+   * from Redis.
+   */
+  long currentEpoch() {
+    synchronized (this) {
+      return epoch;
+    }
+  }
+
+  Registration getRegistration(String registrationId) {
+    Registration registration;
+    synchronized (this) {
+      registration = registrations.get(registrationId);
+    }
+    count(registration != null);
+    return registration;
+  }
+
+  void putRegistration(Registration registration, long readEpoch) {
+    if (!subscribed) {
+      return;
+    }
+    synchronized (this) {
+      if (readEpoch == epoch) {
+        registrations.put(registration.getId(), registration);
+      }
+    }
+  }
+
+  /**
+   * @return a copy of the cached observation, as Californium modifies the observations returned by
+   * the store.
+   */
+  Observation getObservation(Token token) {
+    Observation observation;
+    synchronized (this) {
+      observation = observations.get(token);
+    }
+    count(observation != null);
+    return observation == null ? null : ObservationUtil.shallowClone(observation);
+  }
+
+  void putObservation(Token token, Observation observation, long readEpoch) {
+    if (!subscribed) {
+      return;
+    }
+    // the caller keeps the given instance, a copy is cached
+    Observation copy = ObservationUtil.shallowClone(observation);
+    synchronized (this) {
+      if (readEpoch == epoch) {
+        observations.put(token, copy);
+      }
+    }
+  }
+
+  /**
+   * Evicts the registration locally and on the other cluster nodes. Must be called after the
+   * registration was modified in Redis.
+   */
+  void invalidateRegistration(Jedis j, String registrationId) {
+    invalidateRegistration(registrationId);
+    j.publish(INVALIDATION_CHANNEL, REGISTRATION + registrationId);
+  }
+
+  /**
+   * Evicts the observation locally and on the other cluster nodes. Must be called after the
+   * observation was modified in Redis.
+   */
+  void invalidateObservation(Jedis j, byte[] token) {
+    invalidateObservation(new Token(token));
+    j.publish(INVALIDATION_CHANNEL, OBSERVATION + Hex.encodeHexString(token));
+  }
+
+  private void handleInvalidation(String message) {
+    if (message.isEmpty()) {
+      return;
+    }
+    String key = message.substring(1);
+    switch (message.charAt(0)) {
+      case REGISTRATION:
+        invalidateRegistration(key);
+        break;
+      case OBSERVATION:
+        invalidateObservation(new Token(Hex.decodeHex(key.toCharArray())));
+        break;
+      default:
+        LOG.warn("Unexpected invalidation message {}", message);
+    }
+  }
+
+  private void invalidateRegistration(String registrationId) {
+    synchronized (this) {
+      epoch++;
+      registrations.remove(registrationId);
+    }
+    invalidations.incrementAndGet();
+  }
+
+  private void invalidateObservation(Token token) {
+    synchronized (this) {
+      epoch++;
+      observations.remove(token);
+    }
+    invalidations.incrementAndGet();
+  }
+
+  private void clear() {
+    synchronized (this) {
+      epoch++;
+      registrations.clear();
+      observations.clear();
+    }
+  }
+
+  private void count(boolean hit) {
+    if (hit) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return the number of lookups which were answered from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups which needed a Redis request.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of invalidated entries (local and received from other nodes).
+   */
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  /**
+   * @return the number of cached registrations and observations.
+   */
+  public synchronized int size() {
+    return registrations.size() + observations.size();
+  }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+/**
+ * Lua scripts used by {@link RedisRegistrationStore} to modify a registration and all its indexes
+ * in a single round trip, without client side lock.
+ * <p>
+ * For each endpoint, the scripts maintain an index hash (EP:IDX:&lt;endpoint&gt;) which contains
+ * the current registration id ("regid" field) and address index key ("addr" field). It allows the
+ * scripts to clean the indexes of a previous registration without deserializing it.
+ * <p>
+ * For each registration, the observed paths are indexed in a sorted set (PATHS:REGID:&lt;regid&gt;)
+ * whose members are "&lt;path&gt;|&lt;token&gt;", all with the same score so they are sorted
+ * lexicographically.
+ */
+class RedisRegistrationScripts {
+
+  private RedisRegistrationScripts() {
+  }
+
+  /**
+   * Add a registration and remove the previous registration of the same endpoint with its
+   * observations.
+   * <p>
+   * KEYS: endpoint key, registration id index key, address index key, expiration sorted set,
+   * endpoint index hash key.<br>
+   * ARGV: serialized registration, endpoint, registration id, expiration timestamp, registration id
+   * index prefix, tokens by registration id prefix, observation by token prefix, observed paths by
+   * registration id prefix.
+   * <p>
+   * Returns: { previous registration or nil, 1 if the previous registration indexes were cleaned
+   * (0 if it was stored without index hash), removed observations... }
+   */
+  static final RedisScript ADD = new RedisScript(
+      "local old = redis.call('GETSET', KEYS[1], ARGV[1])",
+      "local oldRegId = redis.call('HGET', KEYS[5], 'regid')",
+      "local oldAddrKey = redis.call('HGET', KEYS[5], 'addr')",
+      "redis.call('SET', KEYS[2], ARGV[2])",
+      "redis.call('SET', KEYS[3], ARGV[2])",
+      "redis.call('ZADD', KEYS[4], ARGV[4], ARGV[2])",
+      "redis.call('HMSET', KEYS[5], 'regid', ARGV[3], 'addr', KEYS[3])",
+      "if not old then",
+      "  return { false, 1 }",
+      "end",
+      "if not oldRegId then",
+      "  return { old, 0 }",
+      "end",
+      "local result = { old, 1 }",
+      "if oldRegId ~= ARGV[3] then",
+      "  local regIdKey = ARGV[5] .. oldRegId",
+      "  if redis.call('GET', regIdKey) == ARGV[2] then",
+      "    redis.call('DEL', regIdKey)",
+      "  end",
+      "end",
+      "if oldAddrKey and oldAddrKey ~= KEYS[3] and redis.call('GET', oldAddrKey) == ARGV[2] then",
+      "  redis.call('DEL', oldAddrKey)",
+      "end",
+      "local tokensKey = ARGV[6] .. oldRegId",
+      "for _, token in ipairs(redis.call('LRANGE', tokensKey, 0, -1)) do",
+      "  local obsKey = ARGV[7] .. token",
+      "  local obs = redis.call('GET', obsKey)",
+      "  if obs then",
+      "    table.insert(result, obs)",
+      "    redis.call('DEL', obsKey)",
+      "  end",
+      "end",
+      "redis.call('DEL', tokensKey)",
+      "redis.call('DEL', ARGV[8] .. oldRegId)",
+      "return result");
+
+  /**
+   * Replace a registration by its updated version if it was not modified in the meantime.
+   * <p>
+   * KEYS: endpoint key, new address index key, expiration sorted set, endpoint index hash key,
+   * previous address index key.<br>
+   * ARGV: expected current serialized registration, updated serialized registration, endpoint,
+   * expiration timestamp, registration id.
+   * <p>
+   * Returns: 1 if the registration was updated, 0 if it was modified or removed concurrently.
+   */
+  static final RedisScript UPDATE = new RedisScript(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] then",
+      "  return 0",
+      "end",
+      "redis.call('SET', KEYS[1], ARGV[2])",
+      "redis.call('ZADD', KEYS[3], ARGV[4], ARGV[3])",
+      "redis.call('SET', KEYS[2], ARGV[3])",
+      "if KEYS[5] ~= KEYS[2] and redis.call('GET', KEYS[5]) == ARGV[3] then",
+      "  redis.call('DEL', KEYS[5])",
+      "end",
+      "redis.call('HMSET', KEYS[4], 'regid', ARGV[5], 'addr', KEYS[2])",
+      "return 1");
+
+  /**
+   * Remove a registration, its indexes and its observations.
+   * <p>
+   * KEYS: registration id index key, expiration sorted set.<br>
+   * ARGV: registration id, endpoint key prefix, endpoint index hash prefix, tokens by registration
+   * id prefix, observation by token prefix, current timestamp if the registration must be removed
+   * only if expired or empty string, observed paths by registration id prefix.
+   * <p>
+   * Returns: nil if nothing was removed or { removed registration, 1 if the address index was
+   * cleaned (0 if it was stored without index hash), removed observations... }
+   */
+  static final RedisScript REMOVE = new RedisScript(
+      "local ep = redis.call('GET', KEYS[1])",
+      "if not ep then",
+      "  return false",
+      "end",
+      "local epKey = ARGV[2] .. ep",
+      "local data = redis.call('GET', epKey)",
+      "if not data then",
+      "  return false",
+      "end",
+      "if ARGV[6] ~= '' then",
+      "  local expiration = redis.call('ZSCORE', KEYS[2], ep)",
+      "  if expiration and tonumber(expiration) > tonumber(ARGV[6]) then",
+      "    return false",
+      "  end",
+      "end",
+      "local idxKey = ARGV[3] .. ep",
+      "local addrKey = redis.call('HGET', idxKey, 'addr')",
+      "redis.call('DEL', KEYS[1])",
+      "redis.call('DEL', epKey)",
+      "redis.call('DEL', idxKey)",
+      "redis.call('ZREM', KEYS[2], ep)",
+      "local result = { data, 0 }",
+      "if addrKey then",
+      "  result[2] = 1",
+      "  if redis.call('GET', addrKey) == ep then",
+      "    redis.call('DEL', addrKey)",
+      "  end",
+      "end",
+      "local tokensKey = ARGV[4] .. ARGV[1]",
+      "for _, token in ipairs(redis.call('LRANGE', tokensKey, 0, -1)) do",
+      "  local obsKey = ARGV[5] .. token",
+      "  local obs = redis.call('GET', obsKey)",
+      "  if obs then",
+      "    table.insert(result, obs)",
+      "    redis.call('DEL', obsKey)",
+      "  end",
+      "end",
+      "redis.call('DEL', tokensKey)",
+      "redis.call('DEL', ARGV[7] .. ARGV[1])",
+      "return result");
+
+  /**
+   * Get a registration using a secondary index.
+   * <p>
+   * KEYS: index key (registration id or address index).<br>
+   * ARGV: endpoint key prefix.
+   * <p>
+   * Returns: the serialized registration or nil.
+   */
+  static final RedisScript GET_BY_INDEX = new RedisScript(
+      "local ep = redis.call('GET', KEYS[1])",
+      "if not ep then",
+      "  return false",
+      "end",
+      "return redis.call('GET', ARGV[1] .. ep)");
+
+  /**
+   * Add a Californium observation if its registration exists.
+   * <p>
+   * KEYS: registration id index key, observation by token key, tokens by registration id key,
+   * observed paths by registration id key, observed paths key of the previous observation (only if
+   * it is known).<br>
+   * ARGV: serialized observation, token, "1" if the observation must be added only if absent,
+   * observed path member, serialized previous observation and its observed path member (only if
+   * it is known).
+   * <p>
+   * Returns: { 0 } if there is no registration, { 1, previous observation or nil } if the
+   * observation was added, { 2, existing observation } if it was absent and not added, { 3,
+   * existing observation } if it differs from the given previous observation and the call must be
+   * retried with this one.
+   */
+  static final RedisScript ADD_OBSERVATION = new RedisScript(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then",
+      "  return { 0 }",
+      "end",
+      "local previous = redis.call('GET', KEYS[2])",
+      "if previous and previous ~= '' then",
+      "  if ARGV[3] == '1' then",
+      "    return { 2, previous }",
+      "  end",
+      "  if previous ~= ARGV[5] then",
+      "    return { 3, previous }",
+      "  end",
+      "  if KEYS[5] ~= KEYS[4] or ARGV[6] ~= ARGV[4] then",
+      "    redis.call('ZREM', KEYS[5], ARGV[6])",
+      "  end",
+      "end",
+      "redis.call('SET', KEYS[2], ARGV[1])",
+      "redis.call('LREM', KEYS[3], 0, ARGV[2])",
+      "redis.call('LPUSH', KEYS[3], ARGV[2])",
+      "redis.call('ZADD', KEYS[4], 0, ARGV[4])",
+      "return { 1, previous }");
+}
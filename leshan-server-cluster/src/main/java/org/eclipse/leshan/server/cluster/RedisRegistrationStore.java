@@ -36,11 +36,13 @@ import java.util.concurrent.TimeUnit;
 
 import org.eclipse.californium.core.coap.Token;
 import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.observation.Observation;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.californium.CaliforniumRegistrationStore;
 import org.eclipse.leshan.server.californium.ObserveUtil;
+import org.eclipse.leshan.server.cluster.RedisLockManager.Lease;
 import org.eclipse.leshan.server.cluster.serialization.ObservationSerDes;
 import org.eclipse.leshan.server.cluster.serialization.RegistrationSerDes;
 import org.eclipse.leshan.server.registration.Deregistration;
@@ -60,6 +62,13 @@ import redis.clients.util.Pool;
 
 /**
  * A RegistrationStore which stores registrations and observations in Redis.
+ * <p>
+ * Registration, update and de-registration are executed as server side Lua scripts (see
+ * {@link RedisRegistrationScripts}): each of them modifies the registration and all its indexes
+ * atomically in one round trip (two for an update) without taking a client side lock.
+ * <p>
+ * An optional {@link RedisNearCache} can keep registrations (by id) and observations (by token)
+ * locally, so handling a notification usually does not need any Redis request.
  */
 public class RedisRegistrationStore implements CaliforniumRegistrationStore, Startable, Stoppable {
 
@@ -79,9 +88,12 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   private static final String REG_EP = "REG:EP:"; // (Endpoint => Registration)
   private static final String REG_EP_REGID_IDX = "EP:REGID:"; // secondary index key (Registration ID => Endpoint)
   private static final String REG_EP_ADDR_IDX = "EP:ADDR:"; // secondary index key (Socket Address => Endpoint)
+  private static final String REG_EP_IDX = "EP:IDX:"; // index hash (Endpoint => registration ID and address index key)
   private static final String LOCK_EP = "LOCK:EP:";
   private static final byte[] OBS_TKN = "OBS:TKN:".getBytes(UTF_8);
   private static final String OBS_TKNS_REGID_IDX = "TKNS:REGID:"; // secondary index (token list by registration)
+  private static final String OBS_PATHS_REGID_IDX = "PATHS:REGID:"; // secondary index (sorted "path|token" by registration)
+  private static final int MAX_UPDATE_ATTEMPTS = 10;
   private static final byte[] EXP_EP = "EXP:EP"
       .getBytes(UTF_8); // a sorted set used for registration expiration
   // (expiration date, Endpoint)
@@ -95,6 +107,8 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   private final long cleanPeriod; // in seconds
   private final int cleanLimit; // maximum number to clean in a clean period
   private final long gracePeriod; // in seconds
+  private final RedisNearCache nearCache; // null if disabled
+  private final RedisLockManager locks;
 
   public RedisRegistrationStore(Pool<Jedis> p) {
     this(p, DEFAULT_CLEAN_PERIOD, DEFAULT_GRACE_PERIOD,
@@ -112,7 +126,19 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   public RedisRegistrationStore(Pool<Jedis> p, ScheduledExecutorService schedExecutor,
       long cleanPeriodInSec,
       long lifetimeGracePeriodInSec, int cleanLimit) {
+    this(p, schedExecutor, cleanPeriodInSec, lifetimeGracePeriodInSec, cleanLimit, 0);
+  }
+
+  /**
+   * @param nearCacheSize the maximum number of registrations and of observations kept in a local
+   * {@link RedisNearCache}, 0 to disable it.
+   */
+  public RedisRegistrationStore(Pool<Jedis> p, ScheduledExecutorService schedExecutor,
+      long cleanPeriodInSec,
+      long lifetimeGracePeriodInSec, int cleanLimit, int nearCacheSize) {
     this.pool = p;
+    this.nearCache = nearCacheSize > 0 ? new RedisNearCache(p, nearCacheSize) : null;
+    this.locks = new RedisLockManager(p);
     this.schedExecutor = schedExecutor;
     this.cleanPeriod = cleanPeriodInSec;
     this.cleanLimit = cleanLimit;
@@ -145,101 +171,100 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   @Override
   public Deregistration addRegistration(Registration registration) {
     try (Jedis j = pool.getResource()) {
-      byte[] lockValue = null;
-      byte[] lockKey = toLockKey(registration.getEndpoint());
-
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        // add registration
-        byte[] k = toEndpointKey(registration.getEndpoint());
-        byte[] old = j.getSet(k, serializeReg(registration));
-
-        // add registration: secondary indexes
-        byte[] regid_idx = toRegIdKey(registration.getId());
-        j.set(regid_idx, registration.getEndpoint().getBytes(UTF_8));
-        byte[] addr_idx = toRegAddrKey(registration.getSocketAddress());
-        j.set(addr_idx, registration.getEndpoint().getBytes(UTF_8));
-
-        // Add or update expiration
-        addOrUpdateExpiration(j, registration);
-
-        if (old != null) {
-          Registration oldRegistration = deserializeReg(old);
-          // remove old secondary index
-          if (!registration.getId().equals(oldRegistration.getId())) {
-            j.del(toRegIdKey(oldRegistration.getId()));
-          }
-          if (!oldRegistration.getSocketAddress().equals(registration.getSocketAddress())) {
-            removeAddrIndex(j, oldRegistration);
-          }
-          // remove old observation
-          Collection<Observation> obsRemoved = unsafeRemoveAllObservations(j,
-              oldRegistration.getId());
+      byte[] ep = registration.getEndpoint().getBytes(UTF_8);
+
+      // add registration, its secondary indexes and its expiration, then remove the previous one in a single
+      // atomic step
+      List<byte[]> keys = Arrays.asList(toEndpointKey(ep), toRegIdKey(registration.getId()),
+          toRegAddrKey(registration.getSocketAddress()), EXP_EP, toIndexKey(ep));
+      List<byte[]> args = Arrays.asList(serializeReg(registration), ep,
+          registration.getId().getBytes(UTF_8), toExpiration(registration),
+          REG_EP_REGID_IDX.getBytes(UTF_8), OBS_TKNS_REGID_IDX.getBytes(UTF_8), OBS_TKN,
+          OBS_PATHS_REGID_IDX.getBytes(UTF_8));
+      List<?> result = (List<?>) RedisRegistrationScripts.ADD.eval(j, keys, args);
+
+      byte[] old = (byte[]) result.get(0);
+      if (old == null) {
+        invalidateRegistration(j, registration.getId());
+        return null;
+      }
 
-          return new Deregistration(oldRegistration, obsRemoved);
+      Registration oldRegistration = deserializeReg(old);
+      invalidateRegistration(j, oldRegistration.getId());
+      if (!oldRegistration.getId().equals(registration.getId())) {
+        invalidateRegistration(j, registration.getId());
+      }
+      Collection<Observation> obsRemoved;
+      if (isIndexed(result)) {
+        obsRemoved = toObservations(result);
+        invalidateObservations(j, obsRemoved);
+      } else {
+        // previous registration was stored without index hash, clean it the old way
+        if (!registration.getId().equals(oldRegistration.getId())) {
+          j.del(toRegIdKey(oldRegistration.getId()));
         }
-
-        return null;
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
+        if (!oldRegistration.getSocketAddress().equals(registration.getSocketAddress())) {
+          removeAddrIndex(j, oldRegistration);
+        }
+        obsRemoved = unsafeRemoveAllObservations(j, oldRegistration.getId());
       }
+      return new Deregistration(oldRegistration, obsRemoved);
     }
   }
 
   @Override
   public UpdatedRegistration updateRegistration(RegistrationUpdate update) {
     try (Jedis j = pool.getResource()) {
-
-      // Fetch the registration ep by registration ID index
-      byte[] ep = j.get(toRegIdKey(update.getRegistrationId()));
-      if (ep == null) {
-        return null;
-      }
-
-      byte[] lockValue = null;
-      byte[] lockKey = toLockKey(ep);
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        // Fetch the registration
-        byte[] data = j.get(toEndpointKey(ep));
+      // optimistic update: the registration is replaced only if it was not modified since we read it.
+      for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+        // Fetch the registration by registration ID index
+        byte[] data = getByIndex(j, toRegIdKey(update.getRegistrationId()));
         if (data == null) {
           return null;
         }
 
         Registration r = deserializeReg(data);
-
         Registration updatedRegistration = update.update(r);
 
-        // Store the new registration
-        j.set(toEndpointKey(updatedRegistration.getEndpoint()), serializeReg(updatedRegistration));
-
-        // Add or update expiration
-        addOrUpdateExpiration(j, updatedRegistration);
-
-        // Update secondary index :
+        byte[] ep = updatedRegistration.getEndpoint().getBytes(UTF_8);
         // If registration is already associated to this address we don't care as we only want to keep the most
         // recent binding.
-        byte[] addr_idx = toRegAddrKey(updatedRegistration.getSocketAddress());
-        j.set(addr_idx, updatedRegistration.getEndpoint().getBytes(UTF_8));
-        if (!r.getSocketAddress().equals(updatedRegistration.getSocketAddress())) {
-          removeAddrIndex(j, r);
+        List<byte[]> keys = Arrays.asList(toEndpointKey(ep),
+            toRegAddrKey(updatedRegistration.getSocketAddress()), EXP_EP, toIndexKey(ep),
+            toRegAddrKey(r.getSocketAddress()));
+        List<byte[]> args = Arrays.asList(data, serializeReg(updatedRegistration), ep,
+            toExpiration(updatedRegistration), updatedRegistration.getId().getBytes(UTF_8));
+        Long updated = (Long) RedisRegistrationScripts.UPDATE.eval(j, keys, args);
+        if (updated == 1L) {
+          invalidateRegistration(j, updatedRegistration.getId());
+          return new UpdatedRegistration(r, updatedRegistration);
         }
-
-        return new UpdatedRegistration(r, updatedRegistration);
-
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
       }
+      throw new IllegalStateException(
+          String.format("Could not update registration %s: too many concurrent modifications",
+              update.getRegistrationId()));
     }
   }
 
   @Override
   public Registration getRegistration(String registrationId) {
-    try (Jedis j = pool.getResource()) {
-      return getRegistration(j, registrationId);
+    if (nearCache == null) {
+      try (Jedis j = pool.getResource()) {
+        return getRegistration(j, registrationId);
+      }
+    }
+
+    Registration registration = nearCache.getRegistration(registrationId);
+    if (registration == null) {
+      long epoch = nearCache.currentEpoch();
+      try (Jedis j = pool.getResource()) {
+        registration = getRegistration(j, registrationId);
+      }
+      if (registration != null) {
+        nearCache.putRegistration(registration, epoch);
+      }
     }
+    return registration;
   }
 
   @Override
@@ -258,11 +283,7 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   public Registration getRegistrationByAdress(InetSocketAddress address) {
     Validate.notNull(address);
     try (Jedis j = pool.getResource()) {
-      byte[] ep = j.get(toRegAddrKey(address));
-      if (ep == null) {
-        return null;
-      }
-      byte[] data = j.get(toEndpointKey(ep));
+      byte[] data = getByIndex(j, toRegAddrKey(address));
       if (data == null) {
         return null;
       }
@@ -347,38 +368,27 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
   private Deregistration removeRegistration(Jedis j, String registrationId,
       boolean removeOnlyIfNotAlive) {
-    // fetch the client ep by registration ID index
-    byte[] ep = j.get(toRegIdKey(registrationId));
-    if (ep == null) {
+    // remove the registration, its indexes and its observations in a single atomic step
+    List<byte[]> keys = Arrays.asList(toRegIdKey(registrationId), EXP_EP);
+    byte[] now = removeOnlyIfNotAlive ? Long.toString(System.currentTimeMillis()).getBytes(UTF_8)
+        : new byte[0];
+    List<byte[]> args = Arrays.asList(registrationId.getBytes(UTF_8), REG_EP.getBytes(UTF_8),
+        REG_EP_IDX.getBytes(UTF_8), OBS_TKNS_REGID_IDX.getBytes(UTF_8), OBS_TKN, now,
+        OBS_PATHS_REGID_IDX.getBytes(UTF_8));
+    List<?> result = (List<?>) RedisRegistrationScripts.REMOVE.eval(j, keys, args);
+    if (result == null) {
       return null;
     }
 
-    byte[] lockValue = null;
-    byte[] lockKey = toLockKey(ep);
-    try {
-      lockValue = RedisLock.acquire(j, lockKey);
-
-      // fetch the client
-      byte[] data = j.get(toEndpointKey(ep));
-      if (data == null) {
-        return null;
-      }
-      Registration r = deserializeReg(data);
-
-      if (!removeOnlyIfNotAlive || !r.isAlive(gracePeriod)) {
-        long nbRemoved = j.del(toRegIdKey(r.getId()));
-        if (nbRemoved > 0) {
-          j.del(toEndpointKey(r.getEndpoint()));
-          Collection<Observation> obsRemoved = unsafeRemoveAllObservations(j, r.getId());
-          removeAddrIndex(j, r);
-          removeExpiration(j, r);
-          return new Deregistration(r, obsRemoved);
-        }
-      }
-      return null;
-    } finally {
-      RedisLock.release(j, lockKey, lockValue);
+    Registration r = deserializeReg((byte[]) result.get(0));
+    if (!isIndexed(result)) {
+      // registration was stored without index hash, clean the address index the old way
+      removeAddrIndex(j, r);
     }
+    Collection<Observation> obsRemoved = toObservations(result);
+    invalidateRegistration(j, r.getId());
+    invalidateObservations(j, obsRemoved);
+    return new Deregistration(r, obsRemoved);
   }
 
   private void removeAddrIndex(Jedis j, Registration registration) {
@@ -389,13 +399,27 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     }
   }
 
-  private void addOrUpdateExpiration(Jedis j, Registration registration) {
-    j.zadd(EXP_EP, registration.getExpirationTimeStamp(gracePeriod),
-        registration.getEndpoint().getBytes(UTF_8));
+  private byte[] toExpiration(Registration registration) {
+    return Long.toString(registration.getExpirationTimeStamp(gracePeriod)).getBytes(UTF_8);
   }
 
-  private void removeExpiration(Jedis j, Registration registration) {
-    j.zrem(EXP_EP, registration.getEndpoint().getBytes(UTF_8));
+  private byte[] getByIndex(Jedis j, byte[] indexKey) {
+    return (byte[]) RedisRegistrationScripts.GET_BY_INDEX
+        .eval(j, Collections.singletonList(indexKey),
+            Collections.singletonList(REG_EP.getBytes(UTF_8)));
+  }
+
+  private boolean isIndexed(List<?> scriptResult) {
+    return Long.valueOf(1L).equals(scriptResult.get(1));
+  }
+
+  private Collection<Observation> toObservations(List<?> scriptResult) {
+    // observations removed by a script are returned after the 2 first elements
+    Collection<Observation> observations = new ArrayList<>();
+    for (int i = 2; i < scriptResult.size(); i++) {
+      observations.add(build(deserializeObs((byte[]) scriptResult.get(i))));
+    }
+    return observations;
   }
 
   private byte[] toRegIdKey(String registrationId) {
@@ -414,8 +438,33 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     return toKey(REG_EP.getBytes(UTF_8), endpoint);
   }
 
+  private byte[] toIndexKey(byte[] endpoint) {
+    return toKey(REG_EP_IDX.getBytes(UTF_8), endpoint);
+  }
+
+  private void invalidateRegistration(Jedis j, String registrationId) {
+    if (nearCache != null) {
+      nearCache.invalidateRegistration(j, registrationId);
+    }
+  }
+
+  private void invalidateObservations(Jedis j, Collection<Observation> observations) {
+    if (nearCache != null) {
+      for (Observation observation : observations) {
+        nearCache.invalidateObservation(j, observation.getId());
+      }
+    }
+  }
+
+  /**
+   * @return the near cache or <code>null</code> if it is disabled.
+   */
+  public RedisNearCache getNearCache() {
+    return nearCache;
+  }
+
   private byte[] serializeReg(Registration registration) {
-    return RegistrationSerDes.bSerialize(registration);
+    return RegistrationSerDes.serializeBinary(registration);
   }
 
   private Registration deserializeReg(byte[] data) {
@@ -431,63 +480,54 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   @Override
   public Collection<Observation> addObservation(String registrationId, Observation observation) {
 
-    List<Observation> removed = new ArrayList<>();
+    // fetch the client ep by registration ID index
+    byte[] ep;
     try (Jedis j = pool.getResource()) {
+      ep = j.get(toRegIdKey(registrationId));
+    }
+    if (ep == null) {
+      return null;
+    }
 
-      // fetch the client ep by registration ID index
-      byte[] ep = j.get(toRegIdKey(registrationId));
-      if (ep == null) {
-        return null;
-      }
-
-      byte[] lockValue = null;
-      byte[] lockKey = toLockKey(ep);
-
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        // cancel existing observations for the same path and registration id.
-        for (Observation obs : getObservations(j, registrationId)) {
-          if (observation.getPath().equals(obs.getPath())
-              && !Arrays.equals(observation.getId(), obs.getId())) {
-            removed.add(obs);
-            unsafeRemoveObservation(j, registrationId, obs.getId());
-          }
+    // the connection is given back to the pool while waiting for the lock
+    List<Observation> removed = new ArrayList<>();
+    Lease lease = locks.acquire(toLockKey(ep));
+    try (Jedis j = pool.getResource()) {
+      // cancel existing observations for the same path and registration id.
+      for (Observation obs : getObservations(j, registrationId, observation.getPath(), false)) {
+        if (!Arrays.equals(observation.getId(), obs.getId())) {
+          removed.add(obs);
+          unsafeRemoveObservation(j, registrationId, obs.getPath(), obs.getId());
         }
-
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
       }
+    } finally {
+      locks.release(lease);
     }
     return removed;
   }
 
   @Override
   public Observation removeObservation(String registrationId, byte[] observationId) {
+    // fetch the client ep by registration ID index
+    byte[] ep;
     try (Jedis j = pool.getResource()) {
+      ep = j.get(toRegIdKey(registrationId));
+    }
+    if (ep == null) {
+      return null;
+    }
 
-      // fetch the client ep by registration ID index
-      byte[] ep = j.get(toRegIdKey(registrationId));
-      if (ep == null) {
-        return null;
-      }
-
-      // remove observation
-      byte[] lockValue = null;
-      byte[] lockKey = toLockKey(ep);
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        Observation observation = build(get(new Token(observationId)));
-        if (observation != null && registrationId.equals(observation.getRegistrationId())) {
-          unsafeRemoveObservation(j, registrationId, observationId);
-          return observation;
-        }
-        return null;
-
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
+    // remove observation
+    Lease lease = locks.acquire(toLockKey(ep));
+    try (Jedis j = pool.getResource()) {
+      Observation observation = build(get(j, new Token(observationId)));
+      if (observation != null && registrationId.equals(observation.getRegistrationId())) {
+        unsafeRemoveObservation(j, registrationId, observation.getPath(), observationId);
+        return observation;
       }
+      return null;
+    } finally {
+      locks.release(lease);
     }
   }
 
@@ -515,26 +555,76 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   }
 
   @Override
-  public Collection<Observation> removeObservations(String registrationId) {
+  public Collection<Observation> getObservations(String registrationId, LwM2mPath path) {
     try (Jedis j = pool.getResource()) {
-      // check registration exists
-      Registration registration = getRegistration(j, registrationId);
-      if (registration == null) {
-        return Collections.emptyList();
-      }
+      return getObservations(j, registrationId, path, false);
+    }
+  }
 
-      // get endpoint and create lock
-      String endpoint = registration.getEndpoint();
-      byte[] lockValue = null;
-      byte[] lockKey = toKey(LOCK_EP, endpoint);
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
+  @Override
+  public Collection<Observation> getObservationsUnder(String registrationId, LwM2mPath prefix) {
+    try (Jedis j = pool.getResource()) {
+      return getObservations(j, registrationId, prefix, true);
+    }
+  }
 
-        return unsafeRemoveAllObservations(j, registrationId);
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
+  private Collection<Observation> getObservations(Jedis j, String registrationId, LwM2mPath path,
+      boolean withDescendants) {
+    byte[] key = toKey(OBS_PATHS_REGID_IDX, registrationId);
+    Collection<byte[]> members;
+    if (path.isRoot() && withDescendants) {
+      members = j.zrange(key, 0, -1);
+    } else {
+      // members of a path start with "<path>|", the ones of its descendants with "<path>/"
+      String p = path.toString();
+      members = new ArrayList<>(j.zrangeByLex(key, ("[" + p + "|").getBytes(UTF_8),
+          ("(" + p + "}").getBytes(UTF_8)));
+      if (withDescendants) {
+        members.addAll(j.zrangeByLex(key, ("[" + p + "/").getBytes(UTF_8),
+            ("(" + p + "0").getBytes(UTF_8)));
       }
     }
+
+    Collection<Observation> result = new ArrayList<>();
+    for (byte[] member : members) {
+      byte[] obs = j.get(toKey(OBS_TKN, toToken(member)));
+      if (obs != null) {
+        result.add(build(deserializeObs(obs)));
+      }
+    }
+    return result;
+  }
+
+  private byte[] toPathMember(LwM2mPath path, byte[] token) {
+    return toKey((path.toString() + "|").getBytes(UTF_8), token);
+  }
+
+  private byte[] toToken(byte[] pathMember) {
+    int separator = 0;
+    while (pathMember[separator] != '|') {
+      separator++;
+    }
+    return Arrays.copyOfRange(pathMember, separator + 1, pathMember.length);
+  }
+
+  @Override
+  public Collection<Observation> removeObservations(String registrationId) {
+    // check registration exists
+    Registration registration;
+    try (Jedis j = pool.getResource()) {
+      registration = getRegistration(j, registrationId);
+    }
+    if (registration == null) {
+      return Collections.emptyList();
+    }
+
+    // get endpoint and create lock
+    Lease lease = locks.acquire(toLockKey(registration.getEndpoint()));
+    try (Jedis j = pool.getResource()) {
+      return unsafeRemoveAllObservations(j, registrationId);
+    } finally {
+      locks.release(lease);
+    }
   }
 
   /* *************** Californium ObservationStore API **************** */
@@ -553,45 +643,55 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
   private org.eclipse.californium.core.observe.Observation add(Token token,
       org.eclipse.californium.core.observe.Observation obs, boolean ifAbsent) {
-    String endpoint = ObserveUtil.validateCoapObservation(obs);
+    ObserveUtil.validateCoapObservation(obs);
     org.eclipse.californium.core.observe.Observation previousObservation = null;
 
     try (Jedis j = pool.getResource()) {
-      byte[] lockValue = null;
-      byte[] lockKey = toKey(LOCK_EP, endpoint);
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        String registrationId = ObserveUtil.extractRegistrationId(obs);
-        if (!j.exists(toRegIdKey(registrationId))) {
-          throw new IllegalStateException("no registration for this Id");
-        }
-        byte[] key = toKey(OBS_TKN, obs.getRequest().getToken().getBytes());
-        byte[] serializeObs = serializeObs(obs);
-        byte[] previousValue = null;
-        if (ifAbsent) {
-          previousValue = j.get(key);
-          if (previousValue == null || previousValue.length == 0) {
-            j.set(key, serializeObs);
-          } else {
-            return deserializeObs(previousValue);
-          }
-        } else {
-          previousValue = j.getSet(key, serializeObs);
-        }
+      String registrationId = ObserveUtil.extractRegistrationId(obs);
+      byte[] tokenBytes = obs.getRequest().getToken().getBytes();
+
+      // check registration exists, add observation and its secondary indexes in a single atomic step
+      LwM2mPath path = LwM2mPath.intern(ObserveUtil.extractLwm2mPath(obs));
+      List<byte[]> keys = new ArrayList<>(Arrays.asList(toRegIdKey(registrationId),
+          toKey(OBS_TKN, tokenBytes), toKey(OBS_TKNS_REGID_IDX, registrationId),
+          toKey(OBS_PATHS_REGID_IDX, registrationId)));
+      List<byte[]> args = new ArrayList<>(Arrays.asList(serializeObs(obs), tokenBytes,
+          (ifAbsent ? "1" : "0").getBytes(UTF_8), toPathMember(path, tokenBytes)));
+      List<?> result = (List<?>) RedisRegistrationScripts.ADD_OBSERVATION.eval(j, keys, args);
+      while ((Long) result.get(0) == 3L) {
+        // an observation exists for this token: its observed path must be removed by the script
+        byte[] existing = (byte[]) result.get(1);
+        previousObservation = deserializeObs(existing);
+        LwM2mPath previousPath = LwM2mPath
+            .intern(ObserveUtil.extractLwm2mPath(previousObservation));
+        keys = new ArrayList<>(keys.subList(0, 4));
+        keys.add(toKey(OBS_PATHS_REGID_IDX,
+            ObserveUtil.extractRegistrationId(previousObservation)));
+        args = new ArrayList<>(args.subList(0, 4));
+        args.add(existing);
+        args.add(toPathMember(previousPath, tokenBytes));
+        result = (List<?>) RedisRegistrationScripts.ADD_OBSERVATION.eval(j, keys, args);
+      }
 
-        // secondary index to get the list by registrationId
-        j.lpush(toKey(OBS_TKNS_REGID_IDX, registrationId), obs.getRequest().getToken().getBytes());
+      long status = (Long) result.get(0);
+      if (status == 0L) {
+        throw new IllegalStateException("no registration for this Id");
+      }
+      byte[] previousValue = (byte[]) result.get(1);
+      if (status == 2L) {
+        return deserializeObs(previousValue);
+      }
+      if (nearCache != null) {
+        nearCache.invalidateObservation(j, tokenBytes);
+      }
 
-        // log any collisions
-        if (previousValue != null && previousValue.length != 0) {
-          previousObservation = deserializeObs(previousValue);
-          LOG.warn(
-              "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
-              previousObservation.getRequest(), obs.getRequest());
-        }
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
+      // log any collisions
+      if (previousValue != null && previousValue.length != 0) {
+        LOG.warn(
+            "Token collision ? observation from request [{}] will be replaced by observation from request [{}] ",
+            previousObservation.getRequest(), obs.getRequest());
+      } else {
+        previousObservation = null;
       }
     }
     return previousObservation;
@@ -599,6 +699,9 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
 
   @Override
   public void remove(Token token) {
+    org.eclipse.californium.core.observe.Observation obs;
+    String registrationId;
+    Registration registration;
     try (Jedis j = pool.getResource()) {
       byte[] tokenKey = toKey(OBS_TKN, token.getBytes());
 
@@ -608,50 +711,62 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
         return;
       }
 
-      org.eclipse.californium.core.observe.Observation obs = deserializeObs(serializedObs);
-      String registrationId = ObserveUtil.extractRegistrationId(obs);
-      Registration registration = getRegistration(j, registrationId);
-      if (registration == null) {
-        LOG.warn("Unable to remove observation {}, registration {} does not exist anymore",
-            obs.getRequest(),
-            registrationId);
-        return;
-      }
-
-      String endpoint = registration.getEndpoint();
-      byte[] lockValue = null;
-      byte[] lockKey = toKey(LOCK_EP, endpoint);
-      try {
-        lockValue = RedisLock.acquire(j, lockKey);
-
-        unsafeRemoveObservation(j, registrationId, token.getBytes());
-      } finally {
-        RedisLock.release(j, lockKey, lockValue);
-      }
+      obs = deserializeObs(serializedObs);
+      registrationId = ObserveUtil.extractRegistrationId(obs);
+      registration = getRegistration(j, registrationId);
+    }
+    if (registration == null) {
+      LOG.warn("Unable to remove observation {}, registration {} does not exist anymore",
+          obs.getRequest(),
+          registrationId);
+      return;
     }
 
+    Lease lease = locks.acquire(toLockKey(registration.getEndpoint()));
+    try (Jedis j = pool.getResource()) {
+      unsafeRemoveObservation(j, registrationId,
+          LwM2mPath.intern(ObserveUtil.extractLwm2mPath(obs)), token.getBytes());
+    } finally {
+      locks.release(lease);
+    }
   }
 
   @Override
   public org.eclipse.californium.core.observe.Observation get(Token token) {
     try (Jedis j = pool.getResource()) {
-      byte[] obs = j.get(toKey(OBS_TKN, token.getBytes()));
-      if (obs == null) {
-        return null;
-      } else {
-        return deserializeObs(obs);
+      return get(j, token);
+    }
+  }
+
+  private org.eclipse.californium.core.observe.Observation get(Jedis j, Token token) {
+    if (nearCache == null) {
+      return getFromRedis(j, token);
+    }
+
+    org.eclipse.californium.core.observe.Observation obs = nearCache.getObservation(token);
+    if (obs == null) {
+      long epoch = nearCache.currentEpoch();
+      obs = getFromRedis(j, token);
+      if (obs != null) {
+        nearCache.putObservation(token, obs, epoch);
       }
     }
+    return obs;
+  }
+
+  private org.eclipse.californium.core.observe.Observation getFromRedis(Jedis j, Token token) {
+    byte[] obs = j.get(toKey(OBS_TKN, token.getBytes()));
+    if (obs == null) {
+      return null;
+    } else {
+      return deserializeObs(obs);
+    }
   }
 
   /* *************** Observation utility functions **************** */
 
   private Registration getRegistration(Jedis j, String registrationId) {
-    byte[] ep = j.get(toRegIdKey(registrationId));
-    if (ep == null) {
-      return null;
-    }
-    byte[] data = j.get(toEndpointKey(ep));
+    byte[] data = getByIndex(j, toRegIdKey(registrationId));
     if (data == null) {
       return null;
     }
@@ -659,9 +774,14 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
     return deserializeReg(data);
   }
 
-  private void unsafeRemoveObservation(Jedis j, String registrationId, byte[] observationId) {
+  private void unsafeRemoveObservation(Jedis j, String registrationId, LwM2mPath path,
+      byte[] observationId) {
     if (j.del(toKey(OBS_TKN, observationId)) > 0L) {
       j.lrem(toKey(OBS_TKNS_REGID_IDX, registrationId), 0, observationId);
+      j.zrem(toKey(OBS_PATHS_REGID_IDX, registrationId), toPathMember(path, observationId));
+      if (nearCache != null) {
+        nearCache.invalidateObservation(j, observationId);
+      }
     }
   }
 
@@ -678,6 +798,8 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
       j.del(toKey(OBS_TKN, token));
     }
     j.del(regIdKey);
+    j.del(toKey(OBS_PATHS_REGID_IDX, registrationId));
+    invalidateObservations(j, removed);
 
     return removed;
   }
@@ -688,7 +810,7 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
   }
 
   private byte[] serializeObs(org.eclipse.californium.core.observe.Observation obs) {
-    return ObservationSerDes.serialize(obs);
+    return ObservationSerDes.serializeBinary(obs);
   }
 
   private org.eclipse.californium.core.observe.Observation deserializeObs(byte[] data) {
@@ -710,6 +832,10 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
    */
   @Override
   public void start() {
+    if (nearCache != null) {
+      nearCache.start();
+    }
+    locks.start();
     schedExecutor.scheduleAtFixedRate(new Cleaner(), cleanPeriod, cleanPeriod, TimeUnit.SECONDS);
   }
 
@@ -718,6 +844,10 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
    */
   @Override
   public void stop() {
+    if (nearCache != null) {
+      nearCache.stop();
+    }
+    locks.stop();
     schedExecutor.shutdownNow();
     try {
       schedExecutor.awaitTermination(5, TimeUnit.SECONDS);
@@ -736,8 +866,10 @@ public class RedisRegistrationStore implements CaliforniumRegistrationStore, Sta
             System.currentTimeMillis(), 0, cleanLimit);
 
         for (byte[] endpoint : endpointsExpired) {
-          Registration r = deserializeReg(j.get(toEndpointKey(endpoint)));
-          if (!r.isAlive(gracePeriod)) {
+          byte[] data = j.get(toEndpointKey(endpoint));
+          // object links are not needed to check the expiration
+          Registration r = data == null ? null : RegistrationSerDes.deserialize(data, false);
+          if (r != null && !r.isAlive(gracePeriod)) {
             Deregistration dereg = removeRegistration(j, r.getId(), true);
             if (dereg != null) {
               expirationListener
@@ -18,8 +18,12 @@ package org.eclipse.leshan.server.cluster;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.californium.core.Utils;
 import org.eclipse.leshan.core.node.LwM2mNode;
@@ -29,6 +33,7 @@ import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ObserveResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.cluster.serialization.DownlinkRequestSerDes;
 import org.eclipse.leshan.server.cluster.serialization.ResponseSerDes;
@@ -51,34 +56,84 @@ import redis.clients.util.Pool;
  * Handle Request/Response Redis API.</br> Send LWM2M Request to a registered LWM2M client when JSON
  * Request Message is received on redis {@code LESHAN_REQ} channel.</br> Send JSON Response Message
  * on redis {@code LESHAN_RESP} channel when LWM2M Response is received from LWM2M Client.
+ * <p>
+ * Each instance also listens to its own {@code LESHAN_REQ#<instanceUID>} channel. A requester which
+ * knows the instance responsible of the endpoint (see {@code EP#UID#<endpoint>} key) can publish
+ * the request on it, so the other instances do not receive it. An error is sent if the instance is
+ * not responsible of this endpoint anymore.
+ * <p>
+ * Requests, responses and notifications are handled by a bounded pool of threads and the messages
+ * to {@code LESHAN_RESP} are published in batches by a single thread (see {@link
+ * RedisBatchPublisher}). When their queues are full, the {@link OverloadPolicy} applies.
  */
-public class RedisRequestResponseHandler {
+public class RedisRequestResponseHandler implements Destroyable {
+
+  /**
+   * What to do with a new task or message when the queue is full.
+   */
+  public enum OverloadPolicy {
+    /** the new task or message is discarded */
+    DROP,
+    /** a {@link RejectedExecutionException} is raised (and logged) */
+    REJECT,
+    /** the calling thread waits for space in the queue */
+    BLOCK
+  }
+
+  public static final int DEFAULT_THREAD_POOL_SIZE = 4;
+  public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
 
   private static final Logger LOG = LoggerFactory.getLogger(RedisRequestResponseHandler.class);
   private static final String REQUEST_CHANNEL = "LESHAN_REQ";
+  private static final String INSTANCE_REQUEST_CHANNEL_PREFIX = "LESHAN_REQ#";
   private static final String RESPONSE_CHANNEL = "LESHAN_RESP";
 
   private final LwM2mServer server;
   private final Pool<Jedis> pool;
   private final RegistrationService registrationService;
-  private final ExecutorService executorService;
+  private final ThreadPoolExecutor executorService;
+  private final RedisBatchPublisher publisher;
+  private final AtomicLong droppedTasks = new AtomicLong();
   private final RedisTokenHandler tokenHandler;
   private final ObservationService observationService;
   private final Map<KeyId, String> observatioIdToTicket = new ConcurrentHashMap<>();
+  private final ObservationListener observationListener;
+  private final JedisPubSub subscriber;
+  private final Thread subscriberThread;
+  private volatile boolean destroyed;
 
   public RedisRequestResponseHandler(Pool<Jedis> p, LwM2mServer server,
       RegistrationService registrationService,
       RedisTokenHandler tokenHandler, ObservationService observationService) {
+    this(p, server, registrationService, tokenHandler, observationService,
+        DEFAULT_THREAD_POOL_SIZE, DEFAULT_QUEUE_CAPACITY, OverloadPolicy.BLOCK);
+  }
+
+  /**
+   * @param threadPoolSize number of threads handling requests, responses and notifications
+   * @param queueCapacity maximum number of tasks waiting for a thread and maximum number of messages
+   * waiting to be published
+   * @param overloadPolicy what to do when a queue is full
+   */
+  public RedisRequestResponseHandler(Pool<Jedis> p, LwM2mServer server,
+      RegistrationService registrationService,
+      RedisTokenHandler tokenHandler, ObservationService observationService, int threadPoolSize,
+      int queueCapacity, OverloadPolicy overloadPolicy) {
     // Listen LWM2M response
     this.server = server;
     this.registrationService = registrationService;
     this.observationService = observationService;
     this.tokenHandler = tokenHandler;
-    this.executorService = Executors.newCachedThreadPool(
-        new NamedThreadFactory(String.format("Redis %s channel writer", RESPONSE_CHANNEL)));
+    this.executorService = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity),
+        new NamedThreadFactory(String.format("Redis %s channel writer", RESPONSE_CHANNEL)),
+        rejectedExecutionHandler(overloadPolicy));
+    this.publisher = new RedisBatchPublisher(p, RESPONSE_CHANNEL, queueCapacity,
+        DEFAULT_MAX_BATCH_SIZE, overloadPolicy);
 
     // Listen LWM2M notification from client
-    this.observationService.addListener(new ObservationListener() {
+    this.observationListener = new ObservationListener() {
 
       @Override
       public void onResponse(Observation observation, Registration registration,
@@ -103,40 +158,82 @@ public class RedisRequestResponseHandler {
       public void cancelled(Observation observation) {
         observatioIdToTicket.remove(new KeyId(observation.getId()));
       }
-    });
+    };
+    this.observationService.addListener(observationListener);
 
-    // Listen redis "send request" channel
+    // Listen redis "send request" channels
     this.pool = p;
-    new Thread(new Runnable() {
+    final String instanceRequestChannel = INSTANCE_REQUEST_CHANNEL_PREFIX
+        + tokenHandler.getInstanceUID();
+    this.subscriber = new JedisPubSub() {
+      @Override
+      public void onSubscribe(String channel, int subscribedChannels) {
+        if (destroyed) {
+          // destroyed before the subscription was established
+          unsubscribe();
+        }
+      }
+
+      @Override
+      public void onMessage(String channel, String message) {
+        handleSendRequestMessage(message, instanceRequestChannel.equals(channel));
+      }
+    };
+    this.subscriberThread = new Thread(new Runnable() {
       @Override
       public void run() {
-        do {
+        while (!destroyed) {
           try (Jedis j = pool.getResource()) {
-            j.subscribe(new JedisPubSub() {
-              @Override
-              public void onMessage(String channel, String message) {
-                handleSendRequestMessage(message);
-              }
-            }, REQUEST_CHANNEL);
+            j.subscribe(subscriber, REQUEST_CHANNEL, instanceRequestChannel);
           } catch (RuntimeException e) {
-            LOG.warn("Redis SUBSCRIBE interrupted.", e);
+            if (!destroyed) {
+              LOG.warn("Redis SUBSCRIBE interrupted.", e);
+            }
           }
 
           // wait & re-launch
           try {
             Thread.sleep(500);
           } catch (InterruptedException e) {
+            return;
+          }
+          if (!destroyed) {
+            LOG.warn("Relaunch Redis SUBSCRIBE.");
           }
-          LOG.warn("Relaunch Redis SUBSCRIBE.");
-        } while (true);
+        }
       }
-    }, String.format("Redis %s channel reader", REQUEST_CHANNEL)).start();
+    }, String.format("Redis %s channel reader", REQUEST_CHANNEL));
+    this.subscriberThread.start();
+  }
+
+  /**
+   * Stops listening to requests, waits for the running tasks and publishes the pending responses.
+   */
+  @Override
+  public void destroy() {
+    destroyed = true;
+    if (subscriber.isSubscribed()) {
+      subscriber.unsubscribe();
+    }
+    subscriberThread.interrupt();
+    observationService.removeListener(observationListener);
 
+    executorService.shutdown();
+    try {
+      subscriberThread.join(5000);
+      if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+        executorService.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executorService.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    publisher.destroy();
   }
 
   private void handleResponse(String clientEndpoint, final String ticket,
       final LwM2mResponse response) {
-    executorService.submit(new Runnable() {
+    execute(new Runnable() {
       @Override
       public void run() {
         try {
@@ -151,7 +248,7 @@ public class RedisRequestResponseHandler {
   }
 
   private void handleNotification(final Observation observation, final LwM2mNode value) {
-    executorService.submit(new Runnable() {
+    execute(new Runnable() {
       @Override
       public void run() {
         String ticket = observatioIdToTicket.get(new KeyId(observation.getId()));
@@ -168,7 +265,7 @@ public class RedisRequestResponseHandler {
   }
 
   private void handlerError(String clientEndpoint, final String ticket, final Exception exception) {
-    executorService.submit(new Runnable() {
+    execute(new Runnable() {
       @Override
       public void run() {
         try {
@@ -180,17 +277,17 @@ public class RedisRequestResponseHandler {
     });
   }
 
-  private void handleSendRequestMessage(final String message) {
-    executorService.submit(new Runnable() {
+  private void handleSendRequestMessage(final String message, final boolean sentToInstance) {
+    execute(new Runnable() {
       @Override
       public void run() {
-        sendRequest(message);
+        sendRequest(message, sentToInstance);
       }
     });
   }
 
   @SuppressWarnings({"unchecked", "rawtypes"})
-  private void sendRequest(final String message) {
+  private void sendRequest(final String message, boolean sentToInstance) {
     // Parse JSON and extract ticket
     final String ticket;
     JsonObject jMessage;
@@ -208,6 +305,11 @@ public class RedisRequestResponseHandler {
       // Check if we must handle this request
       String endpoint = jMessage.getString("ep", null);
       if (!isResponsibleFor(endpoint)) {
+        if (sentToInstance) {
+          sendError(ticket,
+              String.format("Instance %s is not responsible of endpoint %s.",
+                  tokenHandler.getInstanceUID(), endpoint));
+        }
         return;
       }
 
@@ -246,40 +348,105 @@ public class RedisRequestResponseHandler {
 
   }
 
+  private RejectedExecutionHandler rejectedExecutionHandler(OverloadPolicy overloadPolicy) {
+    switch (overloadPolicy) {
+      case BLOCK:
+        return new RejectedExecutionHandler() {
+          @Override
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            try {
+              executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              droppedTasks.incrementAndGet();
+            }
+          }
+        };
+      case REJECT:
+        return new ThreadPoolExecutor.AbortPolicy();
+      case DROP:
+      default:
+        return new RejectedExecutionHandler() {
+          @Override
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            droppedTasks.incrementAndGet();
+          }
+        };
+    }
+  }
+
+  private void execute(Runnable task) {
+    try {
+      executorService.execute(task);
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Redis request/response handler is overloaded, task rejected.");
+    }
+  }
+
+  /**
+   * @return the number of tasks waiting for a thread.
+   */
+  public int getQueueDepth() {
+    return executorService.getQueue().size();
+  }
+
+  /**
+   * @return the number of messages waiting to be published on {@code LESHAN_RESP}.
+   */
+  public int getPublishQueueDepth() {
+    return publisher.getQueueSize();
+  }
+
+  /**
+   * @return the time in ms the oldest message of the last published batch waited before being
+   * published.
+   */
+  public long getLastPublishLatency() {
+    return publisher.getLastLatency();
+  }
+
+  /**
+   * @return the maximum time in ms a message waited before being published.
+   */
+  public long getMaxPublishLatency() {
+    return publisher.getMaxLatency();
+  }
+
+  /**
+   * @return the number of tasks and messages dropped because of overload (or Redis errors for
+   * messages).
+   */
+  public long getDroppedCount() {
+    return droppedTasks.get() + publisher.getDroppedCount();
+  }
+
   private boolean isResponsibleFor(String endpoint) {
     return tokenHandler.isResponsible(endpoint);
   }
 
   private void sendAck(String ticket) {
-    try (Jedis j = pool.getResource()) {
-      JsonObject m = Json.object();
-      m.add("ticket", ticket);
-      m.add("ack", true);
-      j.publish(RESPONSE_CHANNEL, m.toString());
-    }
+    JsonObject m = Json.object();
+    m.add("ticket", ticket);
+    m.add("ack", true);
+    publisher.publish(m.toString());
   }
 
   private void sendError(String ticket, String message) {
-    try (Jedis j = pool.getResource()) {
-      JsonObject m = Json.object();
-      m.add("ticket", ticket);
-
-      JsonObject err = Json.object();
-      err.add("errorMessage", message);
+    JsonObject m = Json.object();
+    m.add("ticket", ticket);
 
-      m.add("err", err);
-      j.publish(RESPONSE_CHANNEL, m.toString());
-    }
+    JsonObject err = Json.object();
+    err.add("errorMessage", message);
 
+    m.add("err", err);
+    publisher.publish(m.toString());
   }
 
   private void sendNotification(String ticket, LwM2mNode value) {
-    try (Jedis j = pool.getResource()) {
-      JsonObject m = Json.object();
-      m.add("ticket", ticket);
-      m.add("rep", ResponseSerDes.jSerialize(ObserveResponse.success(value)));
-      j.publish(RESPONSE_CHANNEL, m.toString());
-    }
+    JsonObject m = Json.object();
+    m.add("ticket", ticket);
+    m.add("rep", ResponseSerDes.jSerialize(ObserveResponse.success(value)));
+    publisher.publish(m.toString());
   }
 
   private void sendResponse(String ticket, LwM2mResponse response) {
@@ -287,12 +454,10 @@ public class RedisRequestResponseHandler {
       Observation observation = ((ObserveResponse) response).getObservation();
       observatioIdToTicket.put(new KeyId(observation.getId()), ticket);
     }
-    try (Jedis j = pool.getResource()) {
-      JsonObject m = Json.object();
-      m.add("ticket", ticket);
-      m.add("rep", ResponseSerDes.jSerialize(response));
-      j.publish(RESPONSE_CHANNEL, m.toString());
-    }
+    JsonObject m = Json.object();
+    m.add("ticket", ticket);
+    m.add("rep", ResponseSerDes.jSerialize(response));
+    publisher.publish(m.toString());
   }
 
   public static final class KeyId {
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.eclipse.leshan.util.Hex;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * A Lua script executed atomically on the Redis server (see http://redis.io/commands/eval).
+ * <p>
+ * The script is invoked by its SHA1 digest to avoid sending its body on each call. If the Redis
+ * server does not know it yet, the full script is sent once and cached by Redis.
+ */
+public class RedisScript {
+
+  private final byte[] script;
+  private final byte[] sha1;
+
+  public RedisScript(String... lines) {
+    StringBuilder b = new StringBuilder();
+    for (String line : lines) {
+      b.append(line).append('\n');
+    }
+    this.script = b.toString().getBytes(UTF_8);
+    this.sha1 = sha1(script);
+  }
+
+  /**
+   * Executes the script.
+   *
+   * @param j a Redis connection
+   * @param keys the keys accessed by the script (KEYS table)
+   * @param args the additional arguments (ARGV table)
+   * @return the script result as returned by Jedis
+   */
+  public Object eval(Jedis j, List<byte[]> keys, List<byte[]> args) {
+    try {
+      return j.evalsha(sha1, keys, args);
+    } catch (JedisDataException e) {
+      if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+        throw e;
+      }
+      // the script is not in the server cache yet
+      return j.eval(script, keys, args);
+    }
+  }
+
+  private static byte[] sha1(byte[] script) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return new String(Hex.encodeHex(digest.digest(script), true)).getBytes(UTF_8);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.impl.CachingSecurityStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.util.Pool;
+
+/**
+ * Evicts from a {@link CachingSecurityStore} the end-points and identities modified by any cluster
+ * node through a {@link RedisSecurityStore}.
+ * <p>
+ * The cache is fully cleared each time the subscription is (re)established, as invalidation
+ * messages may have been missed. While the subscription is down, modifications are only seen once
+ * the cached entries expire.
+ */
+public class RedisSecurityCacheInvalidator implements Startable, Stoppable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisSecurityCacheInvalidator.class);
+
+  private final Pool<Jedis> pool;
+  private final CachingSecurityStore cache;
+
+  private final JedisPubSub subscriber = new JedisPubSub() {
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      // messages may have been lost while we were not subscribed
+      cache.clear();
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      handleInvalidation(message);
+    }
+  };
+  private volatile Thread subscriberThread;
+
+  public RedisSecurityCacheInvalidator(Pool<Jedis> pool, CachingSecurityStore cache) {
+    this.pool = pool;
+    this.cache = cache;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (subscriberThread != null) {
+      return;
+    }
+    subscriberThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (subscriberThread == Thread.currentThread()) {
+          try (Jedis j = pool.getResource()) {
+            j.subscribe(subscriber, RedisSecurityStore.INVALIDATION_CHANNEL);
+          } catch (RuntimeException e) {
+            LOG.warn("Redis SUBSCRIBE interrupted.", e);
+          }
+
+          // wait & re-launch
+          try {
+            Thread.sleep(500);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, String.format("Redis %s channel reader", RedisSecurityStore.INVALIDATION_CHANNEL));
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+  }
+
+  @Override
+  public synchronized void stop() {
+    Thread thread = subscriberThread;
+    subscriberThread = null;
+    if (thread != null) {
+      if (subscriber.isSubscribed()) {
+        subscriber.unsubscribe();
+      }
+      thread.interrupt();
+    }
+  }
+
+  private void handleInvalidation(String message) {
+    if (message.isEmpty()) {
+      return;
+    }
+    String key = message.substring(1);
+    switch (message.charAt(0)) {
+      case RedisSecurityStore.ENDPOINT:
+        cache.invalidateEndpoint(key);
+        break;
+      case RedisSecurityStore.IDENTITY:
+        cache.invalidateIdentity(key);
+        break;
+      default:
+        LOG.warn("Unexpected invalidation message {}", message);
+    }
+  }
+}
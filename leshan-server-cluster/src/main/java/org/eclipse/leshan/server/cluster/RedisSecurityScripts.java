@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+/**
+ * The Lua scripts used by {@link RedisSecurityStore} to add or remove several security infos in
+ * one round trip.
+ * <p>
+ * The scripts publish the same invalidation messages as {@link RedisSecurityStore} ('E' followed
+ * by the end-point or 'I' followed by the PSK identity). They read the PSK identity of the stored
+ * security infos from their JSON serialization.
+ */
+class RedisSecurityScripts {
+
+  private RedisSecurityScripts() {
+  }
+
+  /**
+   * Add security infos, in order.
+   * <p>
+   * KEYS: PSK identity index hash key, then the security info key of each entry.<br>
+   * ARGV: invalidation channel, then for each entry: endpoint, PSK identity or empty string,
+   * serialized security info.
+   * <p>
+   * Returns: for each entry, { 0 } if the PSK identity is already used by another endpoint or
+   * { 1, previous security info or nil } if it was added.
+   */
+  static final RedisScript ADD_ALL = new RedisScript(
+      "local results = {}",
+      "for i = 2, #KEYS do",
+      "  local a = 3 * i - 4",
+      "  local ep, id, data = ARGV[a], ARGV[a + 1], ARGV[a + 2]",
+      "  local owner = id ~= '' and redis.call('HGET', KEYS[1], id)",
+      "  if owner and owner ~= ep then",
+      "    results[i - 1] = { 0 }",
+      "  else",
+      "    if id ~= '' then",
+      "      redis.call('HSET', KEYS[1], id, ep)",
+      "      redis.call('PUBLISH', ARGV[1], 'I' .. id)",
+      "    end",
+      "    local previous = redis.call('GETSET', KEYS[i], data)",
+      "    if previous then",
+      "      local previousId = cjson.decode(previous)['id']",
+      "      if previousId and previousId ~= id then",
+      "        redis.call('HDEL', KEYS[1], previousId)",
+      "        redis.call('PUBLISH', ARGV[1], 'I' .. previousId)",
+      "      end",
+      "    end",
+      "    redis.call('PUBLISH', ARGV[1], 'E' .. ep)",
+      "    results[i - 1] = { 1, previous }",
+      "  end",
+      "end",
+      "return results");
+
+  /**
+   * Remove security infos.
+   * <p>
+   * KEYS: PSK identity index hash key, then the security info key of each entry.<br>
+   * ARGV: invalidation channel, then the endpoint of each entry.
+   * <p>
+   * Returns: for each entry, the removed security info or nil.
+   */
+  static final RedisScript REMOVE_ALL = new RedisScript(
+      "local results = {}",
+      "for i = 2, #KEYS do",
+      "  local data = redis.call('GET', KEYS[i])",
+      "  if data then",
+      "    local id = cjson.decode(data)['id']",
+      "    if id then",
+      "      redis.call('HDEL', KEYS[1], id)",
+      "      redis.call('PUBLISH', ARGV[1], 'I' .. id)",
+      "    end",
+      "    redis.call('DEL', KEYS[i])",
+      "    redis.call('PUBLISH', ARGV[1], 'E' .. ARGV[i])",
+      "  end",
+      "  results[i - 1] = data",
+      "end",
+      "return results");
+}
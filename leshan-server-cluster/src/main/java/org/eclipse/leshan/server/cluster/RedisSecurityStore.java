@@ -15,10 +15,13 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.eclipse.leshan.server.cluster.serialization.SecurityInfoSerDes;
+import org.eclipse.leshan.server.security.BulkResult;
 import org.eclipse.leshan.server.security.EditableSecurityStore;
 import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
 import org.eclipse.leshan.server.security.SecurityInfo;
@@ -34,13 +37,23 @@ import redis.clients.util.Pool;
  *
  * Security info are stored using the endpoint as primary key and a secondary index is created for
  * psk-identity lookup.
+ * <p>
+ * The modified end-points and identities are published on the
+ * {@link #INVALIDATION_CHANNEL} channel, see {@link RedisSecurityCacheInvalidator}.
  */
 public class RedisSecurityStore implements EditableSecurityStore {
 
+  public static final String INVALIDATION_CHANNEL = "LESHAN_SEC_INVALIDATION";
+  static final char ENDPOINT = 'E';
+  static final char IDENTITY = 'I';
+
   private static final String SEC_EP = "SEC#EP#";
 
   private static final String PSKID_SEC = "PSKID#SEC";
 
+  // maximum number of entries handled by a single script execution
+  private static final int BULK_SIZE = 1000;
+
   private final Pool<Jedis> pool;
 
   public RedisSecurityStore(Pool<Jedis> pool) {
@@ -113,7 +126,9 @@ public class RedisSecurityStore implements EditableSecurityStore {
       String previousIdentity = previous == null ? null : previous.getIdentity();
       if (previousIdentity != null && !previousIdentity.equals(info.getIdentity())) {
         j.hdel(PSKID_SEC, previousIdentity);
+        j.publish(INVALIDATION_CHANNEL, IDENTITY + previousIdentity);
       }
+      publishInvalidation(j, info);
 
       return previous;
     }
@@ -130,12 +145,92 @@ public class RedisSecurityStore implements EditableSecurityStore {
           j.hdel(PSKID_SEC.getBytes(), info.getIdentity().getBytes());
         }
         j.del((SEC_EP + endpoint).getBytes());
+        publishInvalidation(j, info);
         return info;
       }
     }
     return null;
   }
 
+  @Override
+  public List<BulkResult> addAll(Collection<SecurityInfo> infos) {
+    List<BulkResult> results = new ArrayList<>(infos.size());
+    try (Jedis j = pool.getResource()) {
+      for (List<SecurityInfo> bulk : partition(infos)) {
+        List<byte[]> keys = new ArrayList<>(bulk.size() + 1);
+        List<byte[]> args = new ArrayList<>(3 * bulk.size() + 1);
+        keys.add(PSKID_SEC.getBytes());
+        args.add(INVALIDATION_CHANNEL.getBytes());
+        for (SecurityInfo info : bulk) {
+          keys.add((SEC_EP + info.getEndpoint()).getBytes());
+          args.add(info.getEndpoint().getBytes());
+          args.add(info.getIdentity() == null ? new byte[0] : info.getIdentity().getBytes());
+          args.add(serialize(info));
+        }
+
+        List<?> replies = (List<?>) RedisSecurityScripts.ADD_ALL.eval(j, keys, args);
+        for (int i = 0; i < bulk.size(); i++) {
+          SecurityInfo info = bulk.get(i);
+          List<?> reply = (List<?>) replies.get(i);
+          if ((Long) reply.get(0) == 0L) {
+            results.add(BulkResult.failure(info.getEndpoint(), new NonUniqueSecurityInfoException(
+                "PSK Identity " + info.getIdentity() + " is already used")));
+          } else {
+            byte[] previous = (byte[]) reply.get(1);
+            results.add(BulkResult.success(info.getEndpoint(),
+                previous == null ? null : deserialize(previous)));
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public List<BulkResult> removeAll(Collection<String> endpoints) {
+    List<BulkResult> results = new ArrayList<>(endpoints.size());
+    try (Jedis j = pool.getResource()) {
+      for (List<String> bulk : partition(endpoints)) {
+        List<byte[]> keys = new ArrayList<>(bulk.size() + 1);
+        List<byte[]> args = new ArrayList<>(bulk.size() + 1);
+        keys.add(PSKID_SEC.getBytes());
+        args.add(INVALIDATION_CHANNEL.getBytes());
+        for (String endpoint : bulk) {
+          keys.add((SEC_EP + endpoint).getBytes());
+          args.add(endpoint.getBytes());
+        }
+
+        List<?> replies = (List<?>) RedisSecurityScripts.REMOVE_ALL.eval(j, keys, args);
+        for (int i = 0; i < bulk.size(); i++) {
+          byte[] removed = (byte[]) replies.get(i);
+          results.add(BulkResult.success(bulk.get(i),
+              removed == null ? null : deserialize(removed)));
+        }
+      }
+    }
+    return results;
+  }
+
+  private static <T> List<List<T>> partition(Collection<T> entries) {
+    List<List<T>> bulks = new ArrayList<>();
+    List<T> bulk = null;
+    for (T entry : entries) {
+      if (bulk == null || bulk.size() == BULK_SIZE) {
+        bulk = new ArrayList<>(Math.min(BULK_SIZE, entries.size()));
+        bulks.add(bulk);
+      }
+      bulk.add(entry);
+    }
+    return bulks;
+  }
+
+  private void publishInvalidation(Jedis j, SecurityInfo info) {
+    j.publish(INVALIDATION_CHANNEL, ENDPOINT + info.getEndpoint());
+    if (info.getIdentity() != null) {
+      j.publish(INVALIDATION_CHANNEL, IDENTITY + info.getIdentity());
+    }
+  }
+
   private byte[] serialize(SecurityInfo secInfo) {
     return SecurityInfoSerDes.serialize(secInfo);
   }
@@ -15,16 +15,28 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.leshan.core.observation.Observation;
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.registration.Registration;
 import org.eclipse.leshan.server.registration.RegistrationListener;
 import org.eclipse.leshan.server.registration.RegistrationUpdate;
 import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
 import redis.clients.util.Pool;
 
 /**
@@ -32,39 +44,120 @@ import redis.clients.util.Pool;
  * restriction is mainly due to the DTLS session)</br> This class store the couple Cluster instance
  * / LwM2M client in a Redis Store.</br> Each Cluster instance is identified by a unique UI and each
  * device by its endpoint.
+ * <p>
+ * The endpoints this instance is responsible for are also kept locally, so {@link
+ * #isResponsible(String)} does not need any Redis request. When an instance becomes responsible of
+ * an endpoint, it publishes it on the {@code LESHAN_EP_OWNER} channel and the previous owner forgets
+ * it. While this channel is not listened, the Redis store is used.
  */
-public class RedisTokenHandler implements RegistrationListener {
+public class RedisTokenHandler implements RegistrationListener, Destroyable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RedisTokenHandler.class);
 
   private static final String EP_UID = "EP#UID#";
+  private static final String OWNER_CHANNEL = "LESHAN_EP_OWNER";
+  // maximum number of keys read by a single MGET
+  private static final int MGET_SIZE = 1000;
   private final Pool<Jedis> pool;
   private final String instanceUID;
 
+  // endpoints this instance is responsible for
+  private final ConcurrentMap<String, Ownership> ownedEndpoints = new ConcurrentHashMap<>();
+  private volatile boolean subscribed;
+  private volatile boolean destroyed;
+
+  private final JedisPubSub subscriber = new JedisPubSub() {
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      if (destroyed) {
+        // destroyed before the subscription was established
+        unsubscribe();
+        return;
+      }
+      resynchronize();
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      handleOwnerMessage(message);
+    }
+  };
+  private final Thread subscriberThread;
+
+  private static class Ownership {
+    final long expirationTime; // in ms
+
+    Ownership(long lifetimeInSec) {
+      this.expirationTime = System.currentTimeMillis() + lifetimeInSec * 1000;
+    }
+  }
+
   public RedisTokenHandler(Pool<Jedis> j, String instanceUID) {
     Validate.notNull(instanceUID);
     this.instanceUID = instanceUID;
     this.pool = j;
+
+    // Listen ownership changes from other instances
+    subscriberThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!destroyed) {
+          try (Jedis j = pool.getResource()) {
+            j.subscribe(subscriber, OWNER_CHANNEL);
+          } catch (RuntimeException e) {
+            if (!destroyed) {
+              LOG.warn("Redis SUBSCRIBE interrupted.", e);
+            }
+          }
+          subscribed = false;
+
+          // wait & re-launch
+          try {
+            Thread.sleep(500);
+          } catch (InterruptedException e) {
+            return;
+          }
+          if (!destroyed) {
+            LOG.warn("Relaunch Redis SUBSCRIBE.");
+          }
+        }
+      }
+    }, String.format("Redis %s channel reader", OWNER_CHANNEL));
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+  }
+
+  /**
+   * Stops listening to the ownership changes of the other instances.
+   */
+  @Override
+  public void destroy() {
+    destroyed = true;
+    if (subscriber.isSubscribed()) {
+      subscriber.unsubscribe();
+    }
+    subscriberThread.interrupt();
+    try {
+      subscriberThread.join(5000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public String getInstanceUID() {
+    return instanceUID;
   }
 
   @Override
   public void registered(Registration registration, Registration previousReg,
       Collection<Observation> previousObsersations) {
-    try (Jedis j = pool.getResource()) {
-      // create registration entry
-      byte[] k = (EP_UID + registration.getEndpoint()).getBytes();
-      j.set(k, instanceUID.getBytes());
-      j.expire(k, registration.getLifeTimeInSec().intValue());
-    }
+    claim(registration);
   }
 
   @Override
   public void updated(RegistrationUpdate update, Registration updatedRegistration,
       Registration previousRegistration) {
-    try (Jedis j = pool.getResource()) {
-      // create registration entry
-      byte[] k = (EP_UID + updatedRegistration.getEndpoint()).getBytes();
-      j.set(k, instanceUID.getBytes());
-      j.expire(k, updatedRegistration.getLifeTimeInSec().intValue());
-    }
+    claim(updatedRegistration);
   }
 
   @Override
@@ -75,13 +168,97 @@ public class RedisTokenHandler implements RegistrationListener {
       // create registration entry
       j.del((EP_UID + registration.getEndpoint()).getBytes());
     }
+    ownedEndpoints.remove(registration.getEndpoint());
   }
 
-  public boolean isResponsible(String endpoint) {
+  private void claim(Registration registration) {
     try (Jedis j = pool.getResource()) {
-      byte[] k = (EP_UID + endpoint).getBytes();
-      byte[] data = j.get(k);
-      return data != null && Arrays.equals(data, instanceUID.getBytes());
+      // create registration entry
+      byte[] k = (EP_UID + registration.getEndpoint()).getBytes();
+      j.set(k, instanceUID.getBytes());
+      j.expire(k, registration.getLifeTimeInSec().intValue());
+
+      // must be done after the Redis update (see handleOwnerMessage)
+      ownedEndpoints.put(registration.getEndpoint(),
+          new Ownership(registration.getLifeTimeInSec()));
+
+      JsonObject m = Json.object();
+      m.add("uid", instanceUID);
+      m.add("ep", registration.getEndpoint());
+      j.publish(OWNER_CHANNEL, m.toString());
+    }
+  }
+
+  public boolean isResponsible(String endpoint) {
+    if (!subscribed) {
+      // we may have missed some ownership changes
+      try (Jedis j = pool.getResource()) {
+        byte[] k = (EP_UID + endpoint).getBytes();
+        byte[] data = j.get(k);
+        return data != null && Arrays.equals(data, instanceUID.getBytes());
+      }
+    }
+
+    Ownership ownership = ownedEndpoints.get(endpoint);
+    if (ownership == null) {
+      return false;
+    }
+    if (ownership.expirationTime < System.currentTimeMillis()) {
+      ownedEndpoints.remove(endpoint, ownership);
+      return false;
+    }
+    return true;
+  }
+
+  private void handleOwnerMessage(String message) {
+    try {
+      JsonObject m = (JsonObject) Json.parse(message);
+      if (!instanceUID.equals(m.getString("uid", null))) {
+        String endpoint = m.getString("ep", null);
+        Ownership ownership = ownedEndpoints.get(endpoint);
+        if (ownership != null) {
+          verifyOwnership(Arrays.asList(endpoint), Arrays.asList(ownership));
+        }
+      }
+    } catch (RuntimeException e) {
+      LOG.warn(String.format("Unexpected owner message %s", message), e);
+    }
+  }
+
+  private void resynchronize() {
+    // ownership changes may have been missed while we were not subscribed
+    List<String> endpoints = new ArrayList<>();
+    List<Ownership> ownerships = new ArrayList<>();
+    for (Map.Entry<String, Ownership> e : ownedEndpoints.entrySet()) {
+      endpoints.add(e.getKey());
+      ownerships.add(e.getValue());
+    }
+    if (!endpoints.isEmpty()) {
+      verifyOwnership(endpoints, ownerships);
+    }
+    subscribed = true;
+  }
+
+  /*
+   * Forget the endpoints which are now owned by another instance according to Redis. The ownerships must be read
+   * before the Redis values: an ownership claimed by this instance in the meantime is kept.
+   */
+  private void verifyOwnership(List<String> endpoints, List<Ownership> ownerships) {
+    // read by chunks to not block Redis with a single huge MGET
+    for (int start = 0; start < endpoints.size(); start += MGET_SIZE) {
+      byte[][] keys = new byte[Math.min(MGET_SIZE, endpoints.size() - start)][];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = (EP_UID + endpoints.get(start + i)).getBytes();
+      }
+      List<byte[]> owners;
+      try (Jedis j = pool.getResource()) {
+        owners = j.mget(keys);
+      }
+      for (int i = 0; i < keys.length; i++) {
+        if (owners.get(i) == null || !Arrays.equals(owners.get(i), instanceUID.getBytes())) {
+          ownedEndpoints.remove(endpoints.get(start + i), ownerships.get(start + i));
+        }
+      }
     }
   }
 }
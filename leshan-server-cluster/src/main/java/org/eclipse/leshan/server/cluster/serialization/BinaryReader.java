@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Reads values written by a {@link BinaryWriter}.
+ */
+class BinaryReader {
+
+  private final byte[] buffer;
+  private int position;
+
+  BinaryReader(byte[] buffer) {
+    this(buffer, 0);
+  }
+
+  BinaryReader(byte[] buffer, int offset) {
+    this.buffer = buffer;
+    this.position = offset;
+  }
+
+  int readByte() {
+    if (position >= buffer.length) {
+      throw new IllegalArgumentException("Unexpected end of binary content");
+    }
+    return buffer[position++] & 0xFF;
+  }
+
+  long readVarLong() {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IllegalArgumentException("Malformed variable length integer");
+  }
+
+  int readVarInt() {
+    return (int) readVarLong();
+  }
+
+  long readSignedVarLong() {
+    long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  byte[] readBytes() {
+    int length = readVarInt();
+    if (length < 0 || position + length > buffer.length) {
+      throw new IllegalArgumentException("Unexpected end of binary content");
+    }
+    byte[] result = Arrays.copyOfRange(buffer, position, position + length);
+    position += length;
+    return result;
+  }
+
+  String readString() {
+    int length = readVarInt();
+    if (length < 0 || position + length > buffer.length) {
+      throw new IllegalArgumentException("Unexpected end of binary content");
+    }
+    String result = new String(buffer, position, length, UTF_8);
+    position += length;
+    return result;
+  }
+
+  String readNullableString() {
+    return readByte() == 0 ? null : readString();
+  }
+
+  InetSocketAddress readAddress() {
+    int type = readByte();
+    switch (type) {
+      case BinaryWriter.ADDRESS_RAW:
+        try {
+          InetAddress address = InetAddress.getByAddress(readBytes());
+          return new InetSocketAddress(address, readVarInt());
+        } catch (UnknownHostException e) {
+          throw new IllegalArgumentException("Invalid address", e);
+        }
+      case BinaryWriter.ADDRESS_HOSTNAME:
+        String hostname = readString();
+        return InetSocketAddress.createUnresolved(hostname, readVarInt());
+      default:
+        throw new IllegalArgumentException("Unknown address type " + type);
+    }
+  }
+}
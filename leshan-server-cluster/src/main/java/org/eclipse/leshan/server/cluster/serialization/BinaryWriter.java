@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster.serialization;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+/**
+ * A growable buffer used to write the compact binary serialization format.
+ * <p>
+ * Integers are written as variable length quantities (7 bits per byte, least significant group
+ * first), signed values use the zigzag encoding. Strings and byte arrays are prefixed by their
+ * length.
+ *
+ * @see BinaryReader
+ */
+class BinaryWriter {
+
+  // InetSocketAddress encoding
+  static final byte ADDRESS_RAW = 0;
+  static final byte ADDRESS_HOSTNAME = 1;
+
+  private byte[] buffer;
+  private int position;
+
+  BinaryWriter() {
+    this(64);
+  }
+
+  BinaryWriter(int initialCapacity) {
+    this.buffer = new byte[initialCapacity];
+  }
+
+  BinaryWriter writeByte(int b) {
+    ensureCapacity(1);
+    buffer[position++] = (byte) b;
+    return this;
+  }
+
+  BinaryWriter writeVarLong(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+    return this;
+  }
+
+  BinaryWriter writeVarInt(int value) {
+    return writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  BinaryWriter writeSignedVarLong(long value) {
+    return writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  BinaryWriter writeBytes(byte[] bytes) {
+    writeVarInt(bytes.length);
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+    return this;
+  }
+
+  BinaryWriter writeString(String value) {
+    return writeBytes(value.getBytes(UTF_8));
+  }
+
+  /**
+   * Write a string which can be <code>null</code>.
+   */
+  BinaryWriter writeNullableString(String value) {
+    if (value == null) {
+      return writeByte(0);
+    }
+    writeByte(1);
+    return writeString(value);
+  }
+
+  BinaryWriter writeAddress(InetSocketAddress address) {
+    if (address.isUnresolved()) {
+      writeByte(ADDRESS_HOSTNAME);
+      writeString(address.getHostString());
+    } else {
+      writeByte(ADDRESS_RAW);
+      writeBytes(address.getAddress().getAddress());
+    }
+    return writeVarInt(address.getPort());
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buffer, position);
+  }
+
+  private void ensureCapacity(int length) {
+    if (position + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+    }
+  }
+}
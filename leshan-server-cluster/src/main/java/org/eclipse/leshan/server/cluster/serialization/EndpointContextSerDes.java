@@ -44,6 +44,12 @@ import com.eclipsesource.json.JsonValue;
  */
 public class EndpointContextSerDes {
 
+  // principal types in binary format
+  private static final byte NO_PRINCIPAL = 0;
+  private static final byte PSK = 1;
+  private static final byte RPK = 2;
+  private static final byte DN = 3;
+
   private static final String KEY_ADDRESS = "address";
   private static final String KEY_PORT = "port";
   private static final String KEY_ID = "id";
@@ -117,4 +123,65 @@ public class EndpointContextSerDes {
     return endpointContext;
   }
 
+  static void serialize(EndpointContext context, BinaryWriter w) {
+    w.writeAddress(context.getPeerAddress());
+    Principal principal = context.getPeerIdentity();
+    if (principal instanceof PreSharedKeyIdentity) {
+      w.writeByte(PSK);
+      w.writeString(((PreSharedKeyIdentity) principal).getIdentity());
+    } else if (principal instanceof RawPublicKeyIdentity) {
+      w.writeByte(RPK);
+      w.writeBytes(((RawPublicKeyIdentity) principal).getKey().getEncoded());
+    } else if (principal instanceof X500Principal || principal instanceof X509CertPath) {
+      w.writeByte(DN);
+      w.writeString(principal.getName());
+    } else {
+      w.writeByte(NO_PRINCIPAL);
+    }
+    Map<String, String> attributes = context.entries();
+    w.writeVarInt(attributes.size());
+    for (Map.Entry<String, String> e : attributes.entrySet()) {
+      w.writeString(e.getKey());
+      w.writeString(e.getValue());
+    }
+  }
+
+  static EndpointContext deserialize(BinaryReader in) {
+    InetSocketAddress socketAddress = in.readAddress();
+
+    Principal principal;
+    int type = in.readByte();
+    switch (type) {
+      case NO_PRINCIPAL:
+        principal = null;
+        break;
+      case PSK:
+        principal = new PreSharedKeyIdentity(in.readString());
+        break;
+      case RPK:
+        try {
+          X509EncodedKeySpec spec = new X509EncodedKeySpec(in.readBytes());
+          PublicKey publicKey = KeyFactory.getInstance("EC").generatePublic(spec);
+          principal = new RawPublicKeyIdentity(publicKey);
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+          throw new IllegalStateException("Invalid security info content", e);
+        }
+        break;
+      case DN:
+        principal = new X500Principal(in.readString());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown principal type " + type);
+    }
+
+    int nbAttributes = in.readVarInt();
+    if (nbAttributes == 0) {
+      return new AddressEndpointContext(socketAddress, principal);
+    }
+    String attributes[] = new String[nbAttributes * 2];
+    for (int i = 0; i < attributes.length; i++) {
+      attributes[i] = in.readString();
+    }
+    return new MapBasedEndpointContext(socketAddress, principal, attributes);
+  }
 }
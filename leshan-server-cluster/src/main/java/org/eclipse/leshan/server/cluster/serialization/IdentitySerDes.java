@@ -35,6 +35,12 @@ import com.eclipsesource.json.JsonValue;
  */
 public class IdentitySerDes {
 
+  // identity types in binary format
+  private static final byte UNSECURE = 0;
+  private static final byte PSK = 1;
+  private static final byte RPK = 2;
+  private static final byte X509 = 3;
+
   private static final String KEY_ADDRESS = "address";
   private static final String KEY_PORT = "port";
   private static final String KEY_ID = "id";
@@ -84,4 +90,43 @@ public class IdentitySerDes {
 
     return Identity.unsecure(new InetSocketAddress(address, port));
   }
+
+  static void serialize(Identity identity, BinaryWriter w) {
+    w.writeAddress(identity.getPeerAddress());
+    if (identity.isPSK()) {
+      w.writeByte(PSK);
+      w.writeString(identity.getPskIdentity());
+    } else if (identity.isRPK()) {
+      w.writeByte(RPK);
+      w.writeBytes(identity.getRawPublicKey().getEncoded());
+    } else if (identity.isX509()) {
+      w.writeByte(X509);
+      w.writeString(identity.getX509CommonName());
+    } else {
+      w.writeByte(UNSECURE);
+    }
+  }
+
+  static Identity deserialize(BinaryReader in) {
+    InetSocketAddress address = in.readAddress();
+    int type = in.readByte();
+    switch (type) {
+      case UNSECURE:
+        return Identity.unsecure(address);
+      case PSK:
+        return Identity.psk(address, in.readString());
+      case RPK:
+        try {
+          X509EncodedKeySpec spec = new X509EncodedKeySpec(in.readBytes());
+          PublicKey publicKey = KeyFactory.getInstance("EC").generatePublic(spec);
+          return Identity.rpk(address, publicKey);
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+          throw new IllegalStateException("Invalid security info content", e);
+        }
+      case X509:
+        return Identity.x509(address, in.readString());
+      default:
+        throw new IllegalArgumentException("Unknown identity type " + type);
+    }
+  }
 }
@@ -36,13 +36,17 @@ import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
 /**
- * Functions for serializing and deserializing a Californium {@link Observation} in JSON.
+ * Functions for serializing and deserializing a Californium {@link Observation} in JSON or in a
+ * compact binary format.
  *
  * The embedded CoAP request is serialized using the Californium network serialization (see {@link
  * UdpDataParser} and {@link UdpDataSerializer}).
  */
 public class ObservationSerDes {
 
+  /** First byte of an observation serialized with the version 1 of the binary format */
+  public static final byte BINARY_V1 = 1;
+
   private static final DataSerializer serializer = new UdpDataSerializer();
   private static final DataParser parser = new UdpDataParser();
 
@@ -66,7 +70,40 @@ public class ObservationSerDes {
     return o.toString().getBytes();
   }
 
+  /**
+   * Serialize an observation in the compact binary format.
+   */
+  public static byte[] serializeBinary(Observation obs) {
+    BinaryWriter w = new BinaryWriter(128);
+    w.writeByte(BINARY_V1);
+    w.writeBytes(serializer.serializeRequest(obs.getRequest()).bytes);
+    if (obs.getContext() != null) {
+      EndpointContextSerDes.serialize(obs.getContext(), w);
+    } else {
+      EndpointContextSerDes.serialize(obs.getRequest().getDestinationContext(), w);
+    }
+
+    Map<String, String> userContext = obs.getRequest().getUserContext();
+    if (userContext == null) {
+      w.writeByte(0);
+    } else {
+      w.writeByte(1);
+      w.writeVarInt(userContext.size());
+      for (Entry<String, String> e : userContext.entrySet()) {
+        w.writeString(e.getKey());
+        w.writeString(e.getValue());
+      }
+    }
+    return w.toByteArray();
+  }
+
+  /**
+   * Deserialize an observation serialized in JSON or in binary format.
+   */
   public static Observation deserialize(byte[] data) {
+    if (data.length > 0 && data[0] == BINARY_V1) {
+      return deserializeBinary(new BinaryReader(data, 1));
+    }
     JsonObject v = (JsonObject) Json.parse(new String(data));
 
     EndpointContext endpointContext = EndpointContextSerDes.deserialize(v.get("peer").asObject());
@@ -89,4 +126,24 @@ public class ObservationSerDes {
     return new Observation(request, endpointContext);
   }
 
+  private static Observation deserializeBinary(BinaryReader in) {
+    byte[] req = in.readBytes();
+    EndpointContext endpointContext = EndpointContextSerDes.deserialize(in);
+
+    RawData rawData = RawData.outbound(req, endpointContext, null, false);
+    Request request = (Request) parser.parseMessage(rawData);
+    request.setDestinationContext(endpointContext);
+
+    if (in.readByte() != 0) {
+      int size = in.readVarInt();
+      Map<String, String> context = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        context.put(in.readString(), in.readString());
+      }
+      request.setUserContext(context);
+    }
+
+    return new Observation(request, endpointContext);
+  }
+
 }
@@ -19,6 +19,8 @@ import java.net.InetSocketAddress;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.leshan.Link;
 import org.eclipse.leshan.core.request.BindingMode;
@@ -30,10 +32,37 @@ import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
 /**
- * Functions for serialize and deserialize a Client in JSON.
+ * Functions for serialize and deserialize a Client in JSON or in a compact binary format.
+ * <p>
+ * The binary format starts with a version byte, which allows {@link #deserialize(byte[])} to read
+ * both formats. Object links are written last so they can be skipped when they are not needed (see
+ * {@link #deserialize(byte[], boolean)}).
  */
 public class RegistrationSerDes {
 
+  /** First byte of a registration serialized with the version 1 of the binary format */
+  public static final byte BINARY_V1 = 1;
+
+  // well-known link attribute names, written as their index in this array (+1) in binary format.
+  private static final String[] KNOWN_ATTRIBUTES = {"rt", "ct", "ver", "if", "obs", "pmin", "pmax",
+      "gt", "lt", "st", "dim", "title", "rel", "anchor", "sz"};
+  private static final Map<String, Integer> KNOWN_ATTRIBUTES_INDEX = new HashMap<>();
+
+  static {
+    for (int i = 0; i < KNOWN_ATTRIBUTES.length; i++) {
+      KNOWN_ATTRIBUTES_INDEX.put(KNOWN_ATTRIBUTES[i], i + 1);
+    }
+  }
+
+  // link attribute value types in binary format
+  private static final byte ATTRIBUTE_NULL = 0;
+  private static final byte ATTRIBUTE_INT = 1;
+  private static final byte ATTRIBUTE_STRING = 2;
+
+  // decoded link paths and attribute names are shared between registrations
+  private static final int MAX_INTERNED_STRINGS = 10_000;
+  private static final ConcurrentMap<String, String> INTERNED_STRINGS = new ConcurrentHashMap<>();
+
   public static JsonObject jSerialize(Registration r) {
     JsonObject o = Json.object();
     o.add("regDate", r.getRegistrationDate().getTime());
@@ -131,6 +160,197 @@ public class RegistrationSerDes {
   }
 
   public static Registration deserialize(byte[] data) {
+    return deserialize(data, true);
+  }
+
+  /**
+   * Deserialize a registration serialized in JSON or in binary format.
+   *
+   * @param data the serialized registration
+   * @param withObjectLinks <code>false</code> to skip the decoding of object links when they are
+   * not needed. This is only supported by the binary format, the returned registration has no object
+   * links and so its root path is "/".
+   */
+  public static Registration deserialize(byte[] data, boolean withObjectLinks) {
+    if (data.length > 0 && data[0] == BINARY_V1) {
+      return deserializeBinary(new BinaryReader(data, 1), withObjectLinks);
+    }
     return deserialize((JsonObject) Json.parse(new String(data)));
   }
+
+  /**
+   * Serialize a registration in the compact binary format.
+   */
+  public static byte[] serializeBinary(Registration r) {
+    BinaryWriter w = new BinaryWriter(256);
+    w.writeByte(BINARY_V1);
+    w.writeString(r.getId());
+    w.writeString(r.getEndpoint());
+    IdentitySerDes.serialize(r.getIdentity(), w);
+    w.writeAddress(r.getRegistrationEndpointAddress());
+    w.writeVarLong(r.getLifeTimeInSec());
+    w.writeNullableString(r.getSmsNumber());
+    w.writeString(r.getLwM2mVersion());
+    w.writeString(r.getBindingMode().name());
+    w.writeVarLong(r.getRegistrationDate().getTime());
+    w.writeVarLong(r.getLastUpdate().getTime());
+
+    Map<String, String> additionalAttributes = r.getAdditionalRegistrationAttributes();
+    w.writeVarInt(additionalAttributes.size());
+    for (Map.Entry<String, String> e : additionalAttributes.entrySet()) {
+      w.writeString(e.getKey());
+      w.writeString(e.getValue());
+    }
+
+    // object links must stay at the end, their number is written + 1 (0 means null)
+    Link[] links = r.getObjectLinks();
+    if (links == null) {
+      w.writeVarInt(0);
+    } else {
+      w.writeVarInt(links.length + 1);
+      for (Link l : links) {
+        writeLinkUrl(w, l.getUrl());
+        w.writeVarInt(l.getAttributes().size());
+        for (Map.Entry<String, Object> e : l.getAttributes().entrySet()) {
+          Integer known = KNOWN_ATTRIBUTES_INDEX.get(e.getKey());
+          if (known != null) {
+            w.writeVarInt(known);
+          } else {
+            w.writeVarInt(0);
+            w.writeString(e.getKey());
+          }
+          if (e.getValue() == null) {
+            w.writeByte(ATTRIBUTE_NULL);
+          } else if (e.getValue() instanceof Integer) {
+            w.writeByte(ATTRIBUTE_INT);
+            w.writeSignedVarLong((int) e.getValue());
+          } else {
+            w.writeByte(ATTRIBUTE_STRING);
+            w.writeString(e.getValue().toString());
+          }
+        }
+      }
+    }
+    return w.toByteArray();
+  }
+
+  private static Registration deserializeBinary(BinaryReader in, boolean withObjectLinks) {
+    String id = in.readString();
+    String endpoint = in.readString();
+    Registration.Builder b = new Registration.Builder(id, endpoint, IdentitySerDes.deserialize(in),
+        in.readAddress());
+    b.lifeTimeInSec(in.readVarLong());
+    b.smsNumber(in.readNullableString());
+    b.lwM2mVersion(in.readString());
+    b.bindingMode(BindingMode.valueOf(in.readString()));
+    b.registrationDate(new Date(in.readVarLong()));
+    b.lastUpdate(new Date(in.readVarLong()));
+
+    int nbAttributes = in.readVarInt();
+    Map<String, String> addAttr = new HashMap<>();
+    for (int i = 0; i < nbAttributes; i++) {
+      addAttr.put(in.readString(), in.readString());
+    }
+    b.additionalRegistrationAttributes(addAttr);
+
+    if (!withObjectLinks) {
+      b.objectLinks(new Link[0]);
+      return b.build();
+    }
+    int nbLinks = in.readVarInt() - 1;
+    if (nbLinks >= 0) {
+      Link[] links = new Link[nbLinks];
+      for (int i = 0; i < links.length; i++) {
+        String url = readLinkUrl(in);
+        int nbLinkAttributes = in.readVarInt();
+        Map<String, Object> attMap = new HashMap<>();
+        for (int j = 0; j < nbLinkAttributes; j++) {
+          int known = in.readVarInt();
+          String name = known == 0 ? intern(in.readString()) : KNOWN_ATTRIBUTES[known - 1];
+          int type = in.readByte();
+          switch (type) {
+            case ATTRIBUTE_NULL:
+              attMap.put(name, null);
+              break;
+            case ATTRIBUTE_INT:
+              attMap.put(name, (int) in.readSignedVarLong());
+              break;
+            case ATTRIBUTE_STRING:
+              attMap.put(name, in.readString());
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown link attribute type " + type);
+          }
+        }
+        links[i] = new Link(url, attMap);
+      }
+      b.objectLinks(links);
+    }
+    return b.build();
+  }
+
+  /*
+   * A link URL made of numeric segments (e.g. /3/0) is written as the number of segments followed by the
+   * segments, any other URL is written as 0 followed by the URL string.
+   */
+  private static void writeLinkUrl(BinaryWriter w, String url) {
+    int[] segments = toNumericSegments(url);
+    if (segments == null) {
+      w.writeVarInt(0);
+      w.writeString(url);
+    } else {
+      w.writeVarInt(segments.length);
+      for (int segment : segments) {
+        w.writeVarInt(segment);
+      }
+    }
+  }
+
+  private static String readLinkUrl(BinaryReader in) {
+    int nbSegments = in.readVarInt();
+    if (nbSegments == 0) {
+      return intern(in.readString());
+    }
+    StringBuilder url = new StringBuilder();
+    for (int i = 0; i < nbSegments; i++) {
+      url.append('/').append(in.readVarInt());
+    }
+    return intern(url.toString());
+  }
+
+  private static int[] toNumericSegments(String url) {
+    if (url == null || url.length() < 2 || url.charAt(0) != '/') {
+      return null;
+    }
+    String[] parts = url.substring(1).split("/", -1);
+    int[] segments = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      String part = parts[i];
+      // only canonical positive integers, so the URL is rebuilt as is
+      if (part.isEmpty() || part.length() > 9 || (part.length() > 1 && part.charAt(0) == '0')) {
+        return null;
+      }
+      for (int c = 0; c < part.length(); c++) {
+        if (part.charAt(c) < '0' || part.charAt(c) > '9') {
+          return null;
+        }
+      }
+      segments[i] = Integer.parseInt(part);
+    }
+    return segments;
+  }
+
+  private static String intern(String value) {
+    String interned = INTERNED_STRINGS.get(value);
+    if (interned != null) {
+      return interned;
+    }
+    if (INTERNED_STRINGS.size() < MAX_INTERNED_STRINGS) {
+      interned = INTERNED_STRINGS.putIfAbsent(value, value);
+      if (interned != null) {
+        return interned;
+      }
+    }
+    return value;
+  }
 }
\ No newline at end of file
@@ -15,7 +15,9 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.cluster.serialization;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
@@ -24,6 +26,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.leshan.Link;
+import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.core.request.Identity;
 import org.eclipse.leshan.server.registration.Registration;
 import org.junit.Test;
@@ -53,4 +56,88 @@ public class RegistrationSerDesTest {
 
     assertEquals(r, r2);
   }
+
+  @Test
+  public void binary_ser_and_des_are_equals() throws Exception {
+    Registration r = givenRegistration();
+
+    byte[] ser = RegistrationSerDes.serializeBinary(r);
+    Registration r2 = RegistrationSerDes.deserialize(ser);
+
+    assertSameRegistration(r, r2);
+    assertArrayEquals(r.getObjectLinks(), r2.getObjectLinks());
+    assertEquals(r.getRootPath(), r2.getRootPath());
+  }
+
+  @Test
+  public void binary_des_can_skip_object_links() throws Exception {
+    Registration r = givenRegistration();
+
+    Registration r2 = RegistrationSerDes.deserialize(RegistrationSerDes.serializeBinary(r), false);
+
+    assertSameRegistration(r, r2);
+    assertEquals(0, r2.getObjectLinks().length);
+  }
+
+  @Test
+  public void json_is_still_deserialized() throws Exception {
+    Registration r = givenRegistration();
+
+    Registration r2 = RegistrationSerDes.deserialize(RegistrationSerDes.bSerialize(r));
+
+    assertSameRegistration(r, r2);
+    assertArrayEquals(r.getObjectLinks(), r2.getObjectLinks());
+  }
+
+  @Test
+  public void binary_is_smaller_than_json() throws Exception {
+    Registration r = givenRegistration();
+
+    int binarySize = RegistrationSerDes.serializeBinary(r).length;
+    int jsonSize = RegistrationSerDes.bSerialize(r).length;
+
+    assertTrue("binary: " + binarySize + " json: " + jsonSize, binarySize * 2 < jsonSize);
+  }
+
+  private Registration givenRegistration() {
+    Link[] objs = new Link[5];
+    Map<String, Object> rootAtt = new HashMap<>();
+    rootAtt.put("rt", "oma.lwm2m");
+    rootAtt.put("ct", 11543);
+    objs[0] = new Link("/lwm2m", rootAtt);
+    Map<String, Object> att = new HashMap<>();
+    att.put("ver", "1.1");
+    att.put("ts", -12);
+    att.put("hb", null);
+    objs[1] = new Link("/lwm2m/3/0", att);
+    objs[2] = new Link("/lwm2m/1/0");
+    objs[3] = new Link("/lwm2m/3303/10");
+    objs[4] = new Link("/lwm2m/03");
+
+    Map<String, String> additionalAttributes = new HashMap<>();
+    additionalAttributes.put("imei", "123456789");
+
+    return new Registration.Builder("registrationId", "urn:imei:123456789",
+        Identity.psk(new InetSocketAddress(Inet4Address.getLoopbackAddress(), 5684), "client"),
+        new InetSocketAddress(Inet4Address.getLoopbackAddress(), 5684)).objectLinks(objs)
+        .lifeTimeInSec(300L).smsNumber("0123").lwM2mVersion("1.0").bindingMode(BindingMode.UQ)
+        .additionalRegistrationAttributes(additionalAttributes).registrationDate(new Date(100L))
+        .lastUpdate(new Date(101L)).build();
+  }
+
+  private void assertSameRegistration(Registration expected, Registration actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getEndpoint(), actual.getEndpoint());
+    assertEquals(expected.getIdentity(), actual.getIdentity());
+    assertEquals(expected.getRegistrationEndpointAddress(),
+        actual.getRegistrationEndpointAddress());
+    assertEquals(expected.getLifeTimeInSec(), actual.getLifeTimeInSec());
+    assertEquals(expected.getSmsNumber(), actual.getSmsNumber());
+    assertEquals(expected.getLwM2mVersion(), actual.getLwM2mVersion());
+    assertEquals(expected.getBindingMode(), actual.getBindingMode());
+    assertEquals(expected.getRegistrationDate(), actual.getRegistrationDate());
+    assertEquals(expected.getLastUpdate(), actual.getLastUpdate());
+    assertEquals(expected.getAdditionalRegistrationAttributes(),
+        actual.getAdditionalRegistrationAttributes());
+  }
 }
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.eclipse.leshan.server;
 
+import java.util.Iterator;
+
 import org.eclipse.leshan.core.node.codec.CodecException;
 import org.eclipse.leshan.core.request.DownlinkRequest;
 import org.eclipse.leshan.core.request.exception.ClientSleepingException;
@@ -31,6 +33,11 @@ import org.eclipse.leshan.server.queue.PresenceListener;
 import org.eclipse.leshan.server.queue.PresenceService;
 import org.eclipse.leshan.server.registration.Registration;
 import org.eclipse.leshan.server.registration.RegistrationService;
+import org.eclipse.leshan.server.request.BatchOptions;
+import org.eclipse.leshan.server.request.BatchProgress;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchErrorCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchResponseCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.RequestFactory;
 import org.eclipse.leshan.server.security.SecurityStore;
 
 /**
@@ -153,6 +160,25 @@ public interface LwM2mServer {
       ResponseCallback<T> responseCallback, ErrorCallback errorCallback)
       throws CodecException, ClientSleepingException;
 
+  /**
+   * Sends a Lightweight M2M request to many clients asynchronously (e.g. a configuration Write to a
+   * whole fleet). Destinations are iterated while the batch progresses, the concurrency, the rate
+   * and the retries are controlled by the given {@link BatchOptions}.
+   *
+   * @param destinations the remote clients, e.g. from
+   * {@link RegistrationService#getAllRegistrations()}
+   * @param requestFactory creates the request for each client, can return <code>null</code> to skip
+   * a client
+   * @param options the concurrency, rate, retry and timeout options
+   * @param responseCallback called for each response received (successful or error response)
+   * @param errorCallback called for each client which could not be reached, after the last retry.
+   * The error is a {@link ClientSleepingException} if the client is sleeping.
+   * @return the progress of the batch
+   */
+  <T extends LwM2mResponse> BatchProgress sendBatch(Iterator<Registration> destinations,
+      RequestFactory<T> requestFactory, BatchOptions options,
+      BatchResponseCallback<T> responseCallback, BatchErrorCallback errorCallback);
+
   /**
    * Get the registration service to access to registered clients. You can use this object for
    * listening client registration lifecycle.
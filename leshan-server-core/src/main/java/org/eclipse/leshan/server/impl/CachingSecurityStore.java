@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.security.BulkResult;
+import org.eclipse.leshan.server.security.EditableSecurityStore;
+import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.eclipse.leshan.server.security.SecurityStore;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link SecurityStore} which keeps in memory the {@link SecurityInfo} read from another store,
+ * to avoid a lookup in this store on each DTLS handshake and each registration.
+ * <p>
+ * Entries expire after a time to live and the least recently used ones are evicted when the cache
+ * is full. Unknown end-points and identities are cached too, with their own time to live.
+ * <p>
+ * The entries are invalidated when they are modified through this store. When the underlying store
+ * is shared with other servers (e.g. in a cluster), their modifications are only seen once the
+ * entries expire, unless {@link #invalidateEndpoint(String)} and
+ * {@link #invalidateIdentity(String)} are called when they happen.
+ */
+public class CachingSecurityStore implements EditableSecurityStore, Startable, Stoppable,
+    Destroyable {
+
+  private final EditableSecurityStore delegate;
+  private final int maxEntries;
+  private final long timeToLive; // in ns
+  private final long negativeTimeToLive; // in ns
+
+  // a lookup in the delegate first puts a pending entry, which is only replaced by the value read
+  // if no invalidation removed it in the meantime
+  private final ConcurrentMap<String, Entry> byEndpoint = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Entry> byIdentity = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a cache of 10000 end-points and identities, with a time to live of 5 minutes for the
+   * known ones and 30 seconds for the unknown ones.
+   */
+  public CachingSecurityStore(EditableSecurityStore delegate) {
+    this(delegate, 10_000, TimeUnit.MINUTES.toMillis(5), TimeUnit.SECONDS.toMillis(30));
+  }
+
+  /**
+   * @param delegate the store containing the security information
+   * @param maxEntries the maximum number of end-points and the maximum number of identities kept in
+   * cache
+   * @param timeToLive the time to live of a cached {@link SecurityInfo} in milliseconds
+   * @param negativeTimeToLive the time to live of an unknown end-point or identity in milliseconds,
+   * 0 to not cache them
+   */
+  public CachingSecurityStore(EditableSecurityStore delegate, int maxEntries,
+      long timeToLive, long negativeTimeToLive) {
+    Validate.notNull(delegate);
+    Validate.isTrue(maxEntries > 0, "maxEntries must be positive");
+    Validate.isTrue(timeToLive > 0, "timeToLive must be positive");
+    Validate.isTrue(negativeTimeToLive >= 0, "negativeTimeToLive must not be negative");
+    this.delegate = delegate;
+    this.maxEntries = maxEntries;
+    this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+    this.negativeTimeToLive = TimeUnit.MILLISECONDS.toNanos(negativeTimeToLive);
+  }
+
+  @Override
+  public SecurityInfo getByEndpoint(String endpoint) {
+    Entry entry = get(byEndpoint, endpoint);
+    if (entry != null) {
+      return entry.info;
+    }
+    Entry pending = new Entry();
+    boolean owner = byEndpoint.putIfAbsent(endpoint, pending) == null;
+    SecurityInfo info = delegate.getByEndpoint(endpoint);
+    if (owner) {
+      put(byEndpoint, endpoint, pending, info);
+    }
+    return info;
+  }
+
+  @Override
+  public SecurityInfo getByIdentity(String identity) {
+    Entry entry = get(byIdentity, identity);
+    if (entry != null) {
+      return entry.info;
+    }
+    Entry pending = new Entry();
+    boolean owner = byIdentity.putIfAbsent(identity, pending) == null;
+    SecurityInfo info = delegate.getByIdentity(identity);
+    if (owner) {
+      put(byIdentity, identity, pending, info);
+    }
+    return info;
+  }
+
+  @Override
+  public Collection<SecurityInfo> getAll() {
+    return delegate.getAll();
+  }
+
+  @Override
+  public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
+    SecurityInfo previous = delegate.add(info);
+    invalidate(info);
+    invalidate(previous);
+    return previous;
+  }
+
+  @Override
+  public SecurityInfo remove(String endpoint) {
+    SecurityInfo removed = delegate.remove(endpoint);
+    invalidateEndpoint(endpoint);
+    invalidate(removed);
+    return removed;
+  }
+
+  @Override
+  public List<BulkResult> addAll(Collection<SecurityInfo> infos) {
+    List<BulkResult> results = delegate.addAll(infos);
+    for (SecurityInfo info : infos) {
+      invalidate(info);
+    }
+    for (BulkResult result : results) {
+      invalidate(result.getPrevious());
+    }
+    return results;
+  }
+
+  @Override
+  public List<BulkResult> removeAll(Collection<String> endpoints) {
+    List<BulkResult> results = delegate.removeAll(endpoints);
+    for (BulkResult result : results) {
+      invalidateEndpoint(result.getEndpoint());
+      invalidate(result.getPrevious());
+    }
+    return results;
+  }
+
+  /**
+   * Evicts the cached security information of the given end-point.
+   */
+  public void invalidateEndpoint(String endpoint) {
+    byEndpoint.remove(endpoint);
+  }
+
+  /**
+   * Evicts the cached security information of the given PSK identity.
+   */
+  public void invalidateIdentity(String identity) {
+    byIdentity.remove(identity);
+  }
+
+  /**
+   * Evicts all the cached security information.
+   */
+  public void clear() {
+    byEndpoint.clear();
+    byIdentity.clear();
+  }
+
+  private void invalidate(SecurityInfo info) {
+    if (info != null) {
+      invalidateEndpoint(info.getEndpoint());
+      if (info.getIdentity() != null) {
+        invalidateIdentity(info.getIdentity());
+      }
+    }
+  }
+
+  private Entry get(ConcurrentMap<String, Entry> entries, String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && !entry.pending) {
+      long now = System.nanoTime();
+      if (entry.expiration - now > 0) {
+        entry.lastAccess = now;
+        hits.incrementAndGet();
+        return entry;
+      }
+      entries.remove(key, entry);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  private void put(ConcurrentMap<String, Entry> entries, String key, Entry pending,
+      SecurityInfo info) {
+    long ttl = info == null ? negativeTimeToLive : timeToLive;
+    if (ttl == 0) {
+      entries.remove(key, pending);
+      return;
+    }
+    // fails if the key was invalidated during the lookup
+    if (entries.replace(key, pending, new Entry(info, System.nanoTime() + ttl))
+        && entries.size() > maxEntries) {
+      evict(entries);
+    }
+  }
+
+  // removes the expired entries, then the least recently used ones while the cache is full
+  private void evict(ConcurrentMap<String, Entry> entries) {
+    while (entries.size() > maxEntries) {
+      long now = System.nanoTime();
+      Map.Entry<String, Entry> eldest = null;
+      for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+        Map.Entry<String, Entry> e = it.next();
+        Entry entry = e.getValue();
+        if (!entry.pending && entry.expiration - now <= 0) {
+          it.remove();
+        } else if (eldest == null || entry.lastAccess - eldest.getValue().lastAccess < 0) {
+          eldest = e;
+        }
+      }
+      if (eldest != null && entries.size() > maxEntries) {
+        entries.remove(eldest.getKey(), eldest.getValue());
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the number of lookups which were answered from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups which needed a request to the underlying store.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of cached end-points and identities, expired ones included.
+   */
+  public int size() {
+    return byEndpoint.size() + byIdentity.size();
+  }
+
+  @Override
+  public void start() {
+    if (delegate instanceof Startable) {
+      ((Startable) delegate).start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (delegate instanceof Stoppable) {
+      ((Stoppable) delegate).stop();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (delegate instanceof Destroyable) {
+      ((Destroyable) delegate).destroy();
+    } else if (delegate instanceof Stoppable) {
+      ((Stoppable) delegate).stop();
+    }
+    clear();
+  }
+
+  private static class Entry {
+    final SecurityInfo info; // null for an unknown end-point or identity
+    final long expiration; // in ns
+    final boolean pending; // a lookup in the delegate is in progress
+    volatile long lastAccess; // in ns
+
+    Entry() {
+      this.info = null;
+      this.expiration = 0;
+      this.pending = true;
+      this.lastAccess = System.nanoTime();
+    }
+
+    Entry(SecurityInfo info, long expiration) {
+      this.info = info;
+      this.expiration = expiration;
+      this.pending = false;
+      this.lastAccess = System.nanoTime();
+    }
+  }
+}
@@ -17,11 +17,20 @@ package org.eclipse.leshan.server.impl;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.security.BulkResult;
 import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
 import org.eclipse.leshan.server.security.SecurityInfo;
 import org.eclipse.leshan.server.security.SecurityStore;
@@ -32,27 +41,47 @@ import org.slf4j.LoggerFactory;
 /**
  * A {@link SecurityStore} which persists {@link SecurityInfo} in a file.
  * <p>
- * This implementation serializes the store content into a file to be able to re-load the {@link
- * SecurityInfo} when the server is restarted.
+ * Modifications are appended to a journal (the file name followed by ".journal") and flushed to
+ * the disk before returning. Concurrent modifications share the same flush. When the journal
+ * contains more records than the store, it is compacted into a snapshot of the store content
+ * (the file itself), loaded in a single read when the server is restarted. See
+ * {@link SecurityJournal} for the file format.
+ * </p>
+ * <p>
+ * A file written by a previous version of this store with Java serialization is loaded and
+ * rewritten in the new format.
  * </p>
  */
-public class FileSecurityStore extends InMemorySecurityStore {
+public class FileSecurityStore extends InMemorySecurityStore implements Destroyable {
 
   private static final Logger LOG = LoggerFactory.getLogger(FileSecurityStore.class);
 
-  // the name of the file used to persist the store content
-  private final String filename;
+  // the file used to persist the store content
+  private final File snapshotFile;
+  private final File journalFile;
 
   // default location for persistence
   private static final String DEFAULT_FILE = "data/security.data";
 
+  // the journal is not compacted before it contains this number of records
+  private static final int MIN_COMPACTION_RECORDS = 1000;
+
+  private FileChannel journal;
+  private int journalRecords;
+
+  // number of records appended to the journal and number of records flushed to the disk
+  private volatile long appended;
+  private long synced;
+  private final Object syncLock = new Object();
+
   public FileSecurityStore() {
     this(DEFAULT_FILE);
   }
 
   public FileSecurityStore(String file) {
     Validate.notEmpty(file);
-    filename = file;
+    snapshotFile = new File(file);
+    journalFile = new File(file + ".journal");
     loadFromFile();
   }
 
@@ -62,67 +91,290 @@ public class FileSecurityStore extends InMemorySecurityStore {
 
   @Override
   public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
+    SecurityInfo previous;
+    long record;
     writeLock.lock();
     try {
-      SecurityInfo previous = addToStore(info);
-      saveToFile();
-      return previous;
+      previous = addToStore(info);
+      record = append(Collections.singletonList(SecurityJournal.addRecord(info)));
     } finally {
       writeLock.unlock();
     }
+    sync(record);
+    return previous;
   }
 
   @Override
   public SecurityInfo remove(String endpoint) {
+    SecurityInfo info;
+    long record = 0;
     writeLock.lock();
     try {
-      SecurityInfo info = super.remove(endpoint);
+      info = super.remove(endpoint);
       if (info != null) {
-        saveToFile();
+        record = append(Collections.singletonList(SecurityJournal.removeRecord(endpoint)));
       }
-      return info;
     } finally {
       writeLock.unlock();
     }
+    sync(record);
+    return info;
   }
 
-  protected void loadFromFile() {
-    File file = new File(filename);
-    if (!file.exists()) {
-      return;
+  @Override
+  public List<BulkResult> addAll(Collection<SecurityInfo> infos) {
+    List<BulkResult> results = new ArrayList<>(infos.size());
+    List<ByteBuffer> records = new ArrayList<>(infos.size());
+    long record;
+    writeLock.lock();
+    try {
+      for (SecurityInfo info : infos) {
+        try {
+          results.add(BulkResult.success(info.getEndpoint(), addToStore(info)));
+          records.add(SecurityJournal.addRecord(info));
+        } catch (NonUniqueSecurityInfoException e) {
+          results.add(BulkResult.failure(info.getEndpoint(), e));
+        }
+      }
+      record = append(records);
+    } finally {
+      writeLock.unlock();
     }
+    sync(record);
+    return results;
+  }
 
-    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));) {
-      SecurityInfo[] infos = (SecurityInfo[]) in.readObject();
+  @Override
+  public List<BulkResult> removeAll(Collection<String> endpoints) {
+    List<BulkResult> results = new ArrayList<>(endpoints.size());
+    List<ByteBuffer> records = new ArrayList<>(endpoints.size());
+    long record;
+    writeLock.lock();
+    try {
+      for (String endpoint : endpoints) {
+        SecurityInfo info = super.remove(endpoint);
+        results.add(BulkResult.success(endpoint, info));
+        if (info != null) {
+          records.add(SecurityJournal.removeRecord(endpoint));
+        }
+      }
+      record = append(records);
+    } finally {
+      writeLock.unlock();
+    }
+    sync(record);
+    return results;
+  }
 
-      if (infos != null) {
-        for (SecurityInfo info : infos) {
-          addToStore(info);
+  protected void loadFromFile() {
+    writeLock.lock();
+    try {
+      boolean legacy = false;
+      if (snapshotFile.exists()) {
+        try (FileChannel snapshot = FileChannel.open(snapshotFile.toPath(),
+            StandardOpenOption.READ)) {
+          // not memory-mapped: a mapped file cannot be replaced on Windows until it is unmapped
+          ByteBuffer content = readFully(snapshot);
+          int end = SecurityJournal.read(content, replay);
+          if (end < 0) {
+            legacy = true;
+          } else if (end < content.limit()) {
+            LOG.warn("Ignoring {} bytes of invalid records at the end of {}",
+                content.limit() - end, snapshotFile);
+          }
+        }
+        if (legacy) {
+          loadLegacyFile();
         }
-        if (infos.length > 0) {
-          LOG.debug("{} security infos loaded", infos.length);
+      } else {
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+          parent.mkdirs();
         }
       }
-    } catch (NonUniqueSecurityInfoException | IOException | ClassNotFoundException e) {
+
+      journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      ByteBuffer content = readFully(journal);
+      int end = SecurityJournal.read(content, replay);
+      if (end < 0) {
+        journal.truncate(0);
+        journal.write(SecurityJournal.header(), 0);
+        end = SecurityJournal.HEADER_SIZE;
+      } else if (end < content.limit()) {
+        LOG.warn("Ignoring {} bytes of invalid records at the end of {}", content.limit() - end,
+            journalFile);
+      }
+      // drop the invalid records, if any
+      journal.truncate(end);
+      journal.position(end);
+      journal.force(true);
+
+      if (!securityByEp.isEmpty()) {
+        LOG.debug("{} security infos loaded", securityByEp.size());
+      }
+      if (legacy) {
+        saveToFile();
+      }
+    } catch (IOException e) {
       LOG.error("Could not load security infos from file", e);
+    } finally {
+      writeLock.unlock();
     }
   }
 
+  /**
+   * Compacts the journal: writes the store content in the snapshot file and clears the journal.
+   * Must be called holding the write lock.
+   */
   protected void saveToFile() {
+    if (journal == null) {
+      return;
+    }
     try {
-      File file = new File(filename);
-      if (!file.exists()) {
-        File parent = file.getParentFile();
-        if (parent != null) {
-          parent.mkdirs();
+      File parent = snapshotFile.getAbsoluteFile().getParentFile();
+      File tmp = new File(parent, snapshotFile.getName() + ".tmp");
+      try (FileChannel snapshot = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        writeFully(snapshot, SecurityJournal.header());
+        for (SecurityInfo info : securityByEp.values()) {
+          writeFully(snapshot, SecurityJournal.addRecord(info));
+        }
+        snapshot.force(true);
+      }
+      Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      // the rename must be on the disk before the journal is cleared
+      forceDirectory(parent);
+
+      synchronized (syncLock) {
+        journal.truncate(SecurityJournal.HEADER_SIZE);
+        journal.position(SecurityJournal.HEADER_SIZE);
+        journal.force(true);
+        journalRecords = 0;
+        synced = appended;
+      }
+    } catch (IOException e) {
+      LOG.error("Could not save security infos to file", e);
+    }
+  }
+
+  /**
+   * @return the number of records currently in the journal.
+   */
+  public int getJournalSize() {
+    readLock.lock();
+    try {
+      return journalRecords;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    writeLock.lock();
+    try {
+      synchronized (syncLock) {
+        if (journal != null) {
+          journal.close();
+          journal = null;
         }
-        file.createNewFile();
       }
-      try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename));) {
-        out.writeObject(this.getAll().toArray(new SecurityInfo[0]));
+    } catch (IOException e) {
+      LOG.warn("Could not close security infos journal", e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // must be called holding the write lock, returns the number of the last appended record
+  private long append(List<ByteBuffer> records) {
+    if (journal == null || records.isEmpty()) {
+      return 0;
+    }
+    try {
+      ByteBuffer[] buffers = records.toArray(new ByteBuffer[records.size()]);
+      while (buffers[buffers.length - 1].hasRemaining()) {
+        journal.write(buffers);
       }
+      journalRecords += records.size();
+      appended += records.size();
     } catch (IOException e) {
       LOG.error("Could not save security infos to file", e);
     }
+    if (journalRecords >= MIN_COMPACTION_RECORDS && journalRecords > securityByEp.size()) {
+      saveToFile();
+    }
+    return appended;
+  }
+
+  // flushes the journal until the given record, unless another thread already did it
+  private void sync(long record) {
+    synchronized (syncLock) {
+      if (synced >= record || journal == null) {
+        return;
+      }
+      long target = appended;
+      try {
+        journal.force(false);
+        synced = target;
+      } catch (IOException e) {
+        LOG.error("Could not save security infos to file", e);
+      }
+    }
+  }
+
+  private void loadLegacyFile() {
+    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(snapshotFile));) {
+      SecurityInfo[] infos = (SecurityInfo[]) in.readObject();
+      if (infos != null) {
+        for (SecurityInfo info : infos) {
+          addToStore(info);
+        }
+      }
+    } catch (NonUniqueSecurityInfoException | IOException | ClassNotFoundException e) {
+      LOG.error("Could not load security infos from file", e);
+    }
   }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void forceDirectory(File directory) {
+    try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // directories cannot be opened on some platforms (e.g. Windows), where it is not needed
+      LOG.debug("Could not flush directory {}", directory, e);
+    }
+  }
+
+  private final SecurityJournal.RecordHandler replay = new SecurityJournal.RecordHandler() {
+    @Override
+    public void add(SecurityInfo info) {
+      try {
+        addToStore(info);
+      } catch (NonUniqueSecurityInfoException e) {
+        // the journal may start before the snapshot in case of crash during compaction
+        LOG.debug("Ignoring security info {} while loading", info, e);
+      }
+    }
+
+    @Override
+    public void remove(String endpoint) {
+      FileSecurityStore.super.remove(endpoint);
+    }
+  };
 }
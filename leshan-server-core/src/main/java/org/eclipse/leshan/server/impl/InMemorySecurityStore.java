@@ -19,11 +19,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.eclipse.leshan.server.security.BulkResult;
 import org.eclipse.leshan.server.security.EditableSecurityStore;
 import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
 import org.eclipse.leshan.server.security.SecurityInfo;
@@ -88,43 +90,85 @@ public class InMemorySecurityStore implements EditableSecurityStore {
   public SecurityInfo add(SecurityInfo info) throws NonUniqueSecurityInfoException {
     writeLock.lock();
     try {
-      String identity = info.getIdentity();
-      if (identity != null) {
-        SecurityInfo infoByIdentity = securityByIdentity.get(info.getIdentity());
-        if (infoByIdentity != null && !info.getEndpoint().equals(infoByIdentity.getEndpoint())) {
-          throw new NonUniqueSecurityInfoException(
-              "PSK Identity " + info.getIdentity() + " is already used");
-        }
+      return unsafeAdd(info);
+    } finally {
+      writeLock.unlock();
+    }
+  }
 
-        securityByIdentity.put(info.getIdentity(), info);
-      }
+  @Override
+  public SecurityInfo remove(String endpoint) {
+    writeLock.lock();
+    try {
+      return unsafeRemove(endpoint);
+    } finally {
+      writeLock.unlock();
+    }
+  }
 
-      SecurityInfo previous = securityByEp.put(info.getEndpoint(), info);
-      String previousIdentity = previous == null ? null : previous.getIdentity();
-      if (previousIdentity != null && !previousIdentity.equals(identity)) {
-        securityByIdentity.remove(previousIdentity);
+  @Override
+  public List<BulkResult> addAll(Collection<SecurityInfo> infos) {
+    List<BulkResult> results = new ArrayList<>(infos.size());
+    writeLock.lock();
+    try {
+      for (SecurityInfo info : infos) {
+        try {
+          results.add(BulkResult.success(info.getEndpoint(), unsafeAdd(info)));
+        } catch (NonUniqueSecurityInfoException e) {
+          results.add(BulkResult.failure(info.getEndpoint(), e));
+        }
       }
-
-      return previous;
     } finally {
       writeLock.unlock();
     }
+    return results;
   }
 
   @Override
-  public SecurityInfo remove(String endpoint) {
+  public List<BulkResult> removeAll(Collection<String> endpoints) {
+    List<BulkResult> results = new ArrayList<>(endpoints.size());
     writeLock.lock();
     try {
-      SecurityInfo info = securityByEp.get(endpoint);
-      if (info != null) {
-        if (info.getIdentity() != null) {
-          securityByIdentity.remove(info.getIdentity());
-        }
-        securityByEp.remove(endpoint);
+      for (String endpoint : endpoints) {
+        results.add(BulkResult.success(endpoint, unsafeRemove(endpoint)));
       }
-      return info;
     } finally {
       writeLock.unlock();
     }
+    return results;
+  }
+
+  // must be called holding the write lock
+  private SecurityInfo unsafeAdd(SecurityInfo info) throws NonUniqueSecurityInfoException {
+    String identity = info.getIdentity();
+    if (identity != null) {
+      SecurityInfo infoByIdentity = securityByIdentity.get(info.getIdentity());
+      if (infoByIdentity != null && !info.getEndpoint().equals(infoByIdentity.getEndpoint())) {
+        throw new NonUniqueSecurityInfoException(
+            "PSK Identity " + info.getIdentity() + " is already used");
+      }
+
+      securityByIdentity.put(info.getIdentity(), info);
+    }
+
+    SecurityInfo previous = securityByEp.put(info.getEndpoint(), info);
+    String previousIdentity = previous == null ? null : previous.getIdentity();
+    if (previousIdentity != null && !previousIdentity.equals(identity)) {
+      securityByIdentity.remove(previousIdentity);
+    }
+
+    return previous;
+  }
+
+  // must be called holding the write lock
+  private SecurityInfo unsafeRemove(String endpoint) {
+    SecurityInfo info = securityByEp.get(endpoint);
+    if (info != null) {
+      if (info.getIdentity() != null) {
+        securityByIdentity.remove(info.getIdentity());
+      }
+      securityByEp.remove(endpoint);
+    }
+    return info;
   }
 }
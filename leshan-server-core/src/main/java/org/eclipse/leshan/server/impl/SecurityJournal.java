@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.zip.CRC32;
+
+import org.eclipse.leshan.server.security.SecurityInfo;
+
+/**
+ * The binary format of the files of {@link FileSecurityStore}.
+ * <p>
+ * A file starts with a header (magic number and format version) followed by records:
+ *
+ * <pre>
+ * record  = length(int) crc32(int) type(byte) payload(length bytes)
+ * add     = endpoint kind(byte) [identity psk | algorithm encodedKey]
+ * remove  = endpoint
+ * string  = length(int) UTF-8 bytes
+ * bytes   = length(int) bytes
+ * </pre>
+ *
+ * The CRC covers the type and the payload, it allows to detect a record partially written before
+ * a crash. The public keys are stored in their X.509 encoding.
+ */
+class SecurityJournal {
+
+  static final int MAGIC = 0x4C534543; // "LSEC"
+  static final byte VERSION = 1;
+  static final int HEADER_SIZE = 5;
+
+  static final byte ADD = 1;
+  static final byte REMOVE = 2;
+
+  private static final int RECORD_HEADER_SIZE = 9;
+
+  private static final byte PSK = 0;
+  private static final byte RPK = 1;
+  private static final byte X509 = 2;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Handles the records read from a file.
+   */
+  interface RecordHandler {
+    void add(SecurityInfo info);
+
+    void remove(String endpoint);
+  }
+
+  static ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).put(VERSION);
+    header.flip();
+    return header;
+  }
+
+  static ByteBuffer addRecord(SecurityInfo info) {
+    byte[] endpoint = info.getEndpoint().getBytes(UTF_8);
+    ByteBuffer payload;
+    if (info.getPreSharedKey() != null) {
+      byte[] identity = info.getIdentity().getBytes(UTF_8);
+      payload = ByteBuffer.allocate(13 + endpoint.length + identity.length
+          + info.getPreSharedKey().length);
+      putBytes(payload, endpoint).put(PSK);
+      putBytes(payload, identity);
+      putBytes(payload, info.getPreSharedKey());
+    } else if (info.getRawPublicKey() != null) {
+      byte[] algorithm = info.getRawPublicKey().getAlgorithm().getBytes(UTF_8);
+      byte[] key = info.getRawPublicKey().getEncoded();
+      payload = ByteBuffer.allocate(13 + endpoint.length + algorithm.length + key.length);
+      putBytes(payload, endpoint).put(RPK);
+      putBytes(payload, algorithm);
+      putBytes(payload, key);
+    } else {
+      payload = ByteBuffer.allocate(5 + endpoint.length);
+      putBytes(payload, endpoint).put(X509);
+    }
+    return record(ADD, payload.array());
+  }
+
+  static ByteBuffer removeRecord(String endpoint) {
+    byte[] ep = endpoint.getBytes(UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(4 + ep.length);
+    putBytes(payload, ep);
+    return record(REMOVE, payload.array());
+  }
+
+  /**
+   * Reads the records of a file until its end or the first invalid record.
+   *
+   * @return the position following the last valid record, or -1 if the header is invalid.
+   */
+  static int read(ByteBuffer file, RecordHandler handler) {
+    if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC || file.get() != VERSION) {
+      return -1;
+    }
+    int end = file.position();
+    while (file.remaining() >= RECORD_HEADER_SIZE) {
+      int length = file.getInt();
+      int crc = file.getInt();
+      // length + 1 would overflow for a corrupt length
+      if (length < 0 || length > file.remaining() - 1) {
+        break;
+      }
+      byte[] content = new byte[length + 1];
+      file.get(content);
+      if (crc != crc(content)) {
+        break;
+      }
+      try {
+        ByteBuffer payload = ByteBuffer.wrap(content, 1, length);
+        switch (content[0]) {
+          case ADD:
+            handler.add(readSecurityInfo(payload));
+            break;
+          case REMOVE:
+            handler.remove(getString(payload));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown record type " + content[0]);
+        }
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        break;
+      }
+      end = file.position();
+    }
+    return end;
+  }
+
+  private static SecurityInfo readSecurityInfo(ByteBuffer payload) {
+    String endpoint = getString(payload);
+    byte kind = payload.get();
+    switch (kind) {
+      case PSK:
+        String identity = getString(payload);
+        return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, getBytes(payload));
+      case RPK:
+        String algorithm = getString(payload);
+        byte[] key = getBytes(payload);
+        try {
+          PublicKey publicKey = KeyFactory.getInstance(algorithm)
+              .generatePublic(new X509EncodedKeySpec(key));
+          return SecurityInfo.newRawPublicKeyInfo(endpoint, publicKey);
+        } catch (GeneralSecurityException e) {
+          throw new IllegalArgumentException("Invalid public key for " + endpoint, e);
+        }
+      case X509:
+        return SecurityInfo.newX509CertInfo(endpoint);
+      default:
+        throw new IllegalArgumentException("Unknown security info kind " + kind);
+    }
+  }
+
+  private static ByteBuffer record(byte type, byte[] payload) {
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+    record.putInt(payload.length).putInt(0).put(type).put(payload);
+    record.putInt(4, crc(record.array(), 8, payload.length + 1));
+    record.flip();
+    return record;
+  }
+
+  private static int crc(byte[] content) {
+    return crc(content, 0, content.length);
+  }
+
+  private static int crc(byte[] content, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(content, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static ByteBuffer putBytes(ByteBuffer buffer, byte[] bytes) {
+    return buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    return new String(getBytes(buffer), UTF_8);
+  }
+}
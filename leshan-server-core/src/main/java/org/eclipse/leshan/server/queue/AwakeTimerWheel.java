@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A hashed timer wheel for the client awake timers: scheduling, rescheduling and cancelling a timer
+ * are O(1) and all the timers expiring in a same tick are handled as one batch.
+ * <p>
+ * Timers are kept in doubly-linked lists, one per slot of the wheel. A timer scheduled more than one
+ * wheel revolution ahead counts the remaining revolutions in {@link Timer#rounds}.
+ */
+class AwakeTimerWheel {
+
+  interface ExpirationHandler {
+    void expired(List<Timer> timers);
+  }
+
+  /**
+   * The awake timer of a client, reused each time it is rescheduled.
+   */
+  static class Timer {
+    final PresenceStatus status;
+    Registration registration;
+
+    // guarded by the wheel
+    private int slot = -1;
+    private long rounds;
+    private Timer prev;
+    private Timer next;
+
+    Timer(PresenceStatus status) {
+      this.status = status;
+    }
+  }
+
+  private final long tickDuration; // in ns
+  private final Timer[] slots;
+  private final int mask;
+  private final long startTime;
+  private final ExpirationHandler handler;
+
+  // guarded by this
+  private long nextTick; // the next tick to process
+  private int size;
+
+  /**
+   * @param tickDuration the precision of the timers in milliseconds
+   * @param wheelSize the number of slots, rounded up to a power of 2
+   * @param startTime the {@link System#nanoTime()} of tick 0
+   */
+  AwakeTimerWheel(long tickDuration, int wheelSize, long startTime, ExpirationHandler handler) {
+    Validate.isTrue(tickDuration > 0, "tickDuration must be positive");
+    Validate.isTrue(wheelSize > 0, "wheelSize must be positive");
+    int size = Integer.highestOneBit(wheelSize - 1) << 1;
+    this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    this.slots = new Timer[Math.max(size, 1)];
+    this.mask = slots.length - 1;
+    this.startTime = startTime;
+    this.handler = handler;
+  }
+
+  /**
+   * (Re)schedules a timer to expire after the given delay.
+   */
+  synchronized void schedule(Timer timer, long delayInMs, long now) {
+    unlink(timer);
+    long elapsed = now - startTime + TimeUnit.MILLISECONDS.toNanos(delayInMs);
+    // round up to never expire early
+    long tick = Math.max((elapsed + tickDuration - 1) / tickDuration, nextTick);
+    timer.rounds = (tick - nextTick) / slots.length;
+    timer.slot = (int) (tick & mask);
+    link(timer);
+  }
+
+  synchronized void cancel(Timer timer) {
+    unlink(timer);
+  }
+
+  synchronized boolean isScheduled(Timer timer) {
+    return timer.slot >= 0;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Processes all the ticks elapsed until the given time, then calls the handler with the expired
+   * timers.
+   */
+  void advance(long now) {
+    List<Timer> expired = new ArrayList<>();
+    synchronized (this) {
+      long lastTick = (now - startTime) / tickDuration;
+      // no need to turn the wheel more than once
+      if (lastTick - nextTick >= slots.length) {
+        expireAllUntil(lastTick, expired);
+        nextTick = lastTick + 1;
+      }
+      for (; nextTick <= lastTick; nextTick++) {
+        Timer timer = slots[(int) (nextTick & mask)];
+        while (timer != null) {
+          Timer next = timer.next;
+          if (timer.rounds == 0) {
+            unlink(timer);
+            expired.add(timer);
+          } else {
+            timer.rounds--;
+          }
+          timer = next;
+        }
+      }
+    }
+    if (!expired.isEmpty()) {
+      handler.expired(expired);
+    }
+  }
+
+  // must be called with the lock, when the whole wheel must be turned at least once
+  private void expireAllUntil(long lastTick, List<Timer> expired) {
+    long revolutions = (lastTick - nextTick + 1) / slots.length;
+    for (int slot = 0; slot < slots.length; slot++) {
+      // the first tick of this slot not yet processed
+      long firstTick = nextTick + ((slot - nextTick) & mask);
+      long visits = revolutions + (firstTick + revolutions * slots.length <= lastTick ? 1 : 0);
+      Timer timer = slots[slot];
+      while (timer != null) {
+        Timer next = timer.next;
+        if (timer.rounds < visits) {
+          unlink(timer);
+          expired.add(timer);
+        } else {
+          timer.rounds -= visits;
+        }
+        timer = next;
+      }
+    }
+  }
+
+  private void link(Timer timer) {
+    Timer head = slots[timer.slot];
+    timer.prev = null;
+    timer.next = head;
+    if (head != null) {
+      head.prev = timer;
+    }
+    slots[timer.slot] = timer;
+    size++;
+  }
+
+  private void unlink(Timer timer) {
+    if (timer.slot < 0) {
+      return;
+    }
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      slots[timer.slot] = timer.next;
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.slot = -1;
+    size--;
+  }
+}
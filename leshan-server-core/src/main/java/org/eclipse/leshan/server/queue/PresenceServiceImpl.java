@@ -22,28 +22,74 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.queue.AwakeTimerWheel.Timer;
 import org.eclipse.leshan.server.registration.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Tracks the status of each LWM2M client registered with Queue mode binding. Also ensures that the
  * {@link PresenceListener} are notified on state changes only for those LWM2M clients registered
  * using Queue mode binding.
+ * <p>
+ * The client awake timers are kept in a timer wheel turned by a single thread: they expire with a
+ * precision of one tick (50ms by default) and the clients whose timers expire in a same tick go to
+ * sleep as one batch.
  *
  * @see Presence
  */
-public final class PresenceServiceImpl implements PresenceService {
+public final class PresenceServiceImpl implements PresenceService, Destroyable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PresenceServiceImpl.class);
 
   private final ConcurrentMap<String, PresenceStatus> clientStatusList = new ConcurrentHashMap<>();
   private final List<PresenceListener> listeners = new CopyOnWriteArrayList<>();
   private final ClientAwakeTimeProvider awakeTimeProvider;
-  private final ScheduledExecutorService clientTimersExecutor = Executors
-      .newSingleThreadScheduledExecutor();
+  private final AwakeTimerWheel awakeTimers;
+  private final ScheduledExecutorService clientTimersExecutor;
 
   public PresenceServiceImpl(ClientAwakeTimeProvider awakeTimeProvider) {
+    this(awakeTimeProvider, 50, 2048);
+  }
+
+  /**
+   * @param awakeTimeProvider provides the client awake time.
+   * @param tickDuration the precision of the client awake timers in milliseconds.
+   * @param wheelSize the number of ticks of the timer wheel, timers longer than
+   * <code>tickDuration * wheelSize</code> are supported but are more costly to handle.
+   */
+  public PresenceServiceImpl(ClientAwakeTimeProvider awakeTimeProvider, long tickDuration,
+      int wheelSize) {
     this.awakeTimeProvider = awakeTimeProvider;
+    this.awakeTimers = new AwakeTimerWheel(tickDuration, wheelSize, System.nanoTime(),
+        new AwakeTimerWheel.ExpirationHandler() {
+          @Override
+          public void expired(List<Timer> timers) {
+            clientAwakeTimersExpired(timers);
+          }
+        });
+    this.clientTimersExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Leshan presence timers");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.clientTimersExecutor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          awakeTimers.advance(System.nanoTime());
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to handle client awake timers", e);
+        }
+      }
+    }, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -130,7 +176,10 @@ public final class PresenceServiceImpl implements PresenceService {
    * @param reg the client's registration object.
    */
   public void removePresenceStatusObject(Registration reg) {
-    clientStatusList.remove(reg.getEndpoint());
+    PresenceStatus status = clientStatusList.remove(reg.getEndpoint());
+    if (status != null) {
+      awakeTimers.cancel(status.awakeTimer);
+    }
   }
 
   /**
@@ -150,22 +199,10 @@ public final class PresenceServiceImpl implements PresenceService {
   public void startClientAwakeTimer(final Registration reg, PresenceStatus clientPresenceStatus,
       int clientAwakeTime) {
 
-    ScheduledFuture<?> clientScheduledFuture = clientPresenceStatus.getClientScheduledFuture();
-
     if (clientAwakeTime != 0) {
-      if (clientScheduledFuture != null) {
-        clientScheduledFuture.cancel(true);
-      }
-      clientScheduledFuture = clientTimersExecutor.schedule(new Runnable() {
-
-        @Override
-        public void run() {
-          if (isClientAwake(reg)) {
-            setSleeping(reg);
-          }
-        }
-      }, clientAwakeTime, TimeUnit.MILLISECONDS);
-      clientPresenceStatus.setClientExecutorFuture(clientScheduledFuture);
+      Timer timer = clientPresenceStatus.awakeTimer;
+      timer.registration = reg;
+      awakeTimers.schedule(timer, clientAwakeTime, System.nanoTime());
     }
 
   }
@@ -175,9 +212,29 @@ public final class PresenceServiceImpl implements PresenceService {
    */
   private void stopClientAwakeTimer(Registration reg) {
     PresenceStatus clientPresenceStatus = getPresenceStatusObject(reg);
-    ScheduledFuture<?> clientScheduledFuture = clientPresenceStatus.getClientScheduledFuture();
-    if (clientScheduledFuture != null) {
-      clientScheduledFuture.cancel(true);
+    awakeTimers.cancel(clientPresenceStatus.awakeTimer);
+  }
+
+  /**
+   * Set to sleep the clients whose awake timer expired, unless their timer was restarted meanwhile.
+   */
+  private void clientAwakeTimersExpired(List<Timer> timers) {
+    for (Timer timer : timers) {
+      PresenceStatus status = timer.status;
+      Registration reg = timer.registration;
+      boolean stateChanged;
+      synchronized (status) {
+        if (awakeTimers.isScheduled(timer)
+            || clientStatusList.get(reg.getEndpoint()) != status) {
+          continue;
+        }
+        stateChanged = status.setSleeping();
+      }
+      if (stateChanged) {
+        for (PresenceListener listener : listeners) {
+          listener.onSleeping(reg);
+        }
+      }
     }
   }
 
@@ -189,4 +246,16 @@ public final class PresenceServiceImpl implements PresenceService {
       setSleeping(reg);
     }
   }
+
+  /**
+   * @return the number of running client awake timers.
+   */
+  public int getAwakeTimerCount() {
+    return awakeTimers.size();
+  }
+
+  @Override
+  public void destroy() {
+    clientTimersExecutor.shutdownNow();
+  }
 }
@@ -27,6 +27,10 @@ public class PresenceStatus {
   /* The state of the client: Awake or Sleeping */
   private Presence state;
 
+  /* The timer that handles the client wait before sleep time */
+  final AwakeTimerWheel.Timer awakeTimer = new AwakeTimerWheel.Timer(this);
+
+  /* Only kept for the deprecated accessors */
   private ScheduledFuture<?> clientScheduledFuture;
 
   public PresenceStatus() {
@@ -85,7 +89,11 @@ public class PresenceStatus {
    * Sets the client scheduled task future, in order to cancel it.
    *
    * @param clientScheduledFuture the scheduled future of the task.
+   * @deprecated the time the client waits before going to sleep is now handled by a timer wheel in
+   * {@link PresenceServiceImpl}, the given future is only kept to be returned by
+   * {@link #getClientScheduledFuture()}.
    */
+  @Deprecated
   public void setClientExecutorFuture(ScheduledFuture<?> clientScheduledFuture) {
     this.clientScheduledFuture = clientScheduledFuture;
   }
@@ -93,8 +101,12 @@ public class PresenceStatus {
   /**
    * Gets the client scheduled task future, in order to cancel it.
    *
-   * @return the client scheduled task future.
+   * @return the future given to {@link #setClientExecutorFuture(ScheduledFuture)}, or
+   * <code>null</code>.
+   * @deprecated the time the client waits before going to sleep is now handled by a timer wheel in
+   * {@link PresenceServiceImpl}, no future is scheduled for it anymore.
    */
+  @Deprecated
   public ScheduledFuture<?> getClientScheduledFuture() {
     return this.clientScheduledFuture;
   }
@@ -25,10 +25,18 @@ import org.eclipse.leshan.server.registration.Registration;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.util.Validate;
 
+/**
+ * A {@link LwM2mRequestSender} aware of the presence of the LWM2M clients using queue mode binding.
+ * <p>
+ * Without {@link RequestQueue}, requests to a sleeping client are refused with a
+ * {@link ClientSleepingException}. With a {@link RequestQueue}, asynchronous requests to a sleeping
+ * client are queued and sent when the client wakes up; synchronous requests are still refused.
+ */
 public class QueueModeLwM2mRequestSender implements LwM2mRequestSender {
 
   protected PresenceServiceImpl presenceService;
   protected LwM2mRequestSender delegatedSender;
+  protected RequestQueue requestQueue;
 
   /**
    * @param presenceService the presence service object for setting the client into {@link
@@ -46,6 +54,33 @@ public class QueueModeLwM2mRequestSender implements LwM2mRequestSender {
     this.delegatedSender = delegatedSender;
   }
 
+  /**
+   * @param presenceService the presence service object for setting the client into {@link
+   * Presence#SLEEPING} when request Timeout expires and into {@link Presence#Awake} when a response
+   * arrives.
+   * @param delegatedSender internal sender that it is used for sending the requests, using
+   * delegation.
+   * @param requestQueue the queue of the requests waiting for their client to wake up, may be
+   * <code>null</code>.
+   */
+  public QueueModeLwM2mRequestSender(PresenceServiceImpl presenceService,
+      LwM2mRequestSender delegatedSender, RequestQueue requestQueue) {
+    this(presenceService, delegatedSender);
+    this.requestQueue = requestQueue;
+    if (requestQueue != null) {
+      presenceService.addListener(new PresenceListener() {
+        @Override
+        public void onAwake(Registration registration) {
+          drain(registration);
+        }
+
+        @Override
+        public void onSleeping(Registration registration) {
+        }
+      });
+    }
+  }
+
   @Override
   public <T extends LwM2mResponse> T send(final Registration destination,
       DownlinkRequest<T> request, long timeout)
@@ -92,12 +127,69 @@ public class QueueModeLwM2mRequestSender implements LwM2mRequestSender {
 
     // If the client uses Q-Mode...
 
+    // If the client is sleeping or has requests waiting, queue the request to keep the order
+    if (requestQueue != null && (!presenceService.isClientAwake(destination)
+        || requestQueue.getQueueSize(destination.getEndpoint()) > 0)) {
+      if (!requestQueue.offer(destination, request, timeout, responseCallback, errorCallback)) {
+        throw new ClientSleepingException(
+            "The destination client is sleeping and its request queue is full, request cannot be sent.");
+      }
+      // the client may have woken up meanwhile
+      if (presenceService.isClientAwake(destination)) {
+        drain(destination);
+      }
+      return;
+    }
+
     // If the client is sleeping, warn the user and return
     if (!presenceService.isClientAwake(destination)) {
       throw new ClientSleepingException(
           "The destination client is sleeping, request cannot be sent.");
     }
 
+    sendToAwakeClient(destination, request, timeout, responseCallback, errorCallback);
+  }
+
+  /**
+   * Sends the queued requests of the given client while it is awake, keeping a limited number of
+   * them in flight.
+   */
+  protected void drain(Registration destination) {
+    QueuedRequest<?> queuedRequest;
+    while (presenceService.isClientAwake(destination)
+        && (queuedRequest = requestQueue.take(destination.getEndpoint())) != null) {
+      sendQueuedRequest(destination, queuedRequest);
+    }
+  }
+
+  private <T extends LwM2mResponse> void sendQueuedRequest(final Registration destination,
+      final QueuedRequest<T> queuedRequest) {
+    try {
+      sendToAwakeClient(destination, queuedRequest.getRequest(), queuedRequest.getTimeout(),
+          new ResponseCallback<T>() {
+            @Override
+            public void onResponse(T response) {
+              requestQueue.release(destination.getEndpoint());
+              queuedRequest.getResponseCallback().onResponse(response);
+              drain(destination);
+            }
+          }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+              requestQueue.release(destination.getEndpoint());
+              queuedRequest.getErrorCallback().onError(e);
+              drain(destination);
+            }
+          });
+    } catch (RuntimeException e) {
+      requestQueue.release(destination.getEndpoint());
+      queuedRequest.getErrorCallback().onError(e);
+    }
+  }
+
+  private <T extends LwM2mResponse> void sendToAwakeClient(final Registration destination,
+      DownlinkRequest<T> request, long timeout, final ResponseCallback<T> responseCallback,
+      final ErrorCallback errorCallback) {
     // Use delegation to send the request, with specific callbacks to perform Queue Mode operation
     delegatedSender.send(destination, request, timeout, new ResponseCallback<T>() {
       @Override
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.WriteRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A request waiting in a {@link RequestQueue} for its destination client to wake up.
+ */
+public class QueuedRequest<T extends LwM2mResponse> {
+
+  private final String endpoint;
+  private final DownlinkRequest<T> request;
+  private final long timeout;
+  private final long expirationTime;
+  private final ResponseCallback<T> responseCallback;
+  private final ErrorCallback errorCallback;
+
+  /**
+   * @param endpoint the endpoint name of the destination client
+   * @param request the request to send
+   * @param timeout the response timeout in milliseconds, once the request is sent
+   * @param expirationTime the date (in ms since epoch) after which the request is dropped if still
+   * queued, {@link Long#MAX_VALUE} for never
+   * @param responseCallback called with the response
+   * @param errorCallback called if the request fails or is dropped
+   */
+  public QueuedRequest(String endpoint, DownlinkRequest<T> request, long timeout,
+      long expirationTime, ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+    Validate.notNull(endpoint);
+    Validate.notNull(request);
+    Validate.notNull(responseCallback);
+    Validate.notNull(errorCallback);
+    this.endpoint = endpoint;
+    this.request = request;
+    this.timeout = timeout;
+    this.expirationTime = expirationTime;
+    this.responseCallback = responseCallback;
+    this.errorCallback = errorCallback;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public DownlinkRequest<T> getRequest() {
+    return request;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public long getExpirationTime() {
+    return expirationTime;
+  }
+
+  public ResponseCallback<T> getResponseCallback() {
+    return responseCallback;
+  }
+
+  public ErrorCallback getErrorCallback() {
+    return errorCallback;
+  }
+
+  public boolean isExpired(long now) {
+    return now >= expirationTime;
+  }
+
+  /**
+   * @return <code>true</code> if sending this request makes the given older one useless: both are
+   * writes on the same path and this one replaces all the content written by the older one.
+   */
+  public boolean supersedes(QueuedRequest<?> older) {
+    if (!(request instanceof WriteRequest) || !(older.request instanceof WriteRequest)) {
+      return false;
+    }
+    LwM2mPath path = request.getPath();
+    if (!path.equals(older.request.getPath())) {
+      return false;
+    }
+    return path.isResource() || ((WriteRequest) request).isReplaceRequest();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("QueuedRequest [endpoint=%s, request=%s, expirationTime=%d]", endpoint,
+        request, expirationTime);
+  }
+}
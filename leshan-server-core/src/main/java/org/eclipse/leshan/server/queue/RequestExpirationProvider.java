@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.server.registration.Registration;
+
+/**
+ * Provides how long a request may wait in the {@link RequestQueue} of a sleeping client before being
+ * dropped.
+ */
+public interface RequestExpirationProvider {
+
+  /**
+   * Returns the time-to-live of a request queued for a sleeping client.
+   *
+   * @param reg the registration of the destination client
+   * @param request the queued request
+   * @return the time-to-live in milliseconds, 0 if the request never expires
+   */
+  long getExpiration(Registration reg, DownlinkRequest<?> request);
+}
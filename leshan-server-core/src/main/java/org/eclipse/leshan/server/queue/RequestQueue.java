@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.queue.RequestQueueListener.Reason;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded outbound queue, per endpoint, of the requests sent to sleeping LWM2M clients using queue
+ * mode binding.
+ * <p>
+ * Queued requests are sent by the {@link QueueModeLwM2mRequestSender} when the client wakes up, in
+ * order, with a limited number of requests in flight per client. A request is dropped with a
+ * {@link TimeoutException} when its time-to-live (see {@link RequestExpirationProvider}) expires, or
+ * with a {@link RequestCanceledException} when a more recent write on the same path supersedes it.
+ */
+public class RequestQueue implements Destroyable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RequestQueue.class);
+
+  private static class EndpointQueue {
+    final ArrayDeque<QueuedRequest<?>> requests = new ArrayDeque<>();
+    int inFlight;
+  }
+
+  private final int maxRequestsPerEndpoint;
+  private final int maxRequests;
+  private final int maxInFlightPerEndpoint;
+  private final RequestExpirationProvider expirationProvider;
+  private final List<RequestQueueListener> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService purgeExecutor;
+
+  // guarded by this
+  private final Map<String, EndpointQueue> queues = new HashMap<>();
+  private int size;
+  private long queuedCount;
+  private long sentCount;
+  private long expiredCount;
+  private long supersededCount;
+  private long rejectedCount;
+
+  /**
+   * Create a {@link RequestQueue} accepting 32 requests per endpoint and 10000 requests in total,
+   * sending them 2 at a time, expiring after 5 minutes.
+   */
+  public RequestQueue() {
+    this(32, 10_000, 2, new StaticRequestExpirationProvider());
+  }
+
+  /**
+   * @param maxRequestsPerEndpoint the maximum number of requests queued for a same client
+   * @param maxRequests the maximum number of requests queued for all the clients
+   * @param maxInFlightPerEndpoint the maximum number of queued requests waiting for a response from
+   * a same client once it is awake
+   * @param expirationProvider gives the time-to-live of each queued request
+   */
+  public RequestQueue(int maxRequestsPerEndpoint, int maxRequests, int maxInFlightPerEndpoint,
+      RequestExpirationProvider expirationProvider) {
+    Validate.isTrue(maxRequestsPerEndpoint > 0, "maxRequestsPerEndpoint must be positive");
+    Validate.isTrue(maxRequests > 0, "maxRequests must be positive");
+    Validate.isTrue(maxInFlightPerEndpoint > 0, "maxInFlightPerEndpoint must be positive");
+    Validate.notNull(expirationProvider);
+    this.maxRequestsPerEndpoint = maxRequestsPerEndpoint;
+    this.maxRequests = maxRequests;
+    this.maxInFlightPerEndpoint = maxInFlightPerEndpoint;
+    this.expirationProvider = expirationProvider;
+    this.purgeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Leshan request queue purge");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.purgeExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          purgeExpired();
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to purge expired requests", e);
+        }
+      }
+    }, 1, 1, TimeUnit.SECONDS);
+  }
+
+  public void addListener(RequestQueueListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(RequestQueueListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Queues a request for the given client.
+   *
+   * @return <code>false</code> if the queue is full and the request was not queued.
+   */
+  public <T extends LwM2mResponse> boolean offer(Registration destination,
+      DownlinkRequest<T> request, long timeout, ResponseCallback<T> responseCallback,
+      ErrorCallback errorCallback) {
+    long ttl = expirationProvider.getExpiration(destination, request);
+    long expirationTime = ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE;
+    return offer(new QueuedRequest<>(destination.getEndpoint(), request, timeout, expirationTime,
+        responseCallback, errorCallback));
+  }
+
+  /**
+   * Queues a request, e.g. a request restored from a persistent storage.
+   *
+   * @return <code>false</code> if the queue is full and the request was not queued.
+   */
+  public boolean offer(QueuedRequest<?> queuedRequest) {
+    List<QueuedRequest<?>> superseded = new ArrayList<>();
+    List<QueuedRequest<?>> expired = new ArrayList<>();
+    boolean accepted;
+    synchronized (this) {
+      EndpointQueue queue = queues.get(queuedRequest.getEndpoint());
+      if (queue == null) {
+        queue = new EndpointQueue();
+        queues.put(queuedRequest.getEndpoint(), queue);
+      }
+      long now = System.currentTimeMillis();
+      for (Iterator<QueuedRequest<?>> it = queue.requests.iterator(); it.hasNext();) {
+        QueuedRequest<?> older = it.next();
+        if (older.isExpired(now)) {
+          it.remove();
+          expired.add(older);
+        } else if (queuedRequest.supersedes(older)) {
+          it.remove();
+          superseded.add(older);
+        }
+      }
+      size -= expired.size() + superseded.size();
+      expiredCount += expired.size();
+      supersededCount += superseded.size();
+
+      accepted = queue.requests.size() < maxRequestsPerEndpoint && size < maxRequests;
+      if (accepted) {
+        queue.requests.add(queuedRequest);
+        size++;
+        queuedCount++;
+      } else {
+        rejectedCount++;
+        removeIfUnused(queuedRequest.getEndpoint(), queue);
+      }
+    }
+
+    fail(expired, Reason.EXPIRED);
+    fail(superseded, Reason.SUPERSEDED);
+    if (accepted) {
+      for (RequestQueueListener listener : listeners) {
+        listener.requestQueued(queuedRequest);
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Takes the next request to send to the given client, if the maximum number of requests in flight
+   * for this client is not reached. {@link #release(String)} must be called once the request is
+   * completed.
+   *
+   * @return the next request or <code>null</code> if there is none or if too many requests are
+   * already in flight.
+   */
+  public QueuedRequest<?> take(String endpoint) {
+    List<QueuedRequest<?>> expired = new ArrayList<>();
+    QueuedRequest<?> next = null;
+    synchronized (this) {
+      EndpointQueue queue = queues.get(endpoint);
+      if (queue != null && queue.inFlight < maxInFlightPerEndpoint) {
+        long now = System.currentTimeMillis();
+        while (next == null && !queue.requests.isEmpty()) {
+          QueuedRequest<?> candidate = queue.requests.poll();
+          size--;
+          if (candidate.isExpired(now)) {
+            expired.add(candidate);
+          } else {
+            next = candidate;
+          }
+        }
+        expiredCount += expired.size();
+        if (next != null) {
+          queue.inFlight++;
+          sentCount++;
+        } else {
+          removeIfUnused(endpoint, queue);
+        }
+      }
+    }
+
+    fail(expired, Reason.EXPIRED);
+    if (next != null) {
+      for (RequestQueueListener listener : listeners) {
+        listener.requestRemoved(next, Reason.SENT);
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Signals that a request returned by {@link #take(String)} is completed.
+   */
+  public synchronized void release(String endpoint) {
+    EndpointQueue queue = queues.get(endpoint);
+    if (queue != null && queue.inFlight > 0) {
+      queue.inFlight--;
+      removeIfUnused(endpoint, queue);
+    }
+  }
+
+  /**
+   * Drops all the requests queued for the given client, their error callback is called with a
+   * {@link RequestCanceledException}.
+   *
+   * @return the number of dropped requests.
+   */
+  public int cancel(String endpoint) {
+    List<QueuedRequest<?>> cancelled;
+    synchronized (this) {
+      EndpointQueue queue = queues.get(endpoint);
+      if (queue == null) {
+        return 0;
+      }
+      cancelled = new ArrayList<>(queue.requests);
+      queue.requests.clear();
+      size -= cancelled.size();
+      removeIfUnused(endpoint, queue);
+    }
+    fail(cancelled, Reason.CANCELLED);
+    return cancelled.size();
+  }
+
+  /**
+   * Drops the expired requests of all the clients. This is done periodically.
+   */
+  public void purgeExpired() {
+    List<QueuedRequest<?>> expired = new ArrayList<>();
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      for (Iterator<EndpointQueue> queueIt = queues.values().iterator(); queueIt.hasNext();) {
+        EndpointQueue queue = queueIt.next();
+        for (Iterator<QueuedRequest<?>> it = queue.requests.iterator(); it.hasNext();) {
+          QueuedRequest<?> request = it.next();
+          if (request.isExpired(now)) {
+            it.remove();
+            expired.add(request);
+          }
+        }
+        if (queue.requests.isEmpty() && queue.inFlight == 0) {
+          queueIt.remove();
+        }
+      }
+      size -= expired.size();
+      expiredCount += expired.size();
+    }
+    fail(expired, Reason.EXPIRED);
+  }
+
+  /**
+   * @return the number of requests queued for the given client, requests in flight excluded.
+   */
+  public synchronized int getQueueSize(String endpoint) {
+    EndpointQueue queue = queues.get(endpoint);
+    return queue == null ? 0 : queue.requests.size();
+  }
+
+  /**
+   * @return the number of requests queued for all the clients, requests in flight excluded.
+   */
+  public synchronized int getQueueSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of clients having queued requests.
+   */
+  public synchronized int getEndpointCount() {
+    return queues.size();
+  }
+
+  /**
+   * @return the queue depth of each client having queued requests.
+   */
+  public synchronized Map<String, Integer> getQueueSizes() {
+    Map<String, Integer> sizes = new HashMap<>();
+    for (Map.Entry<String, EndpointQueue> entry : queues.entrySet()) {
+      if (!entry.getValue().requests.isEmpty()) {
+        sizes.put(entry.getKey(), entry.getValue().requests.size());
+      }
+    }
+    return Collections.unmodifiableMap(sizes);
+  }
+
+  public synchronized long getQueuedCount() {
+    return queuedCount;
+  }
+
+  public synchronized long getSentCount() {
+    return sentCount;
+  }
+
+  public synchronized long getExpiredCount() {
+    return expiredCount;
+  }
+
+  public synchronized long getSupersededCount() {
+    return supersededCount;
+  }
+
+  /**
+   * @return the number of requests refused because the queue was full.
+   */
+  public synchronized long getRejectedCount() {
+    return rejectedCount;
+  }
+
+  @Override
+  public void destroy() {
+    purgeExecutor.shutdownNow();
+  }
+
+  // must be called with the lock
+  private void removeIfUnused(String endpoint, EndpointQueue queue) {
+    if (queue.requests.isEmpty() && queue.inFlight == 0) {
+      queues.remove(endpoint);
+    }
+  }
+
+  private void fail(List<QueuedRequest<?>> requests, Reason reason) {
+    for (QueuedRequest<?> request : requests) {
+      for (RequestQueueListener listener : listeners) {
+        listener.requestRemoved(request, reason);
+      }
+      Exception error;
+      switch (reason) {
+        case EXPIRED:
+          error = new TimeoutException("Request %s expired before client %s woke up",
+              request.getRequest(), request.getEndpoint());
+          break;
+        case SUPERSEDED:
+          error = new RequestCanceledException("Request %s superseded by a more recent request",
+              request.getRequest());
+          break;
+        default:
+          error = new RequestCanceledException("Request %s cancelled as client %s is gone",
+              request.getRequest(), request.getEndpoint());
+          break;
+      }
+      try {
+        request.getErrorCallback().onError(error);
+      } catch (RuntimeException e) {
+        LOG.warn("Error callback of queued request {} failed", request, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+/**
+ * A listener aware of the requests entering and leaving a {@link RequestQueue}. It can be used to
+ * persist the content of the queue.
+ */
+public interface RequestQueueListener {
+
+  enum Reason {
+    /** The request was taken to be sent to the awake client */
+    SENT,
+    /** The request stayed in the queue longer than its time-to-live */
+    EXPIRED,
+    /** A more recent request made this one useless (e.g. a write on the same path) */
+    SUPERSEDED,
+    /** The client is no longer registered */
+    CANCELLED
+  }
+
+  /**
+   * This method is invoked when a request is added to the queue.
+   *
+   * @param request the queued request.
+   */
+  void requestQueued(QueuedRequest<?> request);
+
+  /**
+   * This method is invoked when a request leaves the queue.
+   *
+   * @param request the removed request.
+   * @param reason why the request was removed.
+   */
+  void requestRemoved(QueuedRequest<?> request, Reason reason);
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.server.registration.Registration;
+
+public class StaticRequestExpirationProvider implements RequestExpirationProvider {
+
+  private final long expiration;
+
+  /**
+   * Create a {@link RequestExpirationProvider} which always return 5 minutes.
+   */
+  public StaticRequestExpirationProvider() {
+    this.expiration = 5 * 60 * 1000l;
+  }
+
+  public StaticRequestExpirationProvider(long expiration) {
+    this.expiration = expiration;
+  }
+
+  @Override
+  public long getExpiration(Registration reg, DownlinkRequest<?> request) {
+    return expiration;
+  }
+}
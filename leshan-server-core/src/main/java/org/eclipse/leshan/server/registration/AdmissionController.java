@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Decides whether a registration request (register, update or deregister) is handled or rejected,
+ * to protect the server and its stores during registration storms (e.g. after a mass reboot).
+ * <p>
+ * A request is rejected if too many requests are already being handled, or if the rate of requests
+ * of its source subnet or of all clients is exceeded (token buckets). A rejected client is given a
+ * retry delay, with a random part to spread the retries.
+ * <p>
+ * See {@link AdmissionOptions} for the limits.
+ */
+public class AdmissionController {
+
+  private final AdmissionOptions options;
+  private final TokenBucket globalBucket; // null if there is no global rate limit
+  private final Map<InetAddress, TokenBucket> subnetBuckets; // null if there is no subnet limit
+  private final Semaphore concurrentRequests; // null if there is no concurrency limit
+
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong rateLimited = new AtomicLong();
+  private final AtomicLong concurrencyLimited = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public AdmissionController(AdmissionOptions options) {
+    this(options, System.nanoTime());
+  }
+
+  AdmissionController(final AdmissionOptions options, long nowNanos) {
+    Validate.notNull(options);
+    this.options = options;
+    this.globalBucket = options.getMaxRequestsPerSecond() > 0
+        ? new TokenBucket(options.getMaxRequestsPerSecond(), options.getBurst(), nowNanos)
+        : null;
+    this.subnetBuckets = options.getMaxRequestsPerSecondPerSubnet() > 0
+        ? new LinkedHashMap<InetAddress, TokenBucket>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<InetAddress, TokenBucket> eldest) {
+            return size() > options.getMaxSubnets();
+          }
+        }
+        : null;
+    this.concurrentRequests = options.getMaxConcurrentRequests() > 0
+        ? new Semaphore(options.getMaxConcurrentRequests())
+        : null;
+  }
+
+  /**
+   * Decides whether a request is handled.
+   *
+   * @param source the address of the client which sent the request
+   * @return 0 if the request is admitted, {@link #release()} must then be called once it is
+   * handled. Otherwise, the delay in seconds after which the client should retry.
+   */
+  public long admit(InetAddress source) {
+    return admit(source, System.nanoTime());
+  }
+
+  long admit(InetAddress source, long nowNanos) {
+    if (concurrentRequests != null && !concurrentRequests.tryAcquire()) {
+      concurrencyLimited.incrementAndGet();
+      return retryDelay(0);
+    }
+
+    long wait = 0;
+    TokenBucket subnetBucket = null;
+    if (subnetBuckets != null) {
+      subnetBucket = getSubnetBucket(source, nowNanos);
+      wait = subnetBucket.tryTake(nowNanos);
+    }
+    if (wait == 0 && globalBucket != null) {
+      wait = globalBucket.tryTake(nowNanos);
+      if (wait > 0 && subnetBucket != null) {
+        // the request is rejected, the subnet must not be charged for it
+        subnetBucket.refund();
+      }
+    }
+    if (wait > 0) {
+      if (concurrentRequests != null) {
+        concurrentRequests.release();
+      }
+      rateLimited.incrementAndGet();
+      return retryDelay(wait);
+    }
+
+    admitted.incrementAndGet();
+    inFlight.incrementAndGet();
+    return 0;
+  }
+
+  /**
+   * @return the delay in seconds after which a client should retry a request which could not be
+   * handled because the server is overloaded.
+   */
+  public long getRetryDelay() {
+    return retryDelay(0);
+  }
+
+  /**
+   * Must be called once an admitted request is handled.
+   */
+  public void release() {
+    inFlight.decrementAndGet();
+    if (concurrentRequests != null) {
+      concurrentRequests.release();
+    }
+  }
+
+  /**
+   * @return the number of admitted requests.
+   */
+  public long getAdmittedCount() {
+    return admitted.get();
+  }
+
+  /**
+   * @return the number of requests rejected because a request rate was exceeded.
+   */
+  public long getRateLimitedCount() {
+    return rateLimited.get();
+  }
+
+  /**
+   * @return the number of requests rejected because too many requests were handled at the same
+   * time.
+   */
+  public long getConcurrencyLimitedCount() {
+    return concurrencyLimited.get();
+  }
+
+  /**
+   * @return the number of admitted requests not handled yet (waiting or being handled).
+   */
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  private TokenBucket getSubnetBucket(InetAddress source, long nowNanos) {
+    InetAddress subnet = toSubnet(source);
+    synchronized (subnetBuckets) {
+      TokenBucket bucket = subnetBuckets.get(subnet);
+      if (bucket == null) {
+        bucket = new TokenBucket(options.getMaxRequestsPerSecondPerSubnet(),
+            options.getBurstPerSubnet(), nowNanos);
+        subnetBuckets.put(subnet, bucket);
+      }
+      return bucket;
+    }
+  }
+
+  private InetAddress toSubnet(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    int prefixLength = bytes.length == 4 ? options.getIpv4PrefixLength()
+        : options.getIpv6PrefixLength();
+    for (int i = 0; i < bytes.length; i++) {
+      int bits = prefixLength - i * 8;
+      if (bits <= 0) {
+        bytes[i] = 0;
+      } else if (bits < 8) {
+        bytes[i] &= (byte) (0xFF << (8 - bits));
+      }
+    }
+    try {
+      return InetAddress.getByAddress(bytes);
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException("Invalid address length", e);
+    }
+  }
+
+  private long retryDelay(long waitNanos) {
+    long delay = Math.max(options.getMinRetryDelay(),
+        (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    if (options.getRetryJitter() > 0) {
+      delay += ThreadLocalRandom.current().nextInt(options.getRetryJitter() + 1);
+    }
+    return delay;
+  }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * The options of an {@link AdmissionController}. By default, nothing is limited.
+ */
+public class AdmissionOptions {
+
+  private double maxRequestsPerSecond = 0;
+  private int burst = 1;
+  private double maxRequestsPerSecondPerSubnet = 0;
+  private int burstPerSubnet = 1;
+  private int ipv4PrefixLength = 24;
+  private int ipv6PrefixLength = 64;
+  private int maxSubnets = 10_000;
+  private int maxConcurrentRequests = 0;
+  private int minRetryDelay = 1; // in s
+  private int retryJitter = 4; // in s
+
+  /**
+   * Sets the maximum number of requests admitted per second for all clients (0, the default, for no
+   * limit) and how many requests can be admitted at once after an idle period.
+   */
+  public AdmissionOptions setGlobalRate(double maxRequestsPerSecond, int burst) {
+    Validate.isTrue(maxRequestsPerSecond >= 0, "maxRequestsPerSecond must not be negative");
+    Validate.isTrue(burst > 0, "burst must be positive");
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.burst = burst;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of requests admitted per second for the clients of a same subnet (0, the
+   * default, for no limit) and how many requests can be admitted at once after an idle period.
+   */
+  public AdmissionOptions setSubnetRate(double maxRequestsPerSecond, int burst) {
+    Validate.isTrue(maxRequestsPerSecond >= 0, "maxRequestsPerSecond must not be negative");
+    Validate.isTrue(burst > 0, "burst must be positive");
+    this.maxRequestsPerSecondPerSubnet = maxRequestsPerSecond;
+    this.burstPerSubnet = burst;
+    return this;
+  }
+
+  /**
+   * Sets the prefix length of the subnets for IPv4 (24 by default) and IPv6 (64 by default)
+   * addresses, and the maximum number of subnets tracked at once (10000 by default), the least
+   * recently seen ones are forgotten first.
+   */
+  public AdmissionOptions setSubnets(int ipv4PrefixLength, int ipv6PrefixLength, int maxSubnets) {
+    Validate.isTrue(ipv4PrefixLength >= 0 && ipv4PrefixLength <= 32,
+        "ipv4PrefixLength must be between 0 and 32");
+    Validate.isTrue(ipv6PrefixLength >= 0 && ipv6PrefixLength <= 128,
+        "ipv6PrefixLength must be between 0 and 128");
+    Validate.isTrue(maxSubnets > 0, "maxSubnets must be positive");
+    this.ipv4PrefixLength = ipv4PrefixLength;
+    this.ipv6PrefixLength = ipv6PrefixLength;
+    this.maxSubnets = maxSubnets;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of requests handled at the same time (0, the default, for no limit).
+   */
+  public AdmissionOptions setMaxConcurrentRequests(int maxConcurrentRequests) {
+    Validate.isTrue(maxConcurrentRequests >= 0, "maxConcurrentRequests must not be negative");
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  /**
+   * Sets the minimum delay in seconds after which a rejected client is told to retry (1s by
+   * default), and the maximum random delay added to it (4s by default) so that rejected clients do
+   * not all retry at the same time.
+   */
+  public AdmissionOptions setRetryDelay(int minRetryDelay, int retryJitter) {
+    Validate.isTrue(minRetryDelay > 0, "minRetryDelay must be positive");
+    Validate.isTrue(retryJitter >= 0, "retryJitter must not be negative");
+    this.minRetryDelay = minRetryDelay;
+    this.retryJitter = retryJitter;
+    return this;
+  }
+
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public double getMaxRequestsPerSecondPerSubnet() {
+    return maxRequestsPerSecondPerSubnet;
+  }
+
+  public int getBurstPerSubnet() {
+    return burstPerSubnet;
+  }
+
+  public int getIpv4PrefixLength() {
+    return ipv4PrefixLength;
+  }
+
+  public int getIpv6PrefixLength() {
+    return ipv6PrefixLength;
+  }
+
+  public int getMaxSubnets() {
+    return maxSubnets;
+  }
+
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public int getMinRetryDelay() {
+    return minRetryDelay;
+  }
+
+  public int getRetryJitter() {
+    return retryJitter;
+  }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index of registrations sorted by expiration time.
+ * <p>
+ * A {@link RegistrationStore} keeps it up to date each time a registration is added, updated or
+ * removed, so its cleaning task only needs to look at the registrations which are actually due to
+ * expire instead of scanning all of them.
+ * <p>
+ * Modifications of a given registration must be serialized by the store (e.g. done under the lock
+ * protecting this registration). Modifications of different registrations can be done concurrently.
+ */
+public class RegistrationExpirationQueue {
+
+  private final ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<>();
+  private final ConcurrentMap<String /* reg-id */, Entry> entriesByRegId = new ConcurrentHashMap<>();
+
+  private final long gracePeriod; // in seconds
+
+  // metrics
+  private volatile int lastPollCount;
+  private volatile long lastPollMaxLag;
+  private final AtomicLong totalPolled = new AtomicLong();
+
+  public RegistrationExpirationQueue() {
+    this(0);
+  }
+
+  /**
+   * @param gracePeriodInSec extra time in seconds added to the registration lifetime.
+   */
+  public RegistrationExpirationQueue(long gracePeriodInSec) {
+    this.gracePeriod = gracePeriodInSec;
+  }
+
+  /**
+   * Add the registration to the queue or update its expiration time if it is already queued.
+   */
+  public void schedule(Registration registration) {
+    Entry entry = new Entry(registration.getExpirationTimeStamp(gracePeriod),
+        registration.getId());
+    Entry previous = entriesByRegId.put(registration.getId(), entry);
+    if (previous != null) {
+      queue.remove(previous);
+    }
+    queue.add(entry);
+  }
+
+  /**
+   * Remove the registration with the given id from the queue.
+   */
+  public void remove(String registrationId) {
+    Entry entry = entriesByRegId.remove(registrationId);
+    if (entry != null) {
+      queue.remove(entry);
+    }
+  }
+
+  /**
+   * Remove from the queue all the registrations which expired at the given time.
+   *
+   * @param now the current time in milliseconds.
+   * @return the ids of the expired registrations, from the oldest expiration to the most recent
+   * one.
+   */
+  public List<String> pollExpired(long now) {
+    List<String> expired = new ArrayList<>();
+    long maxLag = 0;
+
+    Iterator<Entry> it = queue.iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.expirationTime > now) {
+        break;
+      }
+      if (queue.remove(entry)) {
+        entriesByRegId.remove(entry.registrationId, entry);
+        expired.add(entry.registrationId);
+        maxLag = Math.max(maxLag, now - entry.expirationTime);
+      }
+    }
+
+    lastPollCount = expired.size();
+    lastPollMaxLag = maxLag;
+    totalPolled.addAndGet(expired.size());
+    return expired;
+  }
+
+  /**
+   * @return the number of registrations in the queue.
+   */
+  public int size() {
+    return entriesByRegId.size();
+  }
+
+  /**
+   * @return the number of expired registrations returned by the last call to
+   * {@link #pollExpired(long)}.
+   */
+  public int getLastPollCount() {
+    return lastPollCount;
+  }
+
+  /**
+   * @return the maximum delay in milliseconds between the expiration time of a registration and the
+   * time it was polled during the last call to {@link #pollExpired(long)}.
+   */
+  public long getLastPollMaxLag() {
+    return lastPollMaxLag;
+  }
+
+  /**
+   * @return the total number of expired registrations returned by {@link #pollExpired(long)}.
+   */
+  public long getTotalPolled() {
+    return totalPolled.get();
+  }
+
+  private static class Entry implements Comparable<Entry> {
+
+    private final long expirationTime;
+    private final String registrationId;
+
+    public Entry(long expirationTime, String registrationId) {
+      this.expirationTime = expirationTime;
+      this.registrationId = registrationId;
+    }
+
+    @Override
+    public int compareTo(Entry o) {
+      if (expirationTime != o.expirationTime) {
+        return expirationTime < o.expirationTime ? -1 : 1;
+      }
+      return registrationId.compareTo(o.registrationId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) obj;
+      return expirationTime == other.expirationTime
+          && registrationId.equals(other.registrationId);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (int) (expirationTime ^ (expirationTime >>> 32)) + registrationId.hashCode();
+    }
+  }
+}
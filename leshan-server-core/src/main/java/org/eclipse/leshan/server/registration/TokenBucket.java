@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter: tokens are added at a constant rate up to a capacity, each admitted
+ * request takes one.
+ */
+class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double capacity;
+
+  private double tokens;
+  private long lastRefill; // in ns
+
+  TokenBucket(double tokensPerSecond, int capacity, long nowNanos) {
+    this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = capacity;
+    this.tokens = capacity;
+    this.lastRefill = nowNanos;
+  }
+
+  /**
+   * Takes a token if there is one.
+   *
+   * @return 0 if a token was taken or the time in nanoseconds until the next token is available.
+   */
+  synchronized long tryTake(long nowNanos) {
+    long elapsed = nowNanos - lastRefill;
+    if (elapsed > 0) {
+      tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+      lastRefill = nowNanos;
+    }
+    if (tokens >= 1) {
+      tokens -= 1;
+      return 0;
+    }
+    return (long) Math.ceil((1 - tokens) / tokensPerNano);
+  }
+
+  /**
+   * Gives back a token taken by {@link #tryTake(long)} for a request which was finally rejected.
+   */
+  synchronized void refund() {
+    tokens = Math.min(capacity, tokens + 1);
+  }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import org.eclipse.leshan.core.request.exception.SendFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * The options of a batch of requests sent with a {@link BatchRequestSender}.
+ */
+public class BatchOptions {
+
+  private int maxInFlight = 100;
+  private int maxInFlightPerEndpoint = 1;
+  private double maxRequestsPerSecond = 0;
+  private int maxRetries = 0;
+  private long retryDelay = 1_000; // in ms
+  private long timeout = 2 * 60 * 1000l; // in ms
+
+  /**
+   * Sets the maximum number of requests waiting for a response in the whole batch (100 by default).
+   */
+  public BatchOptions setMaxInFlight(int maxInFlight) {
+    Validate.isTrue(maxInFlight > 0, "maxInFlight must be positive");
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of requests waiting for a response for a same endpoint (1 by default).
+   * This only matters when a destination is given several times.
+   */
+  public BatchOptions setMaxInFlightPerEndpoint(int maxInFlightPerEndpoint) {
+    Validate.isTrue(maxInFlightPerEndpoint > 0, "maxInFlightPerEndpoint must be positive");
+    this.maxInFlightPerEndpoint = maxInFlightPerEndpoint;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of requests sent per second, retries included (0, the default, for no
+   * limit).
+   */
+  public BatchOptions setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+    Validate.isTrue(maxRequestsPerSecond >= 0, "maxRequestsPerSecond must not be negative");
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    return this;
+  }
+
+  /**
+   * Sets how many times a request is sent again after a {@link TimeoutException} or a
+   * {@link SendFailedException} (0 by default) and the delay before each retry in milliseconds (1s
+   * by default).
+   */
+  public BatchOptions setRetryPolicy(int maxRetries, long retryDelay) {
+    Validate.isTrue(maxRetries >= 0, "maxRetries must not be negative");
+    Validate.isTrue(retryDelay >= 0, "retryDelay must not be negative");
+    this.maxRetries = maxRetries;
+    this.retryDelay = retryDelay;
+    return this;
+  }
+
+  /**
+   * Sets the timeout of each request in milliseconds (2 minutes by default).
+   */
+  public BatchOptions setTimeout(long timeout) {
+    Validate.isTrue(timeout > 0, "timeout must be positive");
+    this.timeout = timeout;
+    return this;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public int getMaxInFlightPerEndpoint() {
+    return maxInFlightPerEndpoint;
+  }
+
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  public long getRetryDelay() {
+    return retryDelay;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.exception.ClientSleepingException;
+
+/**
+ * The progress of a batch of requests sent with a {@link BatchRequestSender}.
+ */
+public abstract class BatchProgress {
+
+  final AtomicLong sent = new AtomicLong();
+  final AtomicLong responses = new AtomicLong();
+  final AtomicLong errors = new AtomicLong();
+  final AtomicLong sleeping = new AtomicLong();
+  final AtomicLong retries = new AtomicLong();
+  final AtomicInteger inFlight = new AtomicInteger();
+  final LatencyHistogram latencies = new LatencyHistogram();
+  final CountDownLatch completion = new CountDownLatch(1);
+
+  /**
+   * @return the number of requests sent, retries included.
+   */
+  public long getSentCount() {
+    return sent.get();
+  }
+
+  /**
+   * @return the number of destinations which sent a response, successful or not.
+   */
+  public long getResponseCount() {
+    return responses.get();
+  }
+
+  /**
+   * @return the number of destinations for which the request failed, sleeping destinations
+   * included.
+   */
+  public long getErrorCount() {
+    return errors.get();
+  }
+
+  /**
+   * @return the number of destinations not reached because they were sleeping (see
+   * {@link ClientSleepingException}).
+   */
+  public long getSleepingCount() {
+    return sleeping.get();
+  }
+
+  public long getRetryCount() {
+    return retries.get();
+  }
+
+  /**
+   * @return the number of requests waiting for a response.
+   */
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the latencies of the responses, from the sending of the last attempt.
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * @return <code>true</code> if all the destinations were handled or if the batch was cancelled and
+   * there is no more request in flight.
+   */
+  public boolean isDone() {
+    return completion.getCount() == 0;
+  }
+
+  /**
+   * Waits for the end of the batch.
+   *
+   * @return <code>false</code> if the timeout expired before the end of the batch.
+   */
+  public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+    return completion.await(timeout, unit);
+  }
+
+  /**
+   * Stops sending new requests, the requests in flight are not cancelled.
+   */
+  public abstract void cancel();
+
+  @Override
+  public String toString() {
+    return String.format(
+        "BatchProgress [sent=%d, responses=%d, errors=%d, sleeping=%d, retries=%d, inFlight=%d, done=%s, latencies=%s]",
+        sent.get(), responses.get(), errors.get(), sleeping.get(), retries.get(), inFlight.get(),
+        isDone(), latencies);
+  }
+}
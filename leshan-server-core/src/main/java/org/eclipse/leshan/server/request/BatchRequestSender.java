@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.ClientSleepingException;
+import org.eclipse.leshan.core.request.exception.SendFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.Destroyable;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a request to many registrations (e.g. a Write or an Execute to a whole fleet of devices).
+ * <p>
+ * Requests are created from a {@link RequestFactory} while the destinations are iterated, so the
+ * destinations are never all loaded in memory. The number of requests in flight (for the whole batch
+ * and per endpoint), the request rate and the retries are controlled by {@link BatchOptions}.
+ * Results are streamed to the callbacks as they come.
+ * <p>
+ * Requests are sent with the given {@link LwM2mRequestSender}: when it is the sender of a server
+ * supporting queue mode, sleeping destinations fail with a {@link ClientSleepingException} and are
+ * not retried.
+ */
+public class BatchRequestSender implements Destroyable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchRequestSender.class);
+
+  /**
+   * Creates the request sent to each destination.
+   */
+  public interface RequestFactory<T extends LwM2mResponse> {
+    /**
+     * @return the request to send or <code>null</code> to skip this destination.
+     */
+    DownlinkRequest<T> createRequest(Registration destination);
+  }
+
+  /**
+   * Called when a destination sent a response (successful or error response).
+   */
+  public interface BatchResponseCallback<T extends LwM2mResponse> {
+    void onResponse(Registration destination, T response);
+  }
+
+  /**
+   * Called when the request to a destination failed, after the last retry.
+   */
+  public interface BatchErrorCallback {
+    void onError(Registration destination, Exception error);
+  }
+
+  private final LwM2mRequestSender sender;
+  private final ScheduledExecutorService scheduler;
+
+  public BatchRequestSender(LwM2mRequestSender sender) {
+    Validate.notNull(sender);
+    this.sender = sender;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Leshan batch request scheduler");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Sends a request to each destination.
+   *
+   * @param destinations the destinations, iterated while the batch progresses
+   * @param requestFactory creates the request of each destination
+   * @param options the options of this batch
+   * @param responseCallback called for each response
+   * @param errorCallback called for each destination which could not be reached
+   * @return the progress of the batch
+   */
+  public <T extends LwM2mResponse> BatchProgress send(Iterator<Registration> destinations,
+      RequestFactory<T> requestFactory, BatchOptions options,
+      BatchResponseCallback<T> responseCallback, BatchErrorCallback errorCallback) {
+    Validate.notNull(destinations);
+    Validate.notNull(requestFactory);
+    Validate.notNull(options);
+    Validate.notNull(responseCallback);
+    Validate.notNull(errorCallback);
+
+    Batch<T> batch = new Batch<>(destinations, requestFactory, options, responseCallback,
+        errorCallback);
+    batch.pump();
+    return batch;
+  }
+
+  @Override
+  public void destroy() {
+    scheduler.shutdownNow();
+  }
+
+  private static class Task<T extends LwM2mResponse> {
+    final Registration destination;
+    final DownlinkRequest<T> request;
+    final RuntimeException creationError;
+    int attempt;
+    long sendTime;
+
+    Task(Registration destination, DownlinkRequest<T> request, RuntimeException creationError) {
+      this.destination = destination;
+      this.request = request;
+      this.creationError = creationError;
+    }
+  }
+
+  private class Batch<T extends LwM2mResponse> extends BatchProgress {
+
+    private final Iterator<Registration> destinations;
+    private final RequestFactory<T> requestFactory;
+    private final BatchOptions options;
+    private final BatchResponseCallback<T> responseCallback;
+    private final BatchErrorCallback errorCallback;
+    private final long sendInterval; // in ns, 0 if no rate limit
+
+    // guarded by this
+    private final ArrayDeque<Task<T>> ready = new ArrayDeque<>();
+    private final Map<String, Integer> inFlightByEndpoint = new HashMap<>();
+    private final Map<String, ArrayDeque<Task<T>>> waitingByEndpoint = new HashMap<>();
+    private int pendingRetries;
+    private boolean exhausted;
+    private boolean pumping;
+    private boolean pumpAgain;
+    private boolean pumpScheduled;
+    private long nextSendTime = System.nanoTime();
+
+    private volatile boolean cancelled;
+
+    Batch(Iterator<Registration> destinations, RequestFactory<T> requestFactory,
+        BatchOptions options, BatchResponseCallback<T> responseCallback,
+        BatchErrorCallback errorCallback) {
+      this.destinations = destinations;
+      this.requestFactory = requestFactory;
+      this.options = options;
+      this.responseCallback = responseCallback;
+      this.errorCallback = errorCallback;
+      this.sendInterval = options.getMaxRequestsPerSecond() > 0
+          ? (long) (TimeUnit.SECONDS.toNanos(1) / options.getMaxRequestsPerSecond()) : 0;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      pump();
+    }
+
+    /**
+     * Sends as many requests as allowed. Requests are sent outside of the lock and a response can
+     * come synchronously, so a call during pumping only asks the pumping thread to loop again.
+     */
+    void pump() {
+      synchronized (this) {
+        if (pumping) {
+          pumpAgain = true;
+          return;
+        }
+        pumping = true;
+      }
+      while (true) {
+        List<Task<T>> tasks;
+        synchronized (this) {
+          tasks = takeTasksToSend();
+          if (tasks.isEmpty() && !pumpAgain) {
+            pumping = false;
+            checkCompletion();
+            return;
+          }
+          pumpAgain = false;
+        }
+        for (Task<T> task : tasks) {
+          send(task);
+        }
+      }
+    }
+
+    // must be called with the lock
+    private List<Task<T>> takeTasksToSend() {
+      List<Task<T>> tasks = new ArrayList<>();
+      while (!cancelled && inFlight.get() < options.getMaxInFlight()) {
+        // check the rate limit
+        long now = System.nanoTime();
+        if (sendInterval > 0 && now - nextSendTime < 0) {
+          schedulePump(nextSendTime - now);
+          break;
+        }
+
+        Task<T> task = nextTask();
+        if (task == null) {
+          break;
+        }
+        if (sendInterval > 0) {
+          nextSendTime = Math.max(nextSendTime - now, 0) + now + sendInterval;
+        }
+        inFlight.incrementAndGet();
+        tasks.add(task);
+      }
+      return tasks;
+    }
+
+    // returns the next task which can be sent to its endpoint, must be called with the lock
+    private Task<T> nextTask() {
+      while (true) {
+        Task<T> task = ready.poll();
+        if (task == null) {
+          if (exhausted || !destinations.hasNext()) {
+            exhausted = true;
+            return null;
+          }
+          Registration destination = destinations.next();
+          try {
+            DownlinkRequest<T> request = requestFactory.createRequest(destination);
+            if (request == null) {
+              continue;
+            }
+            task = new Task<>(destination, request, null);
+          } catch (RuntimeException e) {
+            task = new Task<>(destination, null, e);
+          }
+        }
+
+        String endpoint = task.destination.getEndpoint();
+        Integer count = inFlightByEndpoint.get(endpoint);
+        if (count != null && count >= options.getMaxInFlightPerEndpoint()) {
+          ArrayDeque<Task<T>> waiting = waitingByEndpoint.get(endpoint);
+          if (waiting == null) {
+            waiting = new ArrayDeque<>();
+            waitingByEndpoint.put(endpoint, waiting);
+          }
+          waiting.add(task);
+          continue;
+        }
+        inFlightByEndpoint.put(endpoint, count == null ? 1 : count + 1);
+        return task;
+      }
+    }
+
+    // must be called with the lock
+    private void schedulePump(long delayInNanos) {
+      if (pumpScheduled) {
+        return;
+      }
+      pumpScheduled = true;
+      try {
+        scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            synchronized (Batch.this) {
+              pumpScheduled = false;
+            }
+            pump();
+          }
+        }, delayInNanos, TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException e) {
+        // the sender is destroyed
+        pumpScheduled = false;
+        cancelled = true;
+      }
+    }
+
+    // must be called with the lock
+    private void checkCompletion() {
+      if (completion.getCount() == 0 || inFlight.get() > 0 || pendingRetries > 0) {
+        return;
+      }
+      if (cancelled
+          || (exhausted && ready.isEmpty() && waitingByEndpoint.isEmpty())) {
+        completion.countDown();
+      }
+    }
+
+    private void send(final Task<T> task) {
+      if (task.creationError != null) {
+        complete(task, null, task.creationError);
+        return;
+      }
+      sent.incrementAndGet();
+      task.sendTime = System.nanoTime();
+      try {
+        sender.send(task.destination, task.request, options.getTimeout(), new ResponseCallback<T>() {
+          @Override
+          public void onResponse(T response) {
+            complete(task, response, null);
+          }
+        }, new ErrorCallback() {
+          @Override
+          public void onError(Exception e) {
+            complete(task, null, e);
+          }
+        });
+      } catch (RuntimeException e) {
+        complete(task, null, e);
+      }
+    }
+
+    private void complete(final Task<T> task, T response, Exception error) {
+      boolean retry = error != null && !cancelled && task.attempt < options.getMaxRetries()
+          && (error instanceof TimeoutException || error instanceof SendFailedException);
+
+      synchronized (this) {
+        inFlight.decrementAndGet();
+        releaseEndpoint(task.destination.getEndpoint());
+        if (retry) {
+          pendingRetries++;
+        }
+      }
+
+      if (retry) {
+        retries.incrementAndGet();
+        task.attempt++;
+        try {
+          scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+              synchronized (Batch.this) {
+                pendingRetries--;
+                ready.add(task);
+              }
+              pump();
+            }
+          }, options.getRetryDelay(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+          // the sender is destroyed
+          synchronized (this) {
+            pendingRetries--;
+          }
+          retry = false;
+        }
+      }
+
+      if (!retry) {
+        if (error == null) {
+          responses.incrementAndGet();
+          latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.sendTime));
+          try {
+            responseCallback.onResponse(task.destination, response);
+          } catch (RuntimeException e) {
+            LOG.error("Unexpected error in batch response callback", e);
+          }
+        } else {
+          errors.incrementAndGet();
+          if (error instanceof ClientSleepingException) {
+            sleeping.incrementAndGet();
+          }
+          try {
+            errorCallback.onError(task.destination, error);
+          } catch (RuntimeException e) {
+            LOG.error("Unexpected error in batch error callback", e);
+          }
+        }
+      }
+
+      pump();
+    }
+
+    // must be called with the lock
+    private void releaseEndpoint(String endpoint) {
+      Integer count = inFlightByEndpoint.get(endpoint);
+      if (count == null || count <= 1) {
+        inFlightByEndpoint.remove(endpoint);
+      } else {
+        inFlightByEndpoint.put(endpoint, count - 1);
+      }
+
+      ArrayDeque<Task<T>> waiting = waitingByEndpoint.get(endpoint);
+      if (waiting != null) {
+        ready.add(waiting.poll());
+        if (waiting.isEmpty()) {
+          waitingByEndpoint.remove(endpoint);
+        }
+      }
+    }
+  }
+}
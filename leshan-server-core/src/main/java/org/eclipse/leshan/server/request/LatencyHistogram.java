@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies in milliseconds, with fixed buckets.
+ */
+public class LatencyHistogram {
+
+  // upper bounds (inclusive) of the buckets in ms, the last bucket has no upper bound
+  private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000,
+      10_000, 30_000, 60_000, 120_000 };
+
+  private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+  public void record(long latencyInMs) {
+    int index = Arrays.binarySearch(BOUNDS, latencyInMs);
+    counts.incrementAndGet(index >= 0 ? index : -index - 1);
+  }
+
+  /**
+   * @return the upper bounds of the buckets in milliseconds. There is one more bucket for the
+   * latencies above the last bound.
+   */
+  public long[] getBounds() {
+    return BOUNDS.clone();
+  }
+
+  /**
+   * @return the number of latencies recorded in each bucket.
+   */
+  public long[] getCounts() {
+    long[] result = new long[counts.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = counts.get(i);
+    }
+    return result;
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the upper bound of the bucket containing the given percentile, {@link Long#MAX_VALUE}
+   * if it is in the last bucket or 0 if there is no latency recorded.
+   */
+  public long getPercentile(double percentile) {
+    long[] snapshot = getCounts();
+    long total = 0;
+    for (long count : snapshot) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return BOUNDS[i];
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LatencyHistogram [count=%d, p50=%dms, p99=%dms]", getCount(),
+        getPercentile(50), getPercentile(99));
+  }
+}
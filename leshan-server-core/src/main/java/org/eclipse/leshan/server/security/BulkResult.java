@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.security;
+
+/**
+ * The result of one entry of {@link EditableSecurityStore#addAll(java.util.Collection)} or
+ * {@link EditableSecurityStore#removeAll(java.util.Collection)}.
+ */
+public class BulkResult {
+
+  private final String endpoint;
+  private final SecurityInfo previous;
+  private final NonUniqueSecurityInfoException error;
+
+  private BulkResult(String endpoint, SecurityInfo previous,
+      NonUniqueSecurityInfoException error) {
+    this.endpoint = endpoint;
+    this.previous = previous;
+    this.error = error;
+  }
+
+  public static BulkResult success(String endpoint, SecurityInfo previous) {
+    return new BulkResult(endpoint, previous, null);
+  }
+
+  public static BulkResult failure(String endpoint, NonUniqueSecurityInfoException error) {
+    return new BulkResult(endpoint, null, error);
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * @return the {@link SecurityInfo} previously stored for the end-point (the removed one for
+   * {@link EditableSecurityStore#removeAll(java.util.Collection)}) or <code>null</code> if there
+   * was none.
+   */
+  public SecurityInfo getPrevious() {
+    return previous;
+  }
+
+  /**
+   * @return the reason why the entry was not added or <code>null</code> if it succeeded.
+   */
+  public NonUniqueSecurityInfoException getError() {
+    return error;
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BulkResult [endpoint=%s, previous=%s, error=%s]", endpoint, previous,
+        error);
+  }
+}
@@ -16,6 +16,7 @@
 package org.eclipse.leshan.server.security;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface EditableSecurityStore extends SecurityStore {
 
@@ -44,4 +45,23 @@ public interface EditableSecurityStore extends SecurityStore {
    * @return the removed {@link SecurityInfo} or <code>null</code> if no info for the end-point.
    */
   SecurityInfo remove(String endpoint);
+
+  /**
+   * Registers the security information of several end-points, as if {@link #add(SecurityInfo)}
+   * was called for each of them in order, but more efficiently. An entry which can not be added
+   * does not prevent the others from being added.
+   *
+   * @param infos the new security information
+   * @return the result of each entry, in the order of <code>infos</code>.
+   */
+  List<BulkResult> addAll(Collection<SecurityInfo> infos);
+
+  /**
+   * Removes the security information of several end-points, as if {@link #remove(String)} was
+   * called for each of them in order, but more efficiently.
+   *
+   * @param endpoints the client end-points
+   * @return the result of each entry, in the order of <code>endpoints</code>.
+   */
+  List<BulkResult> removeAll(Collection<String> endpoints);
 }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.eclipse.leshan.server.security.NonUniqueSecurityInfoException;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.junit.Test;
+
+public class CachingSecurityStoreTest {
+
+  private final CountingSecurityStore store = new CountingSecurityStore();
+
+  @Test
+  public void security_info_is_cached() throws NonUniqueSecurityInfoException {
+    CachingSecurityStore cache = new CachingSecurityStore(store);
+    store.add(pskInfo("ep1", "id1"));
+
+    assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+    assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+    assertEquals("id1", cache.getByEndpoint("ep1").getIdentity());
+    assertEquals("id1", cache.getByEndpoint("ep1").getIdentity());
+
+    assertEquals(2, store.lookups);
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void unknown_identity_is_cached_until_added() throws NonUniqueSecurityInfoException {
+    CachingSecurityStore cache = new CachingSecurityStore(store);
+
+    assertNull(cache.getByIdentity("id1"));
+    assertNull(cache.getByIdentity("id1"));
+    assertEquals(1, store.lookups);
+
+    cache.add(pskInfo("ep1", "id1"));
+    assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+    assertEquals(2, store.lookups);
+  }
+
+  @Test
+  public void bulk_operations_invalidate_entries() {
+    CachingSecurityStore cache = new CachingSecurityStore(store);
+    assertNull(cache.getByIdentity("id1"));
+    assertNull(cache.getByEndpoint("ep2"));
+
+    cache.addAll(Arrays.asList(pskInfo("ep1", "id1"), pskInfo("ep2", "id2")));
+    assertEquals("ep1", cache.getByIdentity("id1").getEndpoint());
+    assertEquals("id2", cache.getByEndpoint("ep2").getIdentity());
+
+    cache.removeAll(Arrays.asList("ep1", "ep2"));
+    assertNull(cache.getByIdentity("id1"));
+    assertNull(cache.getByEndpoint("ep2"));
+  }
+
+  @Test
+  public void unknown_identity_is_not_cached_without_negative_ttl() {
+    CachingSecurityStore cache = new CachingSecurityStore(store, 10, 60_000, 0);
+
+    assertNull(cache.getByIdentity("id1"));
+    assertNull(cache.getByIdentity("id1"));
+    assertEquals(2, store.lookups);
+  }
+
+  @Test
+  public void previous_identity_is_invalidated() throws NonUniqueSecurityInfoException {
+    CachingSecurityStore cache = new CachingSecurityStore(store);
+    cache.add(pskInfo("ep1", "id1"));
+    assertNotNull(cache.getByIdentity("id1"));
+    assertNotNull(cache.getByEndpoint("ep1"));
+
+    cache.add(pskInfo("ep1", "id2"));
+    assertNull(cache.getByIdentity("id1"));
+    assertEquals("id2", cache.getByEndpoint("ep1").getIdentity());
+
+    cache.remove("ep1");
+    assertNull(cache.getByIdentity("id2"));
+    assertNull(cache.getByEndpoint("ep1"));
+  }
+
+  @Test
+  public void entries_expire() throws Exception {
+    CachingSecurityStore cache = new CachingSecurityStore(store, 10, 1, 1);
+    store.add(pskInfo("ep1", "id1"));
+
+    assertNotNull(cache.getByEndpoint("ep1"));
+    Thread.sleep(10);
+    assertNotNull(cache.getByEndpoint("ep1"));
+    assertEquals(2, store.lookups);
+  }
+
+  @Test
+  public void least_recently_used_entries_are_evicted() throws NonUniqueSecurityInfoException {
+    CachingSecurityStore cache = new CachingSecurityStore(store, 2, 60_000, 60_000);
+
+    cache.getByEndpoint("ep1");
+    cache.getByEndpoint("ep2");
+    cache.getByEndpoint("ep1");
+    cache.getByEndpoint("ep3");
+    assertEquals(2, cache.size());
+    assertEquals(3, store.lookups);
+
+    cache.getByEndpoint("ep1");
+    assertEquals(3, store.lookups);
+    cache.getByEndpoint("ep2");
+    assertEquals(4, store.lookups);
+  }
+
+  @Test
+  public void lookup_is_not_cached_if_invalidated_meanwhile()
+      throws NonUniqueSecurityInfoException {
+    final CachingSecurityStore cache = new CachingSecurityStore(store);
+    store.add(pskInfo("ep1", "id1"));
+    store.onLookup = new Runnable() {
+      @Override
+      public void run() {
+        cache.invalidateEndpoint("ep1");
+      }
+    };
+    assertNotNull(cache.getByEndpoint("ep1"));
+
+    store.onLookup = null;
+    assertNotNull(cache.getByEndpoint("ep1"));
+    assertEquals(2, store.lookups);
+  }
+
+  @Test
+  public void lookup_is_cached_if_another_key_is_invalidated_meanwhile()
+      throws NonUniqueSecurityInfoException {
+    final CachingSecurityStore cache = new CachingSecurityStore(store);
+    store.add(pskInfo("ep1", "id1"));
+    store.onLookup = new Runnable() {
+      @Override
+      public void run() {
+        cache.invalidateEndpoint("ep2");
+        cache.invalidateIdentity("id1");
+      }
+    };
+    assertNotNull(cache.getByEndpoint("ep1"));
+
+    store.onLookup = null;
+    assertNotNull(cache.getByEndpoint("ep1"));
+    assertEquals(1, store.lookups);
+  }
+
+  private SecurityInfo pskInfo(String endpoint, String identity) {
+    return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, new byte[] { 1, 2, 3 });
+  }
+
+  private static class CountingSecurityStore extends InMemorySecurityStore {
+    int lookups;
+    Runnable onLookup;
+
+    @Override
+    public SecurityInfo getByEndpoint(String endpoint) {
+      lookups++;
+      if (onLookup != null) {
+        onLookup.run();
+      }
+      return super.getByEndpoint(endpoint);
+    }
+
+    @Override
+    public SecurityInfo getByIdentity(String identity) {
+      lookups++;
+      return super.getByIdentity(identity);
+    }
+  }
+}
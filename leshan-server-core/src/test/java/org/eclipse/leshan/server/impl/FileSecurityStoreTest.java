@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.leshan.server.security.BulkResult;
+import org.eclipse.leshan.server.security.SecurityInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSecurityStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void security_infos_are_reloaded() throws Exception {
+    String file = new File(folder.getRoot(), "data/security.data").getPath();
+    PublicKey publicKey = KeyPairGenerator.getInstance("EC").generateKeyPair().getPublic();
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    store.add(pskInfo("ep1", "id1"));
+    store.add(SecurityInfo.newRawPublicKeyInfo("ep2", publicKey));
+    store.add(SecurityInfo.newX509CertInfo("ep3"));
+    store.add(pskInfo("ep4", "id4"));
+    store.remove("ep4");
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(3, store.getAll().size());
+    assertEquals(pskInfo("ep1", "id1"), store.getByIdentity("id1"));
+    assertEquals(publicKey, store.getByEndpoint("ep2").getRawPublicKey());
+    assertTrue(store.getByEndpoint("ep3").useX509Cert());
+    assertNull(store.getByEndpoint("ep4"));
+    assertNull(store.getByIdentity("id4"));
+    store.destroy();
+  }
+
+  @Test
+  public void journal_is_compacted() throws Exception {
+    String file = new File(folder.getRoot(), "security.data").getPath();
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    for (int i = 0; i < 1500; i++) {
+      store.add(pskInfo("ep" + i % 10, "id" + i));
+    }
+    assertTrue(store.getJournalSize() < 1000);
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(10, store.getAll().size());
+    assertEquals("ep9", store.getByIdentity("id1499").getEndpoint());
+    assertNull(store.getByIdentity("id1489"));
+    store.destroy();
+  }
+
+  @Test
+  public void security_infos_are_added_and_removed_in_bulk() throws Exception {
+    String file = new File(folder.getRoot(), "security.data").getPath();
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    List<SecurityInfo> infos = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      infos.add(pskInfo("ep" + i, "id" + i));
+    }
+    infos.add(pskInfo("ep100", "id0"));
+    List<BulkResult> results = store.addAll(infos);
+
+    assertEquals(101, results.size());
+    assertTrue(results.get(99).isSuccess());
+    assertFalse(results.get(100).isSuccess());
+    assertEquals("ep100", results.get(100).getEndpoint());
+
+    results = store.removeAll(Arrays.asList("ep1", "ep100"));
+    assertEquals(pskInfo("ep1", "id1"), results.get(0).getPrevious());
+    assertNull(results.get(1).getPrevious());
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(99, store.getAll().size());
+    assertNull(store.getByIdentity("id1"));
+    assertEquals("ep0", store.getByIdentity("id0").getEndpoint());
+    store.destroy();
+  }
+
+  @Test
+  public void truncated_record_is_ignored() throws Exception {
+    String file = new File(folder.getRoot(), "security.data").getPath();
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    store.add(pskInfo("ep1", "id1"));
+    store.add(pskInfo("ep2", "id2"));
+    store.destroy();
+
+    // simulate a crash while the last record was written
+    try (RandomAccessFile journal = new RandomAccessFile(file + ".journal", "rw")) {
+      journal.setLength(journal.length() - 3);
+    }
+
+    store = new FileSecurityStore(file);
+    assertNotNull(store.getByEndpoint("ep1"));
+    assertNull(store.getByEndpoint("ep2"));
+    store.add(pskInfo("ep3", "id3"));
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(2, store.getAll().size());
+    assertNotNull(store.getByEndpoint("ep3"));
+    store.destroy();
+  }
+
+  @Test
+  public void record_with_corrupt_length_is_ignored() throws Exception {
+    String file = new File(folder.getRoot(), "security.data").getPath();
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    store.add(pskInfo("ep1", "id1"));
+    store.destroy();
+
+    // simulate a torn record whose length header is garbage
+    try (RandomAccessFile journal = new RandomAccessFile(file + ".journal", "rw")) {
+      journal.seek(journal.length());
+      journal.writeInt(Integer.MAX_VALUE);
+      journal.writeInt(0);
+      journal.write(new byte[] { 1, 2, 3 });
+    }
+
+    store = new FileSecurityStore(file);
+    assertEquals(1, store.getAll().size());
+    assertNotNull(store.getByEndpoint("ep1"));
+    store.add(pskInfo("ep2", "id2"));
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(2, store.getAll().size());
+    assertNotNull(store.getByEndpoint("ep2"));
+    store.destroy();
+  }
+
+  @Test
+  public void java_serialized_file_is_migrated() throws Exception {
+    String file = new File(folder.getRoot(), "security.data").getPath();
+    try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+      out.writeObject(new SecurityInfo[] { pskInfo("ep1", "id1") });
+    }
+
+    FileSecurityStore store = new FileSecurityStore(file);
+    assertEquals(pskInfo("ep1", "id1"), store.getByEndpoint("ep1"));
+    store.destroy();
+
+    store = new FileSecurityStore(file);
+    assertEquals(pskInfo("ep1", "id1"), store.getByEndpoint("ep1"));
+    store.destroy();
+  }
+
+  private SecurityInfo pskInfo(String endpoint, String identity) {
+    return SecurityInfo.newPreSharedKeyInfo(endpoint, identity, new byte[] { 1, 2, 3 });
+  }
+}
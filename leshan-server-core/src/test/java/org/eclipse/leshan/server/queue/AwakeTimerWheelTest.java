@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.server.queue.AwakeTimerWheel.Timer;
+import org.junit.Test;
+
+public class AwakeTimerWheelTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final List<Timer> expired = new ArrayList<>();
+  // 10ms ticks, 8 slots: one revolution is 80ms
+  private final AwakeTimerWheel wheel = new AwakeTimerWheel(10, 8, 0,
+      new AwakeTimerWheel.ExpirationHandler() {
+        @Override
+        public void expired(List<Timer> timers) {
+          expired.addAll(timers);
+        }
+      });
+
+  @Test
+  public void timer_expires_after_its_delay() {
+    Timer timer = newTimer();
+    wheel.schedule(timer, 25, 0);
+
+    wheel.advance(20 * MS);
+    assertTrue(expired.isEmpty());
+    wheel.advance(30 * MS);
+    assertEquals(1, expired.size());
+    assertSame(timer, expired.get(0));
+    assertFalse(wheel.isScheduled(timer));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void timer_longer_than_a_revolution_expires_after_its_delay() {
+    Timer timer = newTimer();
+    wheel.schedule(timer, 170, 0);
+
+    wheel.advance(160 * MS);
+    assertTrue(expired.isEmpty());
+    wheel.advance(170 * MS);
+    assertEquals(1, expired.size());
+  }
+
+  @Test
+  public void rescheduled_timer_expires_after_its_new_delay() {
+    Timer timer = newTimer();
+    wheel.schedule(timer, 30, 0);
+    wheel.advance(20 * MS);
+    wheel.schedule(timer, 30, 20 * MS);
+
+    wheel.advance(40 * MS);
+    assertTrue(expired.isEmpty());
+    wheel.advance(50 * MS);
+    assertEquals(1, expired.size());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void cancelled_timer_never_expires() {
+    Timer timer = newTimer();
+    Timer other = newTimer();
+    wheel.schedule(timer, 30, 0);
+    wheel.schedule(other, 30, 0);
+    wheel.cancel(timer);
+
+    wheel.advance(100 * MS);
+    assertEquals(1, expired.size());
+    assertSame(other, expired.get(0));
+  }
+
+  @Test
+  public void late_advance_expires_all_elapsed_timers() {
+    Timer early = newTimer();
+    Timer late = newTimer();
+    Timer notYet = newTimer();
+    wheel.schedule(early, 10, 0);
+    wheel.schedule(late, 250, 0);
+    wheel.schedule(notYet, 350, 0);
+
+    // more than 3 revolutions at once
+    wheel.advance(300 * MS);
+    assertEquals(2, expired.size());
+    assertTrue(expired.contains(early));
+    assertTrue(expired.contains(late));
+
+    wheel.advance(350 * MS);
+    assertEquals(3, expired.size());
+  }
+
+  private Timer newTimer() {
+    return new Timer(new PresenceStatus());
+  }
+}
@@ -20,6 +20,8 @@ import static org.junit.Assert.*;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.core.request.Identity;
@@ -61,6 +63,30 @@ public class PresenceServiceTest {
     assertFalse(presenceService.isClientAwake(queueModeRegistration));
   }
 
+  @Test
+  public void client_goes_to_sleep_when_awake_time_expires() throws Exception {
+    presenceService = new PresenceServiceImpl(new StaticClientAwakeTimeProvider(100), 10, 64);
+    final CountDownLatch sleeping = new CountDownLatch(1);
+    presenceService.addListener(new PresenceListener() {
+
+      @Override
+      public void onAwake(Registration registration) {
+      }
+
+      @Override
+      public void onSleeping(Registration registration) {
+        sleeping.countDown();
+      }
+    });
+    Registration queueModeRegistration = givenASimpleClientWithQueueMode();
+    assertEquals(1, presenceService.getAwakeTimerCount());
+
+    assertTrue(sleeping.await(1, TimeUnit.SECONDS));
+    assertFalse(presenceService.isClientAwake(queueModeRegistration));
+    assertEquals(0, presenceService.getAwakeTimerCount());
+    presenceService.destroy();
+  }
+
   private Registration givenASimpleClient() throws UnknownHostException {
     InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 5683);
     Registration.Builder builder = new Registration.Builder("ID", "urn:client",
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.queue;
+
+import static org.junit.Assert.*;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.core.request.WriteRequest;
+import org.eclipse.leshan.core.request.exception.ClientSleepingException;
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.WriteResponse;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * tests the implementation of {@link RequestQueue} with the {@link QueueModeLwM2mRequestSender}
+ */
+public class RequestQueueTest {
+
+  private final PresenceServiceImpl presenceService = new PresenceServiceImpl(
+      new StaticClientAwakeTimeProvider());
+  private final FakeSender delegatedSender = new FakeSender();
+  private final List<String> responses = new ArrayList<>();
+  private final List<Exception> errors = new ArrayList<>();
+  private RequestQueue requestQueue;
+
+  @After
+  public void destroy() {
+    requestQueue.destroy();
+  }
+
+  @Test
+  public void queued_requests_are_sent_when_client_wakes_up() {
+    QueueModeLwM2mRequestSender sender = givenASender(new RequestQueue());
+    Registration reg = givenASleepingClient();
+
+    write(sender, reg, 1, "a");
+    write(sender, reg, 2, "b");
+    assertEquals(2, requestQueue.getQueueSize("urn:client"));
+    assertTrue(delegatedSender.sent.isEmpty());
+
+    presenceService.setAwake(reg);
+
+    assertEquals(Arrays.asList("/3/0/1", "/3/0/2"), delegatedSender.sent);
+    assertEquals(Arrays.asList("/3/0/1", "/3/0/2"), responses);
+    assertEquals(0, requestQueue.getQueueSize());
+    assertEquals(2, requestQueue.getSentCount());
+  }
+
+  @Test
+  public void queued_requests_are_pipelined() {
+    QueueModeLwM2mRequestSender sender = givenASender(new RequestQueue(32, 100, 2,
+        new StaticRequestExpirationProvider()));
+    delegatedSender.respond = false;
+    Registration reg = givenASleepingClient();
+    write(sender, reg, 1, "a");
+    write(sender, reg, 2, "b");
+    write(sender, reg, 3, "c");
+
+    presenceService.setAwake(reg);
+    assertEquals(2, delegatedSender.pending.size());
+    assertEquals(1, requestQueue.getQueueSize("urn:client"));
+
+    delegatedSender.respondToOldest();
+    assertEquals(Arrays.asList("/3/0/1", "/3/0/2", "/3/0/3"), delegatedSender.sent);
+    assertEquals(0, requestQueue.getQueueSize("urn:client"));
+  }
+
+  @Test
+  public void superseded_write_is_cancelled() {
+    QueueModeLwM2mRequestSender sender = givenASender(new RequestQueue());
+    Registration reg = givenASleepingClient();
+
+    write(sender, reg, 1, "old");
+    write(sender, reg, 2, "other");
+    write(sender, reg, 1, "new");
+
+    assertEquals(2, requestQueue.getQueueSize("urn:client"));
+    assertEquals(1, requestQueue.getSupersededCount());
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0) instanceof RequestCanceledException);
+
+    presenceService.setAwake(reg);
+    assertEquals(Arrays.asList("/3/0/2", "/3/0/1"), delegatedSender.sent);
+  }
+
+  @Test
+  public void expired_request_is_dropped() {
+    givenASender(new RequestQueue());
+    Registration reg = givenASleepingClient();
+    requestQueue.offer(new QueuedRequest<>("urn:client", new WriteRequest(3, 0, 1, "a"), 1000,
+        System.currentTimeMillis() - 1, new ResponseCallback<WriteResponse>() {
+          @Override
+          public void onResponse(WriteResponse response) {
+            fail("No response was expected");
+          }
+        }, new ErrorCallback() {
+          @Override
+          public void onError(Exception e) {
+            errors.add(e);
+          }
+        }));
+
+    requestQueue.purgeExpired();
+
+    assertEquals(0, requestQueue.getQueueSize());
+    assertEquals(1, requestQueue.getExpiredCount());
+    assertTrue(errors.get(0) instanceof TimeoutException);
+    presenceService.setAwake(reg);
+    assertTrue(delegatedSender.sent.isEmpty());
+  }
+
+  @Test(expected = ClientSleepingException.class)
+  public void full_queue_rejects_requests() {
+    QueueModeLwM2mRequestSender sender = givenASender(new RequestQueue(1, 100, 1,
+        new StaticRequestExpirationProvider()));
+    Registration reg = givenASleepingClient();
+
+    write(sender, reg, 1, "a");
+    write(sender, reg, 2, "b");
+  }
+
+  @Test
+  public void unregistered_client_requests_are_cancelled() {
+    QueueModeLwM2mRequestSender sender = givenASender(new RequestQueue());
+    Registration reg = givenASleepingClient();
+    write(sender, reg, 1, "a");
+
+    assertEquals(1, requestQueue.cancel("urn:client"));
+
+    assertEquals(0, requestQueue.getEndpointCount());
+    assertTrue(errors.get(0) instanceof RequestCanceledException);
+  }
+
+  private QueueModeLwM2mRequestSender givenASender(RequestQueue requestQueue) {
+    this.requestQueue = requestQueue;
+    return new QueueModeLwM2mRequestSender(presenceService, delegatedSender, requestQueue);
+  }
+
+  private Registration givenASleepingClient() {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 5683);
+    Registration reg = new Registration.Builder("ID", "urn:client",
+        Identity.unsecure(Inet4Address.getLoopbackAddress(), 12354), address)
+        .bindingMode(BindingMode.UQ).build();
+    presenceService.setAwake(reg);
+    presenceService.setSleeping(reg);
+    return reg;
+  }
+
+  private void write(QueueModeLwM2mRequestSender sender, Registration reg, int resourceId,
+      String value) {
+    final WriteRequest request = new WriteRequest(3, 0, resourceId, value);
+    sender.send(reg, request, 1000, new ResponseCallback<WriteResponse>() {
+      @Override
+      public void onResponse(WriteResponse response) {
+        responses.add(request.getPath().toString());
+      }
+    }, new ErrorCallback() {
+      @Override
+      public void onError(Exception e) {
+        errors.add(e);
+      }
+    });
+  }
+
+  private static class FakeSender implements LwM2mRequestSender {
+
+    final List<String> sent = new ArrayList<>();
+    final List<ResponseCallback<WriteResponse>> pending = new ArrayList<>();
+    boolean respond = true;
+
+    @Override
+    public <T extends LwM2mResponse> T send(Registration destination, DownlinkRequest<T> request,
+        long timeout) throws InterruptedException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends LwM2mResponse> void send(Registration destination,
+        DownlinkRequest<T> request, long timeout, ResponseCallback<T> responseCallback,
+        ErrorCallback errorCallback) {
+      sent.add(request.getPath().toString());
+      if (respond) {
+        ((ResponseCallback<WriteResponse>) responseCallback).onResponse(WriteResponse.success());
+      } else {
+        pending.add((ResponseCallback<WriteResponse>) responseCallback);
+      }
+    }
+
+    void respondToOldest() {
+      pending.remove(0).onResponse(WriteResponse.success());
+    }
+
+    @Override
+    public void cancelPendingRequests(Registration registration) {
+    }
+  }
+}
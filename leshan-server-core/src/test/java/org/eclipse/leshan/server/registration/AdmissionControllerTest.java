@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void global_rate_is_limited() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(
+        new AdmissionOptions().setGlobalRate(2, 2).setRetryDelay(1, 0), 0);
+
+    assertEquals(0, controller.admit(address("10.0.0.1"), 0));
+    assertEquals(0, controller.admit(address("10.0.1.1"), 0));
+    assertEquals(1, controller.admit(address("10.0.2.1"), 0));
+    // one token every 500ms
+    assertEquals(0, controller.admit(address("10.0.2.1"), SECOND / 2));
+
+    assertEquals(3, controller.getAdmittedCount());
+    assertEquals(1, controller.getRateLimitedCount());
+  }
+
+  @Test
+  public void subnet_rate_is_limited() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(
+        new AdmissionOptions().setSubnetRate(0.1, 1).setRetryDelay(1, 0), 0);
+
+    assertEquals(0, controller.admit(address("10.0.0.1"), 0));
+    // same /24 subnet, next token in 10s
+    assertEquals(10, controller.admit(address("10.0.0.2"), 0));
+    assertEquals(0, controller.admit(address("10.0.1.1"), 0));
+    assertEquals(0, controller.admit(address("2001:db8::1"), 0));
+    assertEquals(10, controller.admit(address("2001:db8::2"), 0));
+    assertEquals(0, controller.admit(address("10.0.0.2"), 10 * SECOND));
+  }
+
+  @Test
+  public void subnet_token_is_not_taken_when_global_rate_is_exceeded() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(
+        new AdmissionOptions().setGlobalRate(1, 1).setSubnetRate(0.1, 1).setRetryDelay(1, 0), 0);
+
+    assertEquals(0, controller.admit(address("10.0.0.1"), 0));
+    // rejected by the global rate, next global token in 1s
+    assertEquals(1, controller.admit(address("10.0.1.1"), 0));
+    // the subnet token is still available
+    assertEquals(0, controller.admit(address("10.0.1.1"), SECOND));
+  }
+
+  @Test
+  public void concurrent_requests_are_limited() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(
+        new AdmissionOptions().setMaxConcurrentRequests(1).setRetryDelay(2, 0), 0);
+
+    assertEquals(0, controller.admit(address("10.0.0.1"), 0));
+    assertEquals(2, controller.admit(address("10.0.0.2"), 0));
+    assertEquals(1, controller.getInFlightCount());
+
+    controller.release();
+    assertEquals(0, controller.admit(address("10.0.0.2"), 0));
+    assertEquals(1, controller.getConcurrencyLimitedCount());
+  }
+
+  @Test
+  public void retry_delay_is_spread() throws UnknownHostException {
+    AdmissionController controller = new AdmissionController(
+        new AdmissionOptions().setMaxConcurrentRequests(1).setRetryDelay(1, 4), 0);
+    controller.admit(address("10.0.0.1"), 0);
+
+    for (int i = 0; i < 100; i++) {
+      long delay = controller.admit(address("10.0.0.2"), 0);
+      assertTrue(delay >= 1 && delay <= 5);
+    }
+  }
+
+  private InetAddress address(String address) throws UnknownHostException {
+    return InetAddress.getByName(address);
+  }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.eclipse.leshan.core.request.Identity;
+import org.junit.Test;
+
+public class RegistrationExpirationQueueTest {
+
+  private static final long NOW = 1_000_000L;
+
+  @Test
+  public void poll_returns_only_expired_registrations_in_expiration_order() {
+    RegistrationExpirationQueue queue = new RegistrationExpirationQueue();
+    queue.schedule(givenRegistration("late", NOW - 1000, 10));
+    queue.schedule(givenRegistration("expired2", NOW - 5000, 2));
+    queue.schedule(givenRegistration("expired1", NOW - 10000, 1));
+
+    assertEquals(Arrays.asList("expired1", "expired2"), queue.pollExpired(NOW));
+    assertEquals(2, queue.getLastPollCount());
+    assertEquals(9000, queue.getLastPollMaxLag());
+    assertEquals(1, queue.size());
+
+    assertTrue(queue.pollExpired(NOW).isEmpty());
+    assertEquals(0, queue.getLastPollCount());
+    assertEquals(2, queue.getTotalPolled());
+  }
+
+  @Test
+  public void schedule_again_updates_expiration_time() {
+    RegistrationExpirationQueue queue = new RegistrationExpirationQueue();
+    queue.schedule(givenRegistration("reg", NOW - 10000, 1));
+    queue.schedule(givenRegistration("reg", NOW, 10));
+
+    assertTrue(queue.pollExpired(NOW).isEmpty());
+    assertEquals(Arrays.asList("reg"), queue.pollExpired(NOW + 10000));
+  }
+
+  @Test
+  public void removed_registration_is_not_polled() {
+    RegistrationExpirationQueue queue = new RegistrationExpirationQueue();
+    queue.schedule(givenRegistration("reg", NOW - 10000, 1));
+    queue.remove("reg");
+
+    assertTrue(queue.pollExpired(NOW).isEmpty());
+    assertEquals(0, queue.size());
+  }
+
+  private Registration givenRegistration(String id, long lastUpdate, long lifetime) {
+    return new Registration.Builder(id, "ep-" + id,
+        Identity.unsecure(InetSocketAddress.createUnresolved("localhost", 5683)),
+        InetSocketAddress.createUnresolved("localhost", 5683)).lifeTimeInSec(lifetime)
+        .lastUpdate(new Date(lastUpdate)).build();
+  }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2018 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import static org.junit.Assert.*;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.Identity;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.ClientSleepingException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ReadResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.registration.Registration;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchErrorCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.BatchResponseCallback;
+import org.eclipse.leshan.server.request.BatchRequestSender.RequestFactory;
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchRequestSenderTest {
+
+  private final FakeSender sender = new FakeSender();
+  private final BatchRequestSender batchSender = new BatchRequestSender(sender);
+  private final List<String> responded = Collections.synchronizedList(new ArrayList<String>());
+  private final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+
+  @After
+  public void destroy() {
+    batchSender.destroy();
+  }
+
+  @Test
+  public void in_flight_requests_are_limited() throws InterruptedException {
+    BatchProgress progress = send(new BatchOptions().setMaxInFlight(2), "ep1", "ep2", "ep3", "ep4",
+        "ep5");
+
+    assertEquals(2, sender.pending.size());
+    sender.respondToOldest();
+    assertEquals(2, sender.pending.size());
+    while (!sender.pending.isEmpty()) {
+      sender.respondToOldest();
+    }
+
+    assertTrue(progress.awaitCompletion(1, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("ep1", "ep2", "ep3", "ep4", "ep5"), responded);
+    assertEquals(5, progress.getResponseCount());
+    assertEquals(5, progress.getLatencies().getCount());
+    assertEquals(0, progress.getInFlightCount());
+  }
+
+  @Test
+  public void requests_to_same_endpoint_are_serialized() throws InterruptedException {
+    BatchProgress progress = send(new BatchOptions().setMaxInFlight(10), "ep1", "ep1", "ep2");
+
+    assertEquals(2, sender.pending.size());
+    sender.respondToOldest();
+    assertEquals(2, sender.pending.size());
+    sender.respondToOldest();
+    sender.respondToOldest();
+
+    assertTrue(progress.awaitCompletion(1, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("ep1", "ep2", "ep1"), responded);
+  }
+
+  @Test
+  public void timed_out_requests_are_retried() throws InterruptedException {
+    sender.failures.add(new TimeoutException("timeout"));
+    sender.respondImmediately = true;
+
+    BatchProgress progress = send(new BatchOptions().setRetryPolicy(1, 0), "ep1");
+
+    assertTrue(progress.awaitCompletion(1, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("ep1"), responded);
+    assertEquals(1, progress.getRetryCount());
+    assertEquals(2, progress.getSentCount());
+    assertTrue(errors.isEmpty());
+  }
+
+  @Test
+  public void sleeping_clients_are_not_retried() throws InterruptedException {
+    sender.failures.add(new ClientSleepingException("sleeping"));
+    sender.respondImmediately = true;
+
+    BatchProgress progress = send(new BatchOptions().setRetryPolicy(3, 0), "ep1", "ep2");
+
+    assertTrue(progress.awaitCompletion(1, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("ep2"), responded);
+    assertEquals(1, errors.size());
+    assertEquals(1, progress.getSleepingCount());
+    assertEquals(0, progress.getRetryCount());
+  }
+
+  @Test
+  public void cancelled_batch_stops_sending() throws InterruptedException {
+    BatchProgress progress = send(new BatchOptions().setMaxInFlight(1), "ep1", "ep2", "ep3");
+
+    progress.cancel();
+    assertFalse(progress.isDone());
+    sender.respondToOldest();
+
+    assertTrue(progress.awaitCompletion(1, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("ep1"), responded);
+    assertTrue(sender.pending.isEmpty());
+  }
+
+  private BatchProgress send(BatchOptions options, String... endpoints) {
+    List<Registration> destinations = new ArrayList<>();
+    for (String endpoint : endpoints) {
+      destinations.add(givenARegistration(endpoint));
+    }
+    return batchSender.send(destinations.iterator(), new RequestFactory<ReadResponse>() {
+      @Override
+      public DownlinkRequest<ReadResponse> createRequest(Registration destination) {
+        return new ReadRequest(3, 0, 1);
+      }
+    }, options, new BatchResponseCallback<ReadResponse>() {
+      @Override
+      public void onResponse(Registration destination, ReadResponse response) {
+        responded.add(destination.getEndpoint());
+      }
+    }, new BatchErrorCallback() {
+      @Override
+      public void onError(Registration destination, Exception error) {
+        errors.add(error);
+      }
+    });
+  }
+
+  private Registration givenARegistration(String endpoint) {
+    InetSocketAddress address = InetSocketAddress.createUnresolved("localhost", 5683);
+    return new Registration.Builder(endpoint + "_id", endpoint,
+        Identity.unsecure(Inet4Address.getLoopbackAddress(), 12354), address).build();
+  }
+
+  private static class FakeSender implements LwM2mRequestSender {
+
+    final LinkedList<ResponseCallback<ReadResponse>> pending = new LinkedList<>();
+    // exceptions to raise for the next requests
+    final LinkedList<Exception> failures = new LinkedList<>();
+    boolean respondImmediately;
+
+    @Override
+    public <T extends LwM2mResponse> T send(Registration destination, DownlinkRequest<T> request,
+        long timeout) throws InterruptedException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends LwM2mResponse> void send(Registration destination,
+        DownlinkRequest<T> request, long timeout, ResponseCallback<T> responseCallback,
+        ErrorCallback errorCallback) {
+      Exception failure = failures.poll();
+      if (failure instanceof ClientSleepingException) {
+        throw (ClientSleepingException) failure;
+      } else if (failure != null) {
+        errorCallback.onError(failure);
+      } else if (respondImmediately) {
+        ((ResponseCallback<ReadResponse>) responseCallback).onResponse(ReadResponse.notFound());
+      } else {
+        pending.add((ResponseCallback<ReadResponse>) responseCallback);
+      }
+    }
+
+    void respondToOldest() {
+      pending.poll().onResponse(ReadResponse.notFound());
+    }
+
+    @Override
+    public void cancelPendingRequests(Registration registration) {
+    }
+  }
+}